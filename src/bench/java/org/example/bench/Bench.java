@@ -0,0 +1,73 @@
+package org.example.bench;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Минимальный харнесс микробенчмарков: прогрев, затем замер времени и
+ * выделенной памяти на операцию в текущем потоке.
+ */
+public final class Bench {
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // Результат операций копится здесь, чтобы JIT не выбросил вычисления
+    private static long blackhole;
+
+    private Bench() {
+    }
+
+    @FunctionalInterface
+    public interface Operation {
+        Object run() throws Exception;
+    }
+
+    public static final class Result {
+        public final String name;
+        public final double nanosPerOp;
+        public final double bytesPerOp;
+
+        private Result(String name, double nanosPerOp, double bytesPerOp) {
+            this.name = name;
+            this.nanosPerOp = nanosPerOp;
+            this.bytesPerOp = bytesPerOp;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-48s %12.1f ns/op %12.1f B/op", name, nanosPerOp, bytesPerOp);
+        }
+    }
+
+    public static Result run(String name, int warmupOps, int measuredOps, Operation operation) throws Exception {
+        for (int i = 0; i < warmupOps; i++) {
+            consume(operation.run());
+        }
+        long bytesBefore = THREADS.getCurrentThreadAllocatedBytes();
+        long startedAt = System.nanoTime();
+        for (int i = 0; i < measuredOps; i++) {
+            consume(operation.run());
+        }
+        long elapsed = System.nanoTime() - startedAt;
+        long allocated = THREADS.getCurrentThreadAllocatedBytes() - bytesBefore;
+        Result result = new Result(name, (double) elapsed / measuredOps, (double) allocated / measuredOps);
+        System.out.println(result);
+        return result;
+    }
+
+    public static void compare(Result baseline, Result candidate) {
+        System.out.printf("  -> %s vs %s: %.2fx faster, %.1f%% less allocation%n",
+                candidate.name, baseline.name,
+                baseline.nanosPerOp / candidate.nanosPerOp,
+                100.0 * (1 - candidate.bytesPerOp / baseline.bytesPerOp));
+    }
+
+    private static void consume(Object value) {
+        if (value != null) {
+            blackhole += System.identityHashCode(value);
+        }
+    }
+
+    static long blackhole() {
+        return blackhole;
+    }
+}
@@ -0,0 +1,33 @@
+package org.example.bench;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Точка входа задачи {@code bench}. Аргумент - подстрока имени бенчмарка (пустая - все).
+ */
+public final class BenchmarkRunner {
+    private BenchmarkRunner() {
+    }
+
+    @FunctionalInterface
+    interface Benchmark {
+        void run() throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, Benchmark> benchmarks = new LinkedHashMap<>();
+        benchmarks.put("JsonWriters", JsonWritersBenchmark::run);
+        benchmarks.put("ErrorPath", ErrorPathBenchmark::run);
+        benchmarks.put("Codec", CodecBenchmark::run);
+
+        String filter = args.length > 0 ? args[0] : "";
+        for (Map.Entry<String, Benchmark> benchmark : benchmarks.entrySet()) {
+            if (benchmark.getKey().contains(filter)) {
+                System.out.println("== " + benchmark.getKey());
+                benchmark.getValue().run();
+            }
+        }
+        System.out.println("(blackhole " + Bench.blackhole() + ")");
+    }
+}
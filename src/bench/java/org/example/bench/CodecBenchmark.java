@@ -0,0 +1,108 @@
+package org.example.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.example.JsonResponseUtil;
+import org.example.JsonWriters;
+import org.example.WireFormat;
+import org.example.model.ExchangeRate;
+
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Сравнивает форматы ответов (JSON, CBOR, Smile) на двух типичных телах: списке курсов
+ * (/exchangeRate) и результате конвертации (/exchange) - размер тела, стоимость записи и разбора.
+ * Перед замерами проверяет, что курсы после записи и разбора совпадают с исходными.
+ */
+final class CodecBenchmark {
+    private static final int WARMUP = 50_000;
+    private static final int OPS = 200_000;
+    // Примерно столько валют публикует ЦБ
+    private static final int RATES = 43;
+
+    private CodecBenchmark() {
+    }
+
+    static void run() throws Exception {
+        OutputStream sink = new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        };
+
+        List<ExchangeRate> rates = new ArrayList<>();
+        for (int i = 0; i < RATES; i++) {
+            ExchangeRate rate = new ExchangeRate();
+            rate.setId(i + 1);
+            rate.setIdCurrency(i + 1);
+            rate.setNominal(i % 3 == 0 ? 100 : 1);
+            rate.setRate(new BigDecimal("79.6032").add(BigDecimal.valueOf(i * 1_731L, 4)));
+            rates.add(rate);
+        }
+        BigDecimal crossRate = new BigDecimal("0.852396734038");
+        BigDecimal amount = new BigDecimal("100");
+        BigDecimal converted = new BigDecimal("85.24");
+        JsonResponseUtil.BodyWriter rateList = gen -> JsonWriters.writeExchangeRates(gen, rates);
+        JsonResponseUtil.BodyWriter conversion =
+                gen -> JsonWriters.writeConversion(gen, "USD", "EUR", crossRate, amount, converted);
+
+        for (WireFormat format : WireFormat.values()) {
+            checkRoundTrip(format, rates, JsonResponseUtil.toBytes(format, rateList));
+        }
+
+        Bench.Result[] encodeList = new Bench.Result[WireFormat.values().length];
+        Bench.Result[] decodeList = new Bench.Result[encodeList.length];
+        Bench.Result[] encodeConversion = new Bench.Result[encodeList.length];
+        Bench.Result[] decodeConversion = new Bench.Result[encodeList.length];
+        for (WireFormat format : WireFormat.values()) {
+            int i = format.ordinal();
+            byte[] listBytes = JsonResponseUtil.toBytes(format, rateList);
+            byte[] conversionBytes = JsonResponseUtil.toBytes(format, conversion);
+            System.out.printf("%s: rate list %d B, /exchange body %d B%n",
+                    format, listBytes.length, conversionBytes.length);
+
+            encodeList[i] = Bench.run("rate list encode: " + format, WARMUP / 10, OPS / 10, () -> {
+                JsonResponseUtil.write(format, sink, rateList);
+                return sink;
+            });
+            decodeList[i] = Bench.run("rate list decode: " + format, WARMUP / 10, OPS / 10,
+                    () -> format.mapper().readTree(listBytes));
+            encodeConversion[i] = Bench.run("/exchange body encode: " + format, WARMUP, OPS, () -> {
+                JsonResponseUtil.write(format, sink, conversion);
+                return sink;
+            });
+            decodeConversion[i] = Bench.run("/exchange body decode: " + format, WARMUP, OPS,
+                    () -> format.mapper().readTree(conversionBytes));
+        }
+
+        int json = WireFormat.JSON.ordinal();
+        for (WireFormat format : WireFormat.values()) {
+            int i = format.ordinal();
+            if (i == json) {
+                continue;
+            }
+            Bench.compare(encodeList[json], encodeList[i]);
+            Bench.compare(decodeList[json], decodeList[i]);
+            Bench.compare(encodeConversion[json], encodeConversion[i]);
+            Bench.compare(decodeConversion[json], decodeConversion[i]);
+        }
+    }
+
+    private static void checkRoundTrip(WireFormat format, List<ExchangeRate> rates, byte[] body) throws Exception {
+        JsonNode decoded = format.mapper().readTree(body);
+        for (int i = 0; i < rates.size(); i++) {
+            BigDecimal expected = rates.get(i).getRate();
+            BigDecimal actual = decoded.get(i).get("rate").decimalValue();
+            if (expected.compareTo(actual) != 0) {
+                throw new IllegalStateException(format + ": курс " + expected + " после разбора стал " + actual);
+            }
+        }
+        System.out.println(format + ": курсы после записи и разбора совпадают");
+    }
+}
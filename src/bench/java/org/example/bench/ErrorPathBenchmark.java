@@ -0,0 +1,73 @@
+package org.example.bench;
+
+import org.example.JsonResponseUtil;
+import org.example.JsonWriters;
+import org.example.exception.DuplicateEntityException;
+import org.example.exception.EntityNotFoundException;
+
+import java.io.OutputStream;
+import java.util.function.Supplier;
+
+/**
+ * Путь ответов 404/409: исключение бросается в глубине стека (как из сервиса под
+ * цепочкой фильтров Tomcat), ловится наверху и превращается в JSON-тело ошибки.
+ * Сравнивает прежние исключения (String.format + захват стека) с текущими без стека.
+ */
+final class ErrorPathBenchmark {
+    private static final int WARMUP = 50_000;
+    private static final int OPS = 200_000;
+    // Примерная глубина стека запроса в Tomcat до вызова сервиса
+    private static final int STACK_DEPTH = 60;
+
+    private ErrorPathBenchmark() {
+    }
+
+    /**
+     * Исключение в прежнем виде: сообщение через String.format, полный стек.
+     */
+    private static final class LegacyException extends RuntimeException {
+        private LegacyException(String pattern, String entityName, String code) {
+            super(String.format(pattern, entityName, code));
+        }
+    }
+
+    static void run() throws Exception {
+        OutputStream sink = new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        };
+
+        Bench.Result oldNotFound = Bench.run("404: stack-capturing exception", WARMUP, OPS, () -> respond(sink, 404,
+                () -> new LegacyException("%s c кодом '%s' в базе данных отсутствует.", "Валюта", "XYZ")));
+        Bench.Result newNotFound = Bench.run("404: stackless exception", WARMUP, OPS, () -> respond(sink, 404,
+                () -> new EntityNotFoundException("Валюта", "XYZ")));
+        Bench.compare(oldNotFound, newNotFound);
+
+        Bench.Result oldDuplicate = Bench.run("409: stack-capturing exception", WARMUP, OPS, () -> respond(sink, 409,
+                () -> new LegacyException("%s с кодом '%s' уже существует.", "Валюта", "USD")));
+        Bench.Result newDuplicate = Bench.run("409: stackless exception", WARMUP, OPS, () -> respond(sink, 409,
+                () -> new DuplicateEntityException("Валюта", "USD")));
+        Bench.compare(oldDuplicate, newDuplicate);
+    }
+
+    private static OutputStream respond(OutputStream sink, int status, Supplier<RuntimeException> error) throws Exception {
+        try {
+            throwAt(STACK_DEPTH, error);
+        } catch (RuntimeException e) {
+            JsonResponseUtil.writeJson(sink, gen -> JsonWriters.writeError(gen, status, e.getMessage()));
+        }
+        return sink;
+    }
+
+    private static void throwAt(int depth, Supplier<RuntimeException> error) {
+        if (depth == 0) {
+            throw error.get();
+        }
+        throwAt(depth - 1, error);
+    }
+}
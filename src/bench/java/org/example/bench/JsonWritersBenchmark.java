@@ -0,0 +1,118 @@
+package org.example.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.JsonResponseUtil;
+import org.example.JsonWriters;
+import org.example.model.Currency;
+import org.example.model.ExchangeRate;
+
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Сравнивает прежнюю сериализацию (ObjectMapper с рефлексией и Map.of) с JsonWriters.
+ * Перед замерами проверяет, что для моделей вывод совпадает байт в байт.
+ */
+final class JsonWritersBenchmark {
+    private static final int WARMUP = 50_000;
+    private static final int OPS = 200_000;
+
+    private JsonWritersBenchmark() {
+    }
+
+    static void run() throws Exception {
+        ObjectMapper mapper = new ObjectMapper();
+        // Как и поток ответа сервлета: генератор закрывает его после каждой записи
+        OutputStream sink = new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        };
+
+        List<Currency> currencies = new ArrayList<>();
+        List<ExchangeRate> rates = new ArrayList<>();
+        String[][] data = {
+                {"RUB", "Российский рубль", "₽"}, {"USD", "Доллар США", "$"}, {"EUR", "Евро", "€"},
+                {"CNY", "Китайский юань", "¥"}, {"BYN", "Белорусский рубль", "Br"}
+        };
+        for (int i = 0; i < data.length; i++) {
+            Currency currency = new Currency();
+            currency.setId(i + 1);
+            currency.setCode(data[i][0]);
+            currency.setFullName(data[i][1]);
+            currency.setSign(data[i][2]);
+            currencies.add(currency);
+
+            ExchangeRate rate = new ExchangeRate();
+            rate.setId(i + 1);
+            rate.setIdCurrency(i + 1);
+            rate.setNominal(1);
+            rate.setRate(new BigDecimal("79.6032").add(BigDecimal.valueOf(i)));
+            rates.add(rate);
+        }
+
+        checkSame("currency list", mapper.writeValueAsBytes(currencies),
+                JsonResponseUtil.currenciesToJsonBytes(currencies));
+        checkSame("exchange rate list", mapper.writeValueAsBytes(rates),
+                JsonResponseUtil.exchangeRatesToJsonBytes(rates));
+
+        BigDecimal crossRate = new BigDecimal("0.852396734038");
+        BigDecimal amount = new BigDecimal("100");
+        BigDecimal converted = new BigDecimal("85.24");
+
+        Bench.Result oldList = Bench.run("currency list: ObjectMapper", WARMUP, OPS, () -> {
+            mapper.writeValue(sink, currencies);
+            return sink;
+        });
+        Bench.Result newList = Bench.run("currency list: JsonWriters", WARMUP, OPS, () -> {
+            JsonResponseUtil.writeJson(sink, gen -> JsonWriters.writeCurrencies(gen, currencies));
+            return sink;
+        });
+        Bench.compare(oldList, newList);
+
+        Bench.Result oldExchange = Bench.run("/exchange body: Map.of + ObjectMapper", WARMUP, OPS, () -> {
+            mapper.writeValue(sink, Map.of(
+                    "from", "USD",
+                    "to", "EUR",
+                    "rate", crossRate,
+                    "amount", amount,
+                    "convertedAmount", converted));
+            return sink;
+        });
+        Bench.Result newExchange = Bench.run("/exchange body: JsonWriters", WARMUP, OPS, () -> {
+            JsonResponseUtil.writeJson(sink,
+                    gen -> JsonWriters.writeConversion(gen, "USD", "EUR", crossRate, amount, converted));
+            return sink;
+        });
+        Bench.compare(oldExchange, newExchange);
+
+        Bench.Result oldError = Bench.run("error body: Map.of + ObjectMapper", WARMUP, OPS, () -> {
+            mapper.writeValue(sink, Map.of("status", 404, "message", "Валюта c кодом 'XYZ' в базе данных отсутствует."));
+            return sink;
+        });
+        Bench.Result newError = Bench.run("error body: JsonWriters", WARMUP, OPS, () -> {
+            JsonResponseUtil.writeJson(sink,
+                    gen -> JsonWriters.writeError(gen, 404, "Валюта c кодом 'XYZ' в базе данных отсутствует."));
+            return sink;
+        });
+        Bench.compare(oldError, newError);
+    }
+
+    private static void checkSame(String what, byte[] expected, byte[] actual) {
+        if (!Arrays.equals(expected, actual)) {
+            throw new IllegalStateException(what + ": вывод отличается\n  ObjectMapper: "
+                    + new String(expected, StandardCharsets.UTF_8) + "\n  JsonWriters:  "
+                    + new String(actual, StandardCharsets.UTF_8));
+        }
+        System.out.println(what + ": вывод совпадает байт в байт (" + actual.length + " B)");
+    }
+}
@@ -0,0 +1,143 @@
+package org.example.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Итоги прогона по сценариям и в целом: задержки (мс) по перцентилям, ошибки, пропускная способность.
+ * Пропускная способность считается по фактическому времени прогона, а не по заданной длительности:
+ * перегруженный сервер растягивает прогон, и деление на заданный срок завысило бы её.
+ */
+final class LoadReport {
+    static final String TOTAL = "total";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final int rps;
+    private final int seconds;
+    private final double elapsedSeconds;
+    private final Map<String, Histogram> histograms;
+    private final Map<String, LongAdder> errors;
+
+    /**
+     * @param seconds      заданная длительность подачи нагрузки
+     * @param elapsedNanos фактическое время от первого запроса до последнего ответа
+     */
+    LoadReport(int rps, int seconds, long elapsedNanos, Map<String, Histogram> histograms, Map<String, LongAdder> errors) {
+        this.rps = rps;
+        this.seconds = seconds;
+        this.elapsedSeconds = elapsedNanos / 1e9;
+        this.histograms = histograms;
+        this.errors = errors;
+    }
+
+    ObjectNode toJson() {
+        ObjectNode root = MAPPER.createObjectNode();
+        root.put("rps", rps);
+        root.put("durationSeconds", seconds);
+        root.put("elapsedSeconds", round(elapsedSeconds));
+        ObjectNode scenarios = root.putObject("scenarios");
+        Histogram total = new Histogram(3);
+        long totalErrors = 0;
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            long scenarioErrors = errors.get(entry.getKey()).sum();
+            scenarios.set(entry.getKey(), summary(entry.getValue(), scenarioErrors));
+            total.add(entry.getValue());
+            totalErrors += scenarioErrors;
+        }
+        scenarios.set(TOTAL, summary(total, totalErrors));
+        return root;
+    }
+
+    private ObjectNode summary(Histogram histogram, long errorCount) {
+        ObjectNode node = MAPPER.createObjectNode();
+        node.put("requests", histogram.getTotalCount());
+        node.put("errors", errorCount);
+        node.put("throughput", round((histogram.getTotalCount() - errorCount) / elapsedSeconds));
+        node.put("p50Ms", millis(histogram.getValueAtPercentile(50)));
+        node.put("p90Ms", millis(histogram.getValueAtPercentile(90)));
+        node.put("p99Ms", millis(histogram.getValueAtPercentile(99)));
+        node.put("p999Ms", millis(histogram.getValueAtPercentile(99.9)));
+        node.put("maxMs", millis(histogram.getMaxValue()));
+        return node;
+    }
+
+    void print(PrintStream out) {
+        out.printf("%-14s %9s %7s %10s %9s %9s %9s %9s %9s%n",
+                "scenario", "requests", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (Map.Entry<String, JsonNode> entry : toJson().get("scenarios").properties()) {
+            JsonNode node = entry.getValue();
+            out.printf("%-14s %9d %7d %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n", entry.getKey(),
+                    node.get("requests").asLong(), node.get("errors").asLong(), node.get("throughput").asDouble(),
+                    node.get("p50Ms").asDouble(), node.get("p90Ms").asDouble(), node.get("p99Ms").asDouble(),
+                    node.get("p999Ms").asDouble(), node.get("maxMs").asDouble());
+        }
+    }
+
+    /**
+     * Пишет report.json и полные распределения задержек (*.hgrm, в мс) для каждого сценария.
+     */
+    void writeTo(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        MAPPER.writerWithDefaultPrettyPrinter().writeValue(directory.resolve("report.json").toFile(), toJson());
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            try (PrintStream out = new PrintStream(directory.resolve(entry.getKey() + ".hgrm").toFile(), "UTF-8")) {
+                entry.getValue().outputPercentileDistribution(out, 1000.0);
+            }
+        }
+    }
+
+    /**
+     * Сравнивает прогон с базовым. Регрессия - рост p99 больше чем на {@code p99Tolerance}
+     * (и больше чем на {@code p99FloorMs}, чтобы не реагировать на шум долей миллисекунды),
+     * падение пропускной способности больше чем на {@code throughputTolerance}
+     * или доля ошибок выше {@code maxErrorRatio}.
+     *
+     * @return описания регрессий; пустой список - прогон не хуже базового
+     */
+    static List<String> regressions(JsonNode current, JsonNode baseline, double p99Tolerance, double p99FloorMs,
+                                    double throughputTolerance, double maxErrorRatio) {
+        List<String> problems = new ArrayList<>();
+        for (Map.Entry<String, JsonNode> entry : current.get("scenarios").properties()) {
+            String name = entry.getKey();
+            JsonNode now = entry.getValue();
+            long requests = now.get("requests").asLong();
+            if (requests > 0 && now.get("errors").asLong() > requests * maxErrorRatio) {
+                problems.add(name + ": ошибок " + now.get("errors").asLong() + " из " + requests);
+            }
+            JsonNode before = baseline == null ? null : baseline.path("scenarios").get(name);
+            if (before == null) {
+                continue;
+            }
+            double p99 = now.get("p99Ms").asDouble();
+            double baseP99 = before.get("p99Ms").asDouble();
+            if (p99 > baseP99 * (1 + p99Tolerance) && p99 - baseP99 > p99FloorMs) {
+                problems.add(String.format("%s: p99 %.2f мс, в базовом прогоне %.2f мс", name, p99, baseP99));
+            }
+            double throughput = now.get("throughput").asDouble();
+            double baseThroughput = before.get("throughput").asDouble();
+            if (throughput < baseThroughput * (1 - throughputTolerance)) {
+                problems.add(String.format("%s: %.1f запросов/с, в базовом прогоне %.1f", name, throughput, baseThroughput));
+            }
+        }
+        return problems;
+    }
+
+    private static double millis(long micros) {
+        return round(micros / 1000.0);
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+}
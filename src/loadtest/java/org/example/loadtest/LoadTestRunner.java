@@ -0,0 +1,254 @@
+package org.example.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.startup.Tomcat;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Точка входа задачи {@code loadTest}. Разворачивает WAR во встроенном Tomcat на копии
+ * учебной БД и с заглушкой ЦБ, подаёт нагрузку с фиксированной частотой и сравнивает
+ * результат с базовым прогоном.
+ * <p>
+ * Параметры (системные свойства, в Gradle - {@code -Ploadtest.*}):
+ * <ul>
+ *     <li>{@code loadtest.rps} - запросов в секунду (200);</li>
+ *     <li>{@code loadtest.duration.s} и {@code loadtest.warmup.s} - длительность замера и прогрева (30 и 10);</li>
+ *     <li>{@code loadtest.mix} - доли сценариев ({@code currency:20,exchangeRate:30,exchange:50});</li>
+ *     <li>{@code loadtest.clients} - число условных клиентов для ограничителя частоты (200);</li>
+ *     <li>{@code loadtest.max.inflight} - предел одновременных запросов (1000);</li>
+ *     <li>{@code loadtest.p99.tolerance}, {@code loadtest.p99.floor.ms}, {@code loadtest.throughput.tolerance},
+ *     {@code loadtest.max.error.ratio} - пороги регрессии (0.25, 1, 0.05, 0.01);</li>
+ *     <li>{@code loadtest.update.baseline=true} - записать результат как новый базовый прогон.</li>
+ * </ul>
+ * Вместе с базовым прогоном записывается машина, на которой он снят ({@code hardware}): задержки
+ * сравнимы только на той же машине, поэтому базовый прогон перезаписывают там, где работает проверка.
+ */
+public final class LoadTestRunner {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private LoadTestRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path war = Paths.get(required("loadtest.war"));
+        Path seedDb = Paths.get(required("loadtest.seed.db"));
+        Path baselineFile = Paths.get(required("loadtest.baseline"));
+        Path reportDir = Paths.get(required("loadtest.report.dir"));
+        int rps = Integer.getInteger("loadtest.rps", 200);
+        int seconds = Integer.getInteger("loadtest.duration.s", 30);
+        int warmupSeconds = Integer.getInteger("loadtest.warmup.s", 10);
+        Map<String, Integer> mix = parseMix(System.getProperty("loadtest.mix", "currency:20,exchangeRate:30,exchange:50"));
+
+        int clients = Integer.getInteger("loadtest.clients", 200);
+
+        Path workDir = Files.createTempDirectory("currency-loadtest");
+        Path db = workDir.resolve("currency_exchange_db.sqlite");
+        Files.copy(seedDb, db);
+
+        boolean passed;
+        try (StubCbrServer cbr = StubCbrServer.start()) {
+            // Приложение читает настройки через AppConfig, системные свойства имеют приоритет над config.properties
+            System.setProperty("db.url", "jdbc:sqlite:" + db);
+            System.setProperty("cbr.url", cbr.url());
+            System.setProperty("cluster.bus", "none");
+            // Все условные клиенты идут с одного адреса, поэтому их ключи должны быть известны ограничителю
+            System.setProperty("ratelimit.api.keys", OpenLoadGenerator.clientKeys(clients));
+
+            Tomcat tomcat = startTomcat(war, workDir);
+            try {
+                URI baseUri = URI.create("http://127.0.0.1:" + tomcat.getConnector().getLocalPort() + "/");
+                waitUntilReady(baseUri);
+                List<String> currencyCodes = codes(baseUri.resolve("currency"), "code");
+                List<String> rateCodes = rateCodes(baseUri, currencyCodes);
+                System.out.println("Application ready: " + currencyCodes.size() + " currencies, "
+                        + rateCodes.size() + " rates, CBR stub calls: " + cbr.requestCount());
+
+                OpenLoadGenerator generator = new OpenLoadGenerator(baseUri, mix, currencyCodes, rateCodes,
+                        clients,
+                        Integer.getInteger("loadtest.max.inflight", 1000));
+                if (warmupSeconds > 0) {
+                    System.out.println("Warm-up: " + rps + " req/s for " + warmupSeconds + " s");
+                    generator.run(rps, warmupSeconds, 1);
+                }
+                System.out.println("Measurement: " + rps + " req/s for " + seconds + " s, mix " + mix);
+                LoadReport report = generator.run(rps, seconds, 42);
+                report.print(System.out);
+                report.writeTo(reportDir);
+                System.out.println("Report: " + reportDir.resolve("report.json"));
+                passed = checkBaseline(report.toJson(), baselineFile);
+            } finally {
+                tomcat.stop();
+                tomcat.destroy();
+            }
+        } finally {
+            deleteRecursively(workDir);
+        }
+        // Потоки приложения (планировщик, пул соединений) не должны задерживать завершение
+        System.exit(passed ? 0 : 1);
+    }
+
+    private static Tomcat startTomcat(Path war, Path workDir) throws LifecycleException, IOException {
+        Path baseDir = workDir.resolve("tomcat");
+        Files.createDirectories(baseDir.resolve("webapps"));
+        Tomcat tomcat = new Tomcat();
+        tomcat.setBaseDir(baseDir.toString());
+        tomcat.setHostname("127.0.0.1");
+        tomcat.setPort(0);
+        tomcat.getConnector();
+        // Нужны только сервлеты приложения: без DefaultServlet и JSP из web.xml по умолчанию
+        tomcat.setAddDefaultWebXmlToWebapp(false);
+        tomcat.addWebapp("", war.toAbsolutePath().toString());
+        tomcat.start();
+        return tomcat;
+    }
+
+    private static void waitUntilReady(URI baseUri) throws IOException, InterruptedException {
+        HttpClient client = HttpClient.newHttpClient();
+        long deadline = System.currentTimeMillis() + 120_000;
+        while (System.currentTimeMillis() < deadline) {
+            HttpResponse<Void> response = client.send(HttpRequest.newBuilder(baseUri.resolve("ready")).build(),
+                    HttpResponse.BodyHandlers.discarding());
+            if (response.statusCode() == 200) {
+                return;
+            }
+            Thread.sleep(200);
+        }
+        throw new IOException("Приложение не стало готовым за 2 минуты.");
+    }
+
+    private static List<String> codes(URI uri, String field) throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = HttpClient.newHttpClient()
+                .send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofByteArray());
+        List<String> codes = new ArrayList<>();
+        for (JsonNode node : MAPPER.readTree(response.body())) {
+            codes.add(node.get(field).asText());
+        }
+        return codes;
+    }
+
+    /**
+     * Коды валют, у которых есть курс: в списке курсов валюта указана только своим id.
+     */
+    private static List<String> rateCodes(URI baseUri, List<String> currencyCodes) throws IOException, InterruptedException {
+        List<String> withRates = new ArrayList<>();
+        for (String code : currencyCodes) {
+            HttpResponse<Void> response = HttpClient.newHttpClient()
+                    .send(HttpRequest.newBuilder(baseUri.resolve("exchangeRate/" + code)).build(),
+                            HttpResponse.BodyHandlers.discarding());
+            if (response.statusCode() == 200) {
+                withRates.add(code);
+            }
+        }
+        if (withRates.isEmpty()) {
+            throw new IOException("В тестовой БД нет ни одного курса.");
+        }
+        return withRates;
+    }
+
+    private static boolean checkBaseline(ObjectNode current, Path baselineFile) throws IOException {
+        if (Boolean.getBoolean("loadtest.update.baseline") || !Files.exists(baselineFile)) {
+            current.set("hardware", hardware());
+            MAPPER.writerWithDefaultPrettyPrinter().writeValue(baselineFile.toFile(), current);
+            System.out.println("Baseline written: " + baselineFile);
+            return true;
+        }
+        JsonNode baseline = MAPPER.readTree(baselineFile.toFile());
+        if (baseline.get("rps").asInt() != current.get("rps").asInt()) {
+            // Прогоны с разной частотой несравнимы - проверяем только ошибки
+            System.out.println("Baseline was recorded at " + baseline.get("rps").asInt()
+                    + " req/s, comparison skipped.");
+            baseline = null;
+        } else if (!hardware().equals(baseline.get("hardware"))) {
+            System.out.println("Baseline was recorded on " + baseline.get("hardware") + ", this run is on "
+                    + hardware() + "; latency differences may come from the machine, not the code.");
+        }
+        List<String> regressions = LoadReport.regressions(current, baseline,
+                Double.parseDouble(System.getProperty("loadtest.p99.tolerance", "0.25")),
+                Double.parseDouble(System.getProperty("loadtest.p99.floor.ms", "1")),
+                Double.parseDouble(System.getProperty("loadtest.throughput.tolerance", "0.05")),
+                Double.parseDouble(System.getProperty("loadtest.max.error.ratio", "0.01")));
+        if (regressions.isEmpty()) {
+            System.out.println("No regressions against " + baselineFile);
+            return true;
+        }
+        System.err.println("Performance regressions:");
+        regressions.forEach(problem -> System.err.println("  " + problem));
+        return false;
+    }
+
+    /**
+     * Машина прогона: процессор, число ядер, ОС и JVM.
+     */
+    private static ObjectNode hardware() throws IOException {
+        ObjectNode node = MAPPER.createObjectNode();
+        node.put("cpu", cpuModel());
+        node.put("cores", Runtime.getRuntime().availableProcessors());
+        node.put("os", System.getProperty("os.name") + " " + System.getProperty("os.arch"));
+        node.put("java", System.getProperty("java.vm.name") + " " + System.getProperty("java.version"));
+        return node;
+    }
+
+    private static String cpuModel() throws IOException {
+        Path cpuInfo = Paths.get("/proc/cpuinfo");
+        if (Files.isReadable(cpuInfo)) {
+            try (Stream<String> lines = Files.lines(cpuInfo)) {
+                Optional<String> model = lines.filter(line -> line.startsWith("model name"))
+                        .map(line -> line.substring(line.indexOf(':') + 1).trim())
+                        .findFirst();
+                if (model.isPresent()) {
+                    return model.get();
+                }
+            }
+        }
+        return "unknown";
+    }
+
+    private static Map<String, Integer> parseMix(String value) {
+        Map<String, Integer> mix = new LinkedHashMap<>();
+        for (String part : value.split(",")) {
+            String[] pair = part.trim().split(":");
+            int weight = Integer.parseInt(pair[1].trim());
+            if (weight > 0) {
+                mix.put(pair[0].trim(), weight);
+            }
+        }
+        if (mix.isEmpty()) {
+            throw new IllegalArgumentException("В loadtest.mix нет ни одного сценария с ненулевой долей.");
+        }
+        return mix;
+    }
+
+    private static String required(String key) {
+        String value = System.getProperty(key);
+        if (value == null || value.isBlank()) {
+            throw new IllegalArgumentException("Не задано системное свойство " + key + " (запускайте через ./gradlew loadTest)");
+        }
+        return value;
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
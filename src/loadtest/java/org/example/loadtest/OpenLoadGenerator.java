@@ -0,0 +1,162 @@
+package org.example.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Генератор нагрузки по открытой модели: запросы отправляются по расписанию с фиксированной
+ * частотой, не дожидаясь ответов на предыдущие. Задержка считается от запланированного
+ * момента отправки, а не от фактического, поэтому отставание генератора при медленном сервере
+ * попадает в задержку (без «coordinated omission»).
+ */
+final class OpenLoadGenerator {
+    // Суммы в запросах /exchange: большая часть - круглые, как в реальном трафике
+    private static final String[] ROUND_AMOUNTS = {"100", "1000", "10", "500"};
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final URI baseUri;
+    private final Map<String, Integer> mix;
+    private final List<String> currencyCodes;
+    private final List<String> rateCodes;
+    private final int clients;
+    private final int maxInFlight;
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .executor(Executors.newFixedThreadPool(4, runnable -> {
+                Thread thread = new Thread(runnable, "loadtest-http");
+                thread.setDaemon(true);
+                return thread;
+            }))
+            .build();
+
+    /**
+     * @param mix           доли сценариев: currency, exchangeRate, exchange
+     * @param currencyCodes коды всех валют
+     * @param rateCodes     коды валют, для которых есть курс (и рубль)
+     * @param clients       число условных клиентов (разные X-API-Key для ограничителя частоты)
+     * @param maxInFlight   предел одновременных запросов; задержка ожидания слота тоже учитывается
+     */
+    OpenLoadGenerator(URI baseUri, Map<String, Integer> mix, List<String> currencyCodes, List<String> rateCodes,
+                      int clients, int maxInFlight) {
+        this.baseUri = baseUri;
+        this.mix = mix;
+        this.currencyCodes = currencyCodes;
+        this.rateCodes = rateCodes;
+        this.clients = clients;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Ключи API условных клиентов через запятую, для {@code ratelimit.api.keys} приложения.
+     */
+    static String clientKeys(int clients) {
+        StringBuilder keys = new StringBuilder();
+        for (int i = 0; i < clients; i++) {
+            if (i > 0) {
+                keys.append(',');
+            }
+            keys.append(clientKey(i));
+        }
+        return keys.toString();
+    }
+
+    private static String clientKey(int client) {
+        return "loadtest-" + client;
+    }
+
+    /**
+     * Подаёт нагрузку {@code rps} запросов в секунду в течение {@code seconds} и ждёт все ответы.
+     */
+    LoadReport run(int rps, int seconds, long seed) throws InterruptedException {
+        Map<String, Histogram> histograms = new LinkedHashMap<>();
+        Map<String, LongAdder> errors = new LinkedHashMap<>();
+        for (String scenario : mix.keySet()) {
+            histograms.put(scenario, new ConcurrentHistogram(MAX_LATENCY_MICROS, 3));
+            errors.put(scenario, new LongAdder());
+        }
+        int totalWeight = mix.values().stream().mapToInt(Integer::intValue).sum();
+        Random random = new Random(seed);
+        Semaphore inFlight = new Semaphore(maxInFlight);
+
+        long total = (long) rps * seconds;
+        long periodNanos = TimeUnit.SECONDS.toNanos(1) / rps;
+        long startedAt = System.nanoTime();
+        for (long i = 0; i < total; i++) {
+            long intendedAt = startedAt + i * periodNanos;
+            long delay = intendedAt - System.nanoTime();
+            if (delay > 0) {
+                LockSupport.parkNanos(delay);
+            }
+            String scenario = pickScenario(random, totalWeight);
+            HttpRequest request = HttpRequest.newBuilder(baseUri.resolve(path(scenario, random)))
+                    .timeout(Duration.ofSeconds(30))
+                    .header("X-API-Key", clientKey((int) (i % clients)))
+                    .GET()
+                    .build();
+            inFlight.acquire();
+            Histogram histogram = histograms.get(scenario);
+            LongAdder scenarioErrors = errors.get(scenario);
+            httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        long latencyMicros = (System.nanoTime() - intendedAt) / 1000;
+                        histogram.recordValue(Math.min(latencyMicros, MAX_LATENCY_MICROS));
+                        if (error != null || response.statusCode() >= 400) {
+                            scenarioErrors.increment();
+                        }
+                        inFlight.release();
+                    });
+        }
+        inFlight.acquire(maxInFlight);
+        inFlight.release(maxInFlight);
+        // Если сервер не успевал, подача и ответы растягиваются дольше заданного срока
+        long elapsedNanos = System.nanoTime() - startedAt;
+        return new LoadReport(rps, seconds, elapsedNanos, histograms, errors);
+    }
+
+    private String pickScenario(Random random, int totalWeight) {
+        int point = random.nextInt(totalWeight);
+        for (Map.Entry<String, Integer> entry : mix.entrySet()) {
+            point -= entry.getValue();
+            if (point < 0) {
+                return entry.getKey();
+            }
+        }
+        throw new IllegalStateException("Пустая смесь сценариев");
+    }
+
+    private String path(String scenario, Random random) {
+        switch (scenario) {
+            case "currency":
+                return "currency/" + pick(currencyCodes, random);
+            case "exchangeRate":
+                return "exchangeRate/" + pick(rateCodes, random);
+            case "exchange":
+                String amount = random.nextInt(10) < 8
+                        ? ROUND_AMOUNTS[random.nextInt(ROUND_AMOUNTS.length)]
+                        : Integer.toString(1 + random.nextInt(100_000));
+                return "exchange?from=" + pick(rateCodes, random) + "&to=" + pick(rateCodes, random)
+                        + "&amount=" + amount;
+            default:
+                throw new IllegalArgumentException("Неизвестный сценарий: " + scenario);
+        }
+    }
+
+    private static String pick(List<String> values, Random random) {
+        return values.get(random.nextInt(values.size()));
+    }
+}
@@ -0,0 +1,85 @@
+package org.example.loadtest;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Заглушка API ЦБ на локальном порту: отдаёт daily_json.js с фиксированными курсами,
+ * чтобы прогон не зависел от сети и давал одинаковые данные.
+ */
+final class StubCbrServer implements AutoCloseable {
+    private static final Map<String, String[]> RATES = new TreeMap<>();
+
+    static {
+        // код -> {номинал, курс}
+        RATES.put("USD", new String[]{"1", "79.6032"});
+        RATES.put("EUR", new String[]{"1", "93.3875"});
+        RATES.put("GBP", new String[]{"1", "107.2411"});
+        RATES.put("CNY", new String[]{"1", "11.0874"});
+        RATES.put("JPY", new String[]{"100", "53.1220"});
+        RATES.put("CHF", new String[]{"1", "99.8452"});
+        RATES.put("KZT", new String[]{"100", "14.7813"});
+        RATES.put("BYN", new String[]{"1", "27.0551"});
+        RATES.put("TRY", new String[]{"10", "19.2040"});
+        RATES.put("AMD", new String[]{"100", "20.6981"});
+    }
+
+    private final HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private StubCbrServer(HttpServer server) {
+        this.server = server;
+    }
+
+    static StubCbrServer start() throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        StubCbrServer stub = new StubCbrServer(server);
+        byte[] body = dailyJson().getBytes(StandardCharsets.UTF_8);
+        server.createContext("/daily_json.js", exchange -> {
+            stub.requests.incrementAndGet();
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        return stub;
+    }
+
+    String url() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/daily_json.js";
+    }
+
+    int requestCount() {
+        return requests.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private static String dailyJson() {
+        StringBuilder json = new StringBuilder("{\"Valute\":{");
+        boolean first = true;
+        for (Map.Entry<String, String[]> rate : RATES.entrySet()) {
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            json.append('"').append(rate.getKey()).append("\":{\"CharCode\":\"").append(rate.getKey())
+                    .append("\",\"Nominal\":").append(rate.getValue()[0])
+                    .append(",\"Value\":").append(rate.getValue()[1]).append('}');
+        }
+        return json.append("}}").toString();
+    }
+}
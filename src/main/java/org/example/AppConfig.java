@@ -0,0 +1,51 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Единая точка доступа к настройкам из config.properties.
+ * Файл читается один раз при загрузке класса. Системное свойство JVM с тем же именем
+ * ({@code -Ddb.url=...}) имеет приоритет над значением из файла.
+ */
+public final class AppConfig {
+    private static final String PROP_FILE_NAME = "config.properties";
+    private static final Properties PROPS = new Properties();
+
+    static {
+        try (InputStream inputStream = AppConfig.class.getClassLoader().getResourceAsStream(PROP_FILE_NAME)) {
+            if (inputStream == null) {
+                // Если файл не найден, приложение не должно работать.
+                throw new RuntimeException("Property file '" + PROP_FILE_NAME + "' not found in the classpath");
+            }
+            PROPS.load(inputStream);
+        } catch (IOException e) {
+            // Ошибка чтения файла - это критическая ошибка для старта приложения
+            throw new RuntimeException("Cannot load a properties file", e);
+        }
+    }
+
+    private AppConfig() {
+    }
+
+    public static String getString(String key, String defaultValue) {
+        String value = System.getProperty(key, PROPS.getProperty(key));
+        return value == null || value.isBlank() ? defaultValue : value.trim();
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        String value = getString(key, null);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    public static long getLong(String key, long defaultValue) {
+        String value = getString(key, null);
+        return value == null ? defaultValue : Long.parseLong(value);
+    }
+
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = getString(key, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+}
@@ -0,0 +1,57 @@
+package org.example;
+
+/**
+ * Проверка и упаковка трёхбуквенных кодов валют без регулярных выражений и без ветвлений
+ * на каждый символ: код из латинских букв упаковывается в int (по байту на букву в верхнем регистре).
+ */
+public final class CurrencyCodes {
+    public static final int INVALID = -1;
+
+    private CurrencyCodes() {
+    }
+
+    /**
+     * Упаковывает код в int без учёта регистра ("usd" и "USD" дают одно значение).
+     *
+     * @return упакованный код или {@link #INVALID}, если это не три латинские буквы
+     */
+    public static int pack(String code) {
+        if (code == null || code.length() != 3) {
+            return INVALID;
+        }
+        int c0 = code.charAt(0);
+        int c1 = code.charAt(1);
+        int c2 = code.charAt(2);
+        int invalid = notLetter(c0) | notLetter(c1) | notLetter(c2);
+        int packed = (c0 & 0x5F) << 16 | (c1 & 0x5F) << 8 | (c2 & 0x5F);
+        // Знаковый бит invalid растягивается в -1 и поглощает packed
+        return (invalid >> 31) | packed;
+    }
+
+    /**
+     * Обратное к {@link #pack}: код в верхнем регистре.
+     */
+    public static String unpack(int packed) {
+        return new String(new char[]{(char) (packed >>> 16), (char) ((packed >>> 8) & 0xFF), (char) (packed & 0xFF)});
+    }
+
+    /**
+     * Аналог {@code s.matches("[a-zA-Z]+")}.
+     */
+    public static boolean isLatinLetters(String s) {
+        int invalid = 0;
+        for (int i = 0; i < s.length(); i++) {
+            invalid |= notLetter(s.charAt(i));
+        }
+        return !s.isEmpty() && invalid >= 0;
+    }
+
+    /**
+     * Отрицательное число, если символ - не латинская буква.
+     * Установка бита 0x20 переводит A-Z в a-z; всё, что после этого вне a-z, не буква.
+     */
+    private static int notLetter(int c) {
+        int offset = (c | 0x20) - 'a';
+        return offset | ('z' - 'a' - offset);
+    }
+}
@@ -1,50 +1,38 @@
 package org.example;
 
 
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.example.profiling.DbConnectionEvent;
+
 import java.io.File;
-import java.io.IOException;
-import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
-import java.util.Objects;
-import java.util.Properties;
 
 public class DatabaseManager {
     private static final String JDBC_URL;
+    private static final HikariDataSource DATA_SOURCE;
 
     static {
-        Properties props = new Properties();
-        String propFileName = "config.properties";
-        try (InputStream inputStream = DatabaseManager.class.getClassLoader().getResourceAsStream(propFileName)) {
-
-            if (inputStream == null) {
-                // Если файл не найден, приложение не должно работать.
-                throw new RuntimeException("Property file '" + propFileName + "' not found in the classpath");
-
-
-            }
-            // Загрузка свойства из файла
-            props.load(Objects.requireNonNull(inputStream));
-            // Получаем значение по ключу "db.url"
-            JDBC_URL = props.getProperty("db.url");
+        // Получаем значение по ключу "db.url"
+        JDBC_URL = AppConfig.getString("db.url", null);
+        if (JDBC_URL == null) {
+            throw new RuntimeException("Property 'db.url' is not set in config.properties");
+        }
 
-            if (JDBC_URL.startsWith("jdbc:sqlite:")) {
-                String path = JDBC_URL.substring("jdbc:sqlite:".length());
+        if (JDBC_URL.startsWith("jdbc:sqlite:")) {
+            String path = JDBC_URL.substring("jdbc:sqlite:".length());
 
 
-                File dbFile = new File(path);
-                File parent = dbFile.getParentFile();
-                if (parent != null && !parent.exists()) {
-                    parent.mkdirs();
+            File dbFile = new File(path);
+            File parent = dbFile.getParentFile();
+            if (parent != null && !parent.exists()) {
+                parent.mkdirs();
 
 
-                }
             }
-
-        } catch (IOException e) {
-            // Ошибка чтения файла - это критическая ошибка для старта приложения
-            throw new RuntimeException("Cannot load a properties file", e);
         }
 
         // Загрузка драйвера (опционально, но хорошая практика)
@@ -55,10 +43,47 @@ public class DatabaseManager {
 
 
         }
+
+        // Пул соединений: подготовленные запросы кэшируются на физических соединениях (см. StatementCache)
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("currency-exchange-db");
+        config.setJdbcUrl(JDBC_URL);
+        config.setMaximumPoolSize(AppConfig.getInt("db.pool.size", 4));
+        // SQLite допускает одного писателя: остальные ждут блокировку, а не получают SQLITE_BUSY сразу
+        config.addDataSourceProperty("busy_timeout", AppConfig.getString("db.busy.timeout.ms", "5000"));
+        // В режиме WAL читатели не ждут писателя; размер файла WAL после контрольной точки ограничен
+        config.addDataSourceProperty("journal_mode", AppConfig.getString("db.journal.mode", "WAL"));
+        config.addDataSourceProperty("journal_size_limit", AppConfig.getString("db.journal.size.limit", "67108864"));
+        // Недоступная при старте БД не должна ломать загрузку класса - ошибка придёт при запросе
+        config.setInitializationFailTimeout(-1);
+        DATA_SOURCE = new HikariDataSource(config);
     }
 
 
     public static Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(JDBC_URL);
+        DbConnectionEvent event = new DbConnectionEvent();
+        event.begin();
+        try {
+            return DATA_SOURCE.getConnection();
+        } finally {
+            event.finish(DATA_SOURCE);
+        }
+    }
+
+    /**
+     * Каталог, в котором лежит файл БД; рядом с ним хранятся служебные файлы приложения.
+     */
+    public static Path getDatabaseDirectory() {
+        if (JDBC_URL.startsWith("jdbc:sqlite:")) {
+            Path parent = Paths.get(JDBC_URL.substring("jdbc:sqlite:".length())).toAbsolutePath().getParent();
+            if (parent != null) {
+                return parent;
+            }
+        }
+        return Paths.get(".").toAbsolutePath();
+    }
+
+    public static void close() {
+        DATA_SOURCE.close();
     }
-}
\ No newline at end of file
+}
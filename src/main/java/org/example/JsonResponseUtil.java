@@ -1,36 +1,224 @@
 package org.example;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.servlet.http.HttpServletResponse;
+import org.example.model.Currency;
+import org.example.model.ExchangeRate;
+import org.example.profiling.SerializationEvent;
+import org.example.upstream.CbrClient;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 
+/**
+ * Отправка тел ответов API. Методы {@code send*} без явного формата пишут в формате, выбранном
+ * для текущего запроса по заголовку Accept ({@link WireFormat#current()}), по умолчанию - JSON;
+ * методы с {@code Json} в имени, принимающие готовые байты или поток, всегда работают с JSON.
+ */
 public class JsonResponseUtil {
-    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final ObjectMapper mapper = WireFormat.JSON.mapper();
+
+    // Буфер ответа переиспользуется потоком; слишком разросшийся буфер не удерживаем
+    private static final int MAX_RETAINED_BUFFER = 256 * 1024;
+    private static final ThreadLocal<ByteArrayOutputStream> BUFFER =
+            ThreadLocal.withInitial(() -> new ByteArrayOutputStream(1024));
+
+    /**
+     * Пишет тело ответа в переданный генератор.
+     */
+    @FunctionalInterface
+    public interface BodyWriter {
+        void write(JsonGenerator gen) throws IOException;
+    }
 
     public static void sendJsonResponse(HttpServletResponse resp, int status, Object data) throws IOException {
-        resp.setStatus(status);
-        resp.setContentType("application/json; charset=UTF-8");
-        mapper.writeValue(resp.getWriter(), data);
+        WireFormat format = WireFormat.current();
+        SerializationEvent event = new SerializationEvent();
+        event.begin();
+        try {
+            resp.setStatus(status);
+            resp.setContentType(format.contentType());
+            format.mapper().writeValue(resp.getOutputStream(), data);
+        } finally {
+            event.finish(SerializationEvent.STREAM, format.mediaType(), status, 0, 0);
+        }
+    }
+
+    /**
+     * Сериализует тело через BodyWriter в буфер потока и отправляет его с Content-Length
+     * в формате текущего запроса.
+     */
+    public static void sendJson(HttpServletResponse resp, int status, BodyWriter body) throws IOException {
+        WireFormat format = WireFormat.current();
+        SerializationEvent event = new SerializationEvent();
+        event.begin();
+        ByteArrayOutputStream buffer = render(format, body);
+        try {
+            resp.setStatus(status);
+            resp.setContentType(format.contentType());
+            resp.setContentLength(buffer.size());
+            buffer.writeTo(resp.getOutputStream());
+        } finally {
+            event.finish(SerializationEvent.SEND, format.mediaType(), status, 0, buffer.size());
+            release(buffer);
+        }
+    }
+
+    public static void sendCurrency(HttpServletResponse resp, int status, Currency currency) throws IOException {
+        sendJson(resp, status, gen -> JsonWriters.writeCurrency(gen, currency));
+    }
+
+    public static void sendExchangeRate(HttpServletResponse resp, int status, ExchangeRate rate) throws IOException {
+        sendJson(resp, status, gen -> JsonWriters.writeExchangeRate(gen, rate));
+    }
+
+    public static void sendConversion(HttpServletResponse resp, String from, String to, BigDecimal rate,
+                                      BigDecimal amount, BigDecimal convertedAmount) throws IOException {
+        sendJson(resp, HttpServletResponse.SC_OK,
+                gen -> JsonWriters.writeConversion(gen, from, to, rate, amount, convertedAmount));
+    }
+
+    /**
+     * Отправляет заранее сериализованное JSON-тело.
+     */
+    public static void sendJsonBytes(HttpServletResponse resp, int status, byte[] body) throws IOException {
+        sendBytes(resp, status, WireFormat.JSON, body);
+    }
+
+    /**
+     * Отправляет заранее сериализованное тело в указанном формате.
+     */
+    public static void sendBytes(HttpServletResponse resp, int status, WireFormat format, byte[] body) throws IOException {
+        SerializationEvent event = new SerializationEvent();
+        event.begin();
+        try {
+            resp.setStatus(status);
+            resp.setContentType(format.contentType());
+            resp.setContentLength(body.length);
+            resp.getOutputStream().write(body);
+        } finally {
+            event.finish(SerializationEvent.WRITE, format.mediaType(), status, 0, body.length);
+        }
+    }
+
+    public static byte[] toJsonBytes(Object data) throws IOException {
+        return mapper.writeValueAsBytes(data);
+    }
+
+    /**
+     * Сериализует тело в JSON в новый массив байт (для кэширования готовых ответов).
+     */
+    public static byte[] toJsonBytes(BodyWriter body) throws IOException {
+        return toBytes(WireFormat.JSON, body);
+    }
+
+    /**
+     * Сериализует тело в указанном формате в новый массив байт.
+     */
+    public static byte[] toBytes(WireFormat format, BodyWriter body) throws IOException {
+        return toBytes(format, body, 0);
+    }
+
+    public static byte[] currenciesToJsonBytes(List<Currency> currencies) throws IOException {
+        return currenciesToBytes(WireFormat.JSON, currencies);
+    }
+
+    public static byte[] currenciesToBytes(WireFormat format, List<Currency> currencies) throws IOException {
+        return toBytes(format, gen -> JsonWriters.writeCurrencies(gen, currencies), currencies.size());
+    }
+
+    public static byte[] exchangeRatesToJsonBytes(List<ExchangeRate> rates) throws IOException {
+        return exchangeRatesToBytes(WireFormat.JSON, rates);
+    }
+
+    public static byte[] exchangeRatesToBytes(WireFormat format, List<ExchangeRate> rates) throws IOException {
+        return toBytes(format, gen -> JsonWriters.writeExchangeRates(gen, rates), rates.size());
+    }
+
+    /**
+     * Пишет тело в JSON напрямую в поток без промежуточного буфера.
+     */
+    public static void writeJson(OutputStream out, BodyWriter body) throws IOException {
+        write(WireFormat.JSON, out, body);
+    }
+
+    /**
+     * Пишет тело в указанном формате напрямую в поток без промежуточного буфера.
+     */
+    public static void write(WireFormat format, OutputStream out, BodyWriter body) throws IOException {
+        SerializationEvent event = new SerializationEvent();
+        event.begin();
+        try {
+            generate(format, out, body);
+        } finally {
+            event.finish(SerializationEvent.STREAM, format.mediaType(), 0, 0, 0);
+        }
+    }
+
+    /**
+     * Помечает ответ с курсами заголовком {@code X-Rates-Stale: true}, если ЦБ сейчас недоступен
+     * и курсы не обновляются. Вызывается до записи тела.
+     */
+    public static void markRatesStaleness(HttpServletResponse resp) {
+        if (CbrClient.getInstance().isServingStale()) {
+            resp.setHeader("X-Rates-Stale", "true");
+        }
     }
 
     public static void sendErrorResponse(HttpServletResponse resp, int status, String message) throws IOException {
-        resp.setStatus(status);
-        resp.setContentType("application/json; charset=UTF-8");
-        mapper.writeValue(resp.getWriter(), Map.of("status", status, "message", message));
+        sendJson(resp, status, gen -> JsonWriters.writeError(gen, status, message));
     }
 
     public static void sendValidationErrorResponse(HttpServletResponse resp, int status, Map<String, String> errors) throws IOException {
-        String combinedValidationMessage = errors.values().stream()
-                .collect(Collectors.joining("; "));
+        StringBuilder combinedValidationMessage = new StringBuilder();
+        Iterator<String> messages = errors.values().iterator();
+        while (messages.hasNext()) {
+            combinedValidationMessage.append(messages.next());
+            if (messages.hasNext()) {
+                combinedValidationMessage.append("; ");
+            }
+        }
+
+        sendErrorResponse(resp, status, combinedValidationMessage.toString());
+    }
 
-        Map<String, Object> errorBody = Map.of(
-                "status", status,
-                "message", combinedValidationMessage
-        );
+    /**
+     * @param rows число элементов списка для события сериализации или 0, если тело не список
+     */
+    private static byte[] toBytes(WireFormat format, BodyWriter body, int rows) throws IOException {
+        SerializationEvent event = new SerializationEvent();
+        event.begin();
+        ByteArrayOutputStream buffer = render(format, body);
+        try {
+            return buffer.toByteArray();
+        } finally {
+            event.finish(SerializationEvent.RENDER, format.mediaType(), 0, rows, buffer.size());
+            release(buffer);
+        }
+    }
+
+    private static ByteArrayOutputStream render(WireFormat format, BodyWriter body) throws IOException {
+        ByteArrayOutputStream buffer = BUFFER.get();
+        buffer.reset();
+        generate(format, buffer, body);
+        return buffer;
+    }
+
+    private static void generate(WireFormat format, OutputStream out, BodyWriter body) throws IOException {
+        try (JsonGenerator gen = format.factory().createGenerator(out)) {
+            body.write(gen);
+        }
+    }
 
-        sendJsonResponse(resp, status, errorBody);
+    private static void release(ByteArrayOutputStream buffer) {
+        if (buffer.size() > MAX_RETAINED_BUFFER) {
+            BUFFER.remove();
+        }
     }
 }
@@ -0,0 +1,145 @@
+package org.example;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.example.model.Currency;
+import org.example.model.ExchangeRate;
+import org.example.model.RateRollup;
+import org.example.model.TenantRateAdjustment;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.List;
+
+/**
+ * Ручная сериализация моделей API напрямую в {@link JsonGenerator}, без рефлексии
+ * и промежуточных Map. Порядок и имена полей совпадают с тем, что выдавал
+ * ObjectMapper по умолчанию (порядок объявления полей в модели).
+ * Генератор может быть любого из {@link WireFormat}.
+ */
+public final class JsonWriters {
+    private JsonWriters() {
+    }
+
+    public static void writeCurrency(JsonGenerator gen, Currency currency) throws IOException {
+        gen.writeStartObject();
+        gen.writeNumberField("id", currency.getId());
+        gen.writeStringField("code", currency.getCode());
+        gen.writeStringField("fullName", currency.getFullName());
+        gen.writeStringField("sign", currency.getSign());
+        gen.writeEndObject();
+    }
+
+    public static void writeCurrencies(JsonGenerator gen, List<Currency> currencies) throws IOException {
+        gen.writeStartArray();
+        for (int i = 0, n = currencies.size(); i < n; i++) {
+            writeCurrency(gen, currencies.get(i));
+        }
+        gen.writeEndArray();
+    }
+
+    public static void writeExchangeRate(JsonGenerator gen, ExchangeRate rate) throws IOException {
+        gen.writeStartObject();
+        gen.writeNumberField("id", rate.getId());
+        gen.writeNumberField("idCurrency", rate.getIdCurrency());
+        gen.writeNumberField("nominal", rate.getNominal());
+        gen.writeFieldName("rate");
+        writeDecimal(gen, rate.getRate());
+        gen.writeEndObject();
+    }
+
+    public static void writeExchangeRates(JsonGenerator gen, List<ExchangeRate> rates) throws IOException {
+        gen.writeStartArray();
+        for (int i = 0, n = rates.size(); i < n; i++) {
+            writeExchangeRate(gen, rates.get(i));
+        }
+        gen.writeEndArray();
+    }
+
+    /**
+     * Тело ответа /exchange.
+     */
+    public static void writeConversion(JsonGenerator gen, String from, String to, BigDecimal rate,
+                                       BigDecimal amount, BigDecimal convertedAmount) throws IOException {
+        gen.writeStartObject();
+        gen.writeStringField("from", from);
+        gen.writeStringField("to", to);
+        gen.writeFieldName("rate");
+        writeDecimal(gen, rate);
+        gen.writeFieldName("amount");
+        writeDecimal(gen, amount);
+        gen.writeFieldName("convertedAmount");
+        writeDecimal(gen, convertedAmount);
+        gen.writeEndObject();
+    }
+
+    /**
+     * Сводки курса по периодам; значения округляются до 6 знаков, как курсы в снимке.
+     */
+    public static void writeRollups(JsonGenerator gen, List<RateRollup> rollups) throws IOException {
+        gen.writeStartArray();
+        for (RateRollup rollup : rollups) {
+            gen.writeStartObject();
+            gen.writeStringField("periodStart", rollup.getPeriodStart().toString());
+            writeRounded(gen, "open", rollup.getOpen());
+            writeRounded(gen, "high", rollup.getHigh());
+            writeRounded(gen, "low", rollup.getLow());
+            writeRounded(gen, "close", rollup.getClose());
+            writeRounded(gen, "average", rollup.getAverage());
+            gen.writeNumberField("samples", rollup.getSamples());
+            gen.writeEndObject();
+        }
+        gen.writeEndArray();
+    }
+
+    private static void writeRounded(JsonGenerator gen, String field, BigDecimal value) throws IOException {
+        gen.writeFieldName(field);
+        writeDecimal(gen, value.setScale(6, RoundingMode.HALF_UP).stripTrailingZeros());
+    }
+
+    /**
+     * Поправки тенанта; отсутствующие спред и курс пишутся как null.
+     */
+    public static void writeTenantRateAdjustments(JsonGenerator gen, String tenant,
+                                                  List<TenantRateAdjustment> adjustments) throws IOException {
+        gen.writeStartObject();
+        gen.writeStringField("tenant", tenant);
+        gen.writeArrayFieldStart("adjustments");
+        for (TenantRateAdjustment adjustment : adjustments) {
+            gen.writeStartObject();
+            gen.writeStringField("code", adjustment.getCurrencyCode());
+            gen.writeFieldName("spreadBps");
+            if (adjustment.getSpreadBps() == null) {
+                gen.writeNull();
+            } else {
+                gen.writeNumber(adjustment.getSpreadBps());
+            }
+            gen.writeFieldName("rate");
+            writeDecimal(gen, adjustment.getRate());
+            gen.writeEndObject();
+        }
+        gen.writeEndArray();
+        gen.writeEndObject();
+    }
+
+    public static void writeError(JsonGenerator gen, int status, String message) throws IOException {
+        gen.writeStartObject();
+        gen.writeNumberField("status", status);
+        gen.writeStringField("message", message);
+        gen.writeEndObject();
+    }
+
+    /**
+     * В JSON BigDecimal всегда пишется без экспоненты, как он выглядит в БД и во входных данных.
+     * Двоичные форматы не принимают число текстом (CBOR записал бы строку), им передаётся само значение.
+     */
+    public static void writeDecimal(JsonGenerator gen, BigDecimal value) throws IOException {
+        if (value == null) {
+            gen.writeNull();
+        } else if (gen.canWriteFormattedNumbers()) {
+            gen.writeNumber(value.toPlainString());
+        } else {
+            gen.writeNumber(value);
+        }
+    }
+}
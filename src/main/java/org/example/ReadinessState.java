@@ -0,0 +1,24 @@
+package org.example;
+
+/**
+ * Готовность экземпляра принимать трафик. Экземпляр считается готовым после
+ * прогрева (загрузки справочников в память и прогона основных сценариев).
+ */
+public final class ReadinessState {
+    private static volatile boolean ready;
+
+    private ReadinessState() {
+    }
+
+    public static boolean isReady() {
+        return ready;
+    }
+
+    public static void markReady() {
+        ready = true;
+    }
+
+    public static void markNotReady() {
+        ready = false;
+    }
+}
@@ -23,6 +23,18 @@ public final class SQLiteExceptionTranslator {
                 e.getMessage().contains("FOREIGN KEY");
     }
 
+    /**
+     * БД занята другим писателем или заблокирована: ошибка временная, запрос можно повторить.
+     */
+    public static boolean isBusyError(SQLException e) {
+        if (!(e instanceof SQLiteException)) {
+            return false;
+        }
+        // Младший байт - основной код, старшие - расширенный (например, SQLITE_BUSY_SNAPSHOT)
+        int primaryCode = e.getErrorCode() & 0xff;
+        return primaryCode == SQLiteErrorCode.SQLITE_BUSY.code || primaryCode == SQLiteErrorCode.SQLITE_LOCKED.code;
+    }
+
     public static DataAccessException translateToGeneralError(String task, SQLException e) {
         if (e instanceof SQLiteException) {
             int errorCode = ((SQLiteException) e).getErrorCode();
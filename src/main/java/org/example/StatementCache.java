@@ -0,0 +1,100 @@
+package org.example;
+
+import org.sqlite.SQLiteConnection;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Кэш подготовленных запросов, привязанный к физическому соединению пула.
+ * <p>
+ * Пул выдаёт одно физическое соединение только одному потоку за раз, поэтому
+ * запросы соединения используются без дополнительной синхронизации. Закрывать
+ * полученный PreparedStatement не нужно - закрываются только ResultSet.
+ * Запросы закрытых пулом соединений вычищаются при появлении новых соединений.
+ */
+public final class StatementCache {
+    private static final int MAX_STATEMENTS_PER_CONNECTION = AppConfig.getInt("db.statement.cache.size", 64);
+
+    private static final Map<Connection, Map<String, PreparedStatement>> CACHE = new ConcurrentHashMap<>();
+
+    private StatementCache() {
+    }
+
+    public static PreparedStatement prepare(Connection connection, String sql) throws SQLException {
+        return prepare(connection, sql, Statement.NO_GENERATED_KEYS);
+    }
+
+    public static PreparedStatement prepareReturningKeys(Connection connection, String sql) throws SQLException {
+        return prepare(connection, sql, Statement.RETURN_GENERATED_KEYS);
+    }
+
+    private static PreparedStatement prepare(Connection connection, String sql, int autoGeneratedKeys) throws SQLException {
+        Connection physical = connection.unwrap(SQLiteConnection.class);
+        Map<String, PreparedStatement> statements = CACHE.get(physical);
+        if (statements == null) {
+            evictClosedConnections();
+            statements = new LruStatements();
+            CACHE.put(physical, statements);
+        }
+
+        String key = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS ? "K:" + sql : sql;
+        PreparedStatement statement = statements.get(key);
+        if (statement == null || statement.isClosed()) {
+            statement = physical.prepareStatement(sql, autoGeneratedKeys);
+            statements.put(key, statement);
+        }
+        return statement;
+    }
+
+    /**
+     * Закрывает и забывает запросы соединения. Нужно перед командами, которые SQLite
+     * не выполняет, пока на соединении есть подготовленные запросы (например, VACUUM).
+     */
+    public static void clear(Connection connection) throws SQLException {
+        Map<String, PreparedStatement> statements = CACHE.remove(connection.unwrap(SQLiteConnection.class));
+        if (statements == null) {
+            return;
+        }
+        for (PreparedStatement statement : statements.values()) {
+            statement.close();
+        }
+    }
+
+    private static void evictClosedConnections() throws SQLException {
+        Iterator<Map.Entry<Connection, Map<String, PreparedStatement>>> iterator = CACHE.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getKey().isClosed()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Ограниченный по размеру набор запросов одного соединения; вытесняемые запросы закрываются.
+     */
+    private static final class LruStatements extends LinkedHashMap<String, PreparedStatement> {
+        private LruStatements() {
+            super(16, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+            if (size() <= MAX_STATEMENTS_PER_CONNECTION) {
+                return false;
+            }
+            try {
+                eldest.getValue().close();
+            } catch (SQLException e) {
+                System.err.println("Не удалось закрыть вытесненный запрос: " + e.getMessage());
+            }
+            return true;
+        }
+    }
+}
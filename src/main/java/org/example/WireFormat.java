@@ -0,0 +1,141 @@
+package org.example;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import java.util.Locale;
+
+/**
+ * Форматы тел запросов и ответов API. Все они пишутся и читаются через общий API Jackson
+ * ({@link com.fasterxml.jackson.core.JsonGenerator}), поэтому {@link JsonWriters} работает с любым из них.
+ * <p>
+ * Формат ответа выбирается по заголовку Accept ({@link #fromAccept}) и привязывается к потоку запроса
+ * на время его обработки ({@link #bind}); по умолчанию - JSON. Формат тела запроса - по Content-Type.
+ * В двоичных форматах BigDecimal кодируется как число (в CBOR - десятичная дробь с тегом 4),
+ * а не текстом, как в JSON.
+ */
+public enum WireFormat {
+    JSON("application/json", "application/json; charset=UTF-8", new JsonFactory()),
+    CBOR("application/cbor", "application/cbor", new CBORFactory()),
+    SMILE("application/x-jackson-smile", "application/x-jackson-smile", new SmileFactory());
+
+    private static final WireFormat[] FORMATS = values();
+    private static final ThreadLocal<WireFormat> CURRENT = new ThreadLocal<>();
+
+    private final String mediaType;
+    private final String contentType;
+    private final ObjectMapper mapper;
+
+    WireFormat(String mediaType, String contentType, JsonFactory factory) {
+        this.mediaType = mediaType;
+        this.contentType = contentType;
+        // Дробные числа тел запросов читаются как BigDecimal без потери точности
+        this.mapper = new ObjectMapper(factory).enable(DeserializationFeature.USE_BIG_DECIMAL_FOR_FLOATS);
+    }
+
+    public String mediaType() {
+        return mediaType;
+    }
+
+    public String contentType() {
+        return contentType;
+    }
+
+    public JsonFactory factory() {
+        return mapper.getFactory();
+    }
+
+    public ObjectMapper mapper() {
+        return mapper;
+    }
+
+    /**
+     * Ключ кэша готовых тел для этого формата. Для JSON ключ не меняется.
+     */
+    public String qualify(String key) {
+        return this == JSON ? key : key + ':' + name();
+    }
+
+    /**
+     * Формат ответа по заголовку Accept: поддерживаемый тип с наибольшим q, при равенстве - первый.
+     * Если подходящего типа нет (или указан {@code *}/{@code *}), отдаётся JSON, а не 406:
+     * браузеры и старые клиенты присылают самые разные Accept.
+     */
+    public static WireFormat fromAccept(String accept) {
+        // Частый случай: двоичные форматы не запрошены
+        if (accept == null || (accept.indexOf("cbor") < 0 && accept.indexOf("smile") < 0)) {
+            return JSON;
+        }
+        WireFormat best = JSON;
+        double bestQuality = -1;
+        for (String range : accept.split(",")) {
+            String[] parts = range.split(";");
+            String type = parts[0].trim();
+            WireFormat format = "*/*".equals(type) || "application/*".equals(type) ? JSON : byMediaType(type);
+            if (format == null) {
+                continue;
+            }
+            double quality = quality(parts);
+            if (quality > bestQuality) {
+                best = format;
+                bestQuality = quality;
+            }
+        }
+        return bestQuality > 0 ? best : JSON;
+    }
+
+    /**
+     * Формат тела запроса по Content-Type или null, если тело не в одном из этих форматов
+     * (например, форма {@code application/x-www-form-urlencoded}).
+     */
+    public static WireFormat fromContentType(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        int semicolon = contentType.indexOf(';');
+        return byMediaType(semicolon < 0 ? contentType : contentType.substring(0, semicolon));
+    }
+
+    /**
+     * Формат ответа текущего запроса; вне запроса - JSON.
+     */
+    public static WireFormat current() {
+        WireFormat format = CURRENT.get();
+        return format != null ? format : JSON;
+    }
+
+    public static void bind(WireFormat format) {
+        CURRENT.set(format);
+    }
+
+    public static void unbind() {
+        CURRENT.remove();
+    }
+
+    private static WireFormat byMediaType(String mediaType) {
+        String type = mediaType.trim().toLowerCase(Locale.ROOT);
+        for (WireFormat format : FORMATS) {
+            if (format.mediaType.equals(type)) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    private static double quality(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String parameter = parts[i].trim();
+            if (parameter.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+}
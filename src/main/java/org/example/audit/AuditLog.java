@@ -0,0 +1,376 @@
+package org.example.audit;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.example.AppConfig;
+import org.example.DatabaseManager;
+import org.example.JsonWriters;
+import org.example.metrics.Metrics;
+import org.example.model.ExchangeRate;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Журнал аудита изменений курсов: кто, когда и какой курс изменил.
+ * <p>
+ * Потоки запросов и обновления из ЦБ только кладут событие в {@link AuditRingBuffer},
+ * на диск его пишет фоновый поток пачками: по строке JSON на событие (NDJSON) в файлы
+ * {@code audit-<время первого события>.ndjson}. Файл сменяется по достижении
+ * {@code audit.max.file.bytes}, хранится не больше {@code audit.max.files} файлов.
+ * fsync определяется {@code audit.fsync}: {@code batch} - после каждой пачки,
+ * {@code interval} - не чаще раза в {@code audit.fsync.interval.ms}, {@code none} - на усмотрение ОС.
+ * <p>
+ * Если буфер переполнен дольше {@code audit.offer.timeout.ms}, событие отбрасывается
+ * (счётчик {@code audit.dropped}): запись курса важнее записи о ней.
+ */
+public final class AuditLog {
+    private static final String FILE_PREFIX = "audit-";
+    private static final String FILE_SUFFIX = ".ndjson";
+    private static final String TS_PREFIX = "{\"ts\":";
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final AuditLog INSTANCE = new AuditLog();
+
+    private enum FsyncPolicy {BATCH, INTERVAL, NONE}
+
+    private final boolean enabled = AppConfig.getBoolean("audit.enabled", true);
+    private final int batchSize = AppConfig.getInt("audit.batch.size", 512);
+    private final FsyncPolicy fsyncPolicy = FsyncPolicy.valueOf(AppConfig.getString("audit.fsync", "batch").toUpperCase());
+    private final long fsyncIntervalMs = AppConfig.getLong("audit.fsync.interval.ms", 1000);
+    private final long maxFileBytes = AppConfig.getLong("audit.max.file.bytes", 64L * 1024 * 1024);
+    private final int maxFiles = AppConfig.getInt("audit.max.files", 20);
+    private final long offerTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(AppConfig.getLong("audit.offer.timeout.ms", 100));
+    private final AuditRingBuffer ring = new AuditRingBuffer(AppConfig.getInt("audit.ring.capacity", 8192));
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    private final LongAdder written = Metrics.counter("audit.written");
+    private final LongAdder dropped = Metrics.counter("audit.dropped");
+    private final LongAdder fsyncs = Metrics.counter("audit.fsyncs");
+
+    private volatile Path directory;
+    private volatile Thread writer;
+    private volatile boolean running;
+
+    // Состояние потока записи
+    private FileChannel channel;
+    private long fileBytes;
+    private long lastFileStart;
+    private long lastFsyncAt;
+    private boolean unsynced;
+
+    private AuditLog() {
+        Metrics.gauge("audit.ring.pending", ring::size);
+    }
+
+    public static AuditLog getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Открывает текущий файл журнала и запускает поток записи.
+     */
+    public synchronized void start() throws IOException {
+        if (!enabled || writer != null) {
+            return;
+        }
+        directory = Paths.get(AppConfig.getString("audit.dir",
+                DatabaseManager.getDatabaseDirectory().resolve("audit").toString()));
+        Files.createDirectories(directory);
+        List<Path> files = listFiles();
+        if (files.isEmpty()) {
+            openFile(System.currentTimeMillis());
+        } else {
+            // Продолжаем последний файл: он мог быть не дописан до предела
+            Path last = files.get(files.size() - 1);
+            lastFileStart = startOf(last);
+            channel = FileChannel.open(last, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            fileBytes = channel.size();
+        }
+        running = true;
+        Thread thread = new Thread(this::writeLoop, "audit-writer");
+        thread.setDaemon(true);
+        writer = thread;
+        thread.start();
+    }
+
+    /**
+     * Дописывает всё, что осталось в буфере, и закрывает файл.
+     */
+    public synchronized void stop() {
+        Thread thread = writer;
+        if (thread == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer = null;
+    }
+
+    /**
+     * Новый курс или изменение существующего. Повторная запись того же значения
+     * (обычное дело при ежедневном обновлении из ЦБ) в журнал не попадает.
+     *
+     * @param previous курс до изменения; null - курса не было
+     */
+    public void rateChanged(String actor, String code, ExchangeRate previous, ExchangeRate current) {
+        if (previous != null && previous.getNominal() == current.getNominal()
+                && previous.getRate().compareTo(current.getRate()) == 0) {
+            return;
+        }
+        record(actor, previous == null ? "create" : "update", code, previous, current);
+    }
+
+    public void rateDeleted(String actor, String code, ExchangeRate previous) {
+        record(actor, "delete", code, previous, null);
+    }
+
+    private void record(String actor, String action, String code, ExchangeRate previous, ExchangeRate current) {
+        Thread consumer = writer;
+        if (consumer == null) {
+            return;
+        }
+        long sequence = ring.tryClaim();
+        if (sequence < 0) {
+            long deadline = System.nanoTime() + offerTimeoutNanos;
+            LockSupport.unpark(consumer);
+            while ((sequence = ring.tryClaim()) < 0) {
+                if (System.nanoTime() - deadline > 0) {
+                    dropped.increment();
+                    System.err.println("Audit ring buffer is full, event dropped: " + action + " " + code);
+                    return;
+                }
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+            }
+        }
+        AuditRingBuffer.Slot slot = ring.slot(sequence);
+        slot.timestampMillis = System.currentTimeMillis();
+        slot.actor = actor;
+        slot.action = action;
+        slot.code = code;
+        slot.nominal = current == null ? 0 : current.getNominal();
+        slot.rate = current == null ? null : current.getRate();
+        slot.previousNominal = previous == null ? 0 : previous.getNominal();
+        slot.previousRate = previous == null ? null : previous.getRate();
+        ring.publish(sequence);
+    }
+
+    private void writeLoop() {
+        ByteArrayOutputStream batch = new ByteArrayOutputStream(64 * 1024);
+        long next = 0;
+        while (running || ring.hasPending(next)) {
+            batch.reset();
+            int count = 0;
+            try (JsonGenerator gen = jsonFactory.createGenerator(batch)) {
+                gen.setRootValueSeparator(null);
+                AuditRingBuffer.Slot slot;
+                while (count < batchSize && (slot = ring.published(next)) != null) {
+                    writeEvent(gen, slot);
+                    next++;
+                    count++;
+                }
+            } catch (IOException e) {
+                // В память запись не падает; сюда попадаем только при ошибке в данных события
+                System.err.println("Audit event serialization failed: " + e.getMessage());
+            }
+            if (count > 0) {
+                // Данные уже скопированы в пачку, ячейки можно отдавать писателям
+                ring.release(next);
+                try {
+                    append(batch.toByteArray());
+                    written.add(count);
+                } catch (IOException e) {
+                    dropped.add(count);
+                    System.err.println("Audit log write failed, " + count + " events lost: " + e.getMessage());
+                }
+            } else if (running) {
+                syncIfDue();
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            } else {
+                // Писатель захватил ячейку, но ещё не опубликовал её
+                Thread.onSpinWait();
+            }
+        }
+        closeFile();
+    }
+
+    private void writeEvent(JsonGenerator gen, AuditRingBuffer.Slot slot) throws IOException {
+        // ts идёт первым полем: запрос по времени читает его, не разбирая строку
+        gen.writeStartObject();
+        gen.writeNumberField("ts", slot.timestampMillis);
+        gen.writeStringField("time", Instant.ofEpochMilli(slot.timestampMillis).toString());
+        gen.writeStringField("actor", slot.actor);
+        gen.writeStringField("action", slot.action);
+        gen.writeStringField("code", slot.code);
+        if (slot.rate != null) {
+            gen.writeNumberField("nominal", slot.nominal);
+            gen.writeFieldName("rate");
+            JsonWriters.writeDecimal(gen, slot.rate);
+        }
+        if (slot.previousRate != null) {
+            gen.writeNumberField("previousNominal", slot.previousNominal);
+            gen.writeFieldName("previousRate");
+            JsonWriters.writeDecimal(gen, slot.previousRate);
+        }
+        gen.writeEndObject();
+        gen.writeRaw('\n');
+    }
+
+    private void append(byte[] bytes) throws IOException {
+        if (fileBytes > 0 && fileBytes + bytes.length > maxFileBytes) {
+            rotate();
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        fileBytes += bytes.length;
+        unsynced = true;
+        if (fsyncPolicy == FsyncPolicy.BATCH) {
+            sync();
+        } else {
+            syncIfDue();
+        }
+    }
+
+    private void syncIfDue() {
+        if (unsynced && fsyncPolicy == FsyncPolicy.INTERVAL
+                && System.currentTimeMillis() - lastFsyncAt >= fsyncIntervalMs) {
+            try {
+                sync();
+            } catch (IOException e) {
+                System.err.println("Audit log fsync failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void sync() throws IOException {
+        channel.force(false);
+        unsynced = false;
+        lastFsyncAt = System.currentTimeMillis();
+        fsyncs.increment();
+    }
+
+    private void rotate() throws IOException {
+        if (fsyncPolicy != FsyncPolicy.NONE) {
+            sync();
+        }
+        channel.close();
+        // Имя файла - время его первого события, оно должно строго расти
+        openFile(Math.max(System.currentTimeMillis(), lastFileStart + 1));
+        List<Path> files = listFiles();
+        for (int i = 0; i < files.size() - maxFiles; i++) {
+            Files.deleteIfExists(files.get(i));
+        }
+    }
+
+    private void openFile(long startMillis) throws IOException {
+        lastFileStart = startMillis;
+        channel = FileChannel.open(directory.resolve(FILE_PREFIX + startMillis + FILE_SUFFIX),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        fileBytes = 0;
+    }
+
+    private void closeFile() {
+        try {
+            if (fsyncPolicy != FsyncPolicy.NONE && unsynced) {
+                sync();
+            }
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Audit log close failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Пишет в {@code out} события с {@code fromMillis} (включительно) по {@code toMillis} (не включая)
+     * в порядке записи, по строке NDJSON на событие. События, ещё не дошедшие до файла, не видны.
+     *
+     * @param code  код валюты в верхнем регистре или null - все валюты
+     * @param limit наибольшее число событий
+     * @return число выданных событий
+     */
+    public int stream(long fromMillis, long toMillis, String code, int limit, Writer out) throws IOException {
+        if (directory == null) {
+            return 0;
+        }
+        String codeField = code == null ? null : "\"code\":\"" + code + "\"";
+        List<Path> files = listFiles();
+        int count = 0;
+        for (int i = 0; i < files.size() && count < limit; i++) {
+            // Файл содержит события от своего начала до начала следующего
+            if (startOf(files.get(i)) >= toMillis
+                    || (i + 1 < files.size() && startOf(files.get(i + 1)) <= fromMillis)) {
+                continue;
+            }
+            try (BufferedReader reader = Files.newBufferedReader(files.get(i), StandardCharsets.UTF_8)) {
+                String line;
+                while (count < limit && (line = reader.readLine()) != null) {
+                    // Последняя строка может быть дописана не до конца
+                    if (!line.startsWith(TS_PREFIX) || !line.endsWith("}")) {
+                        continue;
+                    }
+                    long ts = parseTimestamp(line);
+                    if (ts < fromMillis || ts >= toMillis || (codeField != null && !line.contains(codeField))) {
+                        continue;
+                    }
+                    out.write(line);
+                    out.write('\n');
+                    count++;
+                }
+            } catch (NoSuchFileException e) {
+                // Файл удалён при смене файла во время чтения
+            }
+        }
+        return count;
+    }
+
+    private static long parseTimestamp(String line) {
+        long value = 0;
+        for (int i = TS_PREFIX.length(); i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9') {
+                break;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private List<Path> listFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            for (Path path : stream) {
+                files.add(path);
+            }
+        }
+        files.sort((a, b) -> Long.compare(startOf(a), startOf(b)));
+        return files;
+    }
+
+    private static long startOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+    }
+}
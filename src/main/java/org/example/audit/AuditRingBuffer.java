@@ -0,0 +1,114 @@
+package org.example.audit;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Кольцевой буфер событий аудита: много писателей, один читатель, без блокировок.
+ * Ячейки создаются один раз при старте и переиспользуются, событие не порождает новых объектов.
+ * <p>
+ * Писатель захватывает номер события CAS-ом, заполняет ячейку и публикует её, записав
+ * номер в volatile-поле ячейки. Читатель забирает ячейки строго по порядку номеров
+ * и освобождает их, продвигая {@link #release}.
+ */
+final class AuditRingBuffer {
+    private static final long NOT_PUBLISHED = -1;
+
+    /**
+     * Ячейка буфера. Поля событий пишет только захвативший её писатель до публикации,
+     * а читает только читатель после неё.
+     */
+    static final class Slot {
+        private volatile long sequence = NOT_PUBLISHED;
+
+        long timestampMillis;
+        String actor;
+        String action;
+        String code;
+        int nominal;
+        BigDecimal rate;
+        int previousNominal;
+        BigDecimal previousRate;
+
+        private void clear() {
+            actor = null;
+            action = null;
+            code = null;
+            rate = null;
+            previousRate = null;
+        }
+    }
+
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong claimed = new AtomicLong();
+    // Все события с меньшими номерами прочитаны, их ячейки свободны
+    private volatile long released;
+
+    AuditRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * Захватывает ячейку под следующее событие.
+     *
+     * @return номер события или -1, если буфер заполнен
+     */
+    long tryClaim() {
+        while (true) {
+            long sequence = claimed.get();
+            if (sequence - released >= slots.length) {
+                return -1;
+            }
+            if (claimed.compareAndSet(sequence, sequence + 1)) {
+                return sequence;
+            }
+        }
+    }
+
+    Slot slot(long sequence) {
+        return slots[(int) sequence & mask];
+    }
+
+    void publish(long sequence) {
+        slot(sequence).sequence = sequence;
+    }
+
+    /**
+     * Ячейка события для читателя или null, если писатель её ещё не опубликовал.
+     */
+    Slot published(long sequence) {
+        Slot slot = slot(sequence);
+        return slot.sequence == sequence ? slot : null;
+    }
+
+    /**
+     * Освобождает ячейки всех событий до {@code nextSequence} (не включая его).
+     */
+    void release(long nextSequence) {
+        for (long sequence = released; sequence < nextSequence; sequence++) {
+            slot(sequence).clear();
+        }
+        released = nextSequence;
+    }
+
+    /**
+     * Есть ли захваченные, но ещё не прочитанные события.
+     */
+    boolean hasPending(long nextSequence) {
+        return claimed.get() > nextSequence;
+    }
+
+    int capacity() {
+        return slots.length;
+    }
+
+    long size() {
+        return claimed.get() - released;
+    }
+}
@@ -0,0 +1,136 @@
+package org.example.cache;
+
+import org.example.AppConfig;
+import org.example.WireFormat;
+import org.example.metrics.Metrics;
+
+import java.math.RoundingMode;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Готовые тела ответов /exchange для частых сочетаний (из, в, сумма, режим округления, формат ответа).
+ * Запись действительна для версии курсов, при которой она посчитана: при смене версии
+ * кэш очищается целиком. Кроме того, записи живут не дольше {@code conversion.cache.ttl.ms},
+ * а их число ограничено {@code conversion.cache.max.entries}.
+ * <p>
+ * Ключ строится из параметров запроса как есть, поэтому попадание означает,
+ * что такой запрос уже был успешно обработан и проверять параметры заново не нужно.
+ */
+public final class ConversionCache {
+    // Длинные суммы почти наверняка уникальны, кэшировать их незачем
+    private static final int MAX_AMOUNT_LENGTH = 32;
+    private static final ConversionCache INSTANCE = new ConversionCache();
+
+    private final boolean enabled = AppConfig.getBoolean("conversion.cache.enabled", true);
+    private final int maxEntries = AppConfig.getInt("conversion.cache.max.entries", 10_000);
+    private final long ttlMs = AppConfig.getLong("conversion.cache.ttl.ms", 60_000);
+    private final RateView rateView = RateView.getInstance();
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Object evictionLock = new Object();
+    private volatile long cachedVersion = -1;
+
+    private final LongAdder hits = Metrics.counter("conversion.cache.hits");
+    private final LongAdder misses = Metrics.counter("conversion.cache.misses");
+    private final LongAdder evictions = Metrics.counter("conversion.cache.evictions");
+
+    private ConversionCache() {
+        Metrics.gauge("conversion.cache.size", entries::size);
+    }
+
+    public static ConversionCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Версия курсов, под которой стоит сохранять результат, или -1, если кэш не используется
+     * (выключен или курсы ещё не загружены в память). Читается до расчёта.
+     */
+    public long currentVersion() {
+        if (!enabled || !rateView.isLoaded()) {
+            return -1;
+        }
+        long version = rateView.version();
+        if (version != cachedVersion) {
+            synchronized (evictionLock) {
+                if (version != cachedVersion) {
+                    entries.clear();
+                    cachedVersion = version;
+                }
+            }
+        }
+        return version;
+    }
+
+    /**
+     * Готовое тело ответа или null.
+     */
+    public byte[] get(String from, String to, String amount, RoundingMode rounding, WireFormat format, long version) {
+        if (version < 0 || amount.length() > MAX_AMOUNT_LENGTH) {
+            return null;
+        }
+        Entry entry = entries.get(key(from, to, amount, rounding, format));
+        if (entry == null || entry.version != version
+                || System.currentTimeMillis() - entry.createdAt > ttlMs) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.body;
+    }
+
+    public void put(String from, String to, String amount, RoundingMode rounding, WireFormat format, long version,
+                    byte[] body) {
+        if (version < 0 || amount.length() > MAX_AMOUNT_LENGTH || version != cachedVersion) {
+            return;
+        }
+        if (entries.size() >= maxEntries) {
+            evict();
+        }
+        entries.put(key(from, to, amount, rounding, format), new Entry(version, System.currentTimeMillis(), body));
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Удаляет устаревшие записи, а если их не хватило - произвольные, пока не освободится
+     * десятая часть места. Вызывается редко: только когда кэш заполнен.
+     */
+    private void evict() {
+        synchronized (evictionLock) {
+            if (entries.size() < maxEntries) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            int target = maxEntries - Math.max(1, maxEntries / 10);
+            int before = entries.size();
+            entries.values().removeIf(entry -> now - entry.createdAt > ttlMs || entry.version != cachedVersion);
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (entries.size() > target && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+            evictions.add(before - entries.size());
+        }
+    }
+
+    private static String key(String from, String to, String amount, RoundingMode rounding, WireFormat format) {
+        return from + '/' + to + '/' + amount + '/' + rounding.ordinal() + '/' + format.ordinal();
+    }
+
+    private static final class Entry {
+        private final long version;
+        private final long createdAt;
+        private final byte[] body;
+
+        private Entry(long version, long createdAt, byte[] body) {
+            this.version = version;
+            this.createdAt = createdAt;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package org.example.cache;
+
+import org.example.CurrencyCodes;
+import org.example.model.Currency;
+
+import java.util.Collection;
+
+/**
+ * Индекс «код валюты -> id» на примитивных массивах с открытой адресацией.
+ * Ключ - код, упакованный в int ({@link CurrencyCodes#pack}), поэтому поиск не создаёт
+ * строк и не считает их хэши, а неизвестные и некорректные коды отсекаются так же быстро, как известные.
+ * <p>
+ * Валюты меняются редко, поэтому изменения строят новую таблицу и публикуют её
+ * через volatile-ссылку: чтение идёт без блокировок.
+ */
+final class CurrencyCodeIndex {
+    static final int ABSENT = -1;
+    private static final int EMPTY_KEY = 0;
+
+    private volatile Table table = new Table(0);
+
+    /**
+     * id валюты или {@link #ABSENT}.
+     */
+    int idOf(String code) {
+        int key = CurrencyCodes.pack(code);
+        return key == CurrencyCodes.INVALID ? ABSENT : table.get(key);
+    }
+
+    synchronized void replaceAll(Collection<Currency> currencies) {
+        Table rebuilt = new Table(currencies.size());
+        for (Currency currency : currencies) {
+            int key = CurrencyCodes.pack(currency.getCode());
+            if (key != CurrencyCodes.INVALID) {
+                rebuilt.put(key, currency.getId());
+            }
+        }
+        table = rebuilt;
+    }
+
+    synchronized void put(String code, int id) {
+        int key = CurrencyCodes.pack(code);
+        if (key == CurrencyCodes.INVALID) {
+            return;
+        }
+        Table current = table;
+        Table rebuilt = new Table(current.size + 1);
+        current.copyTo(rebuilt, EMPTY_KEY);
+        rebuilt.put(key, id);
+        table = rebuilt;
+    }
+
+    synchronized void remove(String code) {
+        int key = CurrencyCodes.pack(code);
+        Table current = table;
+        if (key == CurrencyCodes.INVALID || current.get(key) == ABSENT) {
+            return;
+        }
+        // Пересборка вместо «надгробий»: цепочки проб остаются короткими
+        Table rebuilt = new Table(current.size - 1);
+        current.copyTo(rebuilt, key);
+        table = rebuilt;
+    }
+
+    private static final class Table {
+        private final int[] keys;
+        private final int[] ids;
+        private final int mask;
+        private int size;
+
+        private Table(int expectedSize) {
+            // Заполнение не более половины - короткие цепочки линейного пробирования
+            int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1;
+            keys = new int[capacity];
+            ids = new int[capacity];
+            mask = capacity - 1;
+        }
+
+        private int get(int key) {
+            int slot = mix(key) & mask;
+            int current;
+            while ((current = keys[slot]) != EMPTY_KEY) {
+                if (current == key) {
+                    return ids[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            return ABSENT;
+        }
+
+        private void put(int key, int id) {
+            int slot = mix(key) & mask;
+            while (keys[slot] != EMPTY_KEY && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            if (keys[slot] == EMPTY_KEY) {
+                size++;
+            }
+            keys[slot] = key;
+            ids[slot] = id;
+        }
+
+        private void copyTo(Table target, int skipKey) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != EMPTY_KEY && keys[i] != skipKey) {
+                    target.put(keys[i], ids[i]);
+                }
+            }
+        }
+
+        private static int mix(int key) {
+            int h = key * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package org.example.cache;
+
+import org.example.AppConfig;
+import org.example.CurrencyCodes;
+import org.example.model.Currency;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Справочник валют в памяти (код -> валюта). Заполняется целиком при старте приложения,
+ * после чего список валют и поиск по коду обслуживаются без обращения к БД.
+ * Объекты из справочника считаются неизменяемыми: перед модификацией их нужно копировать.
+ * <p>
+ * Полная перезагрузка собирает новую карту и подменяет ссылку, поэтому читатели не видят
+ * пустого или наполовину заполненного справочника. Изменения ({@link #loadAll}, {@link #put},
+ * {@link #remove}) упорядочены между собой, чтобы точечное изменение не попало в уже заменённую карту.
+ * <p>
+ * Индексу кодов можно верить в отказе, только пока шина кластера сообщает о валютах,
+ * добавленных на других узлах ({@link #setClusterInvalidation}). Без шины отсутствие кода
+ * подтверждается запросом к БД и запоминается на {@code cluster.currency.absent.ttl.ms},
+ * а найденная в БД валюта добавляется в справочник.
+ */
+public final class CurrencyView {
+    private static final CurrencyView INSTANCE = new CurrencyView();
+    private static final long ABSENT_TTL_MS = AppConfig.getLong("cluster.currency.absent.ttl.ms", 60_000);
+    // Предел числа запомненных отсутствующих кодов: перебор случайных кодов не раздувает карту
+    private static final int MAX_ABSENT_CODES = 10_000;
+
+    private volatile Map<String, Currency> currenciesByCode = new ConcurrentHashMap<>();
+    private final CurrencyCodeIndex codeIndex = new CurrencyCodeIndex();
+    private final AtomicLong version = new AtomicLong();
+    private volatile boolean loaded;
+    private volatile boolean clusterInvalidation;
+    // Упакованный код -> когда БД подтвердила его отсутствие, мс
+    private final Map<Integer, Long> absentCheckedAt = new ConcurrentHashMap<>();
+
+    private CurrencyView() {
+    }
+
+    public static CurrencyView getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Полностью заменяет содержимое справочника.
+     */
+    public synchronized void loadAll(List<Currency> currencies) {
+        Map<String, Currency> loadedByCode = new ConcurrentHashMap<>(currencies.size() * 2);
+        for (Currency currency : currencies) {
+            loadedByCode.put(currency.getCode(), currency);
+        }
+        // Сначала карта, затем индекс: известный индексу код всегда есть в карте
+        currenciesByCode = loadedByCode;
+        codeIndex.replaceAll(currencies);
+        loaded = true;
+        version.incrementAndGet();
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Шина кластера подключена: о валютах, добавленных на других узлах, узел узнаёт из сообщений,
+     * и отсутствие кода в индексе можно считать окончательным.
+     */
+    public void setClusterInvalidation(boolean enabled) {
+        clusterInvalidation = enabled;
+    }
+
+    /**
+     * true, если справочник загружен целиком, а такого кода в нём нет и это не нужно проверять в БД
+     * (есть шина кластера или отсутствие недавно подтверждено). Некорректные коды
+     * (не три латинские буквы) тоже считаются неизвестными.
+     */
+    public boolean isUnknown(String code) {
+        if (!loaded) {
+            return false;
+        }
+        int key = CurrencyCodes.pack(code);
+        if (key == CurrencyCodes.INVALID) {
+            return true;
+        }
+        if (codeIndex.idOf(code) != CurrencyCodeIndex.ABSENT) {
+            return false;
+        }
+        if (clusterInvalidation) {
+            return true;
+        }
+        Long checkedAt = absentCheckedAt.get(key);
+        return checkedAt != null && System.currentTimeMillis() - checkedAt < ABSENT_TTL_MS;
+    }
+
+    /**
+     * Возвращает валюту из памяти, а при промахе загружает её через loader и запоминает.
+     * После полной загрузки справочника неизвестные коды отсекаются индексом без обращения к БД
+     * (без шины кластера - после подтверждения в БД, см. {@link #isUnknown}).
+     */
+    public Optional<Currency> find(String code, Function<String, Optional<Currency>> loader) {
+        if (isUnknown(code)) {
+            return Optional.empty();
+        }
+        Currency cached = currenciesByCode.get(code);
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+        Optional<Currency> loadedCurrency = loader.apply(code);
+        if (loadedCurrency.isEmpty()) {
+            rememberAbsent(code);
+        } else if (loaded && codeIndex.idOf(code) == CurrencyCodeIndex.ABSENT) {
+            // Валюту добавили на другом узле: дополняем справочник, чтобы индекс её знал
+            putIfAbsent(loadedCurrency.get());
+        } else {
+            currenciesByCode.putIfAbsent(code, loadedCurrency.get());
+        }
+        return loadedCurrency;
+    }
+
+    /**
+     * Все валюты в порядке их id, как их возвращает БД.
+     */
+    public List<Currency> all() {
+        List<Currency> currencies = new ArrayList<>(currenciesByCode.values());
+        currencies.sort(Comparator.comparingInt(Currency::getId));
+        return currencies;
+    }
+
+    public synchronized void put(Currency currency) {
+        absentCheckedAt.remove(CurrencyCodes.pack(currency.getCode()));
+        currenciesByCode.put(currency.getCode(), currency);
+        // Индекс обновляется после карты: известный индексу код всегда есть в карте
+        codeIndex.put(currency.getCode(), currency.getId());
+        version.incrementAndGet();
+    }
+
+    public synchronized void remove(String code) {
+        codeIndex.remove(code);
+        if (currenciesByCode.remove(code) != null) {
+            version.incrementAndGet();
+        }
+    }
+
+    private synchronized void putIfAbsent(Currency currency) {
+        // Пока шёл запрос к БД, валюту могли изменить или удалить точечно - их не затираем
+        if (codeIndex.idOf(currency.getCode()) == CurrencyCodeIndex.ABSENT
+                && !currenciesByCode.containsKey(currency.getCode())) {
+            put(currency);
+        }
+    }
+
+    private void rememberAbsent(String code) {
+        int key = CurrencyCodes.pack(code);
+        if (!loaded || key == CurrencyCodes.INVALID) {
+            return;
+        }
+        if (absentCheckedAt.size() >= MAX_ABSENT_CODES) {
+            absentCheckedAt.clear();
+        }
+        absentCheckedAt.put(key, System.currentTimeMillis());
+    }
+
+    public long version() {
+        return version.get();
+    }
+}
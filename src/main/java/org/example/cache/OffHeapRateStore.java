@@ -0,0 +1,335 @@
+package org.example.cache;
+
+import org.example.CurrencyCodes;
+import org.example.model.ExchangeRate;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Map;
+
+/**
+ * Курсы вне кучи: записи фиксированной длины в direct-буфере и индекс «упакованный код -> номер записи»
+ * на примитивных массивах. На куче остаётся только индекс (16 байт на инструмент), поэтому размер
+ * кучи и паузы GC не растут вместе с числом валют; объекты {@link ExchangeRate} создаются только при чтении.
+ * <pre>
+ * Запись (40 байт, порядок байт платформы):
+ *   0  int   счётчик версии записи (нечётный - запись изменяется)
+ *   4  int   код валюты, {@link CurrencyCodes#pack}
+ *   8  int   id валюты
+ *   12 int   id курса
+ *   16 int   номинал
+ *   24 long  курс в миллионных долях ({@link #NO_RATE} - курса нет)
+ *   32 long  время последнего изменения, мс
+ * </pre>
+ * Запись пишется только под блокировкой хранилища, чтение идёт без блокировок: читатель
+ * повторяет чтение, пока счётчик версии записи нечётный или изменился за время чтения.
+ * Номер записи за кодом закрепляется навсегда, удаление курса только помечает запись.
+ * <p>
+ * Буфер - {@link ByteBuffer} с видами {@link VarHandle}, а не {@code MemorySegment}: в Java 21
+ * Foreign Function &amp; Memory API ещё preview и потребовал бы {@code --enable-preview} при сборке и запуске.
+ */
+final class OffHeapRateStore {
+    static final int RECORD_SIZE = 40;
+    private static final int SEQUENCE = 0;
+    private static final int CODE = 4;
+    private static final int CURRENCY_ID = 8;
+    private static final int RATE_ID = 12;
+    private static final int NOMINAL = 16;
+    private static final int RATE_MICROS = 24;
+    private static final int UPDATED_AT = 32;
+
+    /**
+     * Курс хранится как целое число миллионных: столько знаков после запятой у rate в БД.
+     */
+    static final int RATE_SCALE = 6;
+    static final long NO_RATE = Long.MIN_VALUE;
+    private static final int ABSENT = -1;
+    private static final int EMPTY_KEY = 0;
+
+    // Доступ с барьерами к счётчику версии; для direct-буфера и выровненного смещения он атомарен
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    /**
+     * Получатель записей при обходе хранилища.
+     */
+    interface RecordVisitor {
+        void visit(int code, int currencyId, int rateId, int nominal, long rateMicros);
+    }
+
+    private volatile Region region;
+    private volatile int count;
+
+    OffHeapRateStore(int initialCapacity) {
+        region = new Region(Math.max(16, initialCapacity));
+    }
+
+    /**
+     * Курс валюты или null, если его нет.
+     */
+    ExchangeRate get(String code) {
+        int key = CurrencyCodes.pack(code);
+        if (key == CurrencyCodes.INVALID) {
+            return null;
+        }
+        Region current = region;
+        int slot = current.slotOf(key);
+        return slot == ABSENT ? null : read(current.buffer, slot, key);
+    }
+
+    /**
+     * Обходит все записи с курсом. Каждая запись согласована сама по себе, но не с остальными.
+     */
+    void forEach(RecordVisitor visitor) {
+        Region current = region;
+        int records = Math.min(count, current.capacity);
+        ByteBuffer buffer = current.buffer;
+        for (int slot = 0; slot < records; slot++) {
+            int offset = slot * RECORD_SIZE;
+            int code;
+            int currencyId;
+            int rateId;
+            int nominal;
+            long rateMicros;
+            int sequence;
+            do {
+                sequence = awaitStable(buffer, offset);
+                code = buffer.getInt(offset + CODE);
+                currencyId = buffer.getInt(offset + CURRENCY_ID);
+                rateId = buffer.getInt(offset + RATE_ID);
+                nominal = buffer.getInt(offset + NOMINAL);
+                rateMicros = buffer.getLong(offset + RATE_MICROS);
+                // Повторное чтение счётчика не должно обогнать чтение полей (пара к storeStoreFence в write)
+                VarHandle.loadLoadFence();
+            } while (sequence != (int) INT.getAcquire(buffer, offset + SEQUENCE));
+            if (code != EMPTY_KEY && rateMicros != NO_RATE) {
+                visitor.visit(code, currencyId, rateId, nominal, rateMicros);
+            }
+        }
+    }
+
+    synchronized void put(String code, ExchangeRate rate) {
+        int key = CurrencyCodes.pack(code);
+        if (key == CurrencyCodes.INVALID) {
+            return;
+        }
+        int slot = region.slotOf(key);
+        if (slot == ABSENT) {
+            slot = allocate(key);
+        }
+        write(slot, key, rate.getIdCurrency(), rate.getId(), rate.getNominal(), toMicros(rate.getRate()));
+    }
+
+    /**
+     * Записывает курс, только если его ещё нет (догрузка из БД не затирает более свежую запись).
+     */
+    synchronized void putIfAbsent(String code, ExchangeRate rate) {
+        if (get(code) == null) {
+            put(code, rate);
+        }
+    }
+
+    /**
+     * @return true, если у валюты был курс
+     */
+    synchronized boolean remove(String code) {
+        int key = CurrencyCodes.pack(code);
+        if (key == CurrencyCodes.INVALID) {
+            return false;
+        }
+        int slot = region.slotOf(key);
+        if (slot == ABSENT || region.buffer.getLong(slot * RECORD_SIZE + RATE_MICROS) == NO_RATE) {
+            return false;
+        }
+        markRemoved(slot);
+        return true;
+    }
+
+    /**
+     * Заменяет содержимое: сначала пишет новые курсы, затем помечает отсутствующие в карте,
+     * так что читатель не видит пустого хранилища посреди замены.
+     */
+    synchronized void replaceAll(Map<String, ExchangeRate> rates) {
+        for (Map.Entry<String, ExchangeRate> entry : rates.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+        ByteBuffer buffer = region.buffer;
+        for (int slot = 0; slot < count; slot++) {
+            int offset = slot * RECORD_SIZE;
+            if (buffer.getLong(offset + RATE_MICROS) != NO_RATE
+                    && !rates.containsKey(CurrencyCodes.unpack(buffer.getInt(offset + CODE)))) {
+                markRemoved(slot);
+            }
+        }
+    }
+
+    synchronized void clear() {
+        ByteBuffer buffer = region.buffer;
+        for (int slot = 0; slot < count; slot++) {
+            if (buffer.getLong(slot * RECORD_SIZE + RATE_MICROS) != NO_RATE) {
+                markRemoved(slot);
+            }
+        }
+    }
+
+    /**
+     * Число занятых записей, включая помеченные как удалённые.
+     */
+    int records() {
+        return count;
+    }
+
+    /**
+     * Размер области вне кучи, байт.
+     */
+    long offHeapBytes() {
+        return region.buffer.capacity();
+    }
+
+    private ExchangeRate read(ByteBuffer buffer, int slot, int key) {
+        int offset = slot * RECORD_SIZE;
+        int code;
+        int currencyId;
+        int rateId;
+        int nominal;
+        long rateMicros;
+        int sequence;
+        do {
+            sequence = awaitStable(buffer, offset);
+            code = buffer.getInt(offset + CODE);
+            currencyId = buffer.getInt(offset + CURRENCY_ID);
+            rateId = buffer.getInt(offset + RATE_ID);
+            nominal = buffer.getInt(offset + NOMINAL);
+            rateMicros = buffer.getLong(offset + RATE_MICROS);
+            // Повторное чтение счётчика не должно обогнать чтение полей (пара к storeStoreFence в write)
+            VarHandle.loadLoadFence();
+        } while (sequence != (int) INT.getAcquire(buffer, offset + SEQUENCE));
+        // Индекс дополняется без блокировки: гонка с вставкой нового кода даёт чужую или пустую запись
+        if (code != key || rateMicros == NO_RATE) {
+            return null;
+        }
+        return toRate(currencyId, rateId, nominal, rateMicros);
+    }
+
+    static ExchangeRate toRate(int currencyId, int rateId, int nominal, long rateMicros) {
+        ExchangeRate rate = new ExchangeRate();
+        rate.setId(rateId);
+        rate.setIdCurrency(currencyId);
+        rate.setNominal(nominal);
+        rate.setRate(fromMicros(rateMicros));
+        return rate;
+    }
+
+    static BigDecimal fromMicros(long rateMicros) {
+        return BigDecimal.valueOf(rateMicros, RATE_SCALE).stripTrailingZeros();
+    }
+
+    private static int awaitStable(ByteBuffer buffer, int offset) {
+        int sequence;
+        while (((sequence = (int) INT.getAcquire(buffer, offset + SEQUENCE)) & 1) != 0) {
+            Thread.onSpinWait();
+        }
+        return sequence;
+    }
+
+    private void write(int slot, int key, int currencyId, int rateId, int nominal, long rateMicros) {
+        ByteBuffer buffer = region.buffer;
+        int offset = slot * RECORD_SIZE;
+        int sequence = buffer.getInt(offset + SEQUENCE);
+        INT.setOpaque(buffer, offset + SEQUENCE, sequence + 1);
+        // Без барьера запись полей может стать видна раньше нечётного счётчика,
+        // и читатель примет наполовину изменённую запись за согласованную
+        VarHandle.storeStoreFence();
+        buffer.putInt(offset + CODE, key);
+        buffer.putInt(offset + CURRENCY_ID, currencyId);
+        buffer.putInt(offset + RATE_ID, rateId);
+        buffer.putInt(offset + NOMINAL, nominal);
+        buffer.putLong(offset + RATE_MICROS, rateMicros);
+        buffer.putLong(offset + UPDATED_AT, System.currentTimeMillis());
+        INT.setRelease(buffer, offset + SEQUENCE, sequence + 2);
+    }
+
+    private void markRemoved(int slot) {
+        ByteBuffer buffer = region.buffer;
+        int offset = slot * RECORD_SIZE;
+        write(slot, buffer.getInt(offset + CODE), buffer.getInt(offset + CURRENCY_ID),
+                buffer.getInt(offset + RATE_ID), buffer.getInt(offset + NOMINAL), NO_RATE);
+    }
+
+    private int allocate(int key) {
+        int slot = count;
+        if (slot == region.capacity) {
+            // Читатели старой области видят согласованные, хоть и чуть устаревшие данные
+            region = region.grow();
+        }
+        region.index(key, slot);
+        count = slot + 1;
+        return slot;
+    }
+
+    private static long toMicros(BigDecimal rate) {
+        return rate.setScale(RATE_SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Буфер записей и индекс к нему. При росте заменяется целиком, поэтому читатель,
+     * взявший ссылку один раз, не получит номер записи за пределами своего буфера.
+     */
+    private static final class Region {
+        private final ByteBuffer buffer;
+        private final int capacity;
+        private final int[] keys;
+        private final int[] slots;
+        private final int mask;
+
+        private Region(int capacity) {
+            this.capacity = capacity;
+            this.buffer = ByteBuffer.allocateDirect(capacity * RECORD_SIZE).order(ByteOrder.nativeOrder());
+            // Заполнение не более половины - короткие цепочки линейного пробирования
+            int indexCapacity = Integer.highestOneBit(Math.max(16, capacity * 2 - 1)) << 1;
+            this.keys = new int[indexCapacity];
+            this.slots = new int[indexCapacity];
+            this.mask = indexCapacity - 1;
+        }
+
+        private int slotOf(int key) {
+            int position = mix(key) & mask;
+            int current;
+            while ((current = keys[position]) != EMPTY_KEY) {
+                if (current == key) {
+                    return slots[position];
+                }
+                position = (position + 1) & mask;
+            }
+            return ABSENT;
+        }
+
+        private void index(int key, int slot) {
+            int position = mix(key) & mask;
+            while (keys[position] != EMPTY_KEY) {
+                position = (position + 1) & mask;
+            }
+            slots[position] = slot;
+            keys[position] = key;
+        }
+
+        private Region grow() {
+            Region grown = new Region(capacity * 2);
+            grown.buffer.put(0, buffer, 0, buffer.capacity());
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != EMPTY_KEY) {
+                    grown.index(keys[i], slots[i]);
+                }
+            }
+            return grown;
+        }
+
+        private static int mix(int key) {
+            int h = key * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package org.example.cache;
+
+import org.example.AppConfig;
+import org.example.CurrencyCodes;
+import org.example.metrics.Metrics;
+import org.example.model.ExchangeRate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Общее для всего приложения представление курсов в памяти (код валюты -> курс).
+ * Любая запись курса в этом процессе сначала попадает сюда, поэтому чтения видят
+ * изменения сразу, даже если запись в БД отложена (режим write-behind).
+ * <p>
+ * Курсы лежат вне кучи ({@link OffHeapRateStore}), методы, возвращающие {@link ExchangeRate},
+ * каждый раз создают новые объекты; для обхода без них есть {@link #forEachRate}.
+ */
+public final class RateView {
+    private static final RateView INSTANCE = new RateView();
+
+    private final OffHeapRateStore store = new OffHeapRateStore(AppConfig.getInt("rates.offheap.initial.capacity", 1024));
+    private final AtomicLong version = new AtomicLong();
+    private volatile boolean loaded;
+
+    /**
+     * Получатель курсов при обходе представления: курс за {@code nominal} единиц в миллионных долях рубля.
+     */
+    public interface RateVisitor {
+        void visit(String currencyCode, int nominal, long rateMicros);
+    }
+
+    private RateView() {
+        Metrics.gauge("rates.offheap.records", store::records);
+        Metrics.gauge("rates.offheap.bytes", store::offHeapBytes);
+    }
+
+    public static RateView getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Полностью заменяет содержимое представления (код валюты -> курс).
+     */
+    public void loadAll(Map<String, ExchangeRate> rates) {
+        store.replaceAll(rates);
+        loaded = true;
+        version.incrementAndGet();
+    }
+
+    /**
+     * true, если представление было целиком загружено и содержит все курсы.
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Все курсы в порядке id валюты.
+     */
+    public List<ExchangeRate> all() {
+        List<ExchangeRate> rates = new ArrayList<>();
+        store.forEach((code, currencyId, rateId, nominal, rateMicros) ->
+                rates.add(OffHeapRateStore.toRate(currencyId, rateId, nominal, rateMicros)));
+        rates.sort(Comparator.comparingInt(ExchangeRate::getIdCurrency));
+        return rates;
+    }
+
+    /**
+     * Возвращает курс из памяти, а при промахе загружает его через loader и запоминает.
+     * Когда представление загружено целиком, промах окончательный и в БД не ходим.
+     */
+    public Optional<ExchangeRate> find(String currencyCode, Function<String, Optional<ExchangeRate>> loader) {
+        ExchangeRate cached = store.get(currencyCode);
+        if (cached != null || loaded) {
+            return Optional.ofNullable(cached);
+        }
+        Optional<ExchangeRate> loadedRate = loader.apply(currencyCode);
+        loadedRate.ifPresent(rate -> store.putIfAbsent(currencyCode, rate));
+        return loadedRate;
+    }
+
+    /**
+     * Копия содержимого представления (код валюты -> курс).
+     */
+    public Map<String, ExchangeRate> byCode() {
+        Map<String, ExchangeRate> rates = new HashMap<>();
+        store.forEach((code, currencyId, rateId, nominal, rateMicros) ->
+                rates.put(CurrencyCodes.unpack(code), OffHeapRateStore.toRate(currencyId, rateId, nominal, rateMicros)));
+        return rates;
+    }
+
+    /**
+     * Обходит все курсы, не создавая объектов {@link ExchangeRate}.
+     */
+    public void forEachRate(RateVisitor visitor) {
+        store.forEach((code, currencyId, rateId, nominal, rateMicros) ->
+                visitor.visit(CurrencyCodes.unpack(code), nominal, rateMicros));
+    }
+
+    public Optional<ExchangeRate> get(String currencyCode) {
+        return Optional.ofNullable(store.get(currencyCode));
+    }
+
+    public void put(String currencyCode, ExchangeRate rate) {
+        store.put(currencyCode, rate);
+        version.incrementAndGet();
+    }
+
+    public void remove(String currencyCode) {
+        if (store.remove(currencyCode)) {
+            version.incrementAndGet();
+        }
+    }
+
+    public void clear() {
+        store.clear();
+        loaded = false;
+        version.incrementAndGet();
+    }
+
+    /**
+     * Монотонно растущая версия представления; меняется при каждом изменении курса.
+     */
+    public long version() {
+        return version.get();
+    }
+
+    /**
+     * Курс из миллионных долей в том же виде, что и в снимке на диске.
+     */
+    public static BigDecimal rateFromMicros(long rateMicros) {
+        return OffHeapRateStore.fromMicros(rateMicros);
+    }
+}
@@ -0,0 +1,57 @@
+package org.example.cache;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Заранее сериализованные тела частых ответов (например, списков валют и курсов).
+ * Тело привязано к версии данных: пока версия не изменилась, отдаются готовые байты.
+ */
+public final class SerializedResponseCache {
+    public static final String CURRENCY_LIST = "currency-list";
+    public static final String EXCHANGE_RATE_LIST = "exchange-rate-list";
+
+    private static final SerializedResponseCache INSTANCE = new SerializedResponseCache();
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private SerializedResponseCache() {
+    }
+
+    public static SerializedResponseCache getInstance() {
+        return INSTANCE;
+    }
+
+    @FunctionalInterface
+    public interface BodySerializer {
+        byte[] serialize() throws IOException;
+    }
+
+    /**
+     * Возвращает тело ответа для указанной версии данных, сериализуя его заново только при смене версии.
+     */
+    public byte[] get(String key, long version, BodySerializer serializer) throws IOException {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.version == version) {
+            return entry.body;
+        }
+        byte[] body = serializer.serialize();
+        entries.put(key, new Entry(version, body));
+        return body;
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    private static final class Entry {
+        private final long version;
+        private final byte[] body;
+
+        private Entry(long version, byte[] body) {
+            this.version = version;
+            this.body = body;
+        }
+    }
+}
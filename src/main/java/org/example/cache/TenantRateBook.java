@@ -0,0 +1,232 @@
+package org.example.cache;
+
+import org.example.metrics.Metrics;
+import org.example.model.TenantRateAdjustment;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Книга курсов одного тенанта: курсы ЦБ из {@link RateView} с поправками тенанта в виде вектора
+ * курсов за единицу валюты. Кросс-курс пары считается из вектора при первом запросе и кэшируется,
+ * так что память растёт с числом запрашиваемых пар, а не с квадратом числа валют.
+ * <p>
+ * Собственный курс тенанта заменяет курс ЦБ валюты. Спред целевой валюты уменьшает кросс-курс:
+ * при спреде 150 б.п. по EUR клиент тенанта получает на 1,5% меньше евро, чем по курсу ЦБ.
+ * Без поправок кросс-курсы совпадают с {@code ExchangeRateService.calculateCrossRate}.
+ * <p>
+ * Вектор сверяется с курсами ЦБ по версии {@link RateView} при чтении. Если изменились курсы
+ * или поправки, из кэша выбрасываются только пары с затронутыми валютами; если изменился сам
+ * набор валют, кэш начинается заново. Читатели не блокируются: вектор заменяется целиком.
+ */
+public final class TenantRateBook {
+    public static final String ANY_CURRENCY = "*";
+    private static final String BASE_CURRENCY_CODE = "RUB";
+    private static final int SCALE = 12;
+    private static final BigDecimal BPS = BigDecimal.valueOf(10_000);
+
+    private static final LongAdder rebuilds = Metrics.counter("tenant.book.rebuilds");
+    private static final LongAdder updatedCurrencies = Metrics.counter("tenant.book.updated.currencies");
+
+    /**
+     * Курсы за единицу и спреды для фиксированного набора валют и кэш уже посчитанных кросс-курсов.
+     * После публикации массивы не меняются.
+     */
+    private static final class Snapshot {
+        private final Map<String, Integer> index;
+        private final BigDecimal[] perUnit;
+        private final BigDecimal[] spreadFactor;
+        // Ключ - пара номеров валют, см. pair()
+        private final Map<Long, BigDecimal> cross = new ConcurrentHashMap<>();
+
+        private Snapshot(Map<String, Integer> index) {
+            int size = index.size();
+            this.index = index;
+            this.perUnit = new BigDecimal[size];
+            this.spreadFactor = new BigDecimal[size];
+        }
+
+        private BigDecimal cross(int from, int to) {
+            if (from == to) {
+                return BigDecimal.ONE;
+            }
+            return cross.computeIfAbsent(pair(from, to), key -> TenantRateBook.cross(this, from, to));
+        }
+
+        private static long pair(int from, int to) {
+            return (long) from << 32 | to;
+        }
+    }
+
+    private final String tenant;
+    private final RateView rateView;
+    private final Object lock = new Object();
+
+    private volatile Map<String, TenantRateAdjustment> adjustments = Map.of();
+    private volatile long adjustmentsVersion;
+    private volatile Snapshot snapshot;
+    // Версии, по которым посчитан вектор; пишутся после него, чтобы читатель видел готовые значения
+    private volatile long builtRatesVersion = -1;
+    private volatile long builtAdjustmentsVersion = -1;
+
+    TenantRateBook(String tenant, RateView rateView) {
+        this.tenant = tenant;
+        this.rateView = rateView;
+    }
+
+    public String tenant() {
+        return tenant;
+    }
+
+    /**
+     * Заменяет поправки тенанта; вектор пересчитается при следующем чтении.
+     */
+    void setAdjustments(Collection<TenantRateAdjustment> tenantAdjustments) {
+        Map<String, TenantRateAdjustment> byCode = new HashMap<>();
+        for (TenantRateAdjustment adjustment : tenantAdjustments) {
+            byCode.put(adjustment.getCurrencyCode(), adjustment);
+        }
+        synchronized (lock) {
+            adjustments = byCode;
+            adjustmentsVersion++;
+        }
+    }
+
+    /**
+     * Кросс-курс from -> to по книге тенанта.
+     *
+     * @param fromCode код в верхнем регистре
+     * @param toCode   код в верхнем регистре
+     * @return курс или null, если для одной из валют нет ни курса ЦБ, ни курса тенанта
+     */
+    public BigDecimal crossRate(String fromCode, String toCode) {
+        Snapshot current = current();
+        Integer from = current.index.get(fromCode);
+        Integer to = current.index.get(toCode);
+        if (from == null || to == null) {
+            return null;
+        }
+        return current.cross(from, to);
+    }
+
+    /**
+     * Есть ли в книге курс валюты (код в верхнем регистре).
+     */
+    public boolean hasRate(String code) {
+        return current().index.containsKey(code);
+    }
+
+    private Snapshot current() {
+        if (builtRatesVersion != rateView.version() || builtAdjustmentsVersion != adjustmentsVersion) {
+            synchronized (lock) {
+                refresh();
+            }
+        }
+        return snapshot;
+    }
+
+    private void refresh() {
+        // Версию берём до обхода курсов: изменение во время обхода вызовет ещё один пересчёт
+        long ratesVersion = rateView.version();
+        long currentAdjustmentsVersion = adjustmentsVersion;
+        if (snapshot != null && builtRatesVersion == ratesVersion && builtAdjustmentsVersion == currentAdjustmentsVersion) {
+            return;
+        }
+        Map<String, TenantRateAdjustment> currentAdjustments = adjustments;
+        Map<String, BigDecimal> perUnitByCode = perUnitByCode(currentAdjustments);
+
+        Snapshot current = snapshot;
+        if (current == null || !current.index.keySet().equals(perUnitByCode.keySet())) {
+            rebuild(perUnitByCode, currentAdjustments);
+        } else {
+            update(current, perUnitByCode, currentAdjustments);
+        }
+        builtAdjustmentsVersion = currentAdjustmentsVersion;
+        builtRatesVersion = ratesVersion;
+    }
+
+    private void rebuild(Map<String, BigDecimal> perUnitByCode, Map<String, TenantRateAdjustment> currentAdjustments) {
+        Map<String, Integer> index = new HashMap<>();
+        for (String code : perUnitByCode.keySet()) {
+            index.put(code, index.size());
+        }
+        Snapshot rebuilt = new Snapshot(index);
+        for (Map.Entry<String, Integer> entry : index.entrySet()) {
+            int i = entry.getValue();
+            rebuilt.perUnit[i] = perUnitByCode.get(entry.getKey());
+            rebuilt.spreadFactor[i] = spreadFactor(entry.getKey(), currentAdjustments);
+        }
+        snapshot = rebuilt;
+        rebuilds.increment();
+    }
+
+    private void update(Snapshot current, Map<String, BigDecimal> perUnitByCode,
+                        Map<String, TenantRateAdjustment> currentAdjustments) {
+        Snapshot updated = new Snapshot(current.index);
+        boolean[] changed = new boolean[current.perUnit.length];
+        int changedCount = 0;
+        for (Map.Entry<String, Integer> entry : current.index.entrySet()) {
+            int i = entry.getValue();
+            updated.perUnit[i] = perUnitByCode.get(entry.getKey());
+            updated.spreadFactor[i] = spreadFactor(entry.getKey(), currentAdjustments);
+            if (!updated.perUnit[i].equals(current.perUnit[i]) || !updated.spreadFactor[i].equals(current.spreadFactor[i])) {
+                changed[i] = true;
+                changedCount++;
+            }
+        }
+        if (changedCount == 0) {
+            return;
+        }
+        // Пары без затронутых валют остаются в кэше
+        current.cross.forEach((pair, rate) -> {
+            if (!changed[(int) (pair >>> 32)] && !changed[(int) (long) pair]) {
+                updated.cross.put(pair, rate);
+            }
+        });
+        snapshot = updated;
+        updatedCurrencies.add(changedCount);
+    }
+
+    /**
+     * Курс за единицу валюты в рублях: курс тенанта или курс ЦБ с той же точностью, что и в сервисе.
+     */
+    private Map<String, BigDecimal> perUnitByCode(Map<String, TenantRateAdjustment> currentAdjustments) {
+        Map<String, BigDecimal> perUnitByCode = new HashMap<>();
+        perUnitByCode.put(BASE_CURRENCY_CODE, BigDecimal.ONE);
+        rateView.forEachRate((code, nominal, rateMicros) -> perUnitByCode.put(code,
+                RateView.rateFromMicros(rateMicros).divide(BigDecimal.valueOf(nominal), SCALE, RoundingMode.HALF_UP)));
+        for (TenantRateAdjustment adjustment : currentAdjustments.values()) {
+            if (adjustment.getRate() != null && !ANY_CURRENCY.equals(adjustment.getCurrencyCode())) {
+                perUnitByCode.put(adjustment.getCurrencyCode(), adjustment.getRate());
+            }
+        }
+        return perUnitByCode;
+    }
+
+    private static BigDecimal spreadFactor(String code, Map<String, TenantRateAdjustment> currentAdjustments) {
+        TenantRateAdjustment adjustment = currentAdjustments.get(code);
+        if (adjustment == null || adjustment.getSpreadBps() == null) {
+            adjustment = currentAdjustments.get(ANY_CURRENCY);
+        }
+        if (adjustment == null || adjustment.getSpreadBps() == null || adjustment.getSpreadBps() == 0) {
+            return BigDecimal.ONE;
+        }
+        return BigDecimal.ONE.subtract(BigDecimal.valueOf(adjustment.getSpreadBps()).divide(BPS));
+    }
+
+    private static BigDecimal cross(Snapshot snapshot, int from, int to) {
+        if (from == to) {
+            return BigDecimal.ONE;
+        }
+        BigDecimal rate = snapshot.perUnit[from].divide(snapshot.perUnit[to], SCALE, RoundingMode.HALF_UP);
+        BigDecimal spreadFactor = snapshot.spreadFactor[to];
+        return spreadFactor.equals(BigDecimal.ONE)
+                ? rate
+                : rate.multiply(spreadFactor).setScale(SCALE, RoundingMode.HALF_UP);
+    }
+}
@@ -0,0 +1,67 @@
+package org.example.cache;
+
+import org.example.metrics.Metrics;
+import org.example.model.TenantRateAdjustment;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Книги курсов тенантов ({@link TenantRateBook}) по идентификатору тенанта. Тенант существует,
+ * пока у него есть хотя бы одна поправка. При перезагрузке поправок книги сохраняются,
+ * поэтому пересчитываются только курсы изменившихся валют, а кэш кросс-курсов остальных пар остаётся.
+ */
+public final class TenantRateBooks {
+    private static final TenantRateBooks INSTANCE = new TenantRateBooks();
+
+    private final RateView rateView = RateView.getInstance();
+    private final Map<String, TenantRateBook> books = new ConcurrentHashMap<>();
+
+    private TenantRateBooks() {
+        Metrics.gauge("tenant.books", books::size);
+    }
+
+    public static TenantRateBooks getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Книга тенанта или null, если такого тенанта нет.
+     */
+    public TenantRateBook find(String tenant) {
+        return books.get(tenant);
+    }
+
+    public Set<String> tenants() {
+        return new TreeSet<>(books.keySet());
+    }
+
+    /**
+     * Заменяет поправки всех тенантов; тенанты, которых нет в списке, удаляются.
+     */
+    public synchronized void loadAll(Collection<TenantRateAdjustment> adjustments) {
+        Map<String, List<TenantRateAdjustment>> byTenant = new HashMap<>();
+        for (TenantRateAdjustment adjustment : adjustments) {
+            byTenant.computeIfAbsent(adjustment.getTenant(), tenant -> new ArrayList<>()).add(adjustment);
+        }
+        books.keySet().retainAll(byTenant.keySet());
+        byTenant.forEach(this::load);
+    }
+
+    /**
+     * Заменяет поправки одного тенанта; пустой список удаляет тенанта.
+     */
+    public synchronized void load(String tenant, Collection<TenantRateAdjustment> adjustments) {
+        if (adjustments.isEmpty()) {
+            books.remove(tenant);
+            return;
+        }
+        books.computeIfAbsent(tenant, id -> new TenantRateBook(id, rateView)).setAdjustments(adjustments);
+    }
+}
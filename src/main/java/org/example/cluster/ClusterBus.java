@@ -0,0 +1,31 @@
+package org.example.cluster;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Канал широковещательных сообщений между узлами кластера.
+ * Доставка не гарантируется и порядок между отправителями не определён:
+ * получатели сами обнаруживают пропуски по номерам сообщений.
+ */
+public interface ClusterBus extends Closeable {
+
+    /**
+     * Рассылает сообщение всем остальным узлам. Собственные сообщения узлу не возвращаются.
+     */
+    void publish(byte[] payload) throws IOException;
+
+    /**
+     * Регистрирует обработчик входящих сообщений. Вызывается до {@link #start()}.
+     */
+    void subscribe(Consumer<byte[]> listener);
+
+    /**
+     * Начинает приём сообщений.
+     */
+    void start() throws IOException;
+
+    @Override
+    void close();
+}
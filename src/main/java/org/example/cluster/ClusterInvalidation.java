@@ -0,0 +1,415 @@
+package org.example.cluster;
+
+import org.example.AppConfig;
+import org.example.cache.CurrencyView;
+import org.example.cache.RateView;
+import org.example.cache.TenantRateBooks;
+import org.example.dao.CurrencyDAO;
+import org.example.dao.TenantRateDAO;
+import org.example.metrics.Metrics;
+import org.example.model.Currency;
+import org.example.model.ExchangeRate;
+import org.example.service.WarmupService;
+
+import java.io.IOException;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Согласование кэшей узлов кластера. Узел, изменивший курс или валюту, рассылает
+ * изменения по {@link ClusterBus}; остальные применяют их к своим представлениям в памяти.
+ * Новые значения курсов передаются в самом сообщении, поэтому получателю не нужна БД
+ * (в режиме write-behind курса там ещё может не быть). Валюты перечитываются из БД по коду.
+ * <p>
+ * Сообщения нумеруются по каждому узлу-отправителю. Пропуск номера (потерянная датаграмма)
+ * приводит к полной перезагрузке представлений из БД. Раз в {@code cluster.heartbeat.interval.ms}
+ * узел рассылает номер своего последнего сообщения, поэтому потеря последнего сообщения
+ * обнаруживается не позже следующего пульса, а не только со следующим изменением.
+ * <p>
+ * Формат сообщения - строки UTF-8: заголовок {@code CXB2 <узел> <номер> <подпись>}, затем
+ * {@code R <код> <id валюты> <id курса> <номинал> <курс>}, {@code D <код>} (курс удалён),
+ * {@code C <код>} (валюта изменена) или {@code T <тенант>} (поправки тенанта изменены, перечитываются из БД).
+ * Пульс - единственная строка {@code H}; номер в его заголовке - номер последнего сообщения, а не новый.
+ * <p>
+ * Подпись - HMAC-SHA256 на общем секрете {@code cluster.secret} от сообщения без неё
+ * ({@code CXB2 <узел> <номер>} и строки); сообщения с неверной подписью отбрасываются.
+ * Сообщение сначала разбирается целиком и применяется, только если разобрано без ошибок;
+ * испорченное сообщение с верной подписью приводит к полной перезагрузке, как и пропуск номера.
+ */
+public final class ClusterInvalidation {
+    private static final ClusterInvalidation INSTANCE = new ClusterInvalidation();
+    private static final String MAGIC = "CXB2";
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    // Запас до предела датаграммы: строка курса занимает до ~60 байт
+    private static final int MAX_LINES_PER_MESSAGE = 800;
+
+    private final String mode = AppConfig.getString("cluster.bus", "none");
+    private final String nodeId = AppConfig.getString("cluster.node.id", UUID.randomUUID().toString().substring(0, 8));
+    private final String secret = AppConfig.getString("cluster.secret", "");
+    private final long heartbeatIntervalMs = AppConfig.getLong("cluster.heartbeat.interval.ms", 5000);
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<String, Long> lastSequenceByNode = new ConcurrentHashMap<>();
+
+    private final CurrencyView currencyView = CurrencyView.getInstance();
+    private final RateView rateView = RateView.getInstance();
+    private final CurrencyDAO currencyDAO = new CurrencyDAO();
+    private final TenantRateBooks tenantRateBooks = TenantRateBooks.getInstance();
+    private final TenantRateDAO tenantRateDAO = new TenantRateDAO();
+
+    private final LongAdder sent = Metrics.counter("cluster.messages.sent");
+    private final LongAdder received = Metrics.counter("cluster.messages.received");
+    private final LongAdder resyncs = Metrics.counter("cluster.resyncs");
+    private final LongAdder rejected = Metrics.counter("cluster.messages.rejected");
+
+    private volatile ClusterBus bus;
+    private volatile SecretKeySpec macKey;
+    private ExecutorService resyncExecutor;
+    private ScheduledExecutorService heartbeatExecutor;
+
+    private ClusterInvalidation() {
+    }
+
+    public static ClusterInvalidation getInstance() {
+        return INSTANCE;
+    }
+
+    public boolean isEnabled() {
+        return bus != null;
+    }
+
+    public String nodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Подключается к шине, выбранной параметром {@code cluster.bus}: none, multicast или memory.
+     */
+    public synchronized void start() throws IOException {
+        if (bus != null || "none".equalsIgnoreCase(mode)) {
+            return;
+        }
+        start(createBus());
+        System.out.println("Cluster invalidation started: bus=" + mode + ", node=" + nodeId);
+    }
+
+    /**
+     * Подключается к переданной шине (для проверок с {@link InMemoryClusterBus}).
+     */
+    public synchronized void start(ClusterBus clusterBus) throws IOException {
+        macKey = createMacKey(clusterBus);
+        resyncExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cluster-resync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        clusterBus.subscribe(this::onMessage);
+        clusterBus.start();
+        bus = clusterBus;
+        currencyView.setClusterInvalidation(true);
+        if (heartbeatIntervalMs > 0) {
+            heartbeatExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "cluster-heartbeat");
+                thread.setDaemon(true);
+                return thread;
+            });
+            heartbeatExecutor.scheduleWithFixedDelay(this::sendHeartbeat, heartbeatIntervalMs, heartbeatIntervalMs,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public synchronized void stop() {
+        if (bus != null) {
+            if (heartbeatExecutor != null) {
+                heartbeatExecutor.shutdownNow();
+                heartbeatExecutor = null;
+            }
+            currencyView.setClusterInvalidation(false);
+            bus.close();
+            bus = null;
+            resyncExecutor.shutdownNow();
+        }
+    }
+
+    public void rateChanged(String code, ExchangeRate rate) {
+        ratesChanged(Map.of(code, rate));
+    }
+
+    public void ratesChanged(Map<String, ExchangeRate> ratesByCode) {
+        if (bus == null || ratesByCode.isEmpty()) {
+            return;
+        }
+        StringBuilder lines = new StringBuilder();
+        int count = 0;
+        for (Map.Entry<String, ExchangeRate> entry : ratesByCode.entrySet()) {
+            ExchangeRate rate = entry.getValue();
+            lines.append("R ").append(entry.getKey())
+                    .append(' ').append(rate.getIdCurrency())
+                    .append(' ').append(rate.getId())
+                    .append(' ').append(rate.getNominal())
+                    .append(' ').append(rate.getRate().toPlainString())
+                    .append('\n');
+            if (++count == MAX_LINES_PER_MESSAGE) {
+                send(lines);
+                lines.setLength(0);
+                count = 0;
+            }
+        }
+        if (count > 0) {
+            send(lines);
+        }
+    }
+
+    public void rateDeleted(String code) {
+        if (bus != null) {
+            send(new StringBuilder("D ").append(code).append('\n'));
+        }
+    }
+
+    public void currencyChanged(String code) {
+        currenciesChanged(List.of(code));
+    }
+
+    public void currenciesChanged(Collection<String> codes) {
+        if (bus == null || codes.isEmpty()) {
+            return;
+        }
+        StringBuilder lines = new StringBuilder();
+        int count = 0;
+        for (String code : codes) {
+            lines.append("C ").append(code).append('\n');
+            if (++count == MAX_LINES_PER_MESSAGE) {
+                send(lines);
+                lines.setLength(0);
+                count = 0;
+            }
+        }
+        if (count > 0) {
+            send(lines);
+        }
+    }
+
+    public void tenantChanged(String tenant) {
+        if (bus != null) {
+            send(new StringBuilder("T ").append(tenant).append('\n'));
+        }
+    }
+
+    private void send(CharSequence lines) {
+        ClusterBus current = bus;
+        if (current == null) {
+            return;
+        }
+        String header = MAGIC + ' ' + nodeId + ' ' + sequence.incrementAndGet();
+        try {
+            current.publish(sign(header, lines.toString()));
+            sent.increment();
+        } catch (IOException e) {
+            // Остальные узлы обнаружат пропуск номера и перечитают данные из БД
+            System.err.println("Не удалось разослать изменения узлам кластера: " + e.getMessage());
+        }
+    }
+
+    private void sendHeartbeat() {
+        ClusterBus current = bus;
+        if (current == null) {
+            return;
+        }
+        String header = MAGIC + ' ' + nodeId + ' ' + sequence.get();
+        try {
+            current.publish(sign(header, "H\n"));
+        } catch (IOException | RuntimeException e) {
+            // Следующий пульс уйдёт по расписанию: исключение не должно отменить задачу
+            System.err.println("Не удалось разослать пульс узлам кластера: " + e.getMessage());
+        }
+    }
+
+    private void onMessage(byte[] payload) {
+        String message = new String(payload, StandardCharsets.UTF_8);
+        int headerEnd = message.indexOf('\n');
+        String[] header = (headerEnd < 0 ? message : message.substring(0, headerEnd)).split(" ");
+        if (header.length != 4 || !MAGIC.equals(header[0]) || nodeId.equals(header[1])) {
+            return;
+        }
+        String body = message.substring(headerEnd + 1);
+        String signed = header[0] + ' ' + header[1] + ' ' + header[2];
+        if (!MessageDigest.isEqual(mac(signed, body), header[3].getBytes(StandardCharsets.US_ASCII))) {
+            rejected.increment();
+            return;
+        }
+        long messageSequence;
+        try {
+            messageSequence = Long.parseLong(header[2]);
+        } catch (NumberFormatException e) {
+            rejected.increment();
+            return;
+        }
+        String[] lines = body.split("\n");
+        if (lines.length == 1 && "H".equals(lines[0])) {
+            onHeartbeat(header[1], messageSequence);
+            return;
+        }
+        received.increment();
+
+        List<Runnable> changes = new ArrayList<>(lines.length);
+        String parseError = null;
+        for (String line : lines) {
+            try {
+                Runnable change = parseLine(line);
+                if (change != null) {
+                    changes.add(change);
+                }
+            } catch (RuntimeException e) {
+                parseError = "'" + line + "': " + e;
+                break;
+            }
+        }
+
+        Long previous = lastSequenceByNode.put(header[1], messageSequence);
+        if (parseError != null) {
+            // Частично применённое сообщение хуже пропущенного: берём всё из БД
+            resyncs.increment();
+            System.err.println("Не удалось разобрать сообщение " + messageSequence + " узла " + header[1]
+                    + " (" + parseError + "), перезагрузка справочников из БД.");
+            resyncExecutor.execute(this::resync);
+            return;
+        }
+        if (previous != null && messageSequence != previous + 1) {
+            resyncs.increment();
+            System.err.println("Пропущены сообщения узла " + header[1] + " (" + previous + " -> "
+                    + messageSequence + "), перезагрузка справочников из БД.");
+            resyncExecutor.execute(this::resync);
+        }
+        changes.forEach(Runnable::run);
+    }
+
+    /**
+     * Разбирает строку сообщения в изменение, не применяя его.
+     * Неизвестные записи дают null: их может слать более новая версия приложения.
+     */
+    private Runnable parseLine(String line) {
+        String[] parts = line.split(" ");
+        switch (parts[0]) {
+            case "R":
+                String rateCode = parts[1];
+                ExchangeRate rate = new ExchangeRate();
+                rate.setIdCurrency(Integer.parseInt(parts[2]));
+                rate.setId(Integer.parseInt(parts[3]));
+                rate.setNominal(Integer.parseInt(parts[4]));
+                rate.setRate(new BigDecimal(parts[5]));
+                return () -> rateView.put(rateCode, rate);
+            case "D":
+                String deletedCode = parts[1];
+                return () -> rateView.remove(deletedCode);
+            case "C":
+                String currencyCode = parts[1];
+                return () -> reloadCurrency(currencyCode);
+            case "T":
+                String tenant = parts[1];
+                return () -> tenantRateBooks.load(tenant, tenantRateDAO.findByTenant(tenant));
+            default:
+                return null;
+        }
+    }
+
+    private void onHeartbeat(String node, long lastSentSequence) {
+        Long previous = lastSequenceByNode.get(node);
+        if (previous == null) {
+            // Первое, что услышали от узла: его прежние изменения уже есть в БД, откуда грузились справочники
+            lastSequenceByNode.putIfAbsent(node, lastSentSequence);
+            return;
+        }
+        if (lastSentSequence > previous && lastSequenceByNode.replace(node, previous, lastSentSequence)) {
+            resyncs.increment();
+            System.err.println("Пульс узла " + node + ": последнее сообщение " + lastSentSequence
+                    + ", получено " + previous + ", перезагрузка справочников из БД.");
+            resyncExecutor.execute(this::resync);
+        }
+    }
+
+    private void reloadCurrency(String code) {
+        Optional<Currency> currency = currencyDAO.findByCode(code);
+        if (currency.isPresent()) {
+            currencyView.put(currency.get());
+        } else {
+            currencyView.remove(code);
+            rateView.remove(code);
+        }
+    }
+
+    private void resync() {
+        try {
+            new WarmupService().reloadViews();
+        } catch (RuntimeException e) {
+            System.err.println("Не удалось перезагрузить справочники: " + e.getMessage());
+        }
+    }
+
+    private SecretKeySpec createMacKey(ClusterBus clusterBus) throws IOException {
+        if (!secret.isEmpty()) {
+            return new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), MAC_ALGORITHM);
+        }
+        if (!(clusterBus instanceof InMemoryClusterBus)) {
+            throw new IOException("Для шины " + mode + " нужен общий секрет узлов cluster.secret.");
+        }
+        // Шина в пределах процесса: секрет никому снаружи знать не нужно
+        byte[] random = new byte[32];
+        new SecureRandom().nextBytes(random);
+        return new SecretKeySpec(random, MAC_ALGORITHM);
+    }
+
+    private byte[] sign(String header, String lines) {
+        String signature = new String(mac(header, lines), StandardCharsets.US_ASCII);
+        return (header + ' ' + signature + '\n' + lines).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] mac(String header, String lines) {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(macKey);
+            mac.update(header.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) '\n');
+            mac.update(lines.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encode(mac.doFinal());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 недоступен.", e);
+        }
+    }
+
+    private ClusterBus createBus() throws IOException {
+        switch (mode.toLowerCase()) {
+            case "memory":
+                return new InMemoryClusterBus();
+            case "multicast":
+                String interfaceName = AppConfig.getString("cluster.multicast.interface", "");
+                NetworkInterface networkInterface = interfaceName.isEmpty() ? null : NetworkInterface.getByName(interfaceName);
+                return new MulticastClusterBus(
+                        InetAddress.getByName(AppConfig.getString("cluster.multicast.group", "239.255.44.45")),
+                        AppConfig.getInt("cluster.multicast.port", 45445),
+                        networkInterface,
+                        AppConfig.getInt("cluster.multicast.ttl", 1));
+            default:
+                throw new IOException("Неизвестный тип шины кластера: " + mode);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package org.example.cluster;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Шина в пределах одного процесса: все экземпляры, созданные в JVM, считаются узлами
+ * одного кластера. Доставка синхронная, в потоке отправителя. Нужна для проверок
+ * сценариев кластера без сети.
+ */
+public final class InMemoryClusterBus implements ClusterBus {
+    private static final List<InMemoryClusterBus> NODES = new CopyOnWriteArrayList<>();
+
+    private final List<Consumer<byte[]>> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(byte[] payload) {
+        for (InMemoryClusterBus node : NODES) {
+            if (node != this) {
+                node.deliver(payload.clone());
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<byte[]> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void start() {
+        NODES.add(this);
+    }
+
+    @Override
+    public void close() {
+        NODES.remove(this);
+    }
+
+    private void deliver(byte[] payload) {
+        for (Consumer<byte[]> listener : listeners) {
+            listener.accept(payload);
+        }
+    }
+}
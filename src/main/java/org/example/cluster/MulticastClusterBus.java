@@ -0,0 +1,113 @@
+package org.example.cluster;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.StandardSocketOptions;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Шина поверх UDP multicast: одно сообщение - одна датаграмма. Подходит для узлов
+ * в одной сети или на одном хосте (TTL по умолчанию 1 - пакеты не уходят за маршрутизатор).
+ * Узел получает и собственные датаграммы; отбрасывать их должен получатель по id узла.
+ */
+public final class MulticastClusterBus implements ClusterBus {
+    static final int MAX_PAYLOAD = 65_000;
+
+    private final InetAddress group;
+    private final int port;
+    private final NetworkInterface networkInterface;
+    private final int ttl;
+    private final List<Consumer<byte[]>> listeners = new CopyOnWriteArrayList<>();
+
+    private MulticastSocket socket;
+    private Thread receiver;
+    private volatile boolean running;
+
+    /**
+     * @param networkInterface интерфейс для multicast или null - выбор системы
+     */
+    public MulticastClusterBus(InetAddress group, int port, NetworkInterface networkInterface, int ttl) {
+        this.group = group;
+        this.port = port;
+        this.networkInterface = networkInterface;
+        this.ttl = ttl;
+    }
+
+    @Override
+    public void publish(byte[] payload) throws IOException {
+        if (payload.length > MAX_PAYLOAD) {
+            throw new IOException("Сообщение не помещается в датаграмму: " + payload.length + " байт.");
+        }
+        MulticastSocket current = socket;
+        if (current == null) {
+            throw new IOException("Шина кластера не запущена.");
+        }
+        current.send(new DatagramPacket(payload, payload.length, group, port));
+    }
+
+    @Override
+    public void subscribe(Consumer<byte[]> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public synchronized void start() throws IOException {
+        socket = new MulticastSocket(port);
+        socket.setTimeToLive(ttl);
+        socket.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+        if (networkInterface != null) {
+            socket.setNetworkInterface(networkInterface);
+        }
+        socket.joinGroup(new InetSocketAddress(group, port), networkInterface);
+
+        running = true;
+        receiver = new Thread(this::receiveLoop, "cluster-bus-receiver");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    @Override
+    public synchronized void close() {
+        running = false;
+        if (socket != null) {
+            // Закрытие сокета прерывает блокирующий receive
+            socket.close();
+            socket = null;
+        }
+    }
+
+    private void receiveLoop() {
+        MulticastSocket current = socket;
+        byte[] buffer = new byte[MAX_PAYLOAD];
+        while (running) {
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                current.receive(packet);
+            } catch (SocketException e) {
+                if (running) {
+                    System.err.println("Шина кластера: ошибка сокета: " + e.getMessage());
+                }
+                return;
+            } catch (IOException e) {
+                System.err.println("Шина кластера: ошибка приёма: " + e.getMessage());
+                continue;
+            }
+            byte[] payload = new byte[packet.getLength()];
+            System.arraycopy(packet.getData(), packet.getOffset(), payload, 0, packet.getLength());
+            for (Consumer<byte[]> listener : listeners) {
+                try {
+                    listener.accept(payload);
+                } catch (RuntimeException e) {
+                    System.err.println("Шина кластера: ошибка обработки сообщения: " + e.getMessage());
+                }
+            }
+        }
+    }
+}
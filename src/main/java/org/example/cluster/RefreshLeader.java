@@ -0,0 +1,168 @@
+package org.example.cluster;
+
+import org.example.AppConfig;
+import org.example.dao.RefreshLeaseDAO;
+
+import java.util.OptionalLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Выбор узла, который выполняет периодическое обновление курсов из ЦБ.
+ * Ведущий - держатель аренды в таблице {@code refresh_lease} общей БД. Аренда захватывается
+ * и продлевается отдельной периодической задачей ({@link #renew()}), а не на такте обновления
+ * ({@link #tick()}): иначе долгое обновление пережило бы срок аренды, и обновлять начал бы
+ * второй узел. Если ведущий пропал, после истечения аренды её захватывает другой узел.
+ * <p>
+ * Ведущий запускает обновление, когда с прошлого прошло {@code refresh.interval.ms},
+ * и увеличивает версию данных в строке аренды. Перед записью курсов обновление проверяет,
+ * что аренда всё ещё у этого узла и не истекла ({@link Task#run(BooleanSupplier)}). Остальные узлы в ЦБ не ходят:
+ * увидев новую версию, они перечитывают справочники из БД. Неудачу последнего обновления
+ * ведущий отмечает в строке аренды, а ведомые передают её в {@code leaderStale}, так что
+ * признак устаревших курсов виден на всех узлах, а не только на ведущем.
+ * <p>
+ * Сроки аренды сравниваются по часам узлов, поэтому часы должны быть синхронизированы
+ * с точностью заметно лучше {@code leader.lease.ttl.ms}.
+ */
+public final class RefreshLeader {
+    private static final String LEASE_NAME = "cbr-refresh";
+
+    @FunctionalInterface
+    public interface Task {
+        /**
+         * @param leaseHeld true, пока узел держит непросроченную аренду; проверяется перед записью
+         */
+        void run(BooleanSupplier leaseHeld) throws Exception;
+    }
+
+    private final long leaseTtlMs = AppConfig.getLong("leader.lease.ttl.ms", 90_000);
+    private final long refreshIntervalMs = AppConfig.getLong("refresh.interval.ms", 24L * 60 * 60 * 1000);
+    private final long retryDelayMs = AppConfig.getLong("refresh.retry.delay.ms", 5 * 60 * 1000);
+    private final RefreshLeaseDAO leaseDAO = new RefreshLeaseDAO();
+    private final String nodeId;
+    private final Task refresh;
+    private final Runnable reload;
+    private final Consumer<Boolean> leaderStale;
+
+    private volatile boolean tableReady;
+    // Пишутся задачей продления, читаются тактом обновления
+    private volatile boolean leader;
+    private volatile long leaseValidUntil;
+    private long seenVersion = -1;
+    private long nextAttemptAt;
+
+    /**
+     * @param nodeId  идентификатор узла, уникальный в кластере
+     * @param refresh обновление курсов (выполняет только ведущий)
+     * @param reload  перечитывание справочников после обновления на другом узле
+     * @param leaderStale получает признак неудачи последнего обновления на ведущем
+     *                    (на самом ведущем - всегда false: он знает о своих обращениях к ЦБ сам)
+     */
+    public RefreshLeader(String nodeId, Task refresh, Runnable reload, Consumer<Boolean> leaderStale) {
+        this.nodeId = nodeId;
+        this.refresh = refresh;
+        this.reload = reload;
+        this.leaderStale = leaderStale;
+    }
+
+    /**
+     * Захватывает или продлевает аренду. Вызывается периодически, заметно чаще
+     * {@code leader.lease.ttl.ms}, в своём потоке - не в том, где идёт обновление.
+     */
+    public void renew() {
+        ensureTable();
+        long now = System.currentTimeMillis();
+        boolean acquired;
+        try {
+            acquired = leaseDAO.tryAcquire(LEASE_NAME, nodeId, now, leaseTtlMs);
+        } catch (RuntimeException e) {
+            // Продлить не удалось: аренда истечёт по сроку, и до тех пор leaseValidUntil остаётся прежним
+            if (leader && System.currentTimeMillis() >= leaseValidUntil) {
+                leader = false;
+                System.out.println("Node " + nodeId + " is no longer the refresh leader.");
+            }
+            throw e;
+        }
+        if (acquired) {
+            // Отсчёт от момента до запроса: так срок аренды на этом узле не длиннее, чем в БД
+            leaseValidUntil = now + leaseTtlMs;
+        }
+        if (acquired != leader) {
+            System.out.println(acquired
+                    ? "Node " + nodeId + " became the refresh leader."
+                    : "Node " + nodeId + " is no longer the refresh leader.");
+            leader = acquired;
+        }
+    }
+
+    /**
+     * Держит ли узел непросроченную аренду.
+     */
+    public boolean holdsLease() {
+        return leader && System.currentTimeMillis() < leaseValidUntil;
+    }
+
+    /**
+     * Один такт: обновление (ведущий) или проверка версии (ведомый).
+     * Вызывается периодически одним потоком.
+     */
+    public void tick() {
+        ensureTable();
+        long now = System.currentTimeMillis();
+        if (holdsLease()) {
+            leaderStale.accept(false);
+            if (now >= nextAttemptAt && now - leaseDAO.findRefreshedAt(LEASE_NAME) >= refreshIntervalMs) {
+                runRefresh();
+            }
+            return;
+        }
+
+        OptionalLong version = leaseDAO.findVersion(LEASE_NAME);
+        if (version.isPresent()) {
+            if (seenVersion >= 0 && version.getAsLong() != seenVersion) {
+                System.out.println("Rates were refreshed by the leader (version " + version.getAsLong()
+                        + "), reloading.");
+                reload.run();
+            }
+            seenVersion = version.getAsLong();
+        }
+        leaderStale.accept(leaseDAO.findStale(LEASE_NAME));
+    }
+
+    /**
+     * Отдаёт аренду при остановке, чтобы другой узел не ждал её истечения.
+     * Вызывается после остановки задачи продления.
+     */
+    public void stop() {
+        if (leader) {
+            leaseDAO.release(LEASE_NAME, nodeId);
+            leader = false;
+        }
+    }
+
+    private void ensureTable() {
+        if (!tableReady) {
+            leaseDAO.createTableIfMissing();
+            tableReady = true;
+        }
+    }
+
+    private void runRefresh() {
+        try {
+            refresh.run(this::holdsLease);
+        } catch (Exception e) {
+            System.err.println("Error during scheduled rate update: " + e.getMessage());
+            e.printStackTrace();
+            nextAttemptAt = System.currentTimeMillis() + retryDelayMs;
+            leaseDAO.markStale(LEASE_NAME, nodeId, true);
+            return;
+        }
+        leaseDAO.markStale(LEASE_NAME, nodeId, false);
+        if (leaseDAO.markRefreshed(LEASE_NAME, nodeId, System.currentTimeMillis())) {
+            // Собственное обновление не должно вызывать перезагрузку, если узел станет ведомым
+            seenVersion = leaseDAO.findVersion(LEASE_NAME).orElse(seenVersion);
+        } else {
+            System.err.println("Refresh lease was lost during the update; version not bumped.");
+        }
+    }
+}
@@ -3,6 +3,7 @@ package org.example.dao;
 import org.example.DatabaseManager;
 import org.example.exception.*;
 import org.example.model.Currency;
+import org.example.profiling.DaoCallEvent;
 import org.sqlite.SQLiteErrorCode;
 import org.sqlite.SQLiteException;
 
@@ -12,19 +13,29 @@ import java.util.List;
 import java.util.Optional;
 
 import static org.example.SQLiteExceptionTranslator.*;
+import static org.example.StatementCache.prepare;
+import static org.example.StatementCache.prepareReturningKeys;
 
 public class CurrencyDAO {
+    private static final String DAO = "CurrencyDAO";
+    private static final String CURRENCY_COLUMNS = "id, code, full_name, sign";
+    // Общий для всех экземпляров DAO: сервисы создают свои экземпляры, а таблица одна
+    private static final SingleFlight<String, Optional<Currency>> BY_CODE =
+            new SingleFlight<>("currency.by_code", found -> found.map(Currency::new));
 
     public Currency save(Currency currency) {
         String sql = "insert into currency (code, full_name, sign) values (?, ?, ?)";
-        try (Connection connection = DatabaseManager.getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        DaoCallEvent event = new DaoCallEvent();
+        event.begin();
+        int rows = 0;
+        try (Connection connection = DatabaseManager.getConnection()) {
+            PreparedStatement statement = prepareReturningKeys(connection, sql);
             statement.setString(1, currency.getCode().toUpperCase());
             statement.setString(2, currency.getFullName());
             statement.setString(3, currency.getSign());
             // Проверка, что строка действительно была добавлена
-            int rowsAffected = statement.executeUpdate();
-            if (rowsAffected == 0) {
+            rows = statement.executeUpdate();
+            if (rows == 0) {
                 throw new SQLException("Не удалось вставить строку в валюту.");
             }
             // Получаем сгенерированный ID
@@ -36,6 +47,7 @@ public class CurrencyDAO {
                     throw new SQLException("Не удалось создать валюту, id не получен.");
                 }
             }
+            BY_CODE.invalidate();
             return currency;
         } catch (SQLException e) {
             // Проверяем на дубликат
@@ -44,19 +56,86 @@ public class CurrencyDAO {
             }
             // Для всех остальных проблем - общий обработчик
             throw translateToGeneralError("сохранение валюты", e);
+        } finally {
+            event.finish(DAO, "save", currency.getCode(), rows);
         }
+    }
 
+    /**
+     * Сохраняет пачку валют одной транзакцией. Коды, которые уже есть в БД, пропускаются.
+     * Сохранённым валютам проставляется id.
+     *
+     * @return для каждой валюты списка - была ли она добавлена
+     */
+    public boolean[] saveAll(List<Currency> currencies) {
+        String insertSql = "insert into currency (code, full_name, sign) values (?, ?, ?) on conflict(code) do nothing";
+        String idSql = "select id from currency where code = ?";
+        boolean[] inserted = new boolean[currencies.size()];
+        DaoCallEvent event = new DaoCallEvent();
+        event.begin();
+        int rows = 0;
+        try (Connection connection = DatabaseManager.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                PreparedStatement insert = prepare(connection, insertSql);
+                for (Currency currency : currencies) {
+                    insert.setString(1, currency.getCode().toUpperCase());
+                    insert.setString(2, currency.getFullName());
+                    insert.setString(3, currency.getSign());
+                    insert.addBatch();
+                }
+                int[] counts = insert.executeBatch();
 
+                PreparedStatement idStatement = prepare(connection, idSql);
+                for (int i = 0; i < counts.length; i++) {
+                    if (counts[i] <= 0) {
+                        continue;
+                    }
+                    Currency currency = currencies.get(i);
+                    idStatement.setString(1, currency.getCode().toUpperCase());
+                    try (ResultSet resultSet = idStatement.executeQuery()) {
+                        if (!resultSet.next()) {
+                            throw new SQLException("Не удалось создать валюту, id не получен.");
+                        }
+                        currency.setId(resultSet.getInt(1));
+                    }
+                    inserted[i] = true;
+                    rows++;
+                }
+                connection.commit();
+                BY_CODE.invalidate();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw translateToGeneralError("пакетное сохранение валют", e);
+        } finally {
+            event.finish(DAO, "saveAll", null, rows);
+        }
+        return inserted;
     }
 
     public List<Currency> findAll() {
+        return queryAll("select " + CURRENCY_COLUMNS + " from currency limit 501", "findAll");
+    }
+
+    /**
+     * Все валюты без ограничения числа строк: для заполнения справочников в памяти, которые после
+     * загрузки считаются полными, и для обновления курсов всех валют.
+     */
+    public List<Currency> findAllUnbounded() {
+        return queryAll("select " + CURRENCY_COLUMNS + " from currency", "findAllUnbounded");
+    }
+
+    private List<Currency> queryAll(String sql, String operation) {
         List<Currency> currencies = new ArrayList<Currency>();
-        String sql = "select * from currency limit 501";
+        DaoCallEvent event = new DaoCallEvent();
+        event.begin();
         try (
                 Connection connection = DatabaseManager.getConnection();
                 // Используем PreparedStatement для безопасности и производительности
-                PreparedStatement statement = connection.prepareStatement(sql);
-                ResultSet resultSet = statement.executeQuery()) {
+                ResultSet resultSet = prepare(connection, sql).executeQuery()) {
 
             while (resultSet.next()) {
                 currencies.add(mapResultSetToCurrency(resultSet));
@@ -64,18 +143,32 @@ public class CurrencyDAO {
 
         } catch (SQLException e) {
             throw new DataAccessException("Ошибка. База данных недоступна).", e);
+        } finally {
+            event.finish(DAO, operation, null, currencies.size());
         }
         return currencies;
     }
 
+    /**
+     * Одновременные поиски одного кода выполняются одним запросом к БД.
+     */
     public Optional<Currency> findByCode(String Code) {
-        String sql = "select * from currency where code = ?";
-        try (Connection connection = DatabaseManager.getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setString(1, Code.toUpperCase());
+        String code = Code.toUpperCase();
+        return BY_CODE.execute(code, () -> queryByCode(code));
+    }
+
+    private Optional<Currency> queryByCode(String Code) {
+        String sql = "select " + CURRENCY_COLUMNS + " from currency where code = ?";
+        DaoCallEvent event = new DaoCallEvent();
+        event.begin();
+        int rows = 0;
+        try (Connection connection = DatabaseManager.getConnection()) {
+            PreparedStatement statement = prepare(connection, sql);
+            statement.setString(1, Code);
 
             try (ResultSet resultSet = statement.executeQuery()) {
                 if (resultSet.next()) {
+                    rows = 1;
                     return Optional.of(mapResultSetToCurrency(resultSet));
                 } else {
                     return Optional.empty();
@@ -83,72 +176,95 @@ public class CurrencyDAO {
             }
         } catch (SQLException e) {
             throw translateToGeneralError("поиск валюты по идентификатору", e);
+        } finally {
+            event.finish(DAO, "findByCode", Code, rows);
         }
     }
 
     public Optional<Currency> findById(int id) {
-        String sql = "select * from currency where id = ?";
-        try (Connection connection = DatabaseManager.getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)) {
+        String sql = "select " + CURRENCY_COLUMNS + " from currency where id = ?";
+        DaoCallEvent event = new DaoCallEvent();
+        event.begin();
+        int rows = 0;
+        try (Connection connection = DatabaseManager.getConnection()) {
+            PreparedStatement statement = prepare(connection, sql);
             statement.setInt(1, id);
             try (ResultSet rs = statement.executeQuery()) {
-                return rs.next() ? Optional.of(mapResultSetToCurrency(rs)) : Optional.empty();
+                if (!rs.next()) {
+                    return Optional.empty();
+                }
+                rows = 1;
+                return Optional.of(mapResultSetToCurrency(rs));
             }
         } catch (SQLException e) {
             throw new DataAccessException("Ошибка. База данных недоступна).", e);
+        } finally {
+            event.finish(DAO, "findById", null, rows);
         }
     }
 
 
     public void update(Currency currency) {
         String sql = "UPDATE currency SET code = ?, full_name = ?, sign = ? WHERE id = ?";
-        try (Connection connection = DatabaseManager.getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)) {
+        DaoCallEvent event = new DaoCallEvent();
+        event.begin();
+        int rows = 0;
+        try (Connection connection = DatabaseManager.getConnection()) {
+            PreparedStatement statement = prepare(connection, sql);
             statement.setString(1, currency.getCode());
             statement.setString(2, currency.getFullName());
             statement.setString(3, currency.getSign());
             statement.setInt(4, currency.getId());
 
-            int rowsAffected = statement.executeUpdate();
-            if (rowsAffected == 0) {
+            rows = statement.executeUpdate();
+            if (rows == 0) {
                 throw new EntityNotFoundException("Валюта", currency.getCode());
-
             }
+            BY_CODE.invalidate();
         } catch (SQLException e) {
             if (isUniqueConstraintError(e)) {
                 throw new DuplicateEntityException("Валюта", currency.getCode());
             }
             throw translateToGeneralError("изменение валюты", e);
+        } finally {
+            event.finish(DAO, "update", currency.getCode(), rows);
         }
     }
 
     public void delete(int id) {
         String sql = "DELETE FROM currency WHERE id = ?";
-        try (Connection connection = DatabaseManager.getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)) {
+        DaoCallEvent event = new DaoCallEvent();
+        event.begin();
+        int rows = 0;
+        try (Connection connection = DatabaseManager.getConnection()) {
+            PreparedStatement statement = prepare(connection, sql);
 
             statement.setInt(1, id);
 
-            int rowsAffected = statement.executeUpdate();
+            rows = statement.executeUpdate();
 
-            if (rowsAffected == 0) {
+            if (rows == 0) {
                 throw new EntityNotFoundException("Валюта", String.valueOf(id));
             }
+            BY_CODE.invalidate();
         } catch (SQLException e) {
             // Проверяем на нарушение внешнего ключа
             if (isForeignKeyConstraintError(e)) {
                 throw new EntityInUseException("Невозможно удалить валюту с " + id + " потому что она используется.");
             }
             throw translateToGeneralError("удаление валюты", e);
+        } finally {
+            event.finish(DAO, "delete", null, rows);
         }
     }
 
+    // Порядок столбцов соответствует CURRENCY_COLUMNS: чтение по индексу без поиска по имени
     private Currency mapResultSetToCurrency(ResultSet rs) throws SQLException {
         Currency currency = new Currency();
-        currency.setId(rs.getInt("id"));
-        currency.setCode(rs.getString("code"));
-        currency.setFullName(rs.getString("full_name"));
-        currency.setSign(rs.getString("sign"));
+        currency.setId(rs.getInt(1));
+        currency.setCode(rs.getString(2));
+        currency.setFullName(rs.getString(3));
+        currency.setSign(rs.getString(4));
         return currency;
     }
 
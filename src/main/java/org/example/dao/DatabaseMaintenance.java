@@ -0,0 +1,194 @@
+package org.example.dao;
+
+import org.example.AppConfig;
+import org.example.DatabaseManager;
+import org.example.StatementCache;
+import org.example.metrics.Metrics;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.example.SQLiteExceptionTranslator.translateToGeneralError;
+
+/**
+ * Обслуживание файла SQLite.
+ * <p>
+ * {@link #checkpoint()} - частая и дешёвая часть: пассивная контрольная точка WAL. Она переносит
+ * в основной файл только то, что уже не нужно читателям, и никого не ждёт и не блокирует.
+ * <p>
+ * {@link #runDaily()} - ежедневная часть для часов низкой нагрузки: {@code PRAGMA optimize}
+ * (ANALYZE только там, где статистика устарела), {@code incremental_vacuum} не больше
+ * {@code db.maintenance.vacuum.pages} страниц за раз и {@code quick_check}. Данные и схему
+ * она не меняет. Выполняет её один узел кластера - держатель аренды {@code db-maintenance}.
+ * Дата последнего выполнения хранится в строке аренды, поэтому узел, захвативший аренду позже
+ * в тот же день (по поясу {@code db.maintenance.zone}), обслуживание не повторяет.
+ */
+public class DatabaseMaintenance {
+    private static final String LEASE_NAME = "db-maintenance";
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    private final long vacuumPages = AppConfig.getLong("db.maintenance.vacuum.pages", 1000);
+    private final int analysisLimit = AppConfig.getInt("db.maintenance.analysis.limit", 1000);
+    private final long leaseTtlMs = AppConfig.getLong("db.maintenance.lease.ttl.ms", 60 * 60 * 1000);
+    private final ZoneId zone = ZoneId.of(AppConfig.getString("db.maintenance.zone", "Europe/Moscow"));
+    private final RefreshLeaseDAO leaseDAO = new RefreshLeaseDAO();
+    private final String nodeId;
+
+    private final AtomicLong walFrames = new AtomicLong(-1);
+    private final AtomicLong checkpointedFrames = new AtomicLong(-1);
+    private final AtomicLong checkpointDurationMs = new AtomicLong();
+    private final AtomicLong maintenanceDurationMs = new AtomicLong();
+    private final AtomicLong pageCount = new AtomicLong();
+    private final AtomicLong freelistPages = new AtomicLong();
+    private final AtomicLong integrityOk = new AtomicLong(1);
+    private final LongAdder checkpoints = Metrics.counter("db.checkpoints");
+    private final LongAdder checkpointsBusy = Metrics.counter("db.checkpoints.busy");
+    private final LongAdder vacuumedPages = Metrics.counter("db.vacuum.freed.pages");
+    private final LongAdder maintenanceRuns = Metrics.counter("db.maintenance.runs");
+
+    private boolean leaseTableReady;
+
+    /**
+     * @param nodeId идентификатор узла для аренды ежедневного обслуживания
+     */
+    public DatabaseMaintenance(String nodeId) {
+        this.nodeId = nodeId;
+        Metrics.gauge("db.wal.frames", walFrames::get);
+        Metrics.gauge("db.wal.checkpointed.frames", checkpointedFrames::get);
+        Metrics.gauge("db.checkpoint.duration.ms", checkpointDurationMs::get);
+        Metrics.gauge("db.maintenance.duration.ms", maintenanceDurationMs::get);
+        Metrics.gauge("db.page.count", pageCount::get);
+        Metrics.gauge("db.freelist.pages", freelistPages::get);
+        Metrics.gauge("db.integrity.ok", integrityOk::get);
+    }
+
+    /**
+     * Пассивная контрольная точка WAL. Вне режима WAL ничего не делает.
+     */
+    public void checkpoint() {
+        long startedAt = System.nanoTime();
+        try (Connection connection = DatabaseManager.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("PRAGMA wal_checkpoint(PASSIVE)")) {
+            if (result.next()) {
+                // busy, кадров в WAL, перенесено кадров; -1 - БД не в режиме WAL
+                if (result.getInt(1) != 0) {
+                    checkpointsBusy.increment();
+                }
+                walFrames.set(result.getLong(2));
+                checkpointedFrames.set(result.getLong(3));
+            }
+            checkpoints.increment();
+        } catch (SQLException e) {
+            throw translateToGeneralError("контрольная точка WAL", e);
+        } finally {
+            checkpointDurationMs.set((System.nanoTime() - startedAt) / 1_000_000);
+        }
+    }
+
+    /**
+     * Ежедневное обслуживание. Пропускается, если его сейчас выполняет другой узел
+     * или сегодня оно уже выполнено.
+     *
+     * @return false, если аренду держит другой узел или обслуживание сегодня уже было
+     */
+    public boolean runDaily() {
+        if (!leaseTableReady) {
+            leaseDAO.createTableIfMissing();
+            leaseTableReady = true;
+        }
+        if (!leaseDAO.tryAcquire(LEASE_NAME, nodeId, System.currentTimeMillis(), leaseTtlMs)) {
+            return false;
+        }
+        // Проверка под арендой: пока она у нас, отметку о выполнении никто другой не сделает
+        long lastRunAt = leaseDAO.findRefreshedAt(LEASE_NAME);
+        if (lastRunAt > 0 && date(lastRunAt).equals(date(System.currentTimeMillis()))) {
+            leaseDAO.release(LEASE_NAME, nodeId);
+            return false;
+        }
+        long startedAt = System.nanoTime();
+        try (Connection connection = DatabaseManager.getConnection()) {
+            enableIncrementalVacuum(connection);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("PRAGMA analysis_limit = " + analysisLimit);
+                statement.execute("PRAGMA optimize");
+
+                long freeBefore = queryLong(statement, "PRAGMA freelist_count");
+                // Каждый шаг освобождает одну страницу; execute() сделал бы только первый, executeUpdate() - все
+                statement.executeUpdate("PRAGMA incremental_vacuum(" + vacuumPages + ")");
+                long freeAfter = queryLong(statement, "PRAGMA freelist_count");
+                vacuumedPages.add(Math.max(0, freeBefore - freeAfter));
+                freelistPages.set(freeAfter);
+                pageCount.set(queryLong(statement, "PRAGMA page_count"));
+
+                List<String> problems = quickCheck(statement);
+                integrityOk.set(problems.isEmpty() ? 1 : 0);
+                if (!problems.isEmpty()) {
+                    System.err.println("Database quick_check found problems: " + problems);
+                }
+            }
+            maintenanceRuns.increment();
+            leaseDAO.markRefreshed(LEASE_NAME, nodeId, System.currentTimeMillis());
+        } catch (SQLException e) {
+            throw translateToGeneralError("обслуживание БД", e);
+        } finally {
+            maintenanceDurationMs.set((System.nanoTime() - startedAt) / 1_000_000);
+            leaseDAO.release(LEASE_NAME, nodeId);
+        }
+        System.out.println("Database maintenance finished in " + maintenanceDurationMs.get() + " ms: "
+                + pageCount.get() + " pages, " + freelistPages.get() + " free.");
+        return true;
+    }
+
+    private LocalDate date(long epochMillis) {
+        return Instant.ofEpochMilli(epochMillis).atZone(zone).toLocalDate();
+    }
+
+    /**
+     * incremental_vacuum работает только в режиме auto_vacuum = INCREMENTAL, а включается он
+     * для существующей БД полным VACUUM. Это делается один раз; VACUUM ждёт писателей,
+     * но в режиме WAL читатели продолжают работать.
+     */
+    private void enableIncrementalVacuum(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            if (queryLong(statement, "PRAGMA auto_vacuum") == AUTO_VACUUM_INCREMENTAL) {
+                return;
+            }
+        }
+        // VACUUM не выполняется, пока на соединении есть другие подготовленные запросы
+        StatementCache.clear(connection);
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA auto_vacuum = INCREMENTAL");
+            statement.execute("VACUUM");
+        }
+        System.out.println("Database switched to auto_vacuum = INCREMENTAL.");
+    }
+
+    private static List<String> quickCheck(Statement statement) throws SQLException {
+        List<String> problems = new ArrayList<>();
+        try (ResultSet result = statement.executeQuery("PRAGMA quick_check")) {
+            while (result.next()) {
+                String line = result.getString(1);
+                if (!"ok".equals(line)) {
+                    problems.add(line);
+                }
+            }
+        }
+        return problems;
+    }
+
+    private static long queryLong(Statement statement, String sql) throws SQLException {
+        try (ResultSet result = statement.executeQuery(sql)) {
+            return result.next() ? result.getLong(1) : 0;
+        }
+    }
+}
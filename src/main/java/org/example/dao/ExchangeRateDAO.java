@@ -5,28 +5,42 @@ import org.example.exception.DataAccessException;
 import org.example.exception.DuplicateEntityException;
 import org.example.exception.EntityNotFoundException;
 import org.example.model.ExchangeRate;
+import org.example.profiling.DaoCallEvent;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.example.SQLiteExceptionTranslator.isUniqueConstraintError;
 import static org.example.SQLiteExceptionTranslator.translateToGeneralError;
+import static org.example.StatementCache.prepare;
+import static org.example.StatementCache.prepareReturningKeys;
 
 public class ExchangeRateDAO {
+    private static final String DAO = "ExchangeRateDAO";
+    private static final String EXCHANGE_RATE_COLUMNS = "id, id_currency, nominal, rate";
+    // Общий для всех экземпляров DAO: сервисы создают свои экземпляры, а таблица одна
+    private static final SingleFlight<String, Optional<ExchangeRate>> BY_CURRENCY_CODE =
+            new SingleFlight<>("exchange_rate.by_currency_code", found -> found.map(ExchangeRate::new));
 
     public ExchangeRate save(ExchangeRate exchangeRate) {
         String sql = "INSERT INTO exchange_rate (id_currency, nominal, rate) VALUES (?, ?, ?)";
-        try (Connection connection = DatabaseManager.getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        DaoCallEvent event = new DaoCallEvent();
+        event.begin();
+        int rows = 0;
+        try (Connection connection = DatabaseManager.getConnection()) {
+            PreparedStatement statement = prepareReturningKeys(connection, sql);
             statement.setInt(1, exchangeRate.getIdCurrency());
             statement.setInt(2, exchangeRate.getNominal());
             statement.setBigDecimal(3, exchangeRate.getRate());
             // Проверка, что строка действительно была добавлена
-            int rowsAffected = statement.executeUpdate();
+            rows = statement.executeUpdate();
 
-            if (rowsAffected == 0) {
+            if (rows == 0) {
                 throw new DataAccessException("Не удалось создать обменный курс, строка не добавлена.", null);
             }
             // Получаем сгенерированный ID
@@ -38,6 +52,7 @@ public class ExchangeRateDAO {
                     throw new DataAccessException("Не удалось создать обменный курс, id не получен.", null);
                 }
             }
+            BY_CURRENCY_CODE.invalidate();
             return exchangeRate;
         } catch (SQLException e) {
             // Проверяем на дубликат
@@ -46,36 +61,77 @@ public class ExchangeRateDAO {
             }
             // Для всех остальных проблем - общий обработчик
             throw translateToGeneralError("сохранение обменного курса", e);
+        } finally {
+            event.finish(DAO, "save", null, rows);
         }
     }
 
     public List<ExchangeRate> findAll() {
         List<ExchangeRate> exchangeRates = new ArrayList<>();
-        String sql = "select * from exchange_rate";
+        String sql = "select " + EXCHANGE_RATE_COLUMNS + " from exchange_rate";
+        DaoCallEvent event = new DaoCallEvent();
+        event.begin();
         try (Connection connection = DatabaseManager.getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql);
-             ResultSet resultSet = statement.executeQuery()) {
+             ResultSet resultSet = prepare(connection, sql).executeQuery()) {
 
             while (resultSet.next()) {
                 exchangeRates.add(mapResultSetToExchangeRate(resultSet));
             }
         } catch (SQLException e) {
             throw translateToGeneralError("Получение всех обменных курсов", e);
+        } finally {
+            event.finish(DAO, "findAll", null, exchangeRates.size());
         }
         return exchangeRates;
     }
 
+    /**
+     * Все курсы одним запросом (код валюты -> курс).
+     */
+    public Map<String, ExchangeRate> findAllByCurrencyCode() {
+        Map<String, ExchangeRate> ratesByCode = new HashMap<>();
+        String sql = "select ex.id, ex.id_currency, ex.nominal, ex.rate, c.code " +
+                "from exchange_rate ex " +
+                "JOIN currency c ON ex.id_currency = c.id";
+        DaoCallEvent event = new DaoCallEvent();
+        event.begin();
+        try (Connection connection = DatabaseManager.getConnection();
+             ResultSet resultSet = prepare(connection, sql).executeQuery()) {
+
+            while (resultSet.next()) {
+                ratesByCode.put(resultSet.getString(5), mapResultSetToExchangeRate(resultSet));
+            }
+        } catch (SQLException e) {
+            throw translateToGeneralError("Получение всех обменных курсов", e);
+        } finally {
+            event.finish(DAO, "findAllByCurrencyCode", null, ratesByCode.size());
+        }
+        return ratesByCode;
+    }
+
+    /**
+     * Одновременные поиски курса одной валюты выполняются одним запросом к БД.
+     */
     public Optional<ExchangeRate> findByCurrencyCode(String currencyCode) {
+        String code = currencyCode.toUpperCase();
+        return BY_CURRENCY_CODE.execute(code, () -> queryByCurrencyCode(code));
+    }
+
+    private Optional<ExchangeRate> queryByCurrencyCode(String currencyCode) {
         String sql = "select ex.id, ex.id_currency, ex.nominal, ex.rate " +
                 "from exchange_rate ex " +
                 "JOIN currency c ON ex.id_currency = c.id " +
                 "where c.code = ?";
-        try (Connection connection = DatabaseManager.getConnection();
-             PreparedStatement statement = connection.prepareStatement(sql)) {
-            statement.setString(1, currencyCode.toUpperCase());
+        DaoCallEvent event = new DaoCallEvent();
+        event.begin();
+        int rows = 0;
+        try (Connection connection = DatabaseManager.getConnection()) {
+            PreparedStatement statement = prepare(connection, sql);
+            statement.setString(1, currencyCode);
 
             try (ResultSet resultSet = statement.executeQuery()) {
                 if (resultSet.next()) {
+                    rows = 1;
                     return Optional.of(mapResultSetToExchangeRate(resultSet));
                 } else {
                     return Optional.empty();
@@ -83,54 +139,123 @@ public class ExchangeRateDAO {
             }
         } catch (SQLException e) {
             throw translateToGeneralError("поиск обменного курса по идентификатору валюты", e);
+        } finally {
+            event.finish(DAO, "findByCurrencyCode", currencyCode, rows);
         }
     }
 
     public void update(ExchangeRate rate) {
         String sql = "UPDATE exchange_rate SET nominal = ?, rate = ? WHERE id = ?";
-
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement statement = conn.prepareStatement(sql)) {
+        DaoCallEvent event = new DaoCallEvent();
+        event.begin();
+        int rows = 0;
+        try (Connection conn = DatabaseManager.getConnection()) {
+            PreparedStatement statement = prepare(conn, sql);
 
             statement.setInt(1, rate.getNominal());
             statement.setBigDecimal(2, rate.getRate());
             statement.setInt(3, rate.getId()); // ID для условия WHERE
 
-            int affectedRows = statement.executeUpdate();
+            rows = statement.executeUpdate();
 
-            if (affectedRows == 0) {
+            if (rows == 0) {
                 throw new EntityNotFoundException("Обменный курс", "для валюты id= " + rate.getIdCurrency());
             }
+            BY_CURRENCY_CODE.invalidate();
         } catch (SQLException e) {
             if (isUniqueConstraintError(e)) {
                 throw new DuplicateEntityException("Обменный курс", "для валюты id= " + rate.getIdCurrency());
             }
             throw translateToGeneralError("изменение обменного курса по идентификатору валюты", e);
+        } finally {
+            event.finish(DAO, "update", null, rows);
         }
+    }
 
+    /**
+     * Вставляет или обновляет курсы пачкой в одной транзакции (один fsync на всю пачку).
+     * Курс определяется по id валюты, так как для валюты допускается только один курс.
+     */
+    public void upsertAll(Collection<ExchangeRate> rates) {
+        String sql = "INSERT INTO exchange_rate (id_currency, nominal, rate) VALUES (?, ?, ?) " +
+                "ON CONFLICT(id_currency) DO UPDATE SET nominal = excluded.nominal, rate = excluded.rate";
+        DaoCallEvent event = new DaoCallEvent();
+        event.begin();
+        int rows = 0;
+        try (Connection conn = DatabaseManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                PreparedStatement statement = prepare(conn, sql);
+                for (ExchangeRate rate : rates) {
+                    statement.setInt(1, rate.getIdCurrency());
+                    statement.setInt(2, rate.getNominal());
+                    statement.setBigDecimal(3, rate.getRate());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                conn.commit();
+                rows = rates.size();
+                BY_CURRENCY_CODE.invalidate();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw translateToGeneralError("пакетное сохранение обменных курсов", e);
+        } finally {
+            event.finish(DAO, "upsertAll", null, rows);
+        }
     }
 
     public void delete(int id) {
         String sql = "DELETE FROM exchange_rate WHERE id = ?";
-        try (Connection conn = DatabaseManager.getConnection();
-             PreparedStatement statement = conn.prepareStatement(sql)) {
+        DaoCallEvent event = new DaoCallEvent();
+        event.begin();
+        int rows = 0;
+        try (Connection conn = DatabaseManager.getConnection()) {
+            PreparedStatement statement = prepare(conn, sql);
             statement.setInt(1, id);
-            int affectedRows = statement.executeUpdate();
-            if (affectedRows == 0) {
+            rows = statement.executeUpdate();
+            if (rows == 0) {
                 throw new EntityNotFoundException("Обменный курс", String.valueOf(id));
             }
+            BY_CURRENCY_CODE.invalidate();
         } catch (SQLException e) {
             throw translateToGeneralError("удаление обменного курса", e);
+        } finally {
+            event.finish(DAO, "delete", null, rows);
         }
     }
 
+    /**
+     * Удаляет курс валюты, если он есть (курс без валюты остаётся, так как внешние ключи SQLite не включены).
+     */
+    public void deleteByCurrencyId(int currencyId) {
+        String sql = "DELETE FROM exchange_rate WHERE id_currency = ?";
+        DaoCallEvent event = new DaoCallEvent();
+        event.begin();
+        int rows = 0;
+        try (Connection conn = DatabaseManager.getConnection()) {
+            PreparedStatement statement = prepare(conn, sql);
+            statement.setInt(1, currencyId);
+            rows = statement.executeUpdate();
+            if (rows > 0) {
+                BY_CURRENCY_CODE.invalidate();
+            }
+        } catch (SQLException e) {
+            throw translateToGeneralError("удаление обменного курса валюты", e);
+        } finally {
+            event.finish(DAO, "deleteByCurrencyId", null, rows);
+        }
+    }
 
+    // Порядок столбцов соответствует EXCHANGE_RATE_COLUMNS: чтение по индексу без поиска по имени
     private ExchangeRate mapResultSetToExchangeRate(ResultSet resultSet) throws SQLException {
         ExchangeRate exchangeRate = new ExchangeRate();
-        exchangeRate.setId(resultSet.getInt("id"));
-        exchangeRate.setIdCurrency(resultSet.getInt("id_currency"));
-        exchangeRate.setNominal(resultSet.getInt("nominal"));
-        exchangeRate.setRate(resultSet.getBigDecimal("rate"));
+        exchangeRate.setId(resultSet.getInt(1));
+        exchangeRate.setIdCurrency(resultSet.getInt(2));
+        exchangeRate.setNominal(resultSet.getInt(3));
+        exchangeRate.setRate(resultSet.getBigDecimal(4));
         return exchangeRate;
     }
 }
@@ -0,0 +1,434 @@
+package org.example.dao;
+
+import org.example.AppConfig;
+import org.example.DatabaseManager;
+import org.example.SQLiteExceptionTranslator;
+import org.example.exception.DataAccessException;
+import org.example.exception.DataAccessResourceFailureException;
+import org.example.metrics.Metrics;
+import org.example.model.ExchangeRate;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Отложенная (write-behind) запись курсов в SQLite.
+ * <p>
+ * Изменение подтверждается, как только оно записано в {@link RateWriteAheadLog} с fsync.
+ * Накопленные изменения сбрасываются в БД одной транзакцией каждые
+ * {@code writebehind.flush.interval.ms} миллисекунд или по достижении
+ * {@code writebehind.flush.batch.size} записей. Несколько правок одного курса
+ * между сбросами схлопываются в последнюю. После аварии журнал воспроизводится при старте.
+ * <p>
+ * Если пачка не записалась из-за самих данных (а не недоступности БД), записи пишутся по одной:
+ * остальные проходят, а неудачная повторяется при следующих сбросах. После
+ * {@code writebehind.max.attempts} неудач запись уходит в {@code dead-letter.log} рядом с журналом,
+ * чтобы не держать очередь и сегменты журнала бесконечно.
+ */
+public final class ExchangeRateWriteBehind {
+    private static final ExchangeRateWriteBehind INSTANCE = new ExchangeRateWriteBehind();
+
+    private final boolean enabled = AppConfig.getBoolean("writebehind.enabled", false);
+    private final long flushIntervalMs = AppConfig.getLong("writebehind.flush.interval.ms", 200);
+    private final int flushBatchSize = AppConfig.getInt("writebehind.flush.batch.size", 500);
+    private final int maxAttempts = AppConfig.getInt("writebehind.max.attempts", 5);
+
+    private final ExchangeRateDAO exchangeRateDAO = new ExchangeRateDAO();
+    // Запись в журнал + постановка в очередь (read) не должны пересекаться со сменой сегмента (write)
+    private final ReadWriteLock rollLock = new ReentrantReadWriteLock();
+    private final AtomicLong seq = new AtomicLong();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final LongAdder deadLetters = Metrics.counter("writebehind.dead.letters");
+    // Число неудачных попыток записи по seq; только в потоке flusher (и при старте до его запуска)
+    private final Map<Long, Integer> failedAttempts = new HashMap<>();
+
+    private volatile Map<String, RateWriteAheadLog.Entry> pending = new ConcurrentHashMap<>();
+    // Пачка, которая сейчас пишется в БД: её записи уже не в pending, но ещё не в БД
+    private volatile Map<String, RateWriteAheadLog.Entry> writing = Map.of();
+    // Коды валют, для которых сейчас выполняется submitIfAbsent
+    private final Map<String, Boolean> adding = new ConcurrentHashMap<>();
+    private RateWriteAheadLog wal;
+    private Path deadLetterFile;
+    private ScheduledExecutorService flusher;
+    private volatile boolean started;
+
+    private ExchangeRateWriteBehind() {
+    }
+
+    public static ExchangeRateWriteBehind getInstance() {
+        return INSTANCE;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Воспроизводит журнал, оставшийся после прошлого запуска, и запускает фоновый сброс в БД.
+     */
+    public synchronized void start() throws IOException {
+        if (!enabled || started) {
+            return;
+        }
+        Path walDir = Paths.get(AppConfig.getString("writebehind.wal.dir",
+                DatabaseManager.getDatabaseDirectory().resolve("rate-wal").toString()));
+        wal = new RateWriteAheadLog(walDir);
+        deadLetterFile = walDir.resolve("dead-letter.log");
+
+        List<RateWriteAheadLog.Entry> recovered = wal.replay();
+        List<RateWriteAheadLog.Entry> retry = List.of();
+        if (!recovered.isEmpty()) {
+            for (RateWriteAheadLog.Entry entry : recovered) {
+                seq.accumulateAndGet(entry.getSeq(), Math::max);
+            }
+            Map<String, RateWriteAheadLog.Entry> latest = latestByCode(recovered);
+            retry = write(latest.values());
+            System.out.println("Write-behind: восстановлено из журнала курсов: " + (latest.size() - retry.size()));
+        }
+        long opened = wal.open();
+        for (RateWriteAheadLog.Entry entry : retry) {
+            requeue(entry);
+        }
+        // Всё, что было в старых сегментах, уже лежит в БД или переписано в новый сегмент
+        wal.deleteSegmentsUpTo(opened - 1);
+
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "rate-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        started = true;
+    }
+
+    /**
+     * Фиксирует изменение курса в журнале и ставит его в очередь на запись в БД.
+     * Возвращает управление после fsync журнала.
+     */
+    public void submit(int currencyId, String currencyCode, int nominal, BigDecimal rate) {
+        if (!started) {
+            throw new IllegalStateException("Write-behind не запущен.");
+        }
+        RateWriteAheadLog.Entry entry =
+                new RateWriteAheadLog.Entry(seq.incrementAndGet(), currencyId, currencyCode, nominal, rate);
+        rollLock.readLock().lock();
+        try {
+            wal.append(entry);
+            pending.merge(currencyCode, entry, (old, fresh) -> fresh.getSeq() > old.getSeq() ? fresh : old);
+        } catch (IOException e) {
+            throw new DataAccessException("Не удалось записать изменение курса в журнал.", e);
+        } finally {
+            rollLock.readLock().unlock();
+        }
+
+        if (pendingCount.incrementAndGet() >= flushBatchSize && flushRequested.compareAndSet(false, true)) {
+            flusher.execute(this::flushQuietly);
+        }
+    }
+
+    /**
+     * Ставит в очередь курс валюты, у которой его ещё нет. Проверка и постановка в очередь
+     * атомарны относительно других вызовов для той же валюты, поэтому из двух одновременных
+     * добавлений проходит одно, а не второе молча перезаписывает первое.
+     * <p>
+     * Курс считается существующим, если он ждёт записи, пишется в БД в этот момент
+     * или его находит {@code stored} (представление в памяти или БД). Записи проверяются
+     * в том же порядке, в котором переходят из очереди в БД, поэтому переход не проскочит между проверками.
+     *
+     * @return false, если курс уже есть или его одновременно добавляет другой запрос
+     */
+    public boolean submitIfAbsent(int currencyId, String currencyCode, int nominal, BigDecimal rate,
+                                  BooleanSupplier stored) {
+        if (adding.putIfAbsent(currencyCode, Boolean.TRUE) != null) {
+            return false;
+        }
+        try {
+            if (pending.containsKey(currencyCode) || writing.containsKey(currencyCode) || stored.getAsBoolean()) {
+                return false;
+            }
+            submit(currencyId, currencyCode, nominal, rate);
+            return true;
+        } finally {
+            adding.remove(currencyCode);
+        }
+    }
+
+    /**
+     * Сбрасывает ожидающий курс удалённой валюты, чтобы следующий сброс не записал курс
+     * без валюты. Выполняется в потоке сброса, поэтому не пересекается с записью пачки;
+     * курс, который пачка успела записать до удаления валюты, тоже удаляется.
+     */
+    public void discard(int currencyId, String currencyCode) {
+        if (!started) {
+            return;
+        }
+        try {
+            flusher.submit(() -> {
+                rollLock.readLock().lock();
+                try {
+                    wal.append(RateWriteAheadLog.Entry.discard(seq.incrementAndGet(), currencyId, currencyCode));
+                    pending.remove(currencyCode);
+                } finally {
+                    rollLock.readLock().unlock();
+                }
+                exchangeRateDAO.deleteByCurrencyId(currencyId);
+                return null;
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataAccessException("Сброс ожидающего курса прерван.", e);
+        } catch (ExecutionException e) {
+            throw new DataAccessException("Не удалось сбросить ожидающий курс валюты " + currencyCode + ".", e.getCause());
+        }
+    }
+
+    /**
+     * Ещё не записанные в БД изменения (код валюты -> курс).
+     */
+    public Map<String, ExchangeRate> pendingRates() {
+        Map<String, ExchangeRate> result = new LinkedHashMap<>();
+        for (RateWriteAheadLog.Entry entry : pending.values()) {
+            result.put(entry.getCurrencyCode(), toRate(entry));
+        }
+        return result;
+    }
+
+    /**
+     * Синхронно сбрасывает все накопленные изменения в БД.
+     */
+    public void flushNow() {
+        if (!started) {
+            return;
+        }
+        try {
+            flusher.submit(this::flush).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataAccessException("Сброс курсов в БД прерван.", e);
+        } catch (ExecutionException e) {
+            throw new DataAccessException("Не удалось сбросить курсы в БД.", e.getCause());
+        }
+    }
+
+    public synchronized void stop() {
+        if (!started) {
+            return;
+        }
+        try {
+            flushNow();
+        } catch (DataAccessException e) {
+            System.err.println("Write-behind: не удалось сбросить курсы при остановке, они будут восстановлены из журнала. " + e.getMessage());
+        }
+        flusher.shutdown();
+        try {
+            wal.close();
+        } catch (IOException e) {
+            System.err.println("Write-behind: ошибка закрытия журнала: " + e.getMessage());
+        }
+        started = false;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            System.err.println("Write-behind: ошибка сброса курсов в БД, повтор при следующем цикле. " + e.getMessage());
+        }
+    }
+
+    // Выполняется только в потоке flusher
+    private Void flush() throws IOException {
+        flushRequested.set(false);
+        Map<String, RateWriteAheadLog.Entry> batch;
+        long closedSegment;
+        rollLock.writeLock().lock();
+        try {
+            if (pending.isEmpty()) {
+                return null;
+            }
+            batch = pending;
+            // Сначала writing, затем новая очередь: запись всё время видна хотя бы в одной из них
+            writing = batch;
+            pending = new ConcurrentHashMap<>();
+            pendingCount.set(0);
+            closedSegment = wal.roll();
+        } finally {
+            rollLock.writeLock().unlock();
+        }
+
+        try {
+            List<RateWriteAheadLog.Entry> retry;
+            try {
+                retry = write(batch.values());
+            } catch (DataAccessException e) {
+                // БД недоступна: возвращаем пачку в очередь, не затирая более свежие правки;
+                // сегменты журнала остаются до успешного сброса
+                rollLock.readLock().lock();
+                try {
+                    batch.forEach((code, entry) -> pending.merge(code, entry,
+                            (queued, restored) -> queued.getSeq() > restored.getSeq() ? queued : restored));
+                    pendingCount.addAndGet(batch.size());
+                } finally {
+                    rollLock.readLock().unlock();
+                }
+                throw e;
+            }
+            // Неудачные записи переписываются в текущий сегмент, поэтому закрытые можно удалить
+            for (RateWriteAheadLog.Entry entry : retry) {
+                requeue(entry);
+            }
+        } finally {
+            // Записи пачки уже в БД или снова в очереди
+            writing = Map.of();
+        }
+        wal.deleteSegmentsUpTo(closedSegment);
+        if (!failedAttempts.isEmpty()) {
+            // Счётчики записей, которые вытеснены более свежими правками, больше не нужны
+            Set<Long> queued = new HashSet<>();
+            pending.values().forEach(entry -> queued.add(entry.getSeq()));
+            failedAttempts.keySet().retainAll(queued);
+        }
+        return null;
+    }
+
+    /**
+     * Пишет записи в БД пачкой, а если пачка не прошла из-за данных - по одной.
+     *
+     * @return записи, которые нужно повторить при следующем сбросе
+     * @throws DataAccessException если БД недоступна или занята - повторять нужно всю пачку
+     */
+    private List<RateWriteAheadLog.Entry> write(Collection<RateWriteAheadLog.Entry> entries) {
+        try {
+            exchangeRateDAO.upsertAll(toRates(entries));
+            entries.forEach(entry -> failedAttempts.remove(entry.getSeq()));
+            return List.of();
+        } catch (DataAccessException e) {
+            if (isTransient(e)) {
+                throw e;
+            }
+        }
+
+        List<RateWriteAheadLog.Entry> retry = new ArrayList<>();
+        for (RateWriteAheadLog.Entry entry : entries) {
+            try {
+                exchangeRateDAO.upsertAll(List.of(toRate(entry)));
+                failedAttempts.remove(entry.getSeq());
+            } catch (DataAccessException e) {
+                if (isTransient(e)) {
+                    // Уже записанные курсы запишутся повторно - upsert это допускает
+                    throw e;
+                }
+                int attempts = failedAttempts.merge(entry.getSeq(), 1, Integer::sum);
+                if (attempts >= maxAttempts) {
+                    failedAttempts.remove(entry.getSeq());
+                    deadLetter(entry, e);
+                } else {
+                    retry.add(entry);
+                }
+            }
+        }
+        return retry;
+    }
+
+    /**
+     * Возвращает запись в очередь и в текущий сегмент журнала, если её не вытеснила более свежая правка.
+     */
+    private void requeue(RateWriteAheadLog.Entry entry) throws IOException {
+        rollLock.readLock().lock();
+        try {
+            RateWriteAheadLog.Entry current = pending.get(entry.getCurrencyCode());
+            if (current != null && current.getSeq() > entry.getSeq()) {
+                return;
+            }
+            wal.append(entry);
+            pending.merge(entry.getCurrencyCode(), entry, (old, fresh) -> fresh.getSeq() > old.getSeq() ? fresh : old);
+            pendingCount.incrementAndGet();
+        } finally {
+            rollLock.readLock().unlock();
+        }
+    }
+
+    private void deadLetter(RateWriteAheadLog.Entry entry, DataAccessException error) {
+        deadLetters.increment();
+        String cause = error.getCause() != null ? error.getCause().getMessage() : error.getMessage();
+        String line = Instant.now() + " seq=" + entry.getSeq() + " code=" + entry.getCurrencyCode()
+                + " currencyId=" + entry.getCurrencyId() + " nominal=" + entry.getNominal()
+                + " rate=" + entry.getRate().toPlainString() + " error=" + cause + System.lineSeparator();
+        System.err.println("Write-behind: курс " + entry.getCurrencyCode() + " не записан после " + maxAttempts
+                + " попыток и отложен в " + deadLetterFile + ": " + cause);
+        try (Writer out = Files.newBufferedWriter(deadLetterFile, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            out.write(line);
+        } catch (IOException e) {
+            System.err.println("Write-behind: не удалось записать " + deadLetterFile + ": " + e.getMessage()
+                    + ". Потерянная запись: " + line.trim());
+        }
+    }
+
+    private static boolean isTransient(DataAccessException e) {
+        return e instanceof DataAccessResourceFailureException
+                || e.getCause() instanceof SQLException && SQLiteExceptionTranslator.isBusyError((SQLException) e.getCause());
+    }
+
+    /**
+     * Последний курс каждой валюты из записей журнала в порядке их записи; отметка сброса
+     * отменяет более ранние курсы своей валюты.
+     */
+    static Map<String, RateWriteAheadLog.Entry> latestByCode(List<RateWriteAheadLog.Entry> entries) {
+        Map<String, RateWriteAheadLog.Entry> latest = new LinkedHashMap<>();
+        for (RateWriteAheadLog.Entry entry : entries) {
+            if (entry.isDiscard()) {
+                // Валюту удалили: её более ранние курсы не записываем
+                latest.remove(entry.getCurrencyCode());
+            } else {
+                latest.put(entry.getCurrencyCode(), entry);
+            }
+        }
+        return latest;
+    }
+
+    private static List<ExchangeRate> toRates(Collection<RateWriteAheadLog.Entry> entries) {
+        List<ExchangeRate> rates = new ArrayList<>(entries.size());
+        for (RateWriteAheadLog.Entry entry : entries) {
+            rates.add(toRate(entry));
+        }
+        return rates;
+    }
+
+    private static ExchangeRate toRate(RateWriteAheadLog.Entry entry) {
+        ExchangeRate rate = new ExchangeRate();
+        rate.setIdCurrency(entry.getCurrencyId());
+        rate.setNominal(entry.getNominal());
+        rate.setRate(entry.getRate());
+        return rate;
+    }
+}
@@ -0,0 +1,153 @@
+package org.example.dao;
+
+import org.example.DatabaseManager;
+import org.example.model.RateRollup;
+import org.example.model.RollupPeriod;
+import org.example.profiling.DaoCallEvent;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.example.SQLiteExceptionTranslator.translateToGeneralError;
+import static org.example.StatementCache.prepare;
+
+/**
+ * Сводки курсов по периодам (таблица {@code rate_rollup_units}). Строка периода обновляется
+ * при каждой записи курса: максимум, минимум и сумма накапливаются, последнее значение заменяется.
+ * Поэтому чтение сводки не зависит от длины истории.
+ * <p>
+ * Значения хранятся целыми числами в единицах 10^-{@value RateRollup#SCALE}: MAX, MIN и сумма
+ * в SQLite над INTEGER точны, а над REAL накапливали бы ошибку двоичного округления.
+ */
+public class RateRollupDAO {
+    private static final String DAO = "RateRollupDAO";
+    private static volatile boolean tableReady;
+
+    public void createTableIfMissing() {
+        if (tableReady) {
+            return;
+        }
+        String sql = "CREATE TABLE IF NOT EXISTS rate_rollup_units (" +
+                "code TEXT NOT NULL, " +
+                "period TEXT NOT NULL, " +
+                "period_start TEXT NOT NULL, " +
+                "open INTEGER NOT NULL, " +
+                "high INTEGER NOT NULL, " +
+                "low INTEGER NOT NULL, " +
+                "close INTEGER NOT NULL, " +
+                "sum INTEGER NOT NULL, " +
+                "samples INTEGER NOT NULL, " +
+                "updated_at INTEGER NOT NULL, " +
+                "PRIMARY KEY (code, period, period_start)) WITHOUT ROWID";
+        try (Connection connection = DatabaseManager.getConnection()) {
+            prepare(connection, sql).executeUpdate();
+            tableReady = true;
+        } catch (SQLException e) {
+            throw translateToGeneralError("создание таблицы сводок курсов", e);
+        }
+    }
+
+    /**
+     * Учитывает новые значения курсов во всех периодах одной транзакцией.
+     *
+     * @param ratesByCode курс за единицу валюты в рублях по коду
+     * @param date        дата курсов
+     */
+    public void record(Map<String, BigDecimal> ratesByCode, LocalDate date, long nowMillis) {
+        createTableIfMissing();
+        String sql = "INSERT INTO rate_rollup_units (code, period, period_start, open, high, low, close, sum, samples, updated_at) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, 1, ?) " +
+                "ON CONFLICT(code, period, period_start) DO UPDATE SET " +
+                "high = MAX(high, excluded.high), low = MIN(low, excluded.low), close = excluded.close, " +
+                "sum = sum + excluded.sum, samples = samples + 1, updated_at = excluded.updated_at";
+        DaoCallEvent event = new DaoCallEvent();
+        event.begin();
+        int rows = 0;
+        try (Connection connection = DatabaseManager.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                PreparedStatement statement = prepare(connection, sql);
+                for (Map.Entry<String, BigDecimal> entry : ratesByCode.entrySet()) {
+                    long rate = toUnits(entry.getValue());
+                    for (RollupPeriod period : RollupPeriod.values()) {
+                        statement.setString(1, entry.getKey());
+                        statement.setString(2, period.getCode());
+                        statement.setString(3, period.start(date).toString());
+                        statement.setLong(4, rate);
+                        statement.setLong(5, rate);
+                        statement.setLong(6, rate);
+                        statement.setLong(7, rate);
+                        statement.setLong(8, rate);
+                        statement.setLong(9, nowMillis);
+                        statement.addBatch();
+                    }
+                }
+                statement.executeBatch();
+                connection.commit();
+                rows = ratesByCode.size() * RollupPeriod.values().length;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw translateToGeneralError("обновление сводок курсов", e);
+        } finally {
+            event.finish(DAO, "record", null, rows);
+        }
+    }
+
+    /**
+     * Последние limit периодов валюты по возрастанию даты. Чтение идёт по первичному ключу.
+     */
+    public List<RateRollup> findRecent(String code, RollupPeriod period, int limit) {
+        createTableIfMissing();
+        String sql = "SELECT period_start, open, high, low, close, sum, samples FROM rate_rollup_units " +
+                "WHERE code = ? AND period = ? ORDER BY period_start DESC LIMIT ?";
+        List<RateRollup> rollups = new ArrayList<>();
+        DaoCallEvent event = new DaoCallEvent();
+        event.begin();
+        try (Connection connection = DatabaseManager.getConnection()) {
+            PreparedStatement statement = prepare(connection, sql);
+            statement.setString(1, code);
+            statement.setString(2, period.getCode());
+            statement.setInt(3, limit);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    RateRollup rollup = new RateRollup();
+                    rollup.setPeriodStart(LocalDate.parse(resultSet.getString(1)));
+                    rollup.setOpen(fromUnits(resultSet.getLong(2)));
+                    rollup.setHigh(fromUnits(resultSet.getLong(3)));
+                    rollup.setLow(fromUnits(resultSet.getLong(4)));
+                    rollup.setClose(fromUnits(resultSet.getLong(5)));
+                    rollup.setSamples(resultSet.getInt(7));
+                    rollup.setAverage(fromUnits(resultSet.getLong(6))
+                            .divide(BigDecimal.valueOf(rollup.getSamples()), RateRollup.SCALE, RoundingMode.HALF_UP));
+                    rollups.add(rollup);
+                }
+            }
+        } catch (SQLException e) {
+            throw translateToGeneralError("получение сводок курсов", e);
+        } finally {
+            event.finish(DAO, "findRecent", code, rollups.size());
+        }
+        Collections.reverse(rollups);
+        return rollups;
+    }
+
+    private static long toUnits(BigDecimal rate) {
+        return rate.setScale(RateRollup.SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    private static BigDecimal fromUnits(long units) {
+        return BigDecimal.valueOf(units, RateRollup.SCALE);
+    }
+}
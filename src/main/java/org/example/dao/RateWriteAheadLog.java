@@ -0,0 +1,304 @@
+package org.example.dao;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Локальный журнал упреждающей записи (WAL) для изменений курсов.
+ * <p>
+ * Журнал разбит на сегменты {@code rate-wal-<номер>.log}. Каждая запись имеет вид
+ * {@code [int длина][long crc32][данные]}; недописанный хвост после аварии игнорируется.
+ * <p>
+ * fsync выполняется группами: поток, который первым ждёт подтверждения, делает
+ * {@code force()} сразу за всех, кто успел дописать свои записи к этому моменту.
+ */
+public class RateWriteAheadLog implements AutoCloseable {
+    private static final String SEGMENT_PREFIX = "rate-wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition synced = lock.newCondition();
+
+    private FileChannel channel;
+    private long segmentNumber;
+    private long writtenSeq;
+    private long durableSeq;
+    private boolean syncInProgress;
+
+    public RateWriteAheadLog(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Запись журнала: последнее известное значение курса для валюты или отметка сброса
+     * ({@link #discard}) - более ранние записи этой валюты при воспроизведении не применяются.
+     */
+    public static final class Entry {
+        private final long seq;
+        private final int currencyId;
+        private final String currencyCode;
+        private final int nominal;
+        private final BigDecimal rate;
+
+        public Entry(long seq, int currencyId, String currencyCode, int nominal, BigDecimal rate) {
+            this.seq = seq;
+            this.currencyId = currencyId;
+            this.currencyCode = currencyCode;
+            this.nominal = nominal;
+            this.rate = rate;
+        }
+
+        /**
+         * Отметка сброса ожидающих записей удалённой валюты.
+         */
+        public static Entry discard(long seq, int currencyId, String currencyCode) {
+            return new Entry(seq, currencyId, currencyCode, 0, null);
+        }
+
+        public boolean isDiscard() {
+            return rate == null;
+        }
+
+        public long getSeq() {
+            return seq;
+        }
+
+        public int getCurrencyId() {
+            return currencyId;
+        }
+
+        public String getCurrencyCode() {
+            return currencyCode;
+        }
+
+        public int getNominal() {
+            return nominal;
+        }
+
+        public BigDecimal getRate() {
+            return rate;
+        }
+    }
+
+    /**
+     * Читает все сегменты, оставшиеся после предыдущего запуска, в порядке их записи.
+     * Вызывается до {@link #open()}.
+     */
+    public List<Entry> replay() throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        for (Path segment : listSegments()) {
+            try (InputStream in = Files.newInputStream(segment);
+                 DataInputStream data = new DataInputStream(in)) {
+                readSegment(data, entries, segment);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Открывает новый сегмент для записи; номер следует за всеми существующими сегментами.
+     *
+     * @return номер открытого сегмента
+     */
+    public long open() throws IOException {
+        Files.createDirectories(directory);
+        List<Path> existing = listSegments();
+        long lastNumber = existing.isEmpty() ? 0 : segmentNumberOf(existing.get(existing.size() - 1));
+        lock.lock();
+        try {
+            openSegment(lastNumber + 1);
+            return segmentNumber;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Дописывает запись и возвращает управление только после того, как она попала на диск.
+     */
+    public void append(Entry entry) throws IOException {
+        ByteBuffer record = encode(entry);
+        long mySeq;
+        lock.lock();
+        try {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+            mySeq = ++writtenSeq;
+
+            while (durableSeq < mySeq) {
+                if (syncInProgress) {
+                    // Кто-то уже делает fsync - ждём его результата
+                    synced.awaitUninterruptibly();
+                    continue;
+                }
+                // Становимся лидером группы: синхронизируем всё, что записано на этот момент
+                syncInProgress = true;
+                long target = writtenSeq;
+                FileChannel toSync = channel;
+                boolean forced = false;
+                lock.unlock();
+                try {
+                    toSync.force(false);
+                    forced = true;
+                } finally {
+                    lock.lock();
+                    syncInProgress = false;
+                    if (forced) {
+                        durableSeq = Math.max(durableSeq, target);
+                    }
+                    synced.signalAll();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Закрывает текущий сегмент и начинает новый.
+     *
+     * @return номер закрытого сегмента; после записи его данных в БД сегменты
+     * с номерами не больше этого можно удалить через {@link #deleteSegmentsUpTo(long)}.
+     */
+    public long roll() throws IOException {
+        lock.lock();
+        try {
+            while (syncInProgress) {
+                synced.awaitUninterruptibly();
+            }
+            channel.force(false);
+            durableSeq = writtenSeq;
+            synced.signalAll();
+            channel.close();
+            long closed = segmentNumber;
+            openSegment(closed + 1);
+            return closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void deleteSegmentsUpTo(long lastSegmentNumber) throws IOException {
+        for (Path segment : listSegments()) {
+            if (segmentNumberOf(segment) <= lastSegmentNumber) {
+                Files.deleteIfExists(segment);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            while (syncInProgress) {
+                synced.awaitUninterruptibly();
+            }
+            if (channel != null && channel.isOpen()) {
+                channel.force(false);
+                channel.close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void openSegment(long number) throws IOException {
+        segmentNumber = number;
+        channel = FileChannel.open(directory.resolve(SEGMENT_PREFIX + number + SEGMENT_SUFFIX),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private List<Path> listSegments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return segments;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                segments.add(path);
+            }
+        }
+        segments.sort((a, b) -> Long.compare(segmentNumberOf(a), segmentNumberOf(b)));
+        return segments;
+    }
+
+    private static long segmentNumberOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static ByteBuffer encode(Entry entry) throws IOException {
+        ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream payload = new DataOutputStream(payloadBytes)) {
+            payload.writeLong(entry.getSeq());
+            payload.writeInt(entry.getCurrencyId());
+            payload.writeUTF(entry.getCurrencyCode());
+            payload.writeInt(entry.getNominal());
+            // Пустая строка - отметка сброса
+            payload.writeUTF(entry.isDiscard() ? "" : entry.getRate().toPlainString());
+        }
+        byte[] bytes = payloadBytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+
+        ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + Long.BYTES + bytes.length);
+        record.putInt(bytes.length).putLong(crc.getValue()).put(bytes).flip();
+        return record;
+    }
+
+    private static void readSegment(DataInputStream data, List<Entry> entries, Path segment) throws IOException {
+        while (true) {
+            int length;
+            long expectedCrc;
+            byte[] bytes;
+            try {
+                length = data.readInt();
+                expectedCrc = data.readLong();
+                if (length <= 0 || length > 4096) {
+                    System.err.println("WAL " + segment + ": повреждённая запись, чтение сегмента остановлено.");
+                    return;
+                }
+                bytes = data.readNBytes(length);
+            } catch (EOFException e) {
+                return;
+            }
+            if (bytes.length < length) {
+                // Запись была оборвана на середине - это хвост после аварии
+                return;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            if (crc.getValue() != expectedCrc) {
+                System.err.println("WAL " + segment + ": несовпадение контрольной суммы, чтение сегмента остановлено.");
+                return;
+            }
+            try (DataInputStream payload = new DataInputStream(new ByteArrayInputStream(bytes))) {
+                long seq = payload.readLong();
+                int currencyId = payload.readInt();
+                String currencyCode = payload.readUTF();
+                int nominal = payload.readInt();
+                String rate = payload.readUTF();
+                entries.add(new Entry(seq, currencyId, currencyCode, nominal, rate.isEmpty() ? null : new BigDecimal(rate)));
+            }
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package org.example.dao;
+
+import org.example.DatabaseManager;
+import org.example.profiling.DaoCallEvent;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.OptionalLong;
+
+import static org.example.SQLiteExceptionTranslator.translateToGeneralError;
+import static org.example.StatementCache.prepare;
+
+/**
+ * Аренда (lease) в общей БД для выбора узла, выполняющего периодическую задачу.
+ * Захват и продление - один условный UPSERT: SQLite выполняет записи по одной,
+ * поэтому из нескольких узлов аренду получает ровно один.
+ * <p>
+ * В строке аренды также хранятся время последнего выполнения задачи, версия данных,
+ * которую ведущий увеличивает после каждого обновления, и признак того, что последняя
+ * попытка обновления не удалась и данные устарели.
+ */
+public class RefreshLeaseDAO {
+    private static final String DAO = "RefreshLeaseDAO";
+
+    public void createTableIfMissing() {
+        String sql = "CREATE TABLE IF NOT EXISTS refresh_lease (" +
+                "name TEXT PRIMARY KEY, " +
+                "holder TEXT NOT NULL, " +
+                "expires_at INTEGER NOT NULL, " +
+                "refreshed_at INTEGER NOT NULL DEFAULT 0, " +
+                "version INTEGER NOT NULL DEFAULT 0, " +
+                "stale INTEGER NOT NULL DEFAULT 0)";
+        try (Connection connection = DatabaseManager.getConnection()) {
+            prepare(connection, sql).executeUpdate();
+        } catch (SQLException e) {
+            throw translateToGeneralError("создание таблицы аренды", e);
+        }
+    }
+
+    /**
+     * Захватывает аренду, если она свободна, истекла или уже принадлежит holder (тогда продлевает).
+     *
+     * @return true, если holder - держатель аренды до nowMillis + ttlMillis
+     */
+    public boolean tryAcquire(String name, String holder, long nowMillis, long ttlMillis) {
+        String sql = "INSERT INTO refresh_lease (name, holder, expires_at) VALUES (?, ?, ?) " +
+                "ON CONFLICT(name) DO UPDATE SET holder = excluded.holder, expires_at = excluded.expires_at " +
+                "WHERE refresh_lease.holder = excluded.holder OR refresh_lease.expires_at < ?";
+        DaoCallEvent event = new DaoCallEvent();
+        event.begin();
+        int rows = 0;
+        try (Connection connection = DatabaseManager.getConnection()) {
+            PreparedStatement statement = prepare(connection, sql);
+            statement.setString(1, name);
+            statement.setString(2, holder);
+            statement.setLong(3, nowMillis + ttlMillis);
+            statement.setLong(4, nowMillis);
+            rows = statement.executeUpdate();
+            return rows > 0;
+        } catch (SQLException e) {
+            throw translateToGeneralError("захват аренды", e);
+        } finally {
+            event.finish(DAO, "tryAcquire", null, rows);
+        }
+    }
+
+    /**
+     * Освобождает аренду, если она принадлежит holder, чтобы другой узел мог её сразу захватить.
+     */
+    public void release(String name, String holder) {
+        String sql = "UPDATE refresh_lease SET expires_at = 0 WHERE name = ? AND holder = ?";
+        DaoCallEvent event = new DaoCallEvent();
+        event.begin();
+        int rows = 0;
+        try (Connection connection = DatabaseManager.getConnection()) {
+            PreparedStatement statement = prepare(connection, sql);
+            statement.setString(1, name);
+            statement.setString(2, holder);
+            rows = statement.executeUpdate();
+        } catch (SQLException e) {
+            throw translateToGeneralError("освобождение аренды", e);
+        } finally {
+            event.finish(DAO, "release", null, rows);
+        }
+    }
+
+    /**
+     * Отмечает выполнение задачи и увеличивает версию данных. Ничего не делает,
+     * если аренду за это время перехватил другой узел.
+     *
+     * @return true, если отметка сделана
+     */
+    public boolean markRefreshed(String name, String holder, long nowMillis) {
+        String sql = "UPDATE refresh_lease SET refreshed_at = ?, version = version + 1 WHERE name = ? AND holder = ?";
+        DaoCallEvent event = new DaoCallEvent();
+        event.begin();
+        int rows = 0;
+        try (Connection connection = DatabaseManager.getConnection()) {
+            PreparedStatement statement = prepare(connection, sql);
+            statement.setLong(1, nowMillis);
+            statement.setString(2, name);
+            statement.setString(3, holder);
+            rows = statement.executeUpdate();
+            return rows > 0;
+        } catch (SQLException e) {
+            throw translateToGeneralError("отметка обновления", e);
+        } finally {
+            event.finish(DAO, "markRefreshed", null, rows);
+        }
+    }
+
+    /**
+     * Время последнего выполнения задачи, мс (0 - ещё не выполнялась).
+     */
+    public long findRefreshedAt(String name) {
+        String sql = "SELECT refreshed_at FROM refresh_lease WHERE name = ?";
+        DaoCallEvent event = new DaoCallEvent();
+        event.begin();
+        int rows = 0;
+        try (Connection connection = DatabaseManager.getConnection()) {
+            PreparedStatement statement = prepare(connection, sql);
+            statement.setString(1, name);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (!resultSet.next()) {
+                    return 0;
+                }
+                rows = 1;
+                return resultSet.getLong(1);
+            }
+        } catch (SQLException e) {
+            throw translateToGeneralError("чтение аренды", e);
+        } finally {
+            event.finish(DAO, "findRefreshedAt", null, rows);
+        }
+    }
+
+    public OptionalLong findVersion(String name) {
+        String sql = "SELECT version FROM refresh_lease WHERE name = ?";
+        DaoCallEvent event = new DaoCallEvent();
+        event.begin();
+        int rows = 0;
+        try (Connection connection = DatabaseManager.getConnection()) {
+            PreparedStatement statement = prepare(connection, sql);
+            statement.setString(1, name);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (!resultSet.next()) {
+                    return OptionalLong.empty();
+                }
+                rows = 1;
+                return OptionalLong.of(resultSet.getLong(1));
+            }
+        } catch (SQLException e) {
+            throw translateToGeneralError("чтение аренды", e);
+        } finally {
+            event.finish(DAO, "findVersion", null, rows);
+        }
+    }
+
+    /**
+     * Отмечает, устарели ли данные после последней попытки обновления. Ничего не делает,
+     * если аренду перехватил другой узел.
+     */
+    public void markStale(String name, String holder, boolean stale) {
+        String sql = "UPDATE refresh_lease SET stale = ? WHERE name = ? AND holder = ?";
+        DaoCallEvent event = new DaoCallEvent();
+        event.begin();
+        int rows = 0;
+        try (Connection connection = DatabaseManager.getConnection()) {
+            PreparedStatement statement = prepare(connection, sql);
+            statement.setInt(1, stale ? 1 : 0);
+            statement.setString(2, name);
+            statement.setString(3, holder);
+            rows = statement.executeUpdate();
+        } catch (SQLException e) {
+            throw translateToGeneralError("отметка устаревания", e);
+        } finally {
+            event.finish(DAO, "markStale", null, rows);
+        }
+    }
+
+    public boolean findStale(String name) {
+        String sql = "SELECT stale FROM refresh_lease WHERE name = ?";
+        DaoCallEvent event = new DaoCallEvent();
+        event.begin();
+        int rows = 0;
+        try (Connection connection = DatabaseManager.getConnection()) {
+            PreparedStatement statement = prepare(connection, sql);
+            statement.setString(1, name);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (!resultSet.next()) {
+                    return false;
+                }
+                rows = 1;
+                return resultSet.getInt(1) != 0;
+            }
+        } catch (SQLException e) {
+            throw translateToGeneralError("чтение аренды", e);
+        } finally {
+            event.finish(DAO, "findStale", null, rows);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.example.dao;
+
+import org.example.metrics.Metrics;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Объединение одинаковых одновременных запросов (single-flight): пока запрос по ключу выполняется,
+ * остальные потоки с тем же ключом не идут в БД, а ждут его результат через {@link CompletableFuture}.
+ * <p>
+ * Результат изменяемый (модели с сеттерами), поэтому присоединившиеся получают копию,
+ * а выполнивший запрос - исходный объект. После записи в таблицу нужно вызвать {@link #invalidate()}:
+ * иначе поток, прочитавший после своей записи, мог бы получить результат запроса, начатого до неё.
+ * <p>
+ * Счётчики: {@code singleflight.<name>.executed} - запросы, дошедшие до БД,
+ * {@code singleflight.<name>.shared} - запросы, получившие чужой результат.
+ */
+final class SingleFlight<K, V> {
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final UnaryOperator<V> copier;
+    private final LongAdder executed;
+    private final LongAdder shared;
+
+    SingleFlight(String name, UnaryOperator<V> copier) {
+        this.copier = copier;
+        this.executed = Metrics.counter("singleflight." + name + ".executed");
+        this.shared = Metrics.counter("singleflight." + name + ".shared");
+        Metrics.gauge("singleflight." + name + ".inflight", inFlight::size);
+    }
+
+    V execute(K key, Supplier<V> query) {
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            shared.increment();
+            return copier.apply(await(running));
+        }
+        executed.increment();
+        try {
+            V value = query.get();
+            mine.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            // Ключ могли уже сбросить (invalidate) и занять новым запросом - его не трогаем
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /**
+     * Следующие вызовы выполнят свой запрос, не присоединяясь к уже начатым.
+     */
+    void invalidate() {
+        inFlight.clear();
+    }
+
+    private static <V> V await(CompletableFuture<V> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            // Ждавшие получают то же исключение, что и выполнивший запрос
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package org.example.dao;
+
+import org.example.DatabaseManager;
+import org.example.model.TenantRateAdjustment;
+import org.example.profiling.DaoCallEvent;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.example.SQLiteExceptionTranslator.translateToGeneralError;
+import static org.example.StatementCache.prepare;
+
+/**
+ * Поправки тенантов к курсам (таблица {@code tenant_rate_adjustment}), строка на пару тенант-валюта.
+ * Таблица маленькая и читается целиком при старте и при изменениях, на каждый запрос в неё не ходят.
+ */
+public class TenantRateDAO {
+    private static final String DAO = "TenantRateDAO";
+    private static final String COLUMNS = "tenant, code, spread_bps, rate";
+    private static volatile boolean tableReady;
+
+    public void createTableIfMissing() {
+        if (tableReady) {
+            return;
+        }
+        String sql = "CREATE TABLE IF NOT EXISTS tenant_rate_adjustment (" +
+                "tenant TEXT NOT NULL, " +
+                "code TEXT NOT NULL, " +
+                "spread_bps INTEGER, " +
+                "rate DECIMAL(12, 6), " +
+                "updated_at INTEGER NOT NULL, " +
+                "PRIMARY KEY (tenant, code)) WITHOUT ROWID";
+        try (Connection connection = DatabaseManager.getConnection()) {
+            prepare(connection, sql).executeUpdate();
+            tableReady = true;
+        } catch (SQLException e) {
+            throw translateToGeneralError("создание таблицы поправок тенантов", e);
+        }
+    }
+
+    public List<TenantRateAdjustment> findAll() {
+        createTableIfMissing();
+        String sql = "SELECT " + COLUMNS + " FROM tenant_rate_adjustment";
+        List<TenantRateAdjustment> adjustments = new ArrayList<>();
+        DaoCallEvent event = new DaoCallEvent();
+        event.begin();
+        try (Connection connection = DatabaseManager.getConnection();
+             ResultSet resultSet = prepare(connection, sql).executeQuery()) {
+            while (resultSet.next()) {
+                adjustments.add(mapResultSetToAdjustment(resultSet));
+            }
+        } catch (SQLException e) {
+            throw translateToGeneralError("получение поправок тенантов", e);
+        } finally {
+            event.finish(DAO, "findAll", null, adjustments.size());
+        }
+        return adjustments;
+    }
+
+    /**
+     * Поправки тенанта по возрастанию кода валюты.
+     */
+    public List<TenantRateAdjustment> findByTenant(String tenant) {
+        createTableIfMissing();
+        String sql = "SELECT " + COLUMNS + " FROM tenant_rate_adjustment WHERE tenant = ? ORDER BY code";
+        List<TenantRateAdjustment> adjustments = new ArrayList<>();
+        DaoCallEvent event = new DaoCallEvent();
+        event.begin();
+        try (Connection connection = DatabaseManager.getConnection()) {
+            PreparedStatement statement = prepare(connection, sql);
+            statement.setString(1, tenant);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    adjustments.add(mapResultSetToAdjustment(resultSet));
+                }
+            }
+        } catch (SQLException e) {
+            throw translateToGeneralError("получение поправок тенанта", e);
+        } finally {
+            event.finish(DAO, "findByTenant", null, adjustments.size());
+        }
+        return adjustments;
+    }
+
+    /**
+     * Добавляет поправку или заменяет существующую для той же пары тенант-валюта.
+     */
+    public void upsert(TenantRateAdjustment adjustment, long nowMillis) {
+        createTableIfMissing();
+        String sql = "INSERT INTO tenant_rate_adjustment (tenant, code, spread_bps, rate, updated_at) " +
+                "VALUES (?, ?, ?, ?, ?) " +
+                "ON CONFLICT(tenant, code) DO UPDATE SET spread_bps = excluded.spread_bps, " +
+                "rate = excluded.rate, updated_at = excluded.updated_at";
+        DaoCallEvent event = new DaoCallEvent();
+        event.begin();
+        int rows = 0;
+        try (Connection connection = DatabaseManager.getConnection()) {
+            PreparedStatement statement = prepare(connection, sql);
+            statement.setString(1, adjustment.getTenant());
+            statement.setString(2, adjustment.getCurrencyCode());
+            if (adjustment.getSpreadBps() != null) {
+                statement.setInt(3, adjustment.getSpreadBps());
+            } else {
+                statement.setNull(3, Types.INTEGER);
+            }
+            statement.setBigDecimal(4, adjustment.getRate());
+            statement.setLong(5, nowMillis);
+            rows = statement.executeUpdate();
+        } catch (SQLException e) {
+            throw translateToGeneralError("сохранение поправки тенанта", e);
+        } finally {
+            event.finish(DAO, "upsert", adjustment.getCurrencyCode(), rows);
+        }
+    }
+
+    /**
+     * @return false, если такой поправки не было
+     */
+    public boolean delete(String tenant, String code) {
+        createTableIfMissing();
+        String sql = "DELETE FROM tenant_rate_adjustment WHERE tenant = ? AND code = ?";
+        DaoCallEvent event = new DaoCallEvent();
+        event.begin();
+        int rows = 0;
+        try (Connection connection = DatabaseManager.getConnection()) {
+            PreparedStatement statement = prepare(connection, sql);
+            statement.setString(1, tenant);
+            statement.setString(2, code);
+            rows = statement.executeUpdate();
+            return rows > 0;
+        } catch (SQLException e) {
+            throw translateToGeneralError("удаление поправки тенанта", e);
+        } finally {
+            event.finish(DAO, "delete", code, rows);
+        }
+    }
+
+    private TenantRateAdjustment mapResultSetToAdjustment(ResultSet resultSet) throws SQLException {
+        TenantRateAdjustment adjustment = new TenantRateAdjustment();
+        adjustment.setTenant(resultSet.getString(1));
+        adjustment.setCurrencyCode(resultSet.getString(2));
+        int spreadBps = resultSet.getInt(3);
+        adjustment.setSpreadBps(resultSet.wasNull() ? null : spreadBps);
+        adjustment.setRate(resultSet.getBigDecimal(4));
+        return adjustment;
+    }
+}
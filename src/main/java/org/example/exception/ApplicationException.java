@@ -1,7 +1,12 @@
 package org.example.exception;
 
+/**
+ * Ожидаемые исходы бизнес-логики (нет сущности, дубликат, ошибка валидации).
+ * Такие исключения бросаются на обычных путях запроса и превращаются в 4xx-ответ,
+ * поэтому стек вызовов не захватывается: он не нужен и стоит заметного CPU.
+ */
 public class ApplicationException extends RuntimeException {
     public ApplicationException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 }
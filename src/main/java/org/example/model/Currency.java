@@ -9,6 +9,16 @@ public class Currency {
     public Currency() {
     }
 
+    /**
+     * Копия валюты: объекты из справочника не изменяются, поэтому перед правкой их копируют.
+     */
+    public Currency(Currency source) {
+        this.id = source.id;
+        this.code = source.code;
+        this.fullName = source.fullName;
+        this.sign = source.sign;
+    }
+
     public int getId() {
         return id;
     }
@@ -11,6 +11,16 @@ public class ExchangeRate {
     public ExchangeRate() {
     }
 
+    /**
+     * Копия курса: объекты из кэша не изменяются, поэтому перед правкой их копируют.
+     */
+    public ExchangeRate(ExchangeRate source) {
+        this.id = source.id;
+        this.idCurrency = source.idCurrency;
+        this.nominal = source.nominal;
+        this.rate = source.rate;
+    }
+
     public ExchangeRate(int id, int idCurrency, int nominal, double rate) {
     }
 
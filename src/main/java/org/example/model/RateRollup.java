@@ -0,0 +1,79 @@
+package org.example.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Сводка курса за период (день, неделя, месяц): первое, максимальное, минимальное,
+ * последнее и среднее значение курса за единицу валюты в рублях.
+ */
+public class RateRollup {
+    /**
+     * Знаков после запятой у значений: курс с 6 знаками, делённый на номинал до 10000, представим точно.
+     */
+    public static final int SCALE = 10;
+
+    private LocalDate periodStart;
+    private BigDecimal open;
+    private BigDecimal high;
+    private BigDecimal low;
+    private BigDecimal close;
+    private BigDecimal average;
+    private int samples;
+
+    public LocalDate getPeriodStart() {
+        return periodStart;
+    }
+
+    public void setPeriodStart(LocalDate periodStart) {
+        this.periodStart = periodStart;
+    }
+
+    public BigDecimal getOpen() {
+        return open;
+    }
+
+    public void setOpen(BigDecimal open) {
+        this.open = open;
+    }
+
+    public BigDecimal getHigh() {
+        return high;
+    }
+
+    public void setHigh(BigDecimal high) {
+        this.high = high;
+    }
+
+    public BigDecimal getLow() {
+        return low;
+    }
+
+    public void setLow(BigDecimal low) {
+        this.low = low;
+    }
+
+    public BigDecimal getClose() {
+        return close;
+    }
+
+    public void setClose(BigDecimal close) {
+        this.close = close;
+    }
+
+    public BigDecimal getAverage() {
+        return average;
+    }
+
+    public void setAverage(BigDecimal average) {
+        this.average = average;
+    }
+
+    public int getSamples() {
+        return samples;
+    }
+
+    public void setSamples(int samples) {
+        this.samples = samples;
+    }
+}
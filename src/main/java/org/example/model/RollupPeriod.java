@@ -0,0 +1,50 @@
+package org.example.model;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * Период сводки курсов. Период обозначается датой своего первого дня.
+ */
+public enum RollupPeriod {
+    DAY("day"),
+    WEEK("week"),
+    MONTH("month");
+
+    private final String code;
+
+    RollupPeriod(String code) {
+        this.code = code;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    /**
+     * Первый день периода, в который попадает дата (неделя начинается с понедельника).
+     */
+    public LocalDate start(LocalDate date) {
+        switch (this) {
+            case WEEK:
+                return date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            case MONTH:
+                return date.withDayOfMonth(1);
+            default:
+                return date;
+        }
+    }
+
+    /**
+     * Период по обозначению из запроса (day, week, month) или null.
+     */
+    public static RollupPeriod fromCode(String code) {
+        for (RollupPeriod period : values()) {
+            if (period.code.equalsIgnoreCase(code)) {
+                return period;
+            }
+        }
+        return null;
+    }
+}
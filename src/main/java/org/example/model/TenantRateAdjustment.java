@@ -0,0 +1,46 @@
+package org.example.model;
+
+import java.math.BigDecimal;
+
+/**
+ * Поправка тенанта к курсу валюты: собственный курс за единицу валюты в рублях (заменяет
+ * курс ЦБ) и/или спред в базисных пунктах. Код {@code *} задаёт спред для всех валют без своей поправки.
+ */
+public class TenantRateAdjustment {
+    private String tenant;
+    private String currencyCode;
+    private Integer spreadBps;
+    private BigDecimal rate;
+
+    public String getTenant() {
+        return tenant;
+    }
+
+    public void setTenant(String tenant) {
+        this.tenant = tenant;
+    }
+
+    public String getCurrencyCode() {
+        return currencyCode;
+    }
+
+    public void setCurrencyCode(String currencyCode) {
+        this.currencyCode = currencyCode;
+    }
+
+    public Integer getSpreadBps() {
+        return spreadBps;
+    }
+
+    public void setSpreadBps(Integer spreadBps) {
+        this.spreadBps = spreadBps;
+    }
+
+    public BigDecimal getRate() {
+        return rate;
+    }
+
+    public void setRate(BigDecimal rate) {
+        this.rate = rate;
+    }
+}
@@ -0,0 +1,50 @@
+package org.example.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Этап обновления курсов из ЦБ: {@code fetch} - HTTP-запрос до получения тела,
+ * {@code parse} - разбор ответа, {@code write} - запись курса одной валюты.
+ */
+@Name("org.example.CbrPhase")
+@Label("Этап обновления из ЦБ")
+@Category({"Currency Exchange", "Upstream"})
+@Description("Запрос к API ЦБ, разбор ответа и запись курсов")
+public final class CbrPhaseEvent extends Event {
+    public static final String FETCH = "fetch";
+    public static final String PARSE = "parse";
+    public static final String WRITE = "write";
+
+    @Label("Этап")
+    String phase;
+
+    @Label("Код валюты")
+    String currencyCode;
+
+    @Label("Валют")
+    int rows;
+
+    @Label("Размер ответа")
+    @DataAmount
+    long bytes;
+
+    @Label("Ошибка")
+    boolean failed;
+
+    public void finish(String phase, String currencyCode, int rows, long bytes, boolean failed) {
+        if (!shouldCommit()) {
+            return;
+        }
+        this.phase = phase;
+        this.currencyCode = currencyCode;
+        this.rows = rows;
+        this.bytes = bytes;
+        this.failed = failed;
+        commit();
+    }
+}
@@ -0,0 +1,45 @@
+package org.example.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Вызов метода DAO: от запроса соединения до разбора результата.
+ */
+@Name("org.example.DaoCall")
+@Label("Вызов DAO")
+@Category({"Currency Exchange", "Database"})
+@Description("Запрос к БД через DAO: прочитанные или изменённые строки")
+public final class DaoCallEvent extends Event {
+    @Label("DAO")
+    String dao;
+
+    @Label("Операция")
+    String operation;
+
+    @Label("Код валюты")
+    String currencyCode;
+
+    @Label("Строк")
+    int rows;
+
+    /**
+     * Завершает событие; вызывается в {@code finally}, чтобы неудачные вызовы тоже попали в запись.
+     *
+     * @param currencyCode код валюты или null, если вызов не про одну валюту
+     * @param rows         прочитано или изменено строк; при ошибке - сколько успели обработать
+     */
+    public void finish(String dao, String operation, String currencyCode, int rows) {
+        if (!shouldCommit()) {
+            return;
+        }
+        this.dao = dao;
+        this.operation = operation;
+        this.currencyCode = currencyCode;
+        this.rows = rows;
+        commit();
+    }
+}
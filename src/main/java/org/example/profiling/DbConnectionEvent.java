@@ -0,0 +1,45 @@
+package org.example.profiling;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Получение соединения из пула: долгое ожидание значит, что все соединения заняты
+ * (в SQLite - чаще всего ждут единственного писателя).
+ */
+@Name("org.example.DbConnection")
+@Label("Получение соединения с БД")
+@Category({"Currency Exchange", "Database"})
+@Description("Ожидание свободного соединения в пуле HikariCP")
+public final class DbConnectionEvent extends Event {
+    @Label("Занято соединений")
+    int active;
+
+    @Label("Свободно соединений")
+    int idle;
+
+    @Label("Ожидающих потоков")
+    int waiting;
+
+    /**
+     * Завершает событие; состояние пула читается, только если событие будет записано.
+     */
+    public void finish(HikariDataSource dataSource) {
+        if (!shouldCommit()) {
+            return;
+        }
+        // null, пока пул не запущен
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        if (pool != null) {
+            active = pool.getActiveConnections();
+            idle = pool.getIdleConnections();
+            waiting = pool.getThreadsAwaitingConnection();
+        }
+        commit();
+    }
+}
@@ -0,0 +1,177 @@
+package org.example.profiling;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Event;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import org.example.AppConfig;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Запись JDK Flight Recorder по требованию: одна запись на процесс, её можно запустить,
+ * остановить и выгрузить в любой момент, в том числе пока она идёт.
+ * <p>
+ * Кроме стандартных событий JVM (настройки {@code jfr.settings}) включаются события приложения
+ * ({@link DbConnectionEvent}, {@link DaoCallEvent}, {@link CbrPhaseEvent}, {@link SerializationEvent})
+ * с порогом {@code jfr.threshold.ms}. Пока записи нет, эти события выключены и почти ничего не стоят:
+ * {@code shouldCommit()} возвращает false, а поля событий не заполняются.
+ */
+public final class FlightRecorderControl {
+    private static final FlightRecorderControl INSTANCE = new FlightRecorderControl();
+
+    private static final String RECORDING_NAME = "currency-exchange";
+    private static final List<Class<? extends Event>> THRESHOLD_EVENTS =
+            List.of(DbConnectionEvent.class, DaoCallEvent.class, SerializationEvent.class);
+
+    private final String settings = AppConfig.getString("jfr.settings", "profile");
+    private final Duration threshold = Duration.ofMillis(AppConfig.getLong("jfr.threshold.ms", 1));
+    private final Duration maxAge = Duration.ofMinutes(AppConfig.getLong("jfr.max.age.minutes", 30));
+    private final long maxSize = AppConfig.getLong("jfr.max.size.mb", 100) * 1024 * 1024;
+
+    private Recording recording;
+
+    /**
+     * Состояние записи на момент запроса.
+     */
+    public static final class Status {
+        private final String state;
+        private final Instant startTime;
+        private final Duration duration;
+        private final long size;
+
+        private Status(String state, Instant startTime, Duration duration, long size) {
+            this.state = state;
+            this.startTime = startTime;
+            this.duration = duration;
+            this.size = size;
+        }
+
+        /**
+         * NEW, RUNNING, STOPPED или NONE, если запись ещё не запускалась.
+         */
+        public String getState() {
+            return state;
+        }
+
+        public Instant getStartTime() {
+            return startTime;
+        }
+
+        /**
+         * Срок, после которого запись остановится сама, или null, если он не задан.
+         */
+        public Duration getDuration() {
+            return duration;
+        }
+
+        public long getSize() {
+            return size;
+        }
+    }
+
+    private FlightRecorderControl() {
+    }
+
+    public static FlightRecorderControl getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Запускает новую запись; остановленная запись при этом удаляется.
+     *
+     * @param duration через сколько остановить запись или null, чтобы писать до {@link #stop()};
+     *                 в записи хранится не больше {@code jfr.max.age.minutes} последних минут
+     * @return false, если запись уже идёт
+     */
+    public synchronized boolean start(Duration duration) throws IOException {
+        if (recording != null && recording.getState() == RecordingState.RUNNING) {
+            return false;
+        }
+        closeRecording();
+
+        Recording started;
+        try {
+            started = new Recording(Configuration.getConfiguration(settings));
+        } catch (ParseException e) {
+            throw new IOException("Не удалось прочитать настройки JFR '" + settings + "'.", e);
+        }
+        started.setName(RECORDING_NAME);
+        started.setToDisk(true);
+        started.setMaxAge(maxAge);
+        started.setMaxSize(maxSize);
+        started.setDuration(duration);
+        for (Class<? extends Event> eventClass : THRESHOLD_EVENTS) {
+            started.enable(eventClass).withThreshold(threshold);
+        }
+        // Обновление из ЦБ редкое, поэтому его этапы пишутся всегда
+        started.enable(CbrPhaseEvent.class).withoutThreshold();
+        started.start();
+        recording = started;
+        System.out.println("JFR recording started: settings " + settings + ", threshold " + threshold.toMillis()
+                + " ms" + (duration != null ? ", duration " + duration.toSeconds() + " s" : ""));
+        return true;
+    }
+
+    /**
+     * Останавливает запись; данные остаются доступны для {@link #dump}.
+     *
+     * @return false, если запись не идёт
+     */
+    public synchronized boolean stop() {
+        if (recording == null || recording.getState() != RecordingState.RUNNING) {
+            return false;
+        }
+        recording.stop();
+        System.out.println("JFR recording stopped.");
+        return true;
+    }
+
+    public synchronized Status status() {
+        if (recording == null) {
+            return new Status("NONE", null, null, 0);
+        }
+        return new Status(recording.getState().name(), recording.getStartTime(), recording.getDuration(),
+                recording.getSize());
+    }
+
+    /**
+     * Выгружает данные текущей или остановленной записи во временный файл {@code .jfr};
+     * удалить файл после отправки должен вызывающий.
+     *
+     * @return файл или null, если выгружать нечего
+     */
+    public synchronized Path dump() throws IOException {
+        if (recording == null || recording.getState() == RecordingState.NEW) {
+            return null;
+        }
+        Path file = Files.createTempFile(RECORDING_NAME + "-", ".jfr");
+        try {
+            recording.dump(file);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        return file;
+    }
+
+    /**
+     * Останавливает и удаляет запись (при остановке приложения).
+     */
+    public synchronized void close() {
+        closeRecording();
+    }
+
+    private void closeRecording() {
+        if (recording != null) {
+            recording.close();
+            recording = null;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package org.example.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Сериализация и отправка тела ответа: {@code send} - сериализация с записью в ответ,
+ * {@code render} - сериализация в массив (для кэша готовых ответов), {@code stream} - запись
+ * в поток без буфера, {@code write} - отправка готовых байт.
+ * Стек не пишется: событие есть почти у каждого запроса, а вызывающий сервлет виден по потоку.
+ */
+@Name("org.example.Serialization")
+@Label("Сериализация ответа")
+@Category({"Currency Exchange", "HTTP"})
+@Description("Сериализация тела ответа в JSON, CBOR или Smile и запись в ответ")
+@StackTrace(false)
+public final class SerializationEvent extends Event {
+    public static final String SEND = "send";
+    public static final String RENDER = "render";
+    public static final String STREAM = "stream";
+    public static final String WRITE = "write";
+
+    @Label("Операция")
+    String operation;
+
+    @Label("Формат")
+    String format;
+
+    @Label("HTTP-статус")
+    int status;
+
+    @Label("Строк")
+    int rows;
+
+    @Label("Размер")
+    @DataAmount
+    long bytes;
+
+    /**
+     * @param status HTTP-статус или 0, если тело не отправляется
+     * @param rows   число элементов списка или 0, если тело не список
+     * @param bytes  размер тела или 0, если он неизвестен (запись в поток)
+     */
+    public void finish(String operation, String format, int status, int rows, long bytes) {
+        if (!shouldCommit()) {
+            return;
+        }
+        this.operation = operation;
+        this.format = format;
+        this.status = status;
+        this.rows = rows;
+        this.bytes = bytes;
+        commit();
+    }
+}
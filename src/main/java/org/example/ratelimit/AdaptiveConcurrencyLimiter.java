@@ -0,0 +1,90 @@
+package org.example.ratelimit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Глобальный ограничитель одновременных запросов с лимитом, подстраивающимся под задержку
+ * (градиентный алгоритм). Пока задержка близка к минимальной наблюдаемой, лимит растёт;
+ * когда запросы начинают стоять в очереди и задержка растёт, лимит уменьшается.
+ * <p>
+ * Путь запроса без блокировок: пересчёт лимита раз в окно выполняет тот поток,
+ * который закрыл окно.
+ */
+public final class AdaptiveConcurrencyLimiter {
+    private static final int WINDOW_SAMPLES = 100;
+    // Допустимое превышение минимальной задержки, при котором лимит не снижается
+    private static final double TOLERANCE = 2.0;
+    // Минимальная задержка «забывается», чтобы лимит подстраивался под изменения нагрузки
+    private static final int MIN_RTT_RESET_WINDOWS = 50;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger samples = new AtomicInteger();
+    private final LongAdder windowLatencySum = new LongAdder();
+    private final AtomicLong minRttNanos = new AtomicLong(Long.MAX_VALUE);
+    private volatile int limit;
+    private int windows;
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = initialLimit;
+    }
+
+    /**
+     * Занимает слот, если текущий лимит позволяет.
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Освобождает слот и учитывает задержку завершившегося запроса.
+     */
+    public void release(long latencyNanos) {
+        inFlight.decrementAndGet();
+        minRttNanos.accumulateAndGet(latencyNanos, Math::min);
+        windowLatencySum.add(latencyNanos);
+        if (samples.incrementAndGet() == WINDOW_SAMPLES) {
+            recalculate();
+        }
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    private void recalculate() {
+        long averageRtt = windowLatencySum.sumThenReset() / WINDOW_SAMPLES;
+        long minRtt = minRttNanos.get();
+        if (++windows % MIN_RTT_RESET_WINDOWS == 0) {
+            minRttNanos.set(averageRtt);
+        }
+        // Новое окно открываем последним: до этого в recalculate не войдёт другой поток
+        samples.set(0);
+
+        if (averageRtt <= 0 || minRtt == Long.MAX_VALUE) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * minRtt / averageRtt));
+        int current = limit;
+        // Запас в sqrt(limit) позволяет лимиту расти, пока задержка не начала увеличиваться
+        double next = current * gradient + Math.sqrt(current);
+        limit = (int) Math.max(minLimit, Math.min(maxLimit, next));
+    }
+}
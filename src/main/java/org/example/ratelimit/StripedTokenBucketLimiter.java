@@ -0,0 +1,76 @@
+package org.example.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Ограничитель частоты запросов на клиента без блокировок.
+ * <p>
+ * Клиенты раскладываются по фиксированному числу полос (stripes) по хэшу ключа;
+ * у каждой полосы своё «ведро токенов», состояние которого упаковано в один long:
+ * старшие 40 бит - время последнего пополнения (мс от старта), младшие 24 бита -
+ * запас в тысячных долях токена. Обновление - одна операция CAS, память не растёт
+ * с числом клиентов. Редкие коллизии хэшей делят одно ведро, что допустимо для защиты от перегрузки.
+ */
+public final class StripedTokenBucketLimiter {
+    private static final int TOKEN_BITS = 24;
+    private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+    private static final long MILLI = 1000;
+
+    private final AtomicLongArray buckets;
+    private final int mask;
+    private final long capacityMilli;
+    // Пополнение в тысячных долях токена за миллисекунду равно числу токенов в секунду
+    private final long refillPerMs;
+    private final long startedAtMs = System.currentTimeMillis();
+
+    /**
+     * @param stripes        число полос, округляется вверх до степени двойки
+     * @param tokensPerSecond скорость пополнения
+     * @param burst          ёмкость ведра (не более 16777 токенов)
+     */
+    public StripedTokenBucketLimiter(int stripes, int tokensPerSecond, int burst) {
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.buckets = new AtomicLongArray(size);
+        this.mask = size - 1;
+        this.capacityMilli = Math.min((long) burst * MILLI, TOKEN_MASK);
+        this.refillPerMs = tokensPerSecond;
+    }
+
+    /**
+     * Пытается забрать один токен для клиента.
+     *
+     * @return 0, если запрос разрешён, иначе - через сколько миллисекунд появится токен
+     */
+    public long tryAcquire(String clientKey) {
+        int index = spread(clientKey.hashCode()) & mask;
+        long now = System.currentTimeMillis() - startedAtMs;
+        while (true) {
+            long state = buckets.get(index);
+            long tokens;
+            if (state == 0) {
+                // Новое ведро наполнено целиком
+                tokens = capacityMilli;
+            } else {
+                long elapsed = Math.max(0, now - (state >>> TOKEN_BITS));
+                long available = state & TOKEN_MASK;
+                // Ограничиваем elapsed, чтобы не переполнить произведение после долгого простоя
+                tokens = Math.min(capacityMilli, available + Math.min(elapsed, capacityMilli) * refillPerMs);
+            }
+            if (tokens < MILLI) {
+                return refillPerMs == 0 ? Long.MAX_VALUE : (MILLI - tokens + refillPerMs - 1) / refillPerMs;
+            }
+            long updated = (now << TOKEN_BITS) | (tokens - MILLI);
+            if (updated == 0) {
+                // 0 зарезервирован под «новое ведро»
+                updated = 1L << TOKEN_BITS;
+            }
+            if (buckets.compareAndSet(index, state, updated)) {
+                return 0;
+            }
+        }
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -1,43 +1,121 @@
 package org.example.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.audit.AuditLog;
+import org.example.cache.RateView;
+import org.example.cluster.ClusterInvalidation;
 import org.example.dao.CurrencyDAO;
 import org.example.dao.ExchangeRateDAO;
+import org.example.dao.ExchangeRateWriteBehind;
 import org.example.model.Currency;
 import org.example.model.ExchangeRate;
+import org.example.profiling.CbrPhaseEvent;
+import org.example.snapshot.RateSnapshotStore;
+import org.example.upstream.CbrClient;
 
 import java.io.IOException;
 import java.math.BigDecimal;
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
 import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BooleanSupplier;
 
 public class CentralBankService {
-    private static final String CBR_API_URL = "https://www.cbr-xml-daily.ru/daily_json.js";
-    private final HttpClient httpClient = HttpClient.newHttpClient();
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    // Автор изменений, внесённых обновлением из ЦБ, в журнале аудита
+    private static final String AUDIT_ACTOR = "cbr";
+    // Курсы для новых валют запрашиваются в фоне: запрос пользователя не ждёт ЦБ (до таймаутов клиента)
+    private static final ExecutorService BACKGROUND = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "cbr-new-currencies");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final CbrClient cbrClient = CbrClient.getInstance();
     private final CurrencyDAO currencyDAO = new CurrencyDAO();
     private final ExchangeRateDAO exchangeRateDAO = new ExchangeRateDAO();
+    private final ExchangeRateWriteBehind writeBehind = ExchangeRateWriteBehind.getInstance();
+    private final RateView rateView = RateView.getInstance();
+    private final RateAnalyticsService analyticsService = new RateAnalyticsService();
+    private final AuditLog auditLog = AuditLog.getInstance();
 
     /**
      * Основной метод, который обновляет курсы валют из API ЦБ.
+     *
+     * @param mayWrite проверяется после запроса к ЦБ: false - курсы не записываются
      */
-    public void updateAllExchangeRates() throws IOException, InterruptedException, SQLException {
-        // 1. Получаем JSON с курсами от ЦБ
-        JsonNode valuteNode = fetchRatesAndGetValuteNode();
+    public void updateAllExchangeRates(BooleanSupplier mayWrite) throws IOException, InterruptedException, SQLException {
+        // 1. Получаем JSON с курсами от ЦБ. Устаревшие курсы уже сохранены, повторно их не пишем
+        JsonNode valuteNode = fetchRatesAndGetValuteNode(false);
+        // Запрос к ЦБ мог идти долго: за это время обновлять мог начать другой узел
+        if (!mayWrite.getAsBoolean()) {
+            throw new IllegalStateException("Право на обновление курсов потеряно до записи, курсы не записаны.");
+        }
 
         // 2. Получаем список всех валют из нашей БД
-        List<Currency> ourCurrencies = currencyDAO.findAll();
+        List<Currency> ourCurrencies = currencyDAO.findAllUnbounded();
 
         // 3. Проходим по нашим валютам и обновляем курсы для каждой
+        List<Currency> updated = new ArrayList<>();
         for (Currency currency : ourCurrencies) {
-            updateRateForCurrency(currency, valuteNode);
+            if (updateRateForCurrency(currency, valuteNode)) {
+                updated.add(currency);
+            }
+        }
+        publishRates(updated);
+
+        // 4. Публикуем снимок для других экземпляров на хосте
+        RateSnapshotStore.getInstance().publishFromViews();
+    }
+
+    /**
+     * Обновляет курсы для набора валют одним запросом к ЦБ (например, после массового импорта).
+     */
+    public void updateRatesForCurrencies(Collection<Currency> currencies) throws IOException, InterruptedException, SQLException {
+        JsonNode valuteNode = fetchRatesAndGetValuteNode(true);
+        List<Currency> updated = new ArrayList<>();
+        for (Currency currency : currencies) {
+            if (updateRateForCurrency(currency, valuteNode)) {
+                updated.add(currency);
+            }
         }
+        publishRates(updated);
+    }
+
+    /**
+     * То же, что {@link #updateRatesForCurrencies}, но в фоновом потоке: возвращает управление сразу,
+     * ошибка запроса к ЦБ только пишется в лог - курсы обновятся при следующем плановом обновлении.
+     */
+    public void updateRatesForCurrenciesAsync(Collection<Currency> currencies) {
+        List<Currency> copy = List.copyOf(currencies);
+        try {
+            BACKGROUND.execute(() -> {
+                try {
+                    System.out.println("Получение обменных курсов для импортированных валют: " + copy.size());
+                    updateRatesForCurrencies(copy);
+                } catch (Exception e) {
+                    System.err.println("Не удалось получить обменные курсы импортированных валют. " +
+                            "Валюты созданы, курсы будут обновлены позже. Ошибка: " + e.getMessage());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Приложение останавливается - курсы обновятся после следующего запуска
+            System.err.println("Обменные курсы импортированных валют не запрошены: приложение останавливается.");
+        }
+    }
+
+    /**
+     * Останавливает фоновый поток запросов курсов для новых валют (при остановке приложения).
+     */
+    public static void shutdownBackground() {
+        BACKGROUND.shutdownNow();
     }
 
     /**
@@ -47,8 +125,23 @@ public class CentralBankService {
      * @param currency Объект валюты, для которой нужно обновить курс.
      */
     public void updateRateForCurrency(Currency currency) throws IOException, InterruptedException, SQLException {
-        JsonNode valuteNode = fetchRatesAndGetValuteNode();
-        updateRateForCurrency(currency, valuteNode);
+        JsonNode valuteNode = fetchRatesAndGetValuteNode(true);
+        if (updateRateForCurrency(currency, valuteNode)) {
+            publishRates(List.of(currency));
+        }
+    }
+
+    /**
+     * Рассылает обновлённые курсы остальным узлам кластера одним сообщением
+     * и учитывает их в сводках для аналитики.
+     */
+    private void publishRates(Collection<Currency> currencies) {
+        Map<String, ExchangeRate> updated = new HashMap<>();
+        for (Currency currency : currencies) {
+            rateView.get(currency.getCode()).ifPresent(rate -> updated.put(currency.getCode(), rate));
+        }
+        ClusterInvalidation.getInstance().ratesChanged(updated);
+        analyticsService.recordRates(updated);
     }
 
     /**
@@ -56,26 +149,64 @@ public class CentralBankService {
      *
      * @param currency   Валюта для обновления.
      * @param valuteNode Корневой узел 'Valute' из ответа ЦБ.
+     * @return false, если в ответе ЦБ нет этой валюты
      */
-    private void updateRateForCurrency(Currency currency, JsonNode valuteNode) throws SQLException {
+    private boolean updateRateForCurrency(Currency currency, JsonNode valuteNode) throws SQLException {
         String currencyCode = currency.getCode();
         JsonNode currencyData = valuteNode.path(currencyCode);
 
         if (currencyData.isMissingNode()) {
             System.out.println("No data for " + currencyCode + " in CBR response. Skipping.");
-            return;
+            return false;
+        }
+
+        CbrPhaseEvent event = new CbrPhaseEvent();
+        event.begin();
+        boolean written = false;
+        try {
+            writeRate(currency, currencyData);
+            written = true;
+        } finally {
+            event.finish(CbrPhaseEvent.WRITE, currencyCode, 1, 0, !written);
         }
+        return true;
+    }
 
+    /**
+     * Записывает курс валюты из ответа ЦБ в представление и в БД (или журнал отложенной записи).
+     */
+    private void writeRate(Currency currency, JsonNode currencyData) throws SQLException {
+        String currencyCode = currency.getCode();
         int nominal = currencyData.path("Nominal").asInt();
         BigDecimal rate = new BigDecimal(currencyData.path("Value").asText());
 
+        if (writeBehind.isEnabled()) {
+            // Через тот же журнал, что и ручные правки, чтобы сохранить порядок изменений
+            writeBehind.submit(currency.getId(), currencyCode, nominal, rate);
+            ExchangeRate previous = rateView.get(currencyCode).orElse(null);
+            ExchangeRate submitted = new ExchangeRate();
+            if (previous != null) {
+                submitted.setId(previous.getId());
+            }
+            submitted.setIdCurrency(currency.getId());
+            submitted.setNominal(nominal);
+            submitted.setRate(rate);
+            rateView.put(currencyCode, submitted);
+            auditLog.rateChanged(AUDIT_ACTOR, currencyCode, previous, submitted);
+            System.out.println("Queued rate update for " + currencyCode);
+            return;
+        }
+
         Optional<ExchangeRate> existingRateOpt = exchangeRateDAO.findByCurrencyCode(currencyCode);
 
         if (existingRateOpt.isPresent()) {
             ExchangeRate rateToUpdate = existingRateOpt.get();
+            ExchangeRate previous = new ExchangeRate(rateToUpdate);
             rateToUpdate.setNominal(nominal);
             rateToUpdate.setRate(rate);
             exchangeRateDAO.update(rateToUpdate);
+            rateView.put(currencyCode, rateToUpdate);
+            auditLog.rateChanged(AUDIT_ACTOR, currencyCode, previous, rateToUpdate);
             System.out.println("Updated rate for " + currencyCode);
         } else {
             ExchangeRate newRate = new ExchangeRate();
@@ -83,22 +214,26 @@ public class CentralBankService {
             newRate.setNominal(nominal);
             newRate.setRate(rate);
             exchangeRateDAO.save(newRate);
+            rateView.put(currencyCode, newRate);
+            auditLog.rateChanged(AUDIT_ACTOR, currencyCode, null, newRate);
             System.out.println("Created new rate for " + currencyCode);
         }
     }
 
     /**
      * Приватный хелпер для получения данных от ЦБ.
+     *
+     * @param allowStale можно ли использовать последние полученные курсы, если ЦБ сейчас недоступен
      */
-    private JsonNode fetchRatesAndGetValuteNode() throws IOException, InterruptedException {
-
-        HttpRequest request = HttpRequest.newBuilder().uri(URI.create(CBR_API_URL)).GET().build();
-        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-        if (response.statusCode() != 200) {
-            throw new IOException("Failed to fetch rates from CBR. Status code: " + response.statusCode());
+    private JsonNode fetchRatesAndGetValuteNode(boolean allowStale) throws IOException, InterruptedException {
+        CbrClient.Rates rates = cbrClient.fetch();
+        if (rates.isStale()) {
+            Instant fetchedAt = Instant.ofEpochMilli(rates.getFetchedAtMillis());
+            if (!allowStale) {
+                throw new IOException("ЦБ недоступен, курсы на " + fetchedAt + " уже сохранены.");
+            }
+            System.out.println("CBR is unavailable, using rates fetched at " + fetchedAt);
         }
-        JsonNode rootNode = objectMapper.readTree(response.body());
-        return rootNode.path("Valute");
+        return rates.getValute();
     }
 }
-
@@ -0,0 +1,112 @@
+package org.example.service;
+
+import org.example.AppConfig;
+import org.example.CurrencyCodes;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Округление результатов конвертации до точности целевой валюты (число знаков дробной части
+ * по ISO 4217: у JPY 0, у BHD 3 и т. д., по умолчанию 2). Таблица строится один раз при старте,
+ * её можно дополнить параметром {@code conversion.minor.units} (например, {@code BTC:8,USDT:6}).
+ * <p>
+ * Округление идёт через {@link BigDecimal#setScale(int, RoundingMode)} с готовыми числом знаков
+ * и режимом, поэтому на запрос не создаётся ничего, кроме самого результата.
+ */
+public final class ConversionEngine {
+    public static final RoundingMode DEFAULT_ROUNDING = RoundingMode.HALF_UP;
+    private static final int DEFAULT_MINOR_UNITS = 2;
+    private static final int MAX_MINOR_UNITS = 18;
+    private static final ConversionEngine INSTANCE = new ConversionEngine();
+
+    private final Map<String, Integer> minorUnits = new HashMap<>();
+
+    private ConversionEngine() {
+        for (String code : new String[]{"BIF", "CLP", "DJF", "GNF", "ISK", "JPY", "KMF", "KRW", "PYG",
+                "RWF", "UGX", "UYI", "VND", "VUV", "XAF", "XOF", "XPF"}) {
+            minorUnits.put(code, 0);
+        }
+        for (String code : new String[]{"BHD", "IQD", "JOD", "KWD", "LYD", "OMR", "TND"}) {
+            minorUnits.put(code, 3);
+        }
+        minorUnits.put("CLF", 4);
+        minorUnits.put("UYW", 4);
+
+        String overrides = AppConfig.getString("conversion.minor.units", "");
+        for (String entry : overrides.split(",")) {
+            if (entry.isBlank()) {
+                continue;
+            }
+            parseOverride(entry.trim());
+        }
+    }
+
+    private void parseOverride(String entry) {
+        String[] parts = entry.split(":");
+        String code = parts[0].trim().toUpperCase(Locale.ROOT);
+        Integer units = null;
+        if (parts.length == 2) {
+            try {
+                units = Integer.valueOf(parts[1].trim());
+            } catch (NumberFormatException e) {
+                // не число - общее сообщение об ошибке ниже
+            }
+        }
+        if (!CurrencyCodes.isLatinLetters(code) || units == null || units < 0 || units > MAX_MINOR_UNITS) {
+            throw new IllegalStateException("Некорректное значение conversion.minor.units: '" + entry
+                    + "'. Ожидается код:знаков через запятую, например BTC:8,USDT:6 (знаков от 0 до "
+                    + MAX_MINOR_UNITS + ").");
+        }
+        minorUnits.put(code, units);
+    }
+
+    public static ConversionEngine getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Число знаков дробной части валюты.
+     */
+    public int minorUnits(String currencyCode) {
+        Integer units = minorUnits.get(currencyCode);
+        if (units == null) {
+            // Коды в запросе могут быть в нижнем регистре; таблица хранит их в верхнем
+            units = minorUnits.get(currencyCode.toUpperCase(Locale.ROOT));
+        }
+        return units != null ? units : DEFAULT_MINOR_UNITS;
+    }
+
+    /**
+     * Сумма в целевой валюте, округлённая до её точности.
+     */
+    public BigDecimal convert(BigDecimal amount, BigDecimal rate, String toCode, RoundingMode rounding) {
+        return amount.multiply(rate).setScale(minorUnits(toCode), rounding);
+    }
+
+    /**
+     * Режим округления из параметра запроса: имя {@link RoundingMode} в любом регистре
+     * или {@code bankers} (то же, что HALF_EVEN). Пустое значение - {@link #DEFAULT_ROUNDING}.
+     *
+     * @return режим или null, если значение не распознано
+     */
+    public static RoundingMode parseRounding(String value) {
+        if (value == null || value.isBlank()) {
+            return DEFAULT_ROUNDING;
+        }
+        String name = value.trim().toUpperCase(Locale.ROOT).replace('-', '_');
+        if (name.equals("BANKERS")) {
+            return RoundingMode.HALF_EVEN;
+        }
+        for (RoundingMode mode : RoundingMode.values()) {
+            // UNNECESSARY бросает исключение на любом неточном результате - в запросах не допускаем
+            if (mode != RoundingMode.UNNECESSARY && mode.name().equals(name)) {
+                return mode;
+            }
+        }
+        return null;
+    }
+}
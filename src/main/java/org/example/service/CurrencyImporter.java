@@ -0,0 +1,149 @@
+package org.example.service;
+
+import org.example.AppConfig;
+import org.example.cache.CurrencyView;
+import org.example.cluster.ClusterInvalidation;
+import org.example.dao.CurrencyDAO;
+import org.example.model.Currency;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Потоковый импорт валют: строки подаются по одной по мере чтения запроса,
+ * корректные копятся в пачку и сохраняются отдельными транзакциями по {@code import.batch.size} строк.
+ * Курсы для всех новых валют запрашиваются у ЦБ один раз в конце импорта, в фоне.
+ */
+public class CurrencyImporter {
+    private static final int BATCH_SIZE = AppConfig.getInt("import.batch.size", 500);
+    // Ошибок может быть сколько угодно, в ответ попадают только первые
+    private static final int MAX_REPORTED_ERRORS = 1000;
+
+    private final CurrencyDAO currencyDAO = new CurrencyDAO();
+    private final CentralBankService centralBankService = new CentralBankService();
+    private final CurrencyView currencyView = CurrencyView.getInstance();
+
+    private final List<Currency> batch = new ArrayList<>(BATCH_SIZE);
+    private final List<Integer> batchLines = new ArrayList<>(BATCH_SIZE);
+    private final Set<String> seenCodes = new HashSet<>();
+    private final List<Currency> imported = new ArrayList<>();
+    private final List<RowError> errors = new ArrayList<>();
+    private int failed;
+
+    /**
+     * Принимает строку файла: проверяет поля теми же правилами, что и POST /currency.
+     */
+    public void add(int line, String code, String fullName, String sign) {
+        Map<String, String> fieldErrors = CurrencyService.currencyFieldErrors(code, fullName, sign);
+        if (!fieldErrors.isEmpty()) {
+            reject(line, String.join("; ", fieldErrors.values()));
+            return;
+        }
+        String upperCode = code.toUpperCase();
+        if (!seenCodes.add(upperCode)) {
+            reject(line, "Валюта с кодом '" + upperCode + "' уже встречалась в файле.");
+            return;
+        }
+
+        Currency currency = new Currency();
+        currency.setCode(upperCode);
+        currency.setFullName(fullName);
+        currency.setSign(sign);
+        batch.add(currency);
+        batchLines.add(line);
+        if (batch.size() >= BATCH_SIZE) {
+            flush();
+        }
+    }
+
+    /**
+     * Отмечает строку, которую не удалось разобрать.
+     */
+    public void reject(int line, String message) {
+        failed++;
+        if (errors.size() < MAX_REPORTED_ERRORS) {
+            errors.add(new RowError(line, message));
+        }
+    }
+
+    /**
+     * Сохраняет остаток и запускает в фоне обновление курсов импортированных валют.
+     */
+    public Result finish() {
+        flush();
+        if (!imported.isEmpty()) {
+            // Ответ на импорт не ждёт ЦБ
+            centralBankService.updateRatesForCurrenciesAsync(imported);
+        }
+        return new Result(imported.size(), failed, errors);
+    }
+
+    private void flush() {
+        if (batch.isEmpty()) {
+            return;
+        }
+        boolean[] inserted = currencyDAO.saveAll(batch);
+        List<String> insertedCodes = new ArrayList<>(inserted.length);
+        for (int i = 0; i < inserted.length; i++) {
+            Currency currency = batch.get(i);
+            if (inserted[i]) {
+                currencyView.put(currency);
+                imported.add(currency);
+                insertedCodes.add(currency.getCode());
+            } else {
+                reject(batchLines.get(i), "Валюта с кодом '" + currency.getCode() + "' уже существует.");
+            }
+        }
+        ClusterInvalidation.getInstance().currenciesChanged(insertedCodes);
+        batch.clear();
+        batchLines.clear();
+    }
+
+    public static final class RowError {
+        private final int line;
+        private final String message;
+
+        private RowError(int line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+
+        public int getLine() {
+            return line;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    public static final class Result {
+        private final int imported;
+        private final int failed;
+        private final List<RowError> errors;
+
+        private Result(int imported, int failed, List<RowError> errors) {
+            this.imported = imported;
+            this.failed = failed;
+            this.errors = errors;
+        }
+
+        public int getImported() {
+            return imported;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        /**
+         * Первые ошибки по строкам (не более 1000).
+         */
+        public List<RowError> getErrors() {
+            return errors;
+        }
+    }
+}
@@ -1,6 +1,11 @@
 package org.example.service;
 
+import org.example.CurrencyCodes;
+import org.example.cache.CurrencyView;
+import org.example.cache.RateView;
+import org.example.cluster.ClusterInvalidation;
 import org.example.dao.CurrencyDAO;
+import org.example.dao.ExchangeRateWriteBehind;
 import org.example.exception.EntityNotFoundException;
 import org.example.exception.ValidationException;
 import org.example.model.Currency;
@@ -12,6 +17,9 @@ import java.util.Map;
 public class CurrencyService {
     private final CurrencyDAO currencyDAO = new CurrencyDAO();
     private final CentralBankService centralBankService = new CentralBankService();
+    private final CurrencyView currencyView = CurrencyView.getInstance();
+    private final ClusterInvalidation clusterInvalidation = ClusterInvalidation.getInstance();
+    private final ExchangeRateWriteBehind writeBehind = ExchangeRateWriteBehind.getInstance();
 
     /**
      * Добавляет новую валюту. Валидирует данные и делегирует сохранение DAO.
@@ -26,6 +34,8 @@ public class CurrencyService {
         newCurrency.setSign(sign);
 
         Currency savedCurrency = currencyDAO.save(newCurrency);
+        currencyView.put(savedCurrency);
+        clusterInvalidation.currencyChanged(savedCurrency.getCode());
         fetchRateForNewCurrencyAsync(savedCurrency);
         return savedCurrency;
     }
@@ -34,6 +44,9 @@ public class CurrencyService {
      * Возвращает список всех валют.
      */
     public List<Currency> getAllCurrencies() {
+        if (currencyView.isLoaded()) {
+            return currencyView.all();
+        }
         return currencyDAO.findAll();
     }
 
@@ -42,7 +55,7 @@ public class CurrencyService {
      * Это основной метод для получения одной сущности.
      */
     public Currency getCurrencyByCode(String code) {
-        return currencyDAO.findByCode(code.toUpperCase())
+        return currencyView.find(code.toUpperCase(), currencyDAO::findByCode)
                 .orElseThrow(() -> new EntityNotFoundException("Валюта", code));
     }
 
@@ -51,11 +64,14 @@ public class CurrencyService {
      */
     public Currency updateCurrency(String code, String newFullName, String newSign) {
         validateCurrencyFields(code, newFullName, newSign);
-        Currency currencyToUpdate = getCurrencyByCode(code);
+        // Объект из справочника общий для всех потоков, поэтому меняем копию
+        Currency currencyToUpdate = new Currency(getCurrencyByCode(code));
         currencyToUpdate.setFullName(newFullName);
         currencyToUpdate.setSign(newSign);
 
         currencyDAO.update(currencyToUpdate);
+        currencyView.put(currencyToUpdate);
+        clusterInvalidation.currencyChanged(currencyToUpdate.getCode());
         return currencyToUpdate;
     }
 
@@ -65,6 +81,13 @@ public class CurrencyService {
     public void deleteCurrency(String code) {
         Currency currencyToDelete = getCurrencyByCode(code);
         currencyDAO.delete(currencyToDelete.getId());
+        if (writeBehind.isEnabled()) {
+            // Иначе ожидающий курс удалённой валюты запишется следующим сбросом
+            writeBehind.discard(currencyToDelete.getId(), currencyToDelete.getCode());
+        }
+        currencyView.remove(currencyToDelete.getCode());
+        RateView.getInstance().remove(currencyToDelete.getCode());
+        clusterInvalidation.currencyChanged(currencyToDelete.getCode());
     }
 
     private void fetchRateForNewCurrencyAsync(Currency currency) {
@@ -78,13 +101,23 @@ public class CurrencyService {
     }
 
     private void validateCurrencyFields(String code, String fullName, String sign) {
+        Map<String, String> validationErrors = currencyFieldErrors(code, fullName, sign);
+        if (!validationErrors.isEmpty()) {
+            throw new ValidationException(validationErrors);
+        }
+    }
+
+    /**
+     * Ошибки валидации полей валюты (пустая карта - поля корректны).
+     */
+    static Map<String, String> currencyFieldErrors(String code, String fullName, String sign) {
         Map<String, String> validationErrors = new HashMap<>();
 
         if (code == null || code.isBlank()) {
             validationErrors.put("code", "Заполните код валюты (Code).");
         } else if (code.length() != 3) {
             validationErrors.put("code", "Код валюты (Code) должен быть не более 3 букв.");
-        } else if (!code.matches("[a-zA-Z]+")) {
+        } else if (!CurrencyCodes.isLatinLetters(code)) {
             validationErrors.put("code", "Код валюты (Code) должен содержать только латинские буквы.");
         }
 
@@ -99,9 +132,6 @@ public class CurrencyService {
         } else if (sign.length() > 5) {
             validationErrors.put("sign", "Знак валюты (Sign) не может быть больше 5 символов.");
         }
-
-        if (!validationErrors.isEmpty()) {
-            throw new ValidationException(validationErrors);
-        }
+        return validationErrors;
     }
 }
@@ -1,27 +1,58 @@
 package org.example.service;
 
+import org.example.CurrencyCodes;
+import org.example.audit.AuditLog;
+import org.example.cache.CurrencyView;
+import org.example.cache.RateView;
+import org.example.cluster.ClusterInvalidation;
 import org.example.dao.CurrencyDAO;
 import org.example.dao.ExchangeRateDAO;
+import org.example.dao.ExchangeRateWriteBehind;
+import org.example.exception.DuplicateEntityException;
 import org.example.exception.EntityNotFoundException;
 import org.example.exception.ValidationException;
 import org.example.model.Currency;
 import org.example.model.ExchangeRate;
+import org.example.snapshot.RateSnapshot;
+import org.example.snapshot.RateSnapshotStore;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
 
 public class ExchangeRateService {
     private static final String BASE_CURRENCY_CODE = "RUB";
+    // Начиная с такого числа валют кросс-курсы считаются параллельно
+    private static final int PARALLEL_THRESHOLD = 512;
     private final CurrencyDAO currencyDAO = new CurrencyDAO();
     private final ExchangeRateDAO exchangeRateDAO = new ExchangeRateDAO();
+    private final ExchangeRateWriteBehind writeBehind = ExchangeRateWriteBehind.getInstance();
+    private final RateView rateView = RateView.getInstance();
+    private final CurrencyView currencyView = CurrencyView.getInstance();
+    private final RateSnapshotStore snapshotStore = RateSnapshotStore.getInstance();
+    private final ClusterInvalidation clusterInvalidation = ClusterInvalidation.getInstance();
+    private final ConversionEngine conversionEngine = ConversionEngine.getInstance();
+    private final AuditLog auditLog = AuditLog.getInstance();
 
-    public ExchangeRate addExchangeRate(String currencyCode, int nominal, BigDecimal rate) {
+    /**
+     * В режиме отложенной записи у возвращённого курса id равен 0: строка появится в БД только
+     * при сбросе очереди, и настоящий id курс получит при следующем перечитывании справочников из БД.
+     * С тем же нулевым id курс попадает в представление в памяти, в сообщение кластеру и в журнал аудита.
+     *
+     * @param actor кто вносит изменение, для журнала аудита
+     */
+    public ExchangeRate addExchangeRate(String currencyCode, int nominal, BigDecimal rate, String actor) {
         validateExchangeRateFields(currencyCode, nominal, rate);
 
-        Currency currency = currencyDAO.findByCode(currencyCode)
+        Currency currency = currencyView.find(currencyCode.toUpperCase(), currencyDAO::findByCode)
                 .orElseThrow(() -> new EntityNotFoundException("Валюта", currencyCode));
 
         ExchangeRate exchangeRate = new ExchangeRate();
@@ -29,35 +60,88 @@ public class ExchangeRateService {
         exchangeRate.setNominal(nominal);
         exchangeRate.setRate(rate);
 
-        return exchangeRateDAO.save(exchangeRate);
+        if (writeBehind.isEnabled()) {
+            // Проверка и постановка в очередь атомарны для валюты: иначе два одновременных добавления
+            // прошли бы проверку оба, и второе молча перезаписало бы первое
+            if (!writeBehind.submitIfAbsent(currency.getId(), currency.getCode(), nominal, rate,
+                    () -> findRate(currency.getCode()).isPresent())) {
+                throw new DuplicateEntityException("Обменный курс", "для валюты id= " + currency.getId());
+            }
+        } else {
+            exchangeRateDAO.save(exchangeRate);
+        }
+        rateView.put(currency.getCode(), exchangeRate);
+        clusterInvalidation.rateChanged(currency.getCode(), exchangeRate);
+        auditLog.rateChanged(actor, currency.getCode(), null, exchangeRate);
+        return exchangeRate;
     }
 
     public List<ExchangeRate> getAllExchangeRates() {
-        return exchangeRateDAO.findAll();
+        if (rateView.isLoaded()) {
+            // Представление загружено целиком и уже содержит ещё не записанные курсы
+            return rateView.all();
+        }
+        List<ExchangeRate> rates = exchangeRateDAO.findAll();
+        if (writeBehind.isEnabled()) {
+            // Подмешиваем курсы, которые ещё не дошли до БД
+            Map<Integer, ExchangeRate> byCurrencyId = new LinkedHashMap<>();
+            for (ExchangeRate rate : rates) {
+                byCurrencyId.put(rate.getIdCurrency(), rate);
+            }
+            for (ExchangeRate pendingRate : writeBehind.pendingRates().values()) {
+                ExchangeRate stored = byCurrencyId.get(pendingRate.getIdCurrency());
+                if (stored != null) {
+                    pendingRate.setId(stored.getId());
+                }
+                byCurrencyId.put(pendingRate.getIdCurrency(), pendingRate);
+            }
+            rates = new ArrayList<>(byCurrencyId.values());
+        }
+        return rates;
     }
 
     public ExchangeRate getExchangeRateByCode(String currencyCode) {
-        return exchangeRateDAO.findByCurrencyCode(currencyCode.toUpperCase())
+        return findRate(currencyCode.toUpperCase())
                 .orElseThrow(() -> new EntityNotFoundException("Обменный курс ", currencyCode));
     }
 
-    public ExchangeRate updateExchangeRate(String currencyCode, int nominal, BigDecimal rate) {
+    public ExchangeRate updateExchangeRate(String currencyCode, int nominal, BigDecimal rate, String actor) {
         validateExchangeRateFields(currencyCode, nominal, rate);
-        ExchangeRate exchangeRate = getExchangeRateByCode(currencyCode);
+        String code = currencyCode.toUpperCase();
+        ExchangeRate previous = getExchangeRateByCode(code);
+        // Объект из представления общий для всех потоков, поэтому меняем копию
+        ExchangeRate exchangeRate = new ExchangeRate(previous);
         exchangeRate.setNominal(nominal);
         exchangeRate.setRate(rate);
-        exchangeRateDAO.update(exchangeRate);
+        if (writeBehind.isEnabled()) {
+            writeBehind.submit(exchangeRate.getIdCurrency(), code, nominal, rate);
+        } else {
+            exchangeRateDAO.update(exchangeRate);
+        }
+        rateView.put(code, exchangeRate);
+        clusterInvalidation.rateChanged(code, exchangeRate);
+        auditLog.rateChanged(actor, code, previous, exchangeRate);
 
         return exchangeRate;
     }
 
-    public void deleteExchangeRate(String currencyCode) throws EntityNotFoundException {
-        ExchangeRate rateToDelete = getExchangeRateByCode(currencyCode);
+    public void deleteExchangeRate(String currencyCode, String actor) throws EntityNotFoundException {
+        String code = currencyCode.toUpperCase();
+        // Иначе отложенная запись вернёт удалённый курс обратно
+        writeBehind.flushNow();
+        ExchangeRate rateToDelete = exchangeRateDAO.findByCurrencyCode(code)
+                .orElseThrow(() -> new EntityNotFoundException("Обменный курс ", currencyCode));
         exchangeRateDAO.delete(rateToDelete.getId());
+        rateView.remove(code);
+        clusterInvalidation.rateDeleted(code);
+        auditLog.rateDeleted(actor, code, rateToDelete);
     }
 
-    public BigDecimal convertAmount(BigDecimal amount, BigDecimal rate) {
-        return amount.multiply(rate).setScale(2, RoundingMode.HALF_UP);
+    /**
+     * Сумма в валюте toCode с точностью этой валюты (см. {@link ConversionEngine}).
+     */
+    public BigDecimal convertAmount(BigDecimal amount, BigDecimal rate, String toCode, RoundingMode rounding) {
+        return conversionEngine.convert(amount, rate, toCode, rounding);
     }
 
     public BigDecimal calculateCrossRate(String fromCode, String toCode) {
@@ -69,7 +153,7 @@ public class ExchangeRateService {
 
         // Конвертация ИЗ РУБЛЯ в другую валюту (RUB -> USD)
         if (fromCode.equals(BASE_CURRENCY_CODE)) {
-            ExchangeRate toRate = exchangeRateDAO.findByCurrencyCode(toCode)
+            ExchangeRate toRate = findRate(toCode)
                     .orElseThrow(() -> new EntityNotFoundException("Обменный курс валюты ", toCode));
 
             // Нам нужен курс 1 / (USD -> RUB)
@@ -81,7 +165,7 @@ public class ExchangeRateService {
 
         //  Конвертация В РУБЛЬ из другой валюты (USD -> RUB)
         if (toCode.equals(BASE_CURRENCY_CODE)) {
-            ExchangeRate fromRate = exchangeRateDAO.findByCurrencyCode(fromCode)
+            ExchangeRate fromRate = findRate(fromCode)
                     .orElseThrow(() -> new EntityNotFoundException("Обменный курс валюты ", fromCode));
 
             // Просто возвращаем курс этой валюты к рублю
@@ -91,9 +175,9 @@ public class ExchangeRateService {
 
         // Кросс-курс между двумя НЕ-РУБЛЕВЫМИ валютами (USD -> EUR)
         // (Этот блок остается таким же, как мы писали ранее)
-        ExchangeRate fromRate = exchangeRateDAO.findByCurrencyCode(fromCode)
+        ExchangeRate fromRate = findRate(fromCode)
                 .orElseThrow(() -> new EntityNotFoundException("Обменный курс валюты ", fromCode));
-        ExchangeRate toRate = exchangeRateDAO.findByCurrencyCode(toCode)
+        ExchangeRate toRate = findRate(toCode)
                 .orElseThrow(() -> new EntityNotFoundException("Обменный курс валюты ", toCode));
 
         BigDecimal fromRatePerOneUnit = fromRate.getRate().divide(
@@ -106,6 +190,101 @@ public class ExchangeRateService {
         return fromRatePerOneUnit.divide(toRatePerOneUnit, 12, RoundingMode.HALF_UP);
     }
 
+    /**
+     * Кросс-курсы из одной валюты во все остальные за один проход по курсам
+     * (по той же формуле, что и {@link #calculateCrossRate}).
+     *
+     * @param fromCode исходная валюта
+     * @param targets  коды целевых валют в верхнем регистре; null - все валюты с курсом и рубль
+     * @return целевая валюта -> кросс-курс, по возрастанию кода; исходная валюта не входит
+     */
+    public Map<String, BigDecimal> calculateCrossRates(String fromCode, Set<String> targets) {
+        Map<String, BigDecimal> perUnitByCode = perUnitByCode();
+        String from = fromCode.toUpperCase();
+        BigDecimal fromPerUnit;
+        if (from.equals(BASE_CURRENCY_CODE)) {
+            fromPerUnit = BigDecimal.ONE;
+        } else {
+            fromPerUnit = perUnitByCode.get(from);
+            if (fromPerUnit == null) {
+                throw new EntityNotFoundException("Обменный курс валюты ", fromCode);
+            }
+        }
+
+        // perUnitByCode() возвращает новую карту, её можно менять
+        perUnitByCode.remove(from);
+        if (targets != null) {
+            perUnitByCode.keySet().retainAll(targets);
+        }
+        Map<String, BigDecimal> crossRates = (perUnitByCode.size() >= PARALLEL_THRESHOLD
+                ? perUnitByCode.entrySet().parallelStream()
+                : perUnitByCode.entrySet().stream())
+                .collect(Collectors.toMap(Map.Entry::getKey,
+                        entry -> fromPerUnit.divide(entry.getValue(), 12, RoundingMode.HALF_UP),
+                        (a, b) -> a, TreeMap::new));
+        if (!from.equals(BASE_CURRENCY_CODE) && (targets == null || targets.contains(BASE_CURRENCY_CODE))) {
+            // Курс в рубль - это курс исходной валюты за единицу
+            crossRates.put(BASE_CURRENCY_CODE, fromPerUnit);
+        }
+        return crossRates;
+    }
+
+    private static BigDecimal perUnit(BigDecimal rate, int nominal) {
+        return rate.divide(BigDecimal.valueOf(nominal), 12, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * Новая карта «код -> курс за единицу валюты»: обходом хранилища курсов вне кучи (без объектов курсов),
+     * из свежего снимка до прогрева или одним запросом к БД.
+     */
+    private Map<String, BigDecimal> perUnitByCode() {
+        Map<String, BigDecimal> perUnitByCode = new HashMap<>();
+        if (rateView.isLoaded()) {
+            rateView.forEachRate((code, nominal, rateMicros) ->
+                    perUnitByCode.put(code, perUnit(RateView.rateFromMicros(rateMicros), nominal)));
+            return perUnitByCode;
+        }
+        Map<String, ExchangeRate> rates;
+        RateSnapshot snapshot = snapshotStore.currentIfFresh();
+        if (snapshot != null) {
+            rates = new HashMap<>();
+            for (Currency currency : snapshot.currencies()) {
+                snapshot.findRate(currency.getCode()).ifPresent(rate -> rates.put(currency.getCode(), rate));
+            }
+        } else {
+            rates = exchangeRateDAO.findAllByCurrencyCode();
+            if (writeBehind.isEnabled()) {
+                rates.putAll(writeBehind.pendingRates());
+            }
+        }
+        rates.forEach((code, rate) -> perUnitByCode.put(code, perUnit(rate.getRate(), rate.getNominal())));
+        return perUnitByCode;
+    }
+
+    private Optional<ExchangeRate> findRate(String currencyCode) {
+        // Несуществующие и некорректные коды отвечаются индексом валют; без шины кластера
+        // отсутствие кода сначала подтверждается в БД (валюту могли добавить на другом узле)
+        if (currencyView.isUnknown(currencyCode)) {
+            return Optional.empty();
+        }
+        String code = currencyCode.toUpperCase();
+        if (currencyView.isLoaded() && currencyView.find(code, currencyDAO::findByCode).isEmpty()) {
+            return Optional.empty();
+        }
+        if (!rateView.isLoaded()) {
+            // До окончания прогрева курсы читаются из общего снимка на диске, а не из БД
+            Optional<ExchangeRate> cached = rateView.get(code);
+            RateSnapshot snapshot = snapshotStore.currentIfFresh();
+            if (cached.isEmpty() && snapshot != null) {
+                Optional<ExchangeRate> fromSnapshot = snapshot.findRate(code);
+                if (fromSnapshot.isPresent()) {
+                    return fromSnapshot;
+                }
+            }
+        }
+        return rateView.find(code, exchangeRateDAO::findByCurrencyCode);
+    }
+
     private void validateExchangeRateFields(String currencyCode, Integer nominal, BigDecimal rate) throws ValidationException {
         Map<String, String> validationErrors = new HashMap<>();
 
@@ -114,7 +293,7 @@ public class ExchangeRateService {
             validationErrors.put("code", "Код валюты является обязательным полем.");
         } else if (currencyCode.length() != 3) {
             validationErrors.put("code", "Код валюты должен состоять из 3 символов.");
-        } else if (!currencyCode.matches("[a-zA-Z]+")) {
+        } else if (!CurrencyCodes.isLatinLetters(currencyCode)) {
             validationErrors.put("code", "Код валюты должен содержать только буквы.");
         }
 
@@ -0,0 +1,137 @@
+package org.example.service;
+
+import org.example.AppConfig;
+import org.example.cache.CurrencyView;
+import org.example.dao.CurrencyDAO;
+import org.example.dao.RateRollupDAO;
+import org.example.exception.EntityNotFoundException;
+import org.example.exception.ValidationException;
+import org.example.model.ExchangeRate;
+import org.example.model.RateRollup;
+import org.example.model.RollupPeriod;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Аналитика курсов по дням, неделям и месяцам на основе сводок {@code rate_rollup_units}.
+ * Сводки по валютам пополняются при каждом обновлении курсов из ЦБ,
+ * сводки по парам вычисляются из сводок двух валют без обращения к истории.
+ */
+public class RateAnalyticsService {
+    private static final String BASE_CURRENCY_CODE = "RUB";
+    private static final ZoneId ZONE = ZoneId.of(AppConfig.getString("analytics.zone", "Europe/Moscow"));
+
+    private final RateRollupDAO rollupDAO = new RateRollupDAO();
+    private final CurrencyDAO currencyDAO = new CurrencyDAO();
+    private final CurrencyView currencyView = CurrencyView.getInstance();
+
+    /**
+     * Учитывает записанные курсы в сводках. Ошибка не прерывает обновление курсов,
+     * пропущенное значение лишь не попадёт в статистику.
+     */
+    public void recordRates(Map<String, ExchangeRate> ratesByCode) {
+        if (ratesByCode.isEmpty()) {
+            return;
+        }
+        Map<String, BigDecimal> perUnit = new HashMap<>();
+        for (Map.Entry<String, ExchangeRate> entry : ratesByCode.entrySet()) {
+            ExchangeRate rate = entry.getValue();
+            perUnit.put(entry.getKey(), rate.getRate()
+                    .divide(BigDecimal.valueOf(rate.getNominal()), RateRollup.SCALE, RoundingMode.HALF_UP));
+        }
+        try {
+            rollupDAO.record(perUnit, LocalDate.now(ZONE), System.currentTimeMillis());
+        } catch (RuntimeException e) {
+            System.err.println("Не удалось обновить сводки курсов: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Последние limit периодов по курсу валюты к рублю.
+     */
+    public List<RateRollup> getRollups(String code, RollupPeriod period, int limit) {
+        return rollupDAO.findRecent(requireCurrency(code), period, limit);
+    }
+
+    /**
+     * Последние limit периодов по кросс-курсу from/to. Первое, последнее и среднее значения -
+     * отношения соответствующих значений валют (среднее - приближённо). Максимум и минимум -
+     * границы: курс пары в периоде не выше max(from)/min(to) и не ниже min(from)/max(to).
+     */
+    public List<RateRollup> getPairRollups(String fromCode, String toCode, RollupPeriod period, int limit) {
+        String from = requireCurrency(fromCode);
+        String to = requireCurrency(toCode);
+        if (from.equals(to)) {
+            throw new ValidationException(Map.of("to", "Валюты пары должны различаться."));
+        }
+        // Курс рубля к рублю постоянный, сводок по нему нет
+        List<RateRollup> fromRollups = from.equals(BASE_CURRENCY_CODE) ? null : rollupDAO.findRecent(from, period, limit);
+        List<RateRollup> toRollups = to.equals(BASE_CURRENCY_CODE) ? null : rollupDAO.findRecent(to, period, limit);
+        if (fromRollups == null) {
+            return derive(toRollups, null, true);
+        }
+        return derive(fromRollups, toRollups, false);
+    }
+
+    /**
+     * Делит сводки одной валюты на сводки другой за те же периоды.
+     * divisor == null означает рубль; invert - рубль в числителе.
+     */
+    private static List<RateRollup> derive(List<RateRollup> series, List<RateRollup> divisor, boolean invert) {
+        Map<LocalDate, RateRollup> divisorByPeriod = new HashMap<>();
+        if (divisor != null) {
+            for (RateRollup rollup : divisor) {
+                divisorByPeriod.put(rollup.getPeriodStart(), rollup);
+            }
+        }
+        List<RateRollup> result = new ArrayList<>(series.size());
+        for (RateRollup rollup : series) {
+            RateRollup numerator = invert ? null : rollup;
+            RateRollup denominator = invert ? rollup : divisorByPeriod.get(rollup.getPeriodStart());
+            if (!invert && divisor != null && denominator == null) {
+                continue;
+            }
+            RateRollup pair = new RateRollup();
+            pair.setPeriodStart(rollup.getPeriodStart());
+            pair.setOpen(ratio(numerator, RateRollup::getOpen, denominator, RateRollup::getOpen));
+            pair.setHigh(ratio(numerator, RateRollup::getHigh, denominator, RateRollup::getLow));
+            pair.setLow(ratio(numerator, RateRollup::getLow, denominator, RateRollup::getHigh));
+            pair.setClose(ratio(numerator, RateRollup::getClose, denominator, RateRollup::getClose));
+            pair.setAverage(ratio(numerator, RateRollup::getAverage, denominator, RateRollup::getAverage));
+            pair.setSamples(Math.min(samples(numerator), samples(denominator)));
+            result.add(pair);
+        }
+        return result;
+    }
+
+    private static BigDecimal ratio(RateRollup numerator, Function<RateRollup, BigDecimal> numeratorField,
+                                    RateRollup denominator, Function<RateRollup, BigDecimal> denominatorField) {
+        return value(numerator, numeratorField)
+                .divide(value(denominator, denominatorField), RateRollup.SCALE, RoundingMode.HALF_UP);
+    }
+
+    private static BigDecimal value(RateRollup rollup, Function<RateRollup, BigDecimal> field) {
+        return rollup == null ? BigDecimal.ONE : field.apply(rollup);
+    }
+
+    private static int samples(RateRollup rollup) {
+        return rollup == null ? Integer.MAX_VALUE : rollup.getSamples();
+    }
+
+    private String requireCurrency(String code) {
+        String upperCode = code.toUpperCase();
+        if (currencyView.isUnknown(upperCode)
+                || currencyView.find(upperCode, currencyDAO::findByCode).isEmpty()) {
+            throw new EntityNotFoundException("Валюта", code);
+        }
+        return upperCode;
+    }
+}
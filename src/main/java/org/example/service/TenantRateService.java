@@ -0,0 +1,158 @@
+package org.example.service;
+
+import org.example.CurrencyCodes;
+import org.example.cache.CurrencyView;
+import org.example.cache.RateView;
+import org.example.cache.TenantRateBook;
+import org.example.cache.TenantRateBooks;
+import org.example.cluster.ClusterInvalidation;
+import org.example.dao.CurrencyDAO;
+import org.example.dao.TenantRateDAO;
+import org.example.exception.DataAccessResourceFailureException;
+import org.example.exception.EntityNotFoundException;
+import org.example.exception.ValidationException;
+import org.example.model.TenantRateAdjustment;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Книги курсов тенантов: поправки хранятся в БД, конвертация идёт по книгам курсов в памяти
+ * ({@link TenantRateBook}) без обращений к БД. Идентификатор тенанта приводится к нижнему регистру.
+ */
+public class TenantRateService {
+    private static final int MAX_TENANT_LENGTH = 64;
+    private static final int MAX_SPREAD_BPS = 9_999;
+
+    private final TenantRateDAO tenantRateDAO = new TenantRateDAO();
+    private final CurrencyDAO currencyDAO = new CurrencyDAO();
+    private final CurrencyView currencyView = CurrencyView.getInstance();
+    private final TenantRateBooks books = TenantRateBooks.getInstance();
+    private final RateView rateView = RateView.getInstance();
+    private final ClusterInvalidation clusterInvalidation = ClusterInvalidation.getInstance();
+
+    /**
+     * Кросс-курс по книге тенанта, с его курсами и спредами.
+     */
+    public BigDecimal calculateCrossRate(String tenant, String fromCode, String toCode) {
+        TenantRateBook book = books.find(normalizeTenant(tenant));
+        if (book == null) {
+            throw new EntityNotFoundException("Тенант", tenant);
+        }
+        if (!rateView.isLoaded()) {
+            // Книги строятся по курсам в памяти; до окончания прогрева их там нет
+            throw new DataAccessResourceFailureException("Курсы ещё не загружены в память.", null);
+        }
+        String from = fromCode.toUpperCase();
+        String to = toCode.toUpperCase();
+        BigDecimal rate = book.crossRate(from, to);
+        if (rate == null) {
+            throw new EntityNotFoundException("Обменный курс валюты ", book.hasRate(from) ? toCode : fromCode);
+        }
+        return rate;
+    }
+
+    public Set<String> getTenants() {
+        return books.tenants();
+    }
+
+    public List<TenantRateAdjustment> getAdjustments(String tenant) {
+        String id = normalizeTenant(tenant);
+        if (books.find(id) == null) {
+            throw new EntityNotFoundException("Тенант", tenant);
+        }
+        return tenantRateDAO.findByTenant(id);
+    }
+
+    /**
+     * Задаёт поправку тенанта к валюте (или {@code *} - спред для всех валют). Новый тенант
+     * появляется с первой поправкой.
+     *
+     * @param spreadBps спред в базисных пунктах или null
+     * @param rate      собственный курс за единицу валюты в рублях или null
+     */
+    public TenantRateAdjustment setAdjustment(String tenant, String currencyCode, Integer spreadBps, BigDecimal rate) {
+        validateAdjustment(tenant, currencyCode, spreadBps, rate);
+
+        TenantRateAdjustment adjustment = new TenantRateAdjustment();
+        adjustment.setTenant(normalizeTenant(tenant));
+        adjustment.setCurrencyCode(currencyCode.toUpperCase());
+        adjustment.setSpreadBps(spreadBps);
+        adjustment.setRate(rate);
+        tenantRateDAO.upsert(adjustment, System.currentTimeMillis());
+        reload(adjustment.getTenant());
+        clusterInvalidation.tenantChanged(adjustment.getTenant());
+        return adjustment;
+    }
+
+    public void deleteAdjustment(String tenant, String currencyCode) {
+        String id = normalizeTenant(tenant);
+        if (!tenantRateDAO.delete(id, currencyCode.toUpperCase())) {
+            throw new EntityNotFoundException("Поправка тенанта " + tenant, currencyCode);
+        }
+        reload(id);
+        clusterInvalidation.tenantChanged(id);
+    }
+
+    /**
+     * Перечитывает поправки тенанта из БД (после изменения на этом или другом узле).
+     */
+    public void reload(String tenant) {
+        books.load(tenant, tenantRateDAO.findByTenant(tenant));
+    }
+
+    public void reloadAll() {
+        books.loadAll(tenantRateDAO.findAll());
+    }
+
+    private static String normalizeTenant(String tenant) {
+        return tenant.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private void validateAdjustment(String tenant, String currencyCode, Integer spreadBps, BigDecimal rate) {
+        Map<String, String> validationErrors = new HashMap<>();
+
+        if (tenant == null || tenant.isBlank()) {
+            validationErrors.put("tenant", "Тенант является обязательным полем.");
+        } else if (tenant.trim().length() > MAX_TENANT_LENGTH
+                || !tenant.trim().chars().allMatch(c -> c < 128 && (Character.isLetterOrDigit(c) || c == '-' || c == '_'))) {
+            // Идентификатор передаётся строкой сообщения шины кластера, поэтому без пробелов
+            validationErrors.put("tenant", "Тенант - до " + MAX_TENANT_LENGTH + " латинских букв, цифр, '-' и '_'.");
+        }
+
+        if (currencyCode == null || currencyCode.isBlank()) {
+            validationErrors.put("code", "Код валюты является обязательным полем.");
+        } else if (!TenantRateBook.ANY_CURRENCY.equals(currencyCode)
+                && (currencyCode.length() != 3 || !CurrencyCodes.isLatinLetters(currencyCode))) {
+            validationErrors.put("code", "Код валюты - три латинские буквы или '*'.");
+        } else if (!TenantRateBook.ANY_CURRENCY.equals(currencyCode)
+                && currencyView.find(currencyCode.toUpperCase(), currencyDAO::findByCode).isEmpty()) {
+            // Поправка к неизвестной валюте не попала бы в книгу, но висела бы в списке поправок
+            validationErrors.put("code", "Валюта с кодом " + currencyCode.toUpperCase() + " не найдена.");
+        }
+
+        if (spreadBps == null && rate == null) {
+            validationErrors.put("spreadBps", "Укажите спред, курс или и то, и другое.");
+        }
+        if (spreadBps != null && (spreadBps < 0 || spreadBps > MAX_SPREAD_BPS)) {
+            validationErrors.put("spreadBps", "Спред должен быть от 0 до " + MAX_SPREAD_BPS + " базисных пунктов.");
+        }
+        if (rate != null) {
+            if (TenantRateBook.ANY_CURRENCY.equals(currencyCode)) {
+                validationErrors.put("rate", "Курс задаётся для конкретной валюты.");
+            } else if (rate.signum() <= 0) {
+                validationErrors.put("rate", "Курс должен быть положительным числом.");
+            } else if (rate.precision() - rate.scale() > 6 || rate.scale() > 6) {
+                validationErrors.put("rate", "В курсе не может быть более 6 цифр до и после запятой.");
+            }
+        }
+
+        if (!validationErrors.isEmpty()) {
+            throw new ValidationException(validationErrors);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package org.example.service;
+
+import org.example.AppConfig;
+import org.example.JsonWriters;
+import org.example.ReadinessState;
+import org.example.cache.CurrencyView;
+import org.example.cache.RateView;
+import org.example.cache.SerializedResponseCache;
+import org.example.dao.CurrencyDAO;
+import org.example.dao.ExchangeRateDAO;
+import org.example.dao.ExchangeRateWriteBehind;
+import org.example.exception.EntityNotFoundException;
+import org.example.model.Currency;
+import org.example.model.ExchangeRate;
+import org.example.snapshot.RateSnapshotStore;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.example.JsonResponseUtil.currenciesToJsonBytes;
+import static org.example.JsonResponseUtil.exchangeRatesToJsonBytes;
+import static org.example.JsonResponseUtil.toJsonBytes;
+
+/**
+ * Прогрев экземпляра перед приёмом трафика: загрузка справочников в память,
+ * подготовка частых ответов и прогон конвертации и сериализации для JIT.
+ */
+public class WarmupService {
+    private static final BigDecimal WARMUP_AMOUNT = BigDecimal.valueOf(100);
+
+    private final int iterations = AppConfig.getInt("warmup.iterations", 5000);
+    private final CurrencyDAO currencyDAO = new CurrencyDAO();
+    private final ExchangeRateDAO exchangeRateDAO = new ExchangeRateDAO();
+    private final ExchangeRateService exchangeRateService = new ExchangeRateService();
+    private final TenantRateService tenantRateService = new TenantRateService();
+    private final CurrencyView currencyView = CurrencyView.getInstance();
+    private final RateView rateView = RateView.getInstance();
+    private final SerializedResponseCache responseCache = SerializedResponseCache.getInstance();
+
+    /**
+     * Выполняет прогрев и помечает экземпляр готовым.
+     */
+    public void warmUp() throws IOException {
+        long startedAt = System.nanoTime();
+
+        // 1. Справочники в память
+        List<Currency> currencies = reloadViews();
+        RateSnapshotStore.getInstance().publishFromViews();
+
+        // 2. Готовые тела списков (заодно прогревается интроспекция Jackson для моделей)
+        responseCache.get(SerializedResponseCache.CURRENCY_LIST, currencyView.version(),
+                () -> currenciesToJsonBytes(currencyView.all()));
+        responseCache.get(SerializedResponseCache.EXCHANGE_RATE_LIST, rateView.version(),
+                () -> exchangeRatesToJsonBytes(rateView.all()));
+
+        // 3. Прогон конвертации и сериализации ответа /exchange
+        List<String> codes = new ArrayList<>();
+        for (Currency currency : currencies) {
+            codes.add(currency.getCode());
+        }
+        if (!codes.isEmpty()) {
+            for (int i = 0; i < iterations; i++) {
+                String from = codes.get(i % codes.size());
+                String to = codes.get((i * 7 + 1) % codes.size());
+                try {
+                    BigDecimal crossRate = exchangeRateService.calculateCrossRate(from, to);
+                    BigDecimal converted = exchangeRateService.convertAmount(WARMUP_AMOUNT, crossRate, to,
+                            ConversionEngine.DEFAULT_ROUNDING);
+                    toJsonBytes(gen -> JsonWriters.writeConversion(gen, from, to, crossRate, WARMUP_AMOUNT, converted));
+                } catch (EntityNotFoundException e) {
+                    // Для части валют курса может не быть - это не мешает прогреву
+                }
+            }
+        }
+
+        ReadinessState.markReady();
+        System.out.println("Warm-up finished in " + (System.nanoTime() - startedAt) / 1_000_000 + " ms: "
+                + currencies.size() + " currencies, " + rateView.all().size() + " rates.");
+    }
+
+    /**
+     * Перечитывает справочники валют и курсов, а также поправки тенантов из БД в память.
+     *
+     * @return загруженные валюты
+     */
+    public List<Currency> reloadViews() {
+        List<Currency> currencies = currencyDAO.findAllUnbounded();
+        currencyView.loadAll(currencies);
+        rateView.loadAll(loadRatesByCode(currencies));
+        tenantRateService.reloadAll();
+        return currencies;
+    }
+
+    private Map<String, ExchangeRate> loadRatesByCode(List<Currency> currencies) {
+        Map<Integer, String> codeById = new HashMap<>();
+        for (Currency currency : currencies) {
+            codeById.put(currency.getId(), currency.getCode());
+        }
+        Map<String, ExchangeRate> ratesByCode = new LinkedHashMap<>();
+        for (ExchangeRate rate : exchangeRateDAO.findAll()) {
+            String code = codeById.get(rate.getIdCurrency());
+            if (code != null) {
+                ratesByCode.put(code, rate);
+            }
+        }
+        // Курсы, ещё не записанные в БД в режиме write-behind, новее сохранённых
+        ExchangeRateWriteBehind writeBehind = ExchangeRateWriteBehind.getInstance();
+        if (writeBehind.isEnabled()) {
+            writeBehind.pendingRates().forEach((code, pendingRate) -> {
+                ExchangeRate stored = ratesByCode.get(code);
+                if (stored != null) {
+                    pendingRate.setId(stored.getId());
+                }
+                ratesByCode.put(code, pendingRate);
+            });
+        }
+        return ratesByCode;
+    }
+}
@@ -0,0 +1,83 @@
+package org.example.servlet;
+
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.example.JsonWriters;
+import org.example.model.RateRollup;
+import org.example.model.RollupPeriod;
+import org.example.service.RateAnalyticsService;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.example.JsonResponseUtil.*;
+
+/**
+ * Сводки курсов: {@code GET /analytics/USD?period=week&limit=12} - курс валюты к рублю,
+ * {@code GET /analytics/USD/EUR?period=month} - кросс-курс пары.
+ */
+@WebServlet("/analytics/*")
+public class AnalyticsServlet extends HttpServlet {
+    private static final int DEFAULT_LIMIT = 30;
+    private static final int MAX_LIMIT = 366;
+
+    private final RateAnalyticsService analyticsService = new RateAnalyticsService();
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        String pathInfo = req.getPathInfo();
+        String[] pathParts = pathInfo == null ? new String[0] : pathInfo.split("/");
+        if (pathParts.length != 2 && pathParts.length != 3) {
+            sendErrorResponse(resp, HttpServletResponse.SC_BAD_REQUEST,
+                    "Укажите валюту (/analytics/USD) или пару (/analytics/USD/EUR).");
+            return;
+        }
+
+        String periodParam = req.getParameter("period");
+        RollupPeriod period = periodParam == null || periodParam.isBlank() ? RollupPeriod.DAY : RollupPeriod.fromCode(periodParam);
+        if (period == null) {
+            sendErrorResponse(resp, HttpServletResponse.SC_BAD_REQUEST, "Период должен быть day, week или month.");
+            return;
+        }
+        int limit;
+        try {
+            String limitParam = req.getParameter("limit");
+            limit = limitParam == null || limitParam.isBlank() ? DEFAULT_LIMIT : Integer.parseInt(limitParam);
+        } catch (NumberFormatException e) {
+            limit = -1;
+        }
+        if (limit < 1 || limit > MAX_LIMIT) {
+            sendErrorResponse(resp, HttpServletResponse.SC_BAD_REQUEST,
+                    "Число периодов должно быть от 1 до " + MAX_LIMIT + ".");
+            return;
+        }
+
+        String code = pathParts[1];
+        if (pathParts.length == 2) {
+            List<RateRollup> rollups = analyticsService.getRollups(code, period, limit);
+            sendJson(resp, HttpServletResponse.SC_OK, gen -> {
+                gen.writeStartObject();
+                gen.writeStringField("code", code.toUpperCase());
+                gen.writeStringField("period", period.getCode());
+                gen.writeFieldName("rollups");
+                JsonWriters.writeRollups(gen, rollups);
+                gen.writeEndObject();
+            });
+            return;
+        }
+
+        String toCode = pathParts[2];
+        List<RateRollup> rollups = analyticsService.getPairRollups(code, toCode, period, limit);
+        sendJson(resp, HttpServletResponse.SC_OK, gen -> {
+            gen.writeStartObject();
+            gen.writeStringField("from", code.toUpperCase());
+            gen.writeStringField("to", toCode.toUpperCase());
+            gen.writeStringField("period", period.getCode());
+            gen.writeFieldName("rollups");
+            JsonWriters.writeRollups(gen, rollups);
+            gen.writeEndObject();
+        });
+    }
+}
@@ -3,49 +3,232 @@ package org.example.servlet;
 import jakarta.servlet.ServletContextEvent;
 import jakarta.servlet.ServletContextListener;
 import jakarta.servlet.annotation.WebListener;
+import org.example.AppConfig;
+import org.example.DatabaseManager;
+import org.example.ReadinessState;
+import org.example.audit.AuditLog;
+import org.example.cluster.ClusterInvalidation;
+import org.example.cluster.RefreshLeader;
+import org.example.dao.DatabaseMaintenance;
+import org.example.dao.ExchangeRateWriteBehind;
+import org.example.profiling.FlightRecorderControl;
 import org.example.service.CentralBankService;
+import org.example.service.WarmupService;
+import org.example.snapshot.RateSnapshot;
+import org.example.snapshot.RateSnapshotStore;
+import org.example.upstream.CbrClient;
 
+import java.io.IOException;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
 
 @WebListener
 public class AppServletContextListener implements ServletContextListener {
 
+    private static final long WARMUP_RETRY_SECONDS = 10;
+
+    private static final long LEADER_CHECK_INTERVAL_MS = AppConfig.getLong("leader.check.interval.ms", 30_000);
+    private static final long LEADER_RENEW_INTERVAL_MS = AppConfig.getLong("leader.renew.interval.ms", 30_000);
+    private static final boolean MAINTENANCE_ENABLED = AppConfig.getBoolean("db.maintenance.enabled", true);
+    private static final long CHECKPOINT_INTERVAL_MS = AppConfig.getLong("db.maintenance.checkpoint.interval.ms", 300_000);
+    private static final boolean JFR_CONTINUOUS = AppConfig.getBoolean("jfr.continuous", false);
+
     private ScheduledExecutorService scheduler;
+    private ScheduledExecutorService leaseScheduler;
+    // Отдельный поток: долгое обслуживание БД не должно задерживать продление аренды
+    private ScheduledExecutorService maintenanceScheduler;
+    private DatabaseMaintenance maintenance;
+    private RefreshLeader refreshLeader;
     private final CentralBankService cbrService = new CentralBankService();
+    private final WarmupService warmupService = new WarmupService();
 
     @Override
     public void contextInitialized(ServletContextEvent sce) {
         System.out.println("Web application is starting up...");
 
+        if (JFR_CONTINUOUS) {
+            try {
+                // Непрерывная запись с ограниченной глубиной: всплеск задержек можно выгрузить уже после него
+                FlightRecorderControl.getInstance().start(null);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Не удалось запустить запись JFR: " + e.getMessage());
+            }
+        }
+
+        try {
+            // Восстанавливаем курсы из журнала до того, как начнём обслуживать запросы
+            ExchangeRateWriteBehind.getInstance().start();
+        } catch (IOException e) {
+            throw new IllegalStateException("Не удалось запустить отложенную запись курсов.", e);
+        }
+
+        try {
+            AuditLog.getInstance().start();
+        } catch (IOException e) {
+            throw new IllegalStateException("Не удалось открыть журнал аудита.", e);
+        }
+
+        try {
+            ClusterInvalidation.getInstance().start();
+        } catch (IOException e) {
+            // Узел работает и без шины: его кэши догонят остальных при ежедневном обновлении
+            System.err.println("Не удалось подключиться к шине кластера: " + e.getMessage());
+        }
+
+        RateSnapshot snapshot = RateSnapshotStore.getInstance().currentIfFresh();
+        if (snapshot != null) {
+            // /ready по-прежнему ждёт прогрева; снимок лишь избавляет от БД запросы, пришедшие раньше
+            System.out.println("Conversions before warm-up completes are served from rate snapshot version "
+                    + snapshot.version() + ".");
+        }
+        // Ручные изменения курсов и валют тоже попадают в снимок, а не ждут следующего обновления из ЦБ
+        RateSnapshotStore.getInstance().startPublisher();
+
         scheduler = Executors.newSingleThreadScheduledExecutor();
 
-        Runnable updateRatesTask = () -> {
-            try {
-                System.out.println("Executing scheduled task: Updating exchange rates...");
-                cbrService.updateAllExchangeRates();
-                System.out.println("Task finished: Exchange rates updated successfully.");
-            } catch (Exception e) {
-                System.err.println("Error during scheduled rate update: " + e.getMessage());
-                e.printStackTrace();
+        // Сначала прогрев: пока он не завершён, /ready отвечает 503 и трафик на узел не идёт
+        scheduler.execute(this::warmUp);
+
+        // Обновление из ЦБ выполняет только узел-держатель аренды, остальные перечитывают результат
+        refreshLeader = new RefreshLeader(ClusterInvalidation.getInstance().nodeId(),
+                this::updateRates, warmupService::reloadViews, CbrClient.getInstance()::setLeaderStale);
+        // Аренда продлевается в своём потоке: обновление из ЦБ может длиться дольше её срока
+        leaseScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "refresh-lease");
+            thread.setDaemon(true);
+            return thread;
+        });
+        leaseScheduler.scheduleWithFixedDelay(this::renewLease, 0, LEADER_RENEW_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::leaderTick, 0, LEADER_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+        if (MAINTENANCE_ENABLED) {
+            maintenance = new DatabaseMaintenance(ClusterInvalidation.getInstance().nodeId());
+            maintenanceScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "db-maintenance");
+                thread.setDaemon(true);
+                return thread;
+            });
+            maintenanceScheduler.scheduleWithFixedDelay(this::checkpoint,
+                    CHECKPOINT_INTERVAL_MS, CHECKPOINT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            maintenanceScheduler.scheduleAtFixedRate(this::dailyMaintenance,
+                    millisUntilMaintenanceHour(), TimeUnit.DAYS.toMillis(1), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Время до ближайшего наступления часа {@code db.maintenance.hour} в поясе {@code db.maintenance.zone}.
+     */
+    private static long millisUntilMaintenanceHour() {
+        ZoneId zone = ZoneId.of(AppConfig.getString("db.maintenance.zone", "Europe/Moscow"));
+        ZonedDateTime now = ZonedDateTime.now(zone);
+        ZonedDateTime next = now.toLocalDate().atStartOfDay(zone).plusHours(AppConfig.getInt("db.maintenance.hour", 4));
+        if (!next.isAfter(now)) {
+            next = next.plusDays(1);
+        }
+        return Duration.between(now, next).toMillis();
+    }
+
+    private void checkpoint() {
+        try {
+            maintenance.checkpoint();
+        } catch (RuntimeException e) {
+            System.err.println("WAL checkpoint failed: " + e.getMessage());
+        }
+    }
+
+    private void dailyMaintenance() {
+        try {
+            if (!maintenance.runDaily()) {
+                System.out.println("Database maintenance is running on another node or already ran today, skipped.");
             }
-        };
+        } catch (RuntimeException e) {
+            // Исключение остановило бы периодическую задачу насовсем
+            System.err.println("Database maintenance failed: " + e.getMessage());
+        }
+    }
+
+    private void updateRates(BooleanSupplier leaseHeld) throws Exception {
+        System.out.println("Executing scheduled task: Updating exchange rates...");
+        cbrService.updateAllExchangeRates(leaseHeld);
+        // Ведомые перечитают курсы из БД, поэтому отложенные записи должны быть уже там
+        ExchangeRateWriteBehind.getInstance().flushNow();
+        System.out.println("Task finished: Exchange rates updated successfully.");
+    }
+
+    private void renewLease() {
+        try {
+            refreshLeader.renew();
+        } catch (RuntimeException e) {
+            // Исключение остановило бы периодическую задачу насовсем
+            System.err.println("Refresh lease renewal failed: " + e.getMessage());
+        }
+    }
+
+    private void leaderTick() {
+        try {
+            refreshLeader.tick();
+        } catch (Exception e) {
+            // Исключение остановило бы периодическую задачу насовсем
+            System.err.println("Refresh leader check failed: " + e.getMessage());
+        }
+    }
 
-        // Запускаем задачу немедленно при старте, а затем повторяем каждые 24 часа.
-        scheduler.scheduleAtFixedRate(
-                updateRatesTask,
-                0,
-                24,           // интервал
-                TimeUnit.HOURS // единица измерения интервала
-        );
+    private void warmUp() {
+        try {
+            warmupService.warmUp();
+        } catch (Exception e) {
+            System.err.println("Warm-up failed, retrying in " + WARMUP_RETRY_SECONDS + " s: " + e.getMessage());
+            scheduler.schedule(this::warmUp, WARMUP_RETRY_SECONDS, TimeUnit.SECONDS);
+        }
     }
 
     @Override
     public void contextDestroyed(ServletContextEvent sce) {
         System.out.println("Web application is shutting down...");
+        ReadinessState.markNotReady();
         if (scheduler != null) {
             scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (maintenanceScheduler != null) {
+            maintenanceScheduler.shutdown();
+            try {
+                maintenanceScheduler.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (leaseScheduler != null) {
+            leaseScheduler.shutdown();
+            try {
+                leaseScheduler.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (refreshLeader != null) {
+            try {
+                refreshLeader.stop();
+            } catch (RuntimeException e) {
+                System.err.println("Не удалось освободить аренду обновления: " + e.getMessage());
+            }
         }
+        CentralBankService.shutdownBackground();
+        CbrClient.getInstance().close();
+        RateSnapshotStore.getInstance().stopPublisher();
+        ClusterInvalidation.getInstance().stop();
+        ExchangeRateWriteBehind.getInstance().stop();
+        AuditLog.getInstance().stop();
+        FlightRecorderControl.getInstance().close();
+        DatabaseManager.close();
     }
 }
\ No newline at end of file
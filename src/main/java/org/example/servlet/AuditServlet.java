@@ -0,0 +1,76 @@
+package org.example.servlet;
+
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.example.audit.AuditLog;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+
+import static org.example.JsonResponseUtil.sendErrorResponse;
+
+/**
+ * Журнал аудита изменений курсов за период:
+ * {@code GET /audit?from=2025-01-01T00:00:00Z&to=2025-02-01T00:00:00Z[&code=USD][&limit=1000]}.
+ * Границы - момент в ISO-8601 или миллисекунды от эпохи, {@code to} не включается.
+ * Ответ - NDJSON (по объекту на строку), пишется в поток по мере чтения файлов журнала.
+ */
+@WebServlet("/audit")
+public class AuditServlet extends HttpServlet {
+    private static final int DEFAULT_LIMIT = 1000;
+    private static final int MAX_LIMIT = 100_000;
+
+    private final AuditLog auditLog = AuditLog.getInstance();
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        long from;
+        long to;
+        try {
+            from = parseTime(req.getParameter("from"), 0);
+            to = parseTime(req.getParameter("to"), Long.MAX_VALUE);
+        } catch (DateTimeParseException | NumberFormatException e) {
+            sendErrorResponse(resp, HttpServletResponse.SC_BAD_REQUEST,
+                    "Границы периода указываются как 2025-01-01T00:00:00Z или в миллисекундах.");
+            return;
+        }
+        if (from >= to) {
+            sendErrorResponse(resp, HttpServletResponse.SC_BAD_REQUEST, "Начало периода должно быть раньше конца.");
+            return;
+        }
+        int limit;
+        try {
+            String limitParam = req.getParameter("limit");
+            limit = limitParam == null || limitParam.isBlank() ? DEFAULT_LIMIT : Integer.parseInt(limitParam);
+        } catch (NumberFormatException e) {
+            limit = -1;
+        }
+        if (limit < 1 || limit > MAX_LIMIT) {
+            sendErrorResponse(resp, HttpServletResponse.SC_BAD_REQUEST,
+                    "Число записей должно быть от 1 до " + MAX_LIMIT + ".");
+            return;
+        }
+        String code = req.getParameter("code");
+
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.setContentType("application/x-ndjson; charset=UTF-8");
+        resp.setHeader("Cache-Control", "no-store");
+        Writer out = resp.getWriter();
+        auditLog.stream(from, to, code == null || code.isBlank() ? null : code.trim().toUpperCase(), limit, out);
+        out.flush();
+    }
+
+    private static long parseTime(String value, long defaultValue) {
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        String trimmed = value.trim();
+        return trimmed.chars().allMatch(Character::isDigit)
+                ? Long.parseLong(trimmed)
+                : Instant.parse(trimmed).toEpochMilli();
+    }
+}
@@ -0,0 +1,240 @@
+package org.example.servlet;
+
+import jakarta.servlet.*;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.example.AppConfig;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Сжимает JSON-ответы gzip, если клиент это поддерживает и тело не меньше порога
+ * {@code compression.min.size}. Первые байты тела буферизуются; как только порог
+ * превышен, ответ переключается на потоковое сжатие, поэтому длинные потоковые
+ * ответы не держатся в памяти целиком.
+ * <p>
+ * Brotli не поддерживается: для Java нет кодировщика без нативных библиотек.
+ * <p>
+ * Регистрируется в web.xml: порядок фильтров там задан явно.
+ */
+public class CompressionFilter implements Filter {
+    private static final boolean ENABLED = AppConfig.getBoolean("compression.enabled", true);
+    private static final int MIN_SIZE = AppConfig.getInt("compression.min.size", 1024);
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+
+        HttpServletRequest req = (HttpServletRequest) request;
+        HttpServletResponse res = (HttpServletResponse) response;
+
+        if (!ENABLED || !acceptsGzip(req)) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        res.addHeader("Vary", "Accept-Encoding");
+        CompressingResponse wrapper = new CompressingResponse(res);
+        try {
+            chain.doFilter(request, wrapper);
+        } finally {
+            wrapper.finish();
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    private static boolean acceptsGzip(HttpServletRequest req) {
+        String acceptEncoding = req.getHeader("Accept-Encoding");
+        return acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+    }
+
+    /**
+     * Обёртка ответа: копит тело до порога, затем решает - сжимать или отдавать как есть.
+     */
+    private static final class CompressingResponse extends HttpServletResponseWrapper {
+        private final HttpServletResponse response;
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream(MIN_SIZE);
+        private final BodyStream body = new BodyStream();
+        private OutputStream target;
+        private PrintWriter writer;
+        private long declaredLength = -1;
+
+        private CompressingResponse(HttpServletResponse response) {
+            super(response);
+            this.response = response;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            return body;
+        }
+
+        @Override
+        public PrintWriter getWriter() {
+            if (writer == null) {
+                Charset charset = response.getCharacterEncoding() != null
+                        ? Charset.forName(response.getCharacterEncoding()) : StandardCharsets.ISO_8859_1;
+                writer = new PrintWriter(new OutputStreamWriter(body, charset));
+            }
+            return writer;
+        }
+
+        @Override
+        public void setContentLength(int len) {
+            declaredLength = len;
+        }
+
+        @Override
+        public void setContentLengthLong(long len) {
+            declaredLength = len;
+        }
+
+        /**
+         * Ответ считается отправленным, как только выбран получатель тела: дальше часть тела
+         * уже в сжатом потоке или у контейнера и отменить её нельзя.
+         */
+        @Override
+        public boolean isCommitted() {
+            return target != null || super.isCommitted();
+        }
+
+        @Override
+        public void resetBuffer() {
+            if (target != null) {
+                throw new IllegalStateException("Тело ответа уже отправляется.");
+            }
+            discardBody();
+            super.resetBuffer();
+        }
+
+        @Override
+        public void reset() {
+            if (target != null) {
+                throw new IllegalStateException("Тело ответа уже отправляется.");
+            }
+            discardBody();
+            declaredLength = -1;
+            super.reset();
+            // reset() снимает и заголовки, а ответ по-прежнему зависит от Accept-Encoding
+            response.addHeader("Vary", "Accept-Encoding");
+        }
+
+        /**
+         * Отбрасывает накопленное тело вместе с недописанным буфером writer.
+         */
+        private void discardBody() {
+            writer = null;
+            pending.reset();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (target != null) {
+                target.flush();
+            }
+        }
+
+        private void write(byte[] bytes, int off, int len) throws IOException {
+            if (target != null) {
+                target.write(bytes, off, len);
+                return;
+            }
+            pending.write(bytes, off, len);
+            if (pending.size() >= MIN_SIZE) {
+                startBody(true);
+            }
+        }
+
+        /**
+         * Выбирает получателя тела: сжатый поток или исходный ответ.
+         */
+        private void startBody(boolean thresholdReached) throws IOException {
+            if (thresholdReached && isCompressible()) {
+                response.setHeader("Content-Encoding", "gzip");
+                target = new GZIPOutputStream(response.getOutputStream(), 8192);
+            } else {
+                if (!thresholdReached) {
+                    // Тело уже получено целиком - длина известна точно
+                    response.setContentLengthLong(pending.size());
+                } else if (declaredLength >= 0) {
+                    response.setContentLengthLong(declaredLength);
+                }
+                target = response.getOutputStream();
+            }
+            pending.writeTo(target);
+            pending.reset();
+        }
+
+        private boolean isCompressible() {
+            String contentType = response.getContentType();
+            return contentType != null
+                    && contentType.startsWith("application/json")
+                    && response.getHeader("Content-Encoding") == null;
+        }
+
+        private void finish() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (target == null) {
+                if (pending.size() == 0) {
+                    return;
+                }
+                // Тело меньше порога - отдаём без сжатия
+                startBody(false);
+            }
+            if (target instanceof GZIPOutputStream) {
+                ((GZIPOutputStream) target).finish();
+            }
+            target.flush();
+        }
+
+        private final class BodyStream extends ServletOutputStream {
+            @Override
+            public void write(int b) throws IOException {
+                CompressingResponse.this.write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                CompressingResponse.this.write(b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                // Пока решение о сжатии не принято, сбрасывать нечего
+                if (target != null) {
+                    target.flush();
+                }
+            }
+
+            @Override
+            public boolean isReady() {
+                return true;
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                throw new UnsupportedOperationException("Асинхронная запись не поддерживается.");
+            }
+        }
+    }
+}
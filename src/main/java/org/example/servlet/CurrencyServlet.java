@@ -4,7 +4,10 @@ import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import org.example.exception.*;
+import org.example.JsonWriters;
+import org.example.WireFormat;
+import org.example.cache.CurrencyView;
+import org.example.cache.SerializedResponseCache;
 import org.example.model.Currency;
 import org.example.service.CurrencyService;
 
@@ -16,14 +19,25 @@ import static org.example.JsonResponseUtil.*;
 @WebServlet("/currency/*")
 public class CurrencyServlet extends HttpServlet {
     private final CurrencyService currencyService = new CurrencyService();
+    private final CurrencyView currencyView = CurrencyView.getInstance();
+    private final SerializedResponseCache responseCache = SerializedResponseCache.getInstance();
 
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
 
         String pathInfo = req.getPathInfo();
         if (pathInfo == null || pathInfo.equals("/")) {
+            if (currencyView.isLoaded()) {
+                // Версию берём до чтения списка, чтобы не закэшировать новое тело под старой версией
+                long version = currencyView.version();
+                WireFormat format = WireFormat.current();
+                byte[] body = responseCache.get(format.qualify(SerializedResponseCache.CURRENCY_LIST), version,
+                        () -> currenciesToBytes(format, currencyService.getAllCurrencies()));
+                sendBytes(resp, HttpServletResponse.SC_OK, format, body);
+                return;
+            }
             List<Currency> currencies = currencyService.getAllCurrencies();
-            sendJsonResponse(resp, HttpServletResponse.SC_OK, currencies);
+            sendJson(resp, HttpServletResponse.SC_OK, gen -> JsonWriters.writeCurrencies(gen, currencies));
             return;
         }
 
@@ -31,7 +45,7 @@ public class CurrencyServlet extends HttpServlet {
         if (pathParts.length == 2) {
             String currencyCode = pathParts[1];
             Currency currency = currencyService.getCurrencyByCode(currencyCode);
-            sendJsonResponse(resp, HttpServletResponse.SC_OK, currency);
+            sendCurrency(resp, HttpServletResponse.SC_OK, currency);
             return;
         }
 
@@ -46,9 +60,10 @@ public class CurrencyServlet extends HttpServlet {
             return;
         }
 
-        String code = req.getParameter("code");
-        String fullName = req.getParameter("fullName");
-        String sign = req.getParameter("sign");
+        RequestBody body = RequestBody.read(req);
+        String code = body.get("code");
+        String fullName = body.get("fullName");
+        String sign = body.get("sign");
 
         currencyService.addCurrency(code, fullName, sign);
 
@@ -57,33 +72,7 @@ public class CurrencyServlet extends HttpServlet {
         currency.setFullName(fullName);
         currency.setSign(sign);
 
-        sendJsonResponse(resp, HttpServletResponse.SC_CREATED, currency);
-    }
-
-    @Override
-    protected void service(HttpServletRequest req, HttpServletResponse resp) throws IOException {
-        try {
-            super.service(req, resp);
-        } catch (ValidationException e) {
-            sendValidationErrorResponse(resp, HttpServletResponse.SC_BAD_REQUEST, e.getErrors());
-        } catch (EntityNotFoundException e) {
-            sendErrorResponse(resp, HttpServletResponse.SC_NOT_FOUND, e.getMessage());
-        } catch (DuplicateEntityException e) {
-            sendErrorResponse(resp, HttpServletResponse.SC_CONFLICT, e.getMessage());
-        } catch (EntityInUseException e) {
-            sendErrorResponse(resp, HttpServletResponse.SC_CONFLICT, e.getMessage());
-        } catch (DataAccessResourceFailureException e) {
-            // Ошибка доступа к БД
-            log("База данных недоступна!", e);
-            sendErrorResponse(resp, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Сервис временно недоступен. Попробуйте позже.");
-        } catch (DataAccessException e) {
-            log("Непредвиденная ошибка базы данных.", e);
-            sendErrorResponse(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Произошла ошибка на стороне сервера.");
-        } catch (Exception e) {
-            // непредвиденные ошибок
-            log("Непредвиденная ошибка базы данных.", e);
-            sendErrorResponse(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Произошла внутренняя ошибка приложения.");
-        }
+        sendCurrency(resp, HttpServletResponse.SC_CREATED, currency);
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,267 @@
+package org.example.servlet;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.example.JsonWriters;
+import org.example.WireFormat;
+import org.example.model.Currency;
+import org.example.service.CurrencyImporter;
+import org.example.service.CurrencyService;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.example.JsonResponseUtil.*;
+
+/**
+ * Массовый импорт и экспорт валют в CSV ({@code code,fullName,sign}) и NDJSON (объект на строку).
+ * Импорт принимает также поток объектов CBOR или Smile, записанных подряд.
+ * Формат импорта определяется по Content-Type, экспорта - по параметру {@code format} или заголовку Accept.
+ * Тело запроса читается построчно и не держится в памяти целиком.
+ */
+@WebServlet({"/currency/import", "/currency/export"})
+public class CurrencyTransferServlet extends HttpServlet {
+    private static final String CSV = "text/csv";
+    private static final String NDJSON = "application/x-ndjson";
+    private static final String CSV_HEADER = "code,fullName,sign";
+
+    private final CurrencyService currencyService = new CurrencyService();
+    private final ObjectMapper mapper = WireFormat.JSON.mapper();
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        if (!"/currency/export".equals(req.getServletPath())) {
+            sendErrorResponse(resp, HttpServletResponse.SC_METHOD_NOT_ALLOWED, "Импорт выполняется методом POST.");
+            return;
+        }
+
+        List<Currency> currencies = currencyService.getAllCurrencies();
+        if (isNdjson(req.getParameter("format"), req.getHeader("Accept"))) {
+            resp.setStatus(HttpServletResponse.SC_OK);
+            resp.setContentType(NDJSON);
+            resp.setHeader("Content-Disposition", "attachment; filename=\"currencies.ndjson\"");
+            writeJson(resp.getOutputStream(), gen -> {
+                gen.setRootValueSeparator(new SerializedString("\n"));
+                for (Currency currency : currencies) {
+                    JsonWriters.writeCurrency(gen, currency);
+                }
+                gen.writeRaw('\n');
+            });
+            return;
+        }
+
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.setContentType(CSV);
+        resp.setCharacterEncoding("UTF-8");
+        resp.setHeader("Content-Disposition", "attachment; filename=\"currencies.csv\"");
+        PrintWriter writer = resp.getWriter();
+        writer.write(CSV_HEADER);
+        writer.write('\n');
+        for (Currency currency : currencies) {
+            writer.write(csvField(currency.getCode()));
+            writer.write(',');
+            writer.write(csvField(currency.getFullName()));
+            writer.write(',');
+            writer.write(csvField(currency.getSign()));
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        if (!"/currency/import".equals(req.getServletPath())) {
+            sendErrorResponse(resp, HttpServletResponse.SC_METHOD_NOT_ALLOWED, "Экспорт выполняется методом GET.");
+            return;
+        }
+
+        String contentType = req.getContentType() != null ? req.getContentType().toLowerCase() : "";
+        boolean ndjson = contentType.startsWith(NDJSON) || contentType.startsWith("application/jsonl");
+        WireFormat binary = WireFormat.fromContentType(contentType);
+        if (binary == WireFormat.JSON) {
+            binary = null;
+        }
+        if (!ndjson && binary == null && !contentType.startsWith(CSV)) {
+            sendErrorResponse(resp, HttpServletResponse.SC_UNSUPPORTED_MEDIA_TYPE,
+                    "Поддерживаются только " + CSV + ", " + NDJSON + ", " + WireFormat.CBOR.mediaType()
+                            + " и " + WireFormat.SMILE.mediaType() + ".");
+            return;
+        }
+
+        CurrencyImporter importer = new CurrencyImporter();
+        if (binary != null) {
+            readRecords(binary, req.getInputStream(), importer);
+        } else {
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(req.getInputStream(), StandardCharsets.UTF_8))) {
+                if (ndjson) {
+                    readNdjson(reader, importer);
+                } else {
+                    readCsv(reader, importer);
+                }
+            }
+        }
+        CurrencyImporter.Result result = importer.finish();
+
+        sendJson(resp, HttpServletResponse.SC_OK, gen -> {
+            gen.writeStartObject();
+            gen.writeNumberField("imported", result.getImported());
+            gen.writeNumberField("failed", result.getFailed());
+            gen.writeArrayFieldStart("errors");
+            for (CurrencyImporter.RowError error : result.getErrors()) {
+                gen.writeStartObject();
+                gen.writeNumberField("line", error.getLine());
+                gen.writeStringField("message", error.getMessage());
+                gen.writeEndObject();
+            }
+            gen.writeEndArray();
+            gen.writeEndObject();
+        });
+    }
+
+    private void readNdjson(BufferedReader reader, CurrencyImporter importer) throws IOException {
+        int lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            JsonNode node;
+            try {
+                node = mapper.readTree(line);
+            } catch (JsonProcessingException e) {
+                importer.reject(lineNumber, "Некорректный JSON.");
+                continue;
+            }
+            if (!node.isObject()) {
+                importer.reject(lineNumber, "Ожидается JSON-объект.");
+                continue;
+            }
+            importer.add(lineNumber, text(node, "code"), text(node, "fullName"), text(node, "sign"));
+        }
+    }
+
+    /**
+     * Двоичный поток - объекты верхнего уровня подряд; в ошибках вместо номера строки - номер объекта.
+     */
+    private static void readRecords(WireFormat format, InputStream in, CurrencyImporter importer) throws IOException {
+        int record = 0;
+        try (MappingIterator<JsonNode> nodes = format.mapper().readerFor(JsonNode.class).readValues(in)) {
+            while (true) {
+                record++;
+                JsonNode node;
+                try {
+                    if (!nodes.hasNextValue()) {
+                        return;
+                    }
+                    node = nodes.nextValue();
+                } catch (JsonProcessingException e) {
+                    // В повреждённом двоичном потоке границу следующего объекта не найти
+                    importer.reject(record, "Некорректные данные " + format.mediaType() + ".");
+                    return;
+                }
+                if (!node.isObject()) {
+                    importer.reject(record, "Ожидается объект.");
+                    continue;
+                }
+                importer.add(record, text(node, "code"), text(node, "fullName"), text(node, "sign"));
+            }
+        }
+    }
+
+    private static void readCsv(BufferedReader reader, CurrencyImporter importer) throws IOException {
+        int lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            // Excel сохраняет CSV в UTF-8 с BOM
+            if (lineNumber == 1 && !line.isEmpty() && line.charAt(0) == '\uFEFF') {
+                line = line.substring(1);
+            }
+            if (line.isBlank()) {
+                continue;
+            }
+            if (lineNumber == 1 && line.trim().equalsIgnoreCase(CSV_HEADER)) {
+                continue;
+            }
+            List<String> fields = parseCsvLine(line);
+            if (fields == null || fields.size() != 3) {
+                importer.reject(lineNumber, "Ожидается три поля: " + CSV_HEADER + ".");
+                continue;
+            }
+            importer.add(lineNumber, fields.get(0), fields.get(1), fields.get(2));
+        }
+    }
+
+    /**
+     * Разбирает строку CSV с полями в двойных кавычках (RFC 4180, без переносов внутри полей).
+     *
+     * @return поля строки или null, если кавычки не закрыты
+     */
+    private static List<String> parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>(3);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            return null;
+        }
+        fields.add(field.toString().trim());
+        return fields;
+    }
+
+    private static String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static String text(JsonNode node, String field) {
+        JsonNode value = node.get(field);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+
+    private static boolean isNdjson(String format, String accept) {
+        if (format != null) {
+            return format.equalsIgnoreCase("ndjson");
+        }
+        return accept != null && accept.contains(NDJSON);
+    }
+}
@@ -0,0 +1,83 @@
+package org.example.servlet;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import jakarta.servlet.*;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.example.WireFormat;
+import org.example.exception.*;
+
+import java.io.IOException;
+
+import static org.example.JsonResponseUtil.sendErrorResponse;
+import static org.example.JsonResponseUtil.sendValidationErrorResponse;
+
+/**
+ * Единое преобразование исключений API в ответы с ошибкой.
+ * Заменяет одинаковые блоки catch в {@code service()} каждого сервлета.
+ * <p>
+ * Здесь же на время запроса выбирается формат ответов по заголовку Accept ({@link WireFormat}),
+ * чтобы и ответы с ошибкой уходили в запрошенном формате.
+ * <p>
+ * Регистрируется в web.xml: порядок фильтров там задан явно.
+ */
+public class ErrorMappingFilter implements Filter {
+    private ServletContext servletContext;
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+        servletContext = filterConfig.getServletContext();
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        WireFormat.bind(WireFormat.fromAccept(((HttpServletRequest) request).getHeader("Accept")));
+        ((HttpServletResponse) response).addHeader("Vary", "Accept");
+        try {
+            chain.doFilter(request, response);
+        } catch (JsonProcessingException e) {
+            handle((HttpServletResponse) response, e);
+        } catch (ServletException e) {
+            Throwable cause = e.getRootCause() != null ? e.getRootCause() : e;
+            handle((HttpServletResponse) response, cause);
+        } catch (RuntimeException e) {
+            handle((HttpServletResponse) response, e);
+        } finally {
+            WireFormat.unbind();
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    private void handle(HttpServletResponse resp, Throwable e) throws IOException {
+        if (resp.isCommitted()) {
+            // Часть тела уже ушла клиенту - ответ с ошибкой отправить нельзя
+            servletContext.log("Ошибка после начала отправки ответа.", e);
+            return;
+        }
+        resp.resetBuffer();
+
+        if (e instanceof ValidationException) {
+            sendValidationErrorResponse(resp, HttpServletResponse.SC_BAD_REQUEST, ((ValidationException) e).getErrors());
+        } else if (e instanceof EntityNotFoundException) {
+            sendErrorResponse(resp, HttpServletResponse.SC_NOT_FOUND, e.getMessage());
+        } else if (e instanceof DuplicateEntityException || e instanceof EntityInUseException) {
+            sendErrorResponse(resp, HttpServletResponse.SC_CONFLICT, e.getMessage());
+        } else if (e instanceof DataAccessResourceFailureException) {
+            servletContext.log("База данных недоступна!", e);
+            sendErrorResponse(resp, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Сервис временно недоступен. Попробуйте позже.");
+        } else if (e instanceof DataAccessException) {
+            servletContext.log("Непредвиденная ошибка базы данных.", e);
+            sendErrorResponse(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Произошла ошибка на стороне сервера.");
+        } else if (e instanceof NumberFormatException || e instanceof JsonProcessingException) {
+            // Ошибки парсинга JSON или параметров запроса
+            sendErrorResponse(resp, HttpServletResponse.SC_BAD_REQUEST, "Некорректный формат данных в запросе.");
+        } else {
+            servletContext.log("Непредвиденная ошибка приложения.", e);
+            sendErrorResponse(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Произошла внутренняя ошибка приложения.");
+        }
+    }
+}
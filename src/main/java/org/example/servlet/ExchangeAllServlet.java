@@ -0,0 +1,95 @@
+package org.example.servlet;
+
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.example.JsonWriters;
+import org.example.WireFormat;
+import org.example.service.ConversionEngine;
+import org.example.service.ExchangeRateService;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.example.JsonResponseUtil.*;
+
+/**
+ * Конвертация суммы из одной валюты во все остальные одним запросом:
+ * {@code GET /exchange/all?from=USD&amount=100[&to=EUR,GBP][&rounding=bankers]}.
+ * Курсы берутся за один проход, ответ пишется в поток по мере формирования.
+ */
+@WebServlet("/exchange/all")
+public class ExchangeAllServlet extends HttpServlet {
+    private final ExchangeRateService exchangeRateService = new ExchangeRateService();
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        String fromCurrencyCode = req.getParameter("from");
+        String amountStr = req.getParameter("amount");
+        String targetsParam = req.getParameter("to");
+
+        if (fromCurrencyCode == null || amountStr == null || fromCurrencyCode.isBlank() || amountStr.isBlank()) {
+            sendErrorResponse(resp, HttpServletResponse.SC_BAD_REQUEST, "Укажите валюту и сумму для конвертации.");
+            return;
+        }
+        BigDecimal amount;
+        try {
+            amount = new BigDecimal(amountStr);
+            if (amount.signum() < 0) {
+                sendErrorResponse(resp, HttpServletResponse.SC_BAD_REQUEST, "Сумма должна быть неотрицательным числом.");
+                return;
+            }
+        } catch (NumberFormatException e) {
+            sendErrorResponse(resp, HttpServletResponse.SC_BAD_REQUEST, "Неверный формат суммы. Это должно быть число.");
+            return;
+        }
+
+        RoundingMode rounding = ConversionEngine.parseRounding(req.getParameter("rounding"));
+        if (rounding == null) {
+            sendErrorResponse(resp, HttpServletResponse.SC_BAD_REQUEST,
+                    "Неизвестный режим округления. Допустимы: half_up, half_even (bankers), half_down, up, down, ceiling, floor.");
+            return;
+        }
+
+        Set<String> targets = null;
+        if (targetsParam != null && !targetsParam.isBlank()) {
+            targets = new HashSet<>();
+            for (String code : targetsParam.split(",")) {
+                if (!code.isBlank()) {
+                    targets.add(code.trim().toUpperCase());
+                }
+            }
+        }
+
+        Map<String, BigDecimal> crossRates = exchangeRateService.calculateCrossRates(fromCurrencyCode, targets);
+
+        WireFormat format = WireFormat.current();
+        markRatesStaleness(resp);
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.setContentType(format.contentType());
+        write(format, resp.getOutputStream(), gen -> {
+            gen.writeStartObject();
+            gen.writeStringField("from", fromCurrencyCode);
+            gen.writeFieldName("amount");
+            JsonWriters.writeDecimal(gen, amount);
+            gen.writeArrayFieldStart("conversions");
+            for (Map.Entry<String, BigDecimal> entry : crossRates.entrySet()) {
+                gen.writeStartObject();
+                gen.writeStringField("to", entry.getKey());
+                gen.writeFieldName("rate");
+                JsonWriters.writeDecimal(gen, entry.getValue());
+                gen.writeFieldName("convertedAmount");
+                JsonWriters.writeDecimal(gen, exchangeRateService.convertAmount(amount, entry.getValue(),
+                        entry.getKey(), rounding));
+                gen.writeEndObject();
+            }
+            gen.writeEndArray();
+            gen.writeEndObject();
+        });
+    }
+}
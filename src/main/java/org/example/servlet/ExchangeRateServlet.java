@@ -4,7 +4,11 @@ import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import org.example.exception.*;
+import org.example.AppConfig;
+import org.example.JsonWriters;
+import org.example.WireFormat;
+import org.example.cache.RateView;
+import org.example.cache.SerializedResponseCache;
 import org.example.model.ExchangeRate;
 import org.example.service.ExchangeRateService;
 
@@ -16,15 +20,29 @@ import static org.example.JsonResponseUtil.*;
 
 @WebServlet("/exchangeRate/*")
 public class ExchangeRateServlet extends HttpServlet {
+    private static final String ACTOR_HEADER = AppConfig.getString("audit.actor.header", "X-User");
+
     private final ExchangeRateService service = new ExchangeRateService();
+    private final RateView rateView = RateView.getInstance();
+    private final SerializedResponseCache responseCache = SerializedResponseCache.getInstance();
 
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
 
         String pathInfo = req.getPathInfo();
+        markRatesStaleness(resp);
         if (pathInfo == null || pathInfo.equals("/")) {
+            if (rateView.isLoaded()) {
+                // Версию берём до чтения списка, чтобы не закэшировать новое тело под старой версией
+                long version = rateView.version();
+                WireFormat format = WireFormat.current();
+                byte[] body = responseCache.get(format.qualify(SerializedResponseCache.EXCHANGE_RATE_LIST), version,
+                        () -> exchangeRatesToBytes(format, service.getAllExchangeRates()));
+                sendBytes(resp, HttpServletResponse.SC_OK, format, body);
+                return;
+            }
             List<ExchangeRate> rates = service.getAllExchangeRates();
-            sendJsonResponse(resp, HttpServletResponse.SC_OK, rates);
+            sendJson(resp, HttpServletResponse.SC_OK, gen -> JsonWriters.writeExchangeRates(gen, rates));
             return;
         }
 
@@ -32,7 +50,7 @@ public class ExchangeRateServlet extends HttpServlet {
         if (pathParts.length == 2) {
             String currencyCode = pathParts[1];
             ExchangeRate rate = service.getExchangeRateByCode(currencyCode);
-            sendJsonResponse(resp, HttpServletResponse.SC_OK, rate);
+            sendExchangeRate(resp, HttpServletResponse.SC_OK, rate);
             return;
         }
 
@@ -47,40 +65,24 @@ public class ExchangeRateServlet extends HttpServlet {
             return;
         }
 
-        String idCurrency = req.getParameter("idCurrency");
-        int nominal = Integer.parseInt(req.getParameter("nominal"));
-        BigDecimal rate = new BigDecimal(req.getParameter("rate"));
+        RequestBody body = RequestBody.read(req);
+        String idCurrency = body.get("idCurrency");
+        int nominal = Integer.parseInt(body.get("nominal"));
+        BigDecimal rate = new BigDecimal(body.get("rate"));
 
-        service.addExchangeRate(idCurrency, nominal, rate);
+        service.addExchangeRate(idCurrency, nominal, rate, actor(req));
 
         ExchangeRate correctedRate = new ExchangeRate();
         correctedRate.setNominal(nominal);
         correctedRate.setRate(rate);
-        sendJsonResponse(resp, HttpServletResponse.SC_CREATED, correctedRate);
+        sendExchangeRate(resp, HttpServletResponse.SC_CREATED, correctedRate);
     }
 
-    @Override
-    protected void service(HttpServletRequest req, HttpServletResponse resp) throws IOException {
-        try {
-            super.service(req, resp);
-        } catch (ValidationException e) {
-            sendValidationErrorResponse(resp, HttpServletResponse.SC_BAD_REQUEST, e.getErrors());
-        } catch (EntityNotFoundException e) {
-            sendErrorResponse(resp, HttpServletResponse.SC_NOT_FOUND, e.getMessage());
-        } catch (DuplicateEntityException e) {
-            sendErrorResponse(resp, HttpServletResponse.SC_CONFLICT, e.getMessage());
-        } catch (DataAccessResourceFailureException e) {
-            log("База данных недоступна!", e);
-            sendErrorResponse(resp, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Сервис временно недоступен.");
-        } catch (DataAccessException e) {
-            log("Непредвиденная ошибка базы данных.", e);
-            sendErrorResponse(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Произошла ошибка на стороне сервера.");
-        } catch (NumberFormatException | com.fasterxml.jackson.databind.JsonMappingException e) {
-            // Ошибки парсинга JSON или параметров запроса
-            sendErrorResponse(resp, HttpServletResponse.SC_BAD_REQUEST, "Некорректный формат данных в запросе.");
-        } catch (Exception e) {
-            log("Непредвиденная ошибка базы данных.d", e);
-            sendErrorResponse(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Произошла внутренняя ошибка приложения.");
-        }
+    /**
+     * Автор изменения для журнала аудита: заголовок {@code audit.actor.header} или адрес клиента.
+     */
+    private static String actor(HttpServletRequest req) {
+        String actor = req.getHeader(ACTOR_HEADER);
+        return actor != null && !actor.isBlank() ? actor.trim() : req.getRemoteAddr();
     }
 }
@@ -4,18 +4,27 @@ import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import org.example.exception.*;
+import org.example.AppConfig;
+import org.example.JsonWriters;
+import org.example.WireFormat;
+import org.example.cache.ConversionCache;
+import org.example.service.ConversionEngine;
 import org.example.service.ExchangeRateService;
+import org.example.service.TenantRateService;
 
 import java.io.IOException;
 import java.math.BigDecimal;
-import java.util.Map;
+import java.math.RoundingMode;
 
 import static org.example.JsonResponseUtil.*;
 
 @WebServlet("/exchange")
 public class ExchangeServlet extends HttpServlet {
+    private static final String TENANT_HEADER = AppConfig.getString("tenant.header", "X-Tenant");
+
     private final ExchangeRateService exchangeRateService = new ExchangeRateService();
+    private final TenantRateService tenantRateService = new TenantRateService();
+    private final ConversionCache conversionCache = ConversionCache.getInstance();
 
     @Override
     protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
@@ -28,6 +37,27 @@ public class ExchangeServlet extends HttpServlet {
             sendErrorResponse(resp, HttpServletResponse.SC_BAD_REQUEST, "Укажите сумму для конвертации.");
             return;
         }
+        RoundingMode rounding = ConversionEngine.parseRounding(req.getParameter("rounding"));
+        if (rounding == null) {
+            sendErrorResponse(resp, HttpServletResponse.SC_BAD_REQUEST,
+                    "Неизвестный режим округления. Допустимы: half_up, half_even (bankers), half_down, up, down, ceiling, floor.");
+            return;
+        }
+        // С заголовком тенанта курс берётся из его книги; кэш ответов общий для всех, поэтому не используется
+        String tenant = req.getHeader(TENANT_HEADER);
+        boolean tenantBook = tenant != null && !tenant.isBlank();
+        resp.addHeader("Vary", TENANT_HEADER);
+
+        WireFormat format = WireFormat.current();
+        // Версию берём до расчёта, чтобы не сохранить результат по старым курсам под новой версией
+        long version = tenantBook ? -1 : conversionCache.currentVersion();
+        byte[] cached = conversionCache.get(fromCurrencyCode, toCurrencyCode, amountStr, rounding, format, version);
+        if (cached != null) {
+            markRatesStaleness(resp);
+            sendBytes(resp, HttpServletResponse.SC_OK, format, cached);
+            return;
+        }
+
         BigDecimal amount;
         try {
             amount = new BigDecimal(amountStr);
@@ -41,45 +71,17 @@ public class ExchangeServlet extends HttpServlet {
             return;
         }
 
-        BigDecimal crossRate = exchangeRateService.calculateCrossRate(fromCurrencyCode, toCurrencyCode);
+        BigDecimal crossRate = tenantBook
+                ? tenantRateService.calculateCrossRate(tenant, fromCurrencyCode, toCurrencyCode)
+                : exchangeRateService.calculateCrossRate(fromCurrencyCode, toCurrencyCode);
 
-        BigDecimal convertedAmount = exchangeRateService.convertAmount(amount, crossRate);
+        BigDecimal convertedAmount = exchangeRateService.convertAmount(amount, crossRate, toCurrencyCode, rounding);
 
+        byte[] body = toBytes(format, gen -> JsonWriters.writeConversion(gen,
+                fromCurrencyCode, toCurrencyCode, crossRate, amount, convertedAmount));
+        conversionCache.put(fromCurrencyCode, toCurrencyCode, amountStr, rounding, format, version, body);
 
-        Map<String, Object> responseBody = Map.of(
-                "from", fromCurrencyCode,
-                "to", toCurrencyCode,
-                "rate", crossRate,
-                "amount", amount,
-                "convertedAmount", convertedAmount
-        );
-
-        sendJsonResponse(resp, HttpServletResponse.SC_OK, responseBody);
-
-
-    }
-    @Override
-    protected void service(HttpServletRequest req, HttpServletResponse resp) throws IOException {
-        try {
-            super.service(req, resp);
-        } catch (ValidationException e) {
-            sendValidationErrorResponse(resp, HttpServletResponse.SC_BAD_REQUEST, e.getErrors());
-        } catch (EntityNotFoundException e) {
-            sendErrorResponse(resp, HttpServletResponse.SC_NOT_FOUND, e.getMessage());
-        } catch (DuplicateEntityException e) {
-            sendErrorResponse(resp, HttpServletResponse.SC_CONFLICT, e.getMessage());
-        } catch (DataAccessResourceFailureException e) {
-            log("База данных недоступна!", e);
-            sendErrorResponse(resp, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Сервис временно недоступен.");
-        } catch (DataAccessException e) {
-            log("Непредвиденная ошибка базы данных.", e);
-            sendErrorResponse(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Произошла ошибка на стороне сервера.");
-        } catch (NumberFormatException | com.fasterxml.jackson.databind.JsonMappingException e) {
-            // Ошибки парсинга JSON или параметров запроса
-            sendErrorResponse(resp, HttpServletResponse.SC_BAD_REQUEST, "Некорректный формат данных в запросе.");
-        } catch (Exception e) {
-            log("Непредвиденная ошибка базы данных.d", e);
-            sendErrorResponse(resp, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Произошла внутренняя ошибка приложения.");
-        }
+        markRatesStaleness(resp);
+        sendBytes(resp, HttpServletResponse.SC_OK, format, body);
     }
 }
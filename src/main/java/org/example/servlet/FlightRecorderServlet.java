@@ -0,0 +1,146 @@
+package org.example.servlet;
+
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.example.AppConfig;
+import org.example.profiling.FlightRecorderControl;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.example.JsonResponseUtil.sendErrorResponse;
+import static org.example.JsonResponseUtil.sendJson;
+
+/**
+ * Управление записью JDK Flight Recorder:
+ * {@code GET /admin/jfr} - состояние записи, {@code POST /admin/jfr/start[?duration=60]} - запустить
+ * (срок в секундах необязателен), {@code POST /admin/jfr/stop} - остановить,
+ * {@code GET /admin/jfr/dump} - скачать файл {@code .jfr} (в том числе пока запись идёт).
+ * При {@code jfr.admin.local.only=true} доступно только с локального адреса.
+ */
+@WebServlet("/admin/jfr/*")
+public class FlightRecorderServlet extends HttpServlet {
+    private static final boolean ENABLED = AppConfig.getBoolean("jfr.admin.enabled", true);
+    private static final boolean LOCAL_ONLY = AppConfig.getBoolean("jfr.admin.local.only", true);
+    private static final long MAX_DURATION_SECONDS = 24 * 60 * 60;
+
+    private final FlightRecorderControl control = FlightRecorderControl.getInstance();
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        if (!allowed(req, resp)) {
+            return;
+        }
+        String action = action(req);
+        if (action.isEmpty()) {
+            sendStatus(resp);
+            return;
+        }
+        if (action.equals("dump")) {
+            sendDump(resp);
+            return;
+        }
+        sendErrorResponse(resp, HttpServletResponse.SC_BAD_REQUEST, "Некорректный URL.");
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        if (!allowed(req, resp)) {
+            return;
+        }
+        switch (action(req)) {
+            case "start" -> {
+                Duration duration;
+                try {
+                    duration = parseDuration(req.getParameter("duration"));
+                } catch (NumberFormatException e) {
+                    sendErrorResponse(resp, HttpServletResponse.SC_BAD_REQUEST,
+                            "Срок записи - целое число секунд от 1 до " + MAX_DURATION_SECONDS + ".");
+                    return;
+                }
+                if (!control.start(duration)) {
+                    sendErrorResponse(resp, HttpServletResponse.SC_CONFLICT, "Запись уже идёт.");
+                    return;
+                }
+                sendStatus(resp);
+            }
+            case "stop" -> {
+                if (!control.stop()) {
+                    sendErrorResponse(resp, HttpServletResponse.SC_CONFLICT, "Запись не идёт.");
+                    return;
+                }
+                sendStatus(resp);
+            }
+            default -> sendErrorResponse(resp, HttpServletResponse.SC_BAD_REQUEST, "Некорректный URL.");
+        }
+    }
+
+    private void sendStatus(HttpServletResponse resp) throws IOException {
+        FlightRecorderControl.Status status = control.status();
+        resp.setHeader("Cache-Control", "no-store");
+        sendJson(resp, HttpServletResponse.SC_OK, gen -> {
+            gen.writeStartObject();
+            gen.writeStringField("state", status.getState());
+            if (status.getStartTime() != null) {
+                gen.writeStringField("startTime", status.getStartTime().toString());
+            }
+            if (status.getDuration() != null) {
+                gen.writeNumberField("durationSeconds", status.getDuration().toSeconds());
+            }
+            gen.writeNumberField("size", status.getSize());
+            gen.writeEndObject();
+        });
+    }
+
+    private void sendDump(HttpServletResponse resp) throws IOException {
+        Path file = control.dump();
+        if (file == null) {
+            sendErrorResponse(resp, HttpServletResponse.SC_CONFLICT, "Запись не запускалась.");
+            return;
+        }
+        try {
+            resp.setStatus(HttpServletResponse.SC_OK);
+            resp.setContentType("application/octet-stream");
+            resp.setHeader("Content-Disposition", "attachment; filename=\"" + file.getFileName() + "\"");
+            resp.setHeader("Cache-Control", "no-store");
+            resp.setContentLengthLong(Files.size(file));
+            Files.copy(file, resp.getOutputStream());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static boolean allowed(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        if (!ENABLED) {
+            sendErrorResponse(resp, HttpServletResponse.SC_NOT_FOUND, "Управление записью JFR отключено.");
+            return false;
+        }
+        // Запись содержит стеки и строки из памяти процесса, поэтому по умолчанию - только с этого хоста
+        if (LOCAL_ONLY && !InetAddress.getByName(req.getRemoteAddr()).isLoopbackAddress()) {
+            sendErrorResponse(resp, HttpServletResponse.SC_FORBIDDEN, "Доступно только с локального адреса.");
+            return false;
+        }
+        return true;
+    }
+
+    private static String action(HttpServletRequest req) {
+        String pathInfo = req.getPathInfo();
+        return pathInfo == null || pathInfo.equals("/") ? "" : pathInfo.substring(1);
+    }
+
+    private static Duration parseDuration(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        long seconds = Long.parseLong(value.trim());
+        if (seconds < 1 || seconds > MAX_DURATION_SECONDS) {
+            throw new NumberFormatException(value);
+        }
+        return Duration.ofSeconds(seconds);
+    }
+}
@@ -0,0 +1,32 @@
+package org.example.servlet;
+
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.example.metrics.Metrics;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static org.example.JsonResponseUtil.sendJson;
+
+/**
+ * Текущие значения счётчиков и датчиков приложения в виде JSON-объекта.
+ */
+@WebServlet("/metrics")
+public class MetricsServlet extends HttpServlet {
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        Map<String, Long> values = Metrics.snapshot();
+        resp.setHeader("Cache-Control", "no-store");
+        sendJson(resp, HttpServletResponse.SC_OK, gen -> {
+            gen.writeStartObject();
+            for (Map.Entry<String, Long> value : values.entrySet()) {
+                gen.writeNumberField(value.getKey(), value.getValue());
+            }
+            gen.writeEndObject();
+        });
+    }
+}
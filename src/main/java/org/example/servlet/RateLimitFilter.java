@@ -0,0 +1,142 @@
+package org.example.servlet;
+
+import jakarta.servlet.*;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.example.AppConfig;
+import org.example.metrics.Metrics;
+import org.example.ratelimit.AdaptiveConcurrencyLimiter;
+import org.example.ratelimit.StripedTokenBucketLimiter;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import static org.example.JsonResponseUtil.sendErrorResponse;
+
+/**
+ * Защита /exchange от перегрузки: сначала лимит частоты на клиента (ключ API или IP),
+ * затем глобальный адаптивный лимит одновременных запросов. Лишние запросы сразу
+ * получают 429 с Retry-After, не доходя до сервисов и БД.
+ * <p>
+ * Отдельный лимит получают только ключи из {@code ratelimit.api.keys}: иначе клиент обходил бы лимит,
+ * присылая новый ключ в каждом запросе. Запросы с неизвестным ключом или без него считаются по адресу
+ * клиента. Заголовку X-Forwarded-For верим, только если запрос пришёл от прокси
+ * из {@code ratelimit.trusted.proxies}.
+ * <p>
+ * Регистрируется в web.xml: порядок фильтров там задан явно.
+ */
+public class RateLimitFilter implements Filter {
+    private static final boolean ENABLED = AppConfig.getBoolean("ratelimit.enabled", true);
+    private static final String CLIENT_HEADER = AppConfig.getString("ratelimit.client.header", "X-API-Key");
+    private static final Set<String> API_KEYS = parseList(AppConfig.getString("ratelimit.api.keys", ""));
+    private static final Set<String> TRUSTED_PROXIES = parseList(AppConfig.getString("ratelimit.trusted.proxies", ""));
+
+    private final StripedTokenBucketLimiter clientLimiter = new StripedTokenBucketLimiter(
+            AppConfig.getInt("ratelimit.stripes", 65536),
+            AppConfig.getInt("ratelimit.requests.per.second", 20),
+            AppConfig.getInt("ratelimit.burst", 40));
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter = new AdaptiveConcurrencyLimiter(
+            AppConfig.getInt("concurrency.limit.initial", 32),
+            AppConfig.getInt("concurrency.limit.min", 4),
+            AppConfig.getInt("concurrency.limit.max", 256));
+
+    private final LongAdder allowed = Metrics.counter("ratelimit.allowed");
+    private final LongAdder rejectedByClient = Metrics.counter("ratelimit.rejected.client");
+    private final LongAdder rejectedByConcurrency = Metrics.counter("ratelimit.rejected.concurrency");
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+        Metrics.gauge("concurrency.limit", concurrencyLimiter::getLimit);
+        Metrics.gauge("concurrency.inflight", concurrencyLimiter::getInFlight);
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+
+        if (!ENABLED) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        HttpServletRequest req = (HttpServletRequest) request;
+        HttpServletResponse res = (HttpServletResponse) response;
+
+        long waitMs = clientLimiter.tryAcquire(clientKey(req));
+        if (waitMs > 0) {
+            rejectedByClient.increment();
+            reject(res, waitMs, "Слишком много запросов. Повторите позже.");
+            return;
+        }
+
+        if (!concurrencyLimiter.tryAcquire()) {
+            rejectedByConcurrency.increment();
+            reject(res, 1000, "Сервис перегружен. Повторите позже.");
+            return;
+        }
+
+        allowed.increment();
+        long startedAt = System.nanoTime();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            concurrencyLimiter.release(System.nanoTime() - startedAt);
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    private static String clientKey(HttpServletRequest req) {
+        String apiKey = req.getHeader(CLIENT_HEADER);
+        if (apiKey != null && API_KEYS.contains(apiKey.trim())) {
+            // Префикс не даёт ключу совпасть с адресом другого клиента
+            return "key:" + apiKey.trim();
+        }
+        return "addr:" + clientAddress(req);
+    }
+
+    /**
+     * Адрес клиента: адрес соединения или, если соединение от доверенного прокси, последний
+     * адрес в X-Forwarded-For, добавленный не доверенным прокси. Более ранние адреса клиент
+     * может подставить сам.
+     */
+    static String clientAddress(HttpServletRequest req) {
+        String address = req.getRemoteAddr();
+        if (!TRUSTED_PROXIES.contains(address)) {
+            return address;
+        }
+        String forwardedFor = req.getHeader("X-Forwarded-For");
+        if (forwardedFor == null || forwardedFor.isBlank()) {
+            return address;
+        }
+        String[] hops = forwardedFor.split(",");
+        for (int i = hops.length - 1; i >= 0; i--) {
+            String hop = hops[i].trim();
+            if (hop.isEmpty()) {
+                break;
+            }
+            address = hop;
+            if (!TRUSTED_PROXIES.contains(hop)) {
+                break;
+            }
+        }
+        return address;
+    }
+
+    private static Set<String> parseList(String value) {
+        return Arrays.stream(value.split(","))
+                .map(String::trim)
+                .filter(item -> !item.isEmpty())
+                .collect(Collectors.toUnmodifiableSet());
+    }
+
+    private static void reject(HttpServletResponse res, long waitMs, String message) throws IOException {
+        res.setHeader("Retry-After", String.valueOf(Math.max(1, (waitMs + 999) / 1000)));
+        sendErrorResponse(res, 429, message);
+    }
+}
@@ -0,0 +1,29 @@
+package org.example.servlet;
+
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.example.ReadinessState;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static org.example.JsonResponseUtil.*;
+
+/**
+ * Проверка готовности для балансировщика: 200 только после завершения прогрева.
+ */
+@WebServlet("/ready")
+public class ReadyServlet extends HttpServlet {
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        resp.setHeader("Cache-Control", "no-store");
+        if (ReadinessState.isReady()) {
+            sendJsonResponse(resp, HttpServletResponse.SC_OK, Map.of("status", "READY"));
+        } else {
+            sendErrorResponse(resp, HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Сервис прогревается.");
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package org.example.servlet;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.servlet.http.HttpServletRequest;
+import org.example.WireFormat;
+
+import java.io.IOException;
+
+/**
+ * Поля тела POST-запроса: объект в одном из {@link WireFormat} (по Content-Type)
+ * или, как раньше, параметры формы. Тело не того вида (не объект, обрезанное) даёт
+ * {@link com.fasterxml.jackson.core.JsonProcessingException}, которое ErrorMappingFilter превращает в 400.
+ */
+final class RequestBody {
+    private final HttpServletRequest req;
+    private final ObjectNode body;
+
+    private RequestBody(HttpServletRequest req, ObjectNode body) {
+        this.req = req;
+        this.body = body;
+    }
+
+    static RequestBody read(HttpServletRequest req) throws IOException {
+        WireFormat format = WireFormat.fromContentType(req.getContentType());
+        if (format == null) {
+            return new RequestBody(req, null);
+        }
+        return new RequestBody(req, format.mapper().readValue(req.getInputStream(), ObjectNode.class));
+    }
+
+    /**
+     * Значение поля текстом (числа - в записи BigDecimal) или null, если поля нет.
+     */
+    String get(String name) {
+        if (body == null) {
+            return req.getParameter(name);
+        }
+        JsonNode value = body.get(name);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+}
@@ -0,0 +1,88 @@
+package org.example.servlet;
+
+import jakarta.servlet.*;
+import jakarta.servlet.annotation.WebFilter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.example.AppConfig;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+
+/**
+ * Отдаёт заранее сжатые при сборке варианты статических файлов ({@code *.gz},
+ * см. задачу Gradle {@code precompressAssets}), если клиент принимает gzip.
+ * Файлы сторонних библиотек из {@code static.immutable.prefixes} получают
+ * долгоживущие заголовки кэширования.
+ */
+@WebFilter({"/css/*", "/js/*"})
+public class StaticAssetFilter implements Filter {
+    private static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+    private static final String[] IMMUTABLE_PREFIXES =
+            AppConfig.getString("static.immutable.prefixes", "/css/bootstrap,/js/bootstrap,/js/jquery").split(",");
+
+    private ServletContext servletContext;
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+        servletContext = filterConfig.getServletContext();
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+
+        HttpServletRequest req = (HttpServletRequest) request;
+        HttpServletResponse res = (HttpServletResponse) response;
+        String path = req.getServletPath() + (req.getPathInfo() != null ? req.getPathInfo() : "");
+
+        if (isImmutable(path)) {
+            res.setHeader("Cache-Control", IMMUTABLE_CACHE_CONTROL);
+        }
+
+        String method = req.getMethod();
+        if (!("GET".equals(method) || "HEAD".equals(method)) || !acceptsGzip(req)) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        URL compressed = servletContext.getResource(path + ".gz");
+        if (compressed == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        URLConnection connection = compressed.openConnection();
+        String mimeType = servletContext.getMimeType(path);
+        res.setContentType(mimeType != null ? mimeType : "application/octet-stream");
+        res.setHeader("Content-Encoding", "gzip");
+        res.addHeader("Vary", "Accept-Encoding");
+        res.setContentLengthLong(connection.getContentLengthLong());
+        if ("HEAD".equals(method)) {
+            return;
+        }
+        try (InputStream in = connection.getInputStream()) {
+            in.transferTo(res.getOutputStream());
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    private static boolean isImmutable(String path) {
+        for (String prefix : IMMUTABLE_PREFIXES) {
+            if (path.startsWith(prefix.trim())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean acceptsGzip(HttpServletRequest req) {
+        String acceptEncoding = req.getHeader("Accept-Encoding");
+        return acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+    }
+}
@@ -0,0 +1,91 @@
+package org.example.servlet;
+
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.example.JsonWriters;
+import org.example.model.TenantRateAdjustment;
+import org.example.service.TenantRateService;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Set;
+
+import static org.example.JsonResponseUtil.*;
+
+/**
+ * Поправки тенантов к курсам ЦБ:
+ * {@code GET /tenantRates} - список тенантов, {@code GET /tenantRates/retail} - поправки тенанта,
+ * {@code POST /tenantRates/retail} с полями {@code code}, {@code spreadBps}, {@code rate} - задать поправку
+ * (код {@code *} - спред для всех валют), {@code DELETE /tenantRates/retail/USD} - удалить поправку.
+ * Конвертация по книге тенанта - {@code /exchange} с заголовком {@code tenant.header}.
+ */
+@WebServlet("/tenantRates/*")
+public class TenantRateServlet extends HttpServlet {
+    private final TenantRateService tenantRateService = new TenantRateService();
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        String[] pathParts = pathParts(req);
+        if (pathParts.length == 0) {
+            Set<String> tenants = tenantRateService.getTenants();
+            sendJson(resp, HttpServletResponse.SC_OK, gen -> {
+                gen.writeStartObject();
+                gen.writeArrayFieldStart("tenants");
+                for (String tenant : tenants) {
+                    gen.writeString(tenant);
+                }
+                gen.writeEndArray();
+                gen.writeEndObject();
+            });
+            return;
+        }
+        if (pathParts.length == 1) {
+            List<TenantRateAdjustment> adjustments = tenantRateService.getAdjustments(pathParts[0]);
+            sendJson(resp, HttpServletResponse.SC_OK,
+                    gen -> JsonWriters.writeTenantRateAdjustments(gen, pathParts[0].toLowerCase(), adjustments));
+            return;
+        }
+        sendErrorResponse(resp, HttpServletResponse.SC_BAD_REQUEST, "Некорректный URL.");
+    }
+
+    @Override
+    protected void doPost(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        String[] pathParts = pathParts(req);
+        if (pathParts.length != 1) {
+            sendErrorResponse(resp, HttpServletResponse.SC_BAD_REQUEST, "Укажите тенанта: /tenantRates/retail.");
+            return;
+        }
+
+        RequestBody body = RequestBody.read(req);
+        String spreadBps = body.get("spreadBps");
+        String rate = body.get("rate");
+        TenantRateAdjustment adjustment = tenantRateService.setAdjustment(pathParts[0], body.get("code"),
+                spreadBps == null || spreadBps.isBlank() ? null : Integer.valueOf(spreadBps.trim()),
+                rate == null || rate.isBlank() ? null : new BigDecimal(rate.trim()));
+
+        sendJson(resp, HttpServletResponse.SC_CREATED,
+                gen -> JsonWriters.writeTenantRateAdjustments(gen, adjustment.getTenant(), List.of(adjustment)));
+    }
+
+    @Override
+    protected void doDelete(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        String[] pathParts = pathParts(req);
+        if (pathParts.length != 2) {
+            sendErrorResponse(resp, HttpServletResponse.SC_BAD_REQUEST, "Укажите тенанта и валюту: /tenantRates/retail/USD.");
+            return;
+        }
+        tenantRateService.deleteAdjustment(pathParts[0], pathParts[1]);
+        resp.setStatus(HttpServletResponse.SC_NO_CONTENT);
+    }
+
+    private static String[] pathParts(HttpServletRequest req) {
+        String pathInfo = req.getPathInfo();
+        if (pathInfo == null || pathInfo.equals("/")) {
+            return new String[0];
+        }
+        return pathInfo.substring(1).split("/");
+    }
+}
@@ -0,0 +1,163 @@
+package org.example.snapshot;
+
+import org.example.CurrencyCodes;
+import org.example.model.Currency;
+import org.example.model.ExchangeRate;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.CRC32;
+
+import static org.example.snapshot.RateSnapshotFormat.*;
+
+/**
+ * Снимок, отображённый в память только для чтения ({@link FileChannel#map}).
+ * Курсы читаются прямо из отображения: поиск - двоичный по упакованному коду,
+ * весь файл не разбирается. Страницы файла общие для всех процессов на хосте через page cache.
+ * <p>
+ * Файл снимка не изменяется на месте (публикация - атомарная замена), поэтому отображение
+ * остаётся согласованным, даже если за это время вышла новая версия.
+ */
+public final class RateSnapshot {
+    private final ByteBuffer buffer;
+    private final long version;
+    private final long createdAtMillis;
+    private final int count;
+    private final int stringsStart;
+
+    private RateSnapshot(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.version = buffer.getLong(VERSION_OFFSET);
+        this.createdAtMillis = buffer.getLong(CREATED_AT_OFFSET);
+        this.count = buffer.getInt(COUNT_OFFSET);
+        this.stringsStart = recordOffset(count);
+    }
+
+    /**
+     * Отображает файл снимка в память и проверяет его целостность.
+     *
+     * @throws IOException если файла нет, он повреждён или другого формата
+     */
+    public static RateSnapshot map(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // Отображение остаётся действительным и после закрытия канала
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        return wrap(buffer);
+    }
+
+    static RateSnapshot wrap(ByteBuffer buffer) throws IOException {
+        if (buffer.capacity() < HEADER_SIZE
+                || buffer.getInt(0) != MAGIC
+                || buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("Файл не является снимком курсов поддерживаемой версии.");
+        }
+        int count = buffer.getInt(COUNT_OFFSET);
+        int stringsLength = buffer.getInt(STRINGS_LENGTH_OFFSET);
+        if (count < 0 || stringsLength < 0
+                || (long) HEADER_SIZE + (long) count * RECORD_SIZE + stringsLength != buffer.capacity()) {
+            throw new IOException("Снимок курсов обрезан или повреждён.");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().position(HEADER_SIZE));
+        if (crc.getValue() != buffer.getLong(CRC_OFFSET)) {
+            throw new IOException("Контрольная сумма снимка курсов не совпадает.");
+        }
+        return new RateSnapshot(buffer);
+    }
+
+    public long version() {
+        return version;
+    }
+
+    public long createdAtMillis() {
+        return createdAtMillis;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Курс валюты из снимка. Создаётся только возвращаемый объект, остальной файл не читается.
+     */
+    public Optional<ExchangeRate> findRate(String code) {
+        int index = indexOf(code);
+        if (index < 0) {
+            return Optional.empty();
+        }
+        int record = recordOffset(index);
+        long rateMicros = buffer.getLong(record + RATE_MICROS);
+        if (rateMicros == NO_RATE) {
+            return Optional.empty();
+        }
+        ExchangeRate rate = new ExchangeRate();
+        rate.setId(buffer.getInt(record + RATE_ID));
+        rate.setIdCurrency(buffer.getInt(record + CURRENCY_ID));
+        rate.setNominal(buffer.getInt(record + NOMINAL));
+        rate.setRate(BigDecimal.valueOf(rateMicros, RATE_SCALE).stripTrailingZeros());
+        return Optional.of(rate);
+    }
+
+    /**
+     * Все валюты снимка в порядке id.
+     */
+    public List<Currency> currencies() {
+        List<Currency> currencies = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int record = recordOffset(i);
+            int nameLength = Short.toUnsignedInt(buffer.getShort(record + NAME_LENGTH));
+            int signLength = Short.toUnsignedInt(buffer.getShort(record + SIGN_LENGTH));
+            int nameStart = stringsStart + buffer.getInt(record + STRING_OFFSET);
+
+            Currency currency = new Currency();
+            currency.setId(buffer.getInt(record + CURRENCY_ID));
+            currency.setCode(CurrencyCodes.unpack(buffer.getInt(record + CODE)));
+            currency.setFullName(readString(nameStart, nameLength));
+            currency.setSign(readString(nameStart + nameLength, signLength));
+            currencies.add(currency);
+        }
+        currencies.sort((a, b) -> Integer.compare(a.getId(), b.getId()));
+        return currencies;
+    }
+
+    /**
+     * Индекс записи или -1. Записи отсортированы по упакованному коду.
+     */
+    private int indexOf(String code) {
+        int key = CurrencyCodes.pack(code);
+        if (key == CurrencyCodes.INVALID) {
+            return -1;
+        }
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midKey = buffer.getInt(recordOffset(mid) + CODE);
+            if (midKey < key) {
+                low = mid + 1;
+            } else if (midKey > key) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private String readString(int offset, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
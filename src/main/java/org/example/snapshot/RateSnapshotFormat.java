@@ -0,0 +1,60 @@
+package org.example.snapshot;
+
+/**
+ * Двоичный формат снимка справочника валют и курсов. Все числа - big-endian.
+ * <pre>
+ * Заголовок (40 байт):
+ *   0  int   MAGIC
+ *   4  int   FORMAT_VERSION
+ *   8  long  версия данных (растёт с каждой публикацией)
+ *   16 long  время публикации, мс
+ *   24 int   число записей
+ *   28 int   длина области строк, байт
+ *   32 long  CRC32 всего, что после заголовка
+ * Записи (по 32 байта, по возрастанию упакованного кода):
+ *   0  int   код валюты, {@link org.example.CurrencyCodes#pack}
+ *   4  int   id валюты
+ *   8  int   id курса (0 - курса нет)
+ *   12 int   номинал
+ *   16 long  курс в миллионных долях ({@link #NO_RATE} - курса нет)
+ *   24 int   смещение названия в области строк
+ *   28 short длина названия в байтах UTF-8, за ним сразу знак валюты
+ *   30 short длина знака в байтах UTF-8
+ * Область строк.
+ * </pre>
+ * Записи фиксированной длины позволяют читать курс по индексу без разбора файла.
+ */
+public final class RateSnapshotFormat {
+    public static final int MAGIC = 0x43585253; // "CXRS"
+    public static final int FORMAT_VERSION = 1;
+
+    public static final int HEADER_SIZE = 40;
+    public static final int VERSION_OFFSET = 8;
+    public static final int CREATED_AT_OFFSET = 16;
+    public static final int COUNT_OFFSET = 24;
+    public static final int STRINGS_LENGTH_OFFSET = 28;
+    public static final int CRC_OFFSET = 32;
+
+    public static final int RECORD_SIZE = 32;
+    public static final int CODE = 0;
+    public static final int CURRENCY_ID = 4;
+    public static final int RATE_ID = 8;
+    public static final int NOMINAL = 12;
+    public static final int RATE_MICROS = 16;
+    public static final int STRING_OFFSET = 24;
+    public static final int NAME_LENGTH = 28;
+    public static final int SIGN_LENGTH = 30;
+
+    /**
+     * Курс хранится как целое число миллионных: столько знаков после запятой у rate в БД.
+     */
+    public static final int RATE_SCALE = 6;
+    public static final long NO_RATE = Long.MIN_VALUE;
+
+    private RateSnapshotFormat() {
+    }
+
+    public static int recordOffset(int index) {
+        return HEADER_SIZE + index * RECORD_SIZE;
+    }
+}
@@ -0,0 +1,304 @@
+package org.example.snapshot;
+
+import org.example.AppConfig;
+import org.example.CurrencyCodes;
+import org.example.DatabaseManager;
+import org.example.cache.CurrencyView;
+import org.example.cache.RateView;
+import org.example.model.Currency;
+import org.example.model.ExchangeRate;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import static org.example.snapshot.RateSnapshotFormat.*;
+
+/**
+ * Публикация и чтение общего для всех экземпляров на хосте снимка курсов.
+ * <p>
+ * Публикация пишет новый файл рядом с текущим и атомарно подменяет его переименованием,
+ * поэтому читатели видят либо старую, либо новую версию целиком. Читатели проверяют, не подменён ли файл,
+ * не чаще раза в {@code snapshot.check.interval.ms} и при подмене отображают его заново.
+ * <p>
+ * Кроме обновления из ЦБ снимок переиздаётся после любых изменений справочников в памяти
+ * (ручные POST/PATCH/DELETE, изменения с других узлов): {@link #startPublisher()} раз в
+ * {@code snapshot.publish.interval.ms} сверяет версии {@link CurrencyView} и {@link RateView}
+ * с опубликованными. Серия изменений публикуется одним снимком, когда версии перестают меняться,
+ * но не позже чем через {@code snapshot.publish.max.delay.ms} после первого изменения.
+ */
+public final class RateSnapshotStore {
+    private static final RateSnapshotStore INSTANCE = new RateSnapshotStore();
+
+    private final boolean enabled = AppConfig.getBoolean("snapshot.enabled", true);
+    private final long checkIntervalMs = AppConfig.getLong("snapshot.check.interval.ms", 1000);
+    private final long maxAgeMs = AppConfig.getLong("snapshot.max.age.ms", 26L * 60 * 60 * 1000);
+    private final long publishIntervalMs = AppConfig.getLong("snapshot.publish.interval.ms", 1000);
+    private final long publishMaxDelayMs = AppConfig.getLong("snapshot.publish.max.delay.ms", 10_000);
+    private final Path file;
+
+    private volatile RateSnapshot current;
+    // Ключ файла (inode) меняется при каждой подмене, время изменения - запасной вариант
+    private volatile Object currentFileKey;
+    private volatile long checkedAt;
+
+    // Версии справочников, с которых снят последний снимок
+    private volatile long publishedCurrenciesVersion = -1;
+    private volatile long publishedRatesVersion = -1;
+    // Только в потоке публикации: версии на прошлой проверке и время первого неопубликованного изменения
+    private long seenCurrenciesVersion = -1;
+    private long seenRatesVersion = -1;
+    private long changedAt;
+    private ScheduledExecutorService publisher;
+
+    private RateSnapshotStore() {
+        String configured = AppConfig.getString("snapshot.path", "");
+        file = configured.isEmpty()
+                ? DatabaseManager.getDatabaseDirectory().resolve("rates.snapshot")
+                : Paths.get(configured);
+    }
+
+    public static RateSnapshotStore getInstance() {
+        return INSTANCE;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Текущий снимок или null, если снимка нет или он повреждён.
+     */
+    public RateSnapshot current() {
+        if (!enabled) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (now - checkedAt >= checkIntervalMs) {
+            checkedAt = now;
+            refresh();
+        }
+        return current;
+    }
+
+    /**
+     * Текущий снимок, если он не старше {@code snapshot.max.age.ms}, иначе null.
+     * По такому снимку экземпляр может обслуживать конвертацию сразу после старта.
+     */
+    public RateSnapshot currentIfFresh() {
+        RateSnapshot snapshot = current();
+        if (snapshot == null || System.currentTimeMillis() - snapshot.createdAtMillis() > maxAgeMs) {
+            return null;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Записывает новый снимок и атомарно публикует его.
+     *
+     * @param currencies  все валюты
+     * @param ratesByCode курсы по коду валюты (у части валют курса может не быть)
+     */
+    public synchronized void publish(List<Currency> currencies, Map<String, ExchangeRate> ratesByCode) throws IOException {
+        if (!enabled) {
+            return;
+        }
+        RateSnapshot previous = current();
+        long version = previous != null ? previous.version() + 1 : 1;
+        ByteBuffer content = encode(currencies, ratesByCode, version, System.currentTimeMillis());
+
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), "rates-", ".snapshot.tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (content.hasRemaining()) {
+                    channel.write(content);
+                }
+                // Данные должны быть на диске до переименования, иначе после сбоя останется пустой файл
+                channel.force(true);
+            }
+            Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        checkedAt = 0;
+        refresh();
+    }
+
+    /**
+     * Публикует снимок текущего содержимого справочников в памяти, если они загружены.
+     * Ошибка записи не прерывает обновление курсов: снимок лишь ускоряет старт других экземпляров.
+     */
+    public void publishFromViews() {
+        CurrencyView currencyView = CurrencyView.getInstance();
+        RateView rateView = RateView.getInstance();
+        if (!enabled || !currencyView.isLoaded() || !rateView.isLoaded()) {
+            return;
+        }
+        // Версии берём до чтения: изменение во время чтения вызовет ещё одну публикацию
+        long currenciesVersion = currencyView.version();
+        long ratesVersion = rateView.version();
+        try {
+            publish(currencyView.all(), rateView.byCode());
+            publishedCurrenciesVersion = currenciesVersion;
+            publishedRatesVersion = ratesVersion;
+            System.out.println("Rate snapshot published: version " + current.version() + ", " + file);
+        } catch (IOException e) {
+            System.err.println("Не удалось опубликовать снимок курсов " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Запускает переиздание снимка после изменений справочников в памяти.
+     */
+    public synchronized void startPublisher() {
+        if (!enabled || publisher != null || publishIntervalMs <= 0) {
+            return;
+        }
+        publisher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rate-snapshot-publisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        publisher.scheduleWithFixedDelay(this::publishIfChanged, publishIntervalMs, publishIntervalMs,
+                TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stopPublisher() {
+        if (publisher != null) {
+            publisher.shutdownNow();
+            publisher = null;
+        }
+    }
+
+    private void publishIfChanged() {
+        try {
+            CurrencyView currencyView = CurrencyView.getInstance();
+            RateView rateView = RateView.getInstance();
+            long currenciesVersion = currencyView.version();
+            long ratesVersion = rateView.version();
+            if (currenciesVersion == publishedCurrenciesVersion && ratesVersion == publishedRatesVersion) {
+                changedAt = 0;
+                return;
+            }
+            long now = System.currentTimeMillis();
+            if (changedAt == 0) {
+                changedAt = now;
+            }
+            boolean settled = currenciesVersion == seenCurrenciesVersion && ratesVersion == seenRatesVersion;
+            seenCurrenciesVersion = currenciesVersion;
+            seenRatesVersion = ratesVersion;
+            if (settled || now - changedAt >= publishMaxDelayMs) {
+                publishFromViews();
+                changedAt = 0;
+            }
+        } catch (RuntimeException e) {
+            // Исключение остановило бы периодическую задачу насовсем
+            System.err.println("Не удалось переиздать снимок курсов: " + e.getMessage());
+        }
+    }
+
+    private synchronized void refresh() {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            Object fileKey = attributes.fileKey() != null ? attributes.fileKey() : attributes.lastModifiedTime();
+            if (current != null && fileKey.equals(currentFileKey)) {
+                return;
+            }
+            current = RateSnapshot.map(file);
+            currentFileKey = fileKey;
+        } catch (NoSuchFileException e) {
+            current = null;
+        } catch (IOException e) {
+            System.err.println("Не удалось прочитать снимок курсов " + file + ": " + e.getMessage());
+            current = null;
+        }
+    }
+
+    static ByteBuffer encode(List<Currency> currencies, Map<String, ExchangeRate> ratesByCode,
+                             long version, long createdAtMillis) throws IOException {
+        List<Currency> sorted = new ArrayList<>();
+        for (Currency currency : currencies) {
+            if (CurrencyCodes.pack(currency.getCode()) != CurrencyCodes.INVALID) {
+                sorted.add(currency);
+            }
+        }
+        sorted.sort(Comparator.comparingInt(currency -> CurrencyCodes.pack(currency.getCode())));
+
+        List<byte[]> strings = new ArrayList<>(sorted.size() * 2);
+        int stringsLength = 0;
+        for (Currency currency : sorted) {
+            byte[] name = utf8(currency.getFullName());
+            byte[] sign = utf8(currency.getSign());
+            strings.add(name);
+            strings.add(sign);
+            stringsLength += name.length + sign.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + sorted.size() * RECORD_SIZE + stringsLength);
+        buffer.putInt(0, MAGIC);
+        buffer.putInt(4, FORMAT_VERSION);
+        buffer.putLong(VERSION_OFFSET, version);
+        buffer.putLong(CREATED_AT_OFFSET, createdAtMillis);
+        buffer.putInt(COUNT_OFFSET, sorted.size());
+        buffer.putInt(STRINGS_LENGTH_OFFSET, stringsLength);
+
+        int stringsStart = recordOffset(sorted.size());
+        int stringOffset = 0;
+        for (int i = 0; i < sorted.size(); i++) {
+            Currency currency = sorted.get(i);
+            byte[] name = strings.get(2 * i);
+            byte[] sign = strings.get(2 * i + 1);
+            ExchangeRate rate = ratesByCode.get(currency.getCode());
+
+            int record = recordOffset(i);
+            buffer.putInt(record + CODE, CurrencyCodes.pack(currency.getCode()));
+            buffer.putInt(record + CURRENCY_ID, currency.getId());
+            buffer.putInt(record + RATE_ID, rate != null ? rate.getId() : 0);
+            buffer.putInt(record + NOMINAL, rate != null ? rate.getNominal() : 0);
+            buffer.putLong(record + RATE_MICROS, rate != null ? toMicros(rate.getRate()) : NO_RATE);
+            buffer.putInt(record + STRING_OFFSET, stringOffset);
+            buffer.putShort(record + NAME_LENGTH, (short) name.length);
+            buffer.putShort(record + SIGN_LENGTH, (short) sign.length);
+
+            buffer.put(stringsStart + stringOffset, name);
+            buffer.put(stringsStart + stringOffset + name.length, sign);
+            stringOffset += name.length + sign.length;
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().position(HEADER_SIZE));
+        buffer.putLong(CRC_OFFSET, crc.getValue());
+        return buffer;
+    }
+
+    private static long toMicros(BigDecimal rate) {
+        return rate.setScale(RATE_SCALE, RoundingMode.HALF_UP).unscaledValue().longValueExact();
+    }
+
+    private static byte[] utf8(String value) throws IOException {
+        byte[] bytes = value != null ? value.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        if (bytes.length > 0xFFFF) {
+            throw new IOException("Строка слишком длинная для снимка курсов.");
+        }
+        return bytes;
+    }
+}
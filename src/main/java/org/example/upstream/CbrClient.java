@@ -0,0 +1,258 @@
+package org.example.upstream;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.AppConfig;
+import org.example.metrics.Metrics;
+import org.example.profiling.CbrPhaseEvent;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Клиент API ЦБ. Запросы неблокирующие ({@link HttpClient#sendAsync}), у каждого есть срок:
+ * таймаут соединения и общий срок на запрос вместе с чтением тела.
+ * Вызовы идут через {@link CircuitBreaker}: пока ЦБ недоступен, клиент отказывает сразу.
+ * <p>
+ * При неудаче или разомкнутой цепи отдаются последние успешно полученные курсы
+ * с признаком {@link Rates#isStale()}. Если таких нет, запрос завершается ошибкой.
+ * Признак устаревания {@link #isServingStale()} учитывает и обращения этого узла к ЦБ,
+ * и неудачу обновления на ведущем узле кластера ({@link #setLeaderStale}).
+ */
+public final class CbrClient {
+    private static final String DEFAULT_URL = "https://www.cbr-xml-daily.ru/daily_json.js";
+    private static final CbrClient INSTANCE = createDefault();
+
+    private final URI uri;
+    private final Duration requestTimeout;
+    private final CircuitBreaker breaker;
+    private final HttpClient httpClient;
+    private final ExecutorService executor;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final LongAdder requests = Metrics.counter("cbr.requests");
+    private final LongAdder failures = Metrics.counter("cbr.failures");
+    private final LongAdder rejected = Metrics.counter("cbr.rejected");
+    private final LongAdder staleServed = Metrics.counter("cbr.stale.served");
+
+    private volatile Rates lastKnownGood;
+    private volatile boolean servingStale;
+    private volatile boolean leaderStale;
+
+    /**
+     * @param uri              адрес daily_json.js (в проверках - локальная заглушка)
+     * @param connectTimeoutMs таймаут установления соединения
+     * @param requestTimeoutMs срок на весь запрос, включая чтение ответа
+     * @param breaker          предохранитель
+     * @param executor         потоки для обработки ответов; останавливаются в {@link #close()}
+     */
+    public CbrClient(URI uri, long connectTimeoutMs, long requestTimeoutMs, CircuitBreaker breaker,
+                     ExecutorService executor) {
+        this.uri = uri;
+        this.requestTimeout = Duration.ofMillis(requestTimeoutMs);
+        this.breaker = breaker;
+        this.executor = executor;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .executor(executor)
+                .build();
+    }
+
+    public static CbrClient getInstance() {
+        return INSTANCE;
+    }
+
+    private static CbrClient createDefault() {
+        ExecutorService executor = Executors.newFixedThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "cbr-http");
+            thread.setDaemon(true);
+            return thread;
+        });
+        CbrClient client = new CbrClient(
+                URI.create(AppConfig.getString("cbr.url", DEFAULT_URL)),
+                AppConfig.getLong("cbr.connect.timeout.ms", 3000),
+                AppConfig.getLong("cbr.request.timeout.ms", 10_000),
+                new CircuitBreaker(
+                        AppConfig.getInt("cbr.breaker.failure.threshold", 3),
+                        AppConfig.getLong("cbr.breaker.open.ms", 60_000)),
+                executor);
+        Metrics.gauge("cbr.circuit.state", () -> client.breaker.getState().ordinal());
+        Metrics.gauge("cbr.serving.stale", () -> client.isServingStale() ? 1 : 0);
+        return client;
+    }
+
+    /**
+     * Запрашивает курсы, не блокируя вызывающий поток.
+     */
+    public CompletableFuture<Rates> fetchAsync() {
+        if (!breaker.tryAcquire()) {
+            rejected.increment();
+            IOException error = new IOException("ЦБ временно недоступен: запросы приостановлены после серии ошибок.");
+            Rates known = fallback(error);
+            return known != null ? CompletableFuture.completedFuture(known) : CompletableFuture.failedFuture(error);
+        }
+        requests.increment();
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .timeout(requestTimeout)
+                .header("Accept", "application/json")
+                .GET()
+                .build();
+        CbrPhaseEvent fetchEvent = new CbrPhaseEvent();
+        fetchEvent.begin();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                // Таймаут запроса не покрывает чтение тела, поэтому общий срок ставим и здесь
+                .orTimeout(requestTimeout.toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((response, error) -> fetchEvent.finish(CbrPhaseEvent.FETCH, null, 0,
+                        response != null ? response.body().length : 0, error != null))
+                .thenApply(this::parse)
+                .handle((rates, error) -> {
+                    if (error == null) {
+                        breaker.onSuccess();
+                        lastKnownGood = rates;
+                        servingStale = false;
+                        return rates;
+                    }
+                    breaker.onFailure();
+                    failures.increment();
+                    IOException cause = unwrap(error);
+                    Rates known = fallback(cause);
+                    if (known == null) {
+                        throw new CompletionException(cause);
+                    }
+                    return known;
+                });
+    }
+
+    /**
+     * Синхронная обёртка над {@link #fetchAsync()}: ждёт не дольше срока запроса.
+     *
+     * @throws IOException если ЦБ недоступен и ранее полученных курсов нет
+     */
+    public Rates fetch() throws IOException, InterruptedException {
+        try {
+            return fetchAsync().get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Курсы не обновляются: последнее обращение этого узла к ЦБ не удалось и отдаются ранее
+     * полученные курсы, или последнее обновление на ведущем узле не удалось.
+     */
+    public boolean isServingStale() {
+        return servingStale || leaderStale;
+    }
+
+    /**
+     * Признак неудачи последнего обновления на ведущем узле (из общей БД).
+     */
+    public void setLeaderStale(boolean stale) {
+        leaderStale = stale;
+    }
+
+    /**
+     * Останавливает потоки обработки ответов (при остановке приложения). Незавершённые запросы
+     * не дождутся ответа, новые после этого отправлять нельзя.
+     */
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    public CircuitBreaker.State getCircuitState() {
+        return breaker.getState();
+    }
+
+    private Rates parse(HttpResponse<byte[]> response) {
+        if (response.statusCode() != 200) {
+            throw new CompletionException(new IOException(
+                    "Failed to fetch rates from CBR. Status code: " + response.statusCode()));
+        }
+        CbrPhaseEvent event = new CbrPhaseEvent();
+        event.begin();
+        JsonNode valute = null;
+        try {
+            valute = objectMapper.readTree(response.body()).path("Valute");
+            if (!valute.isObject()) {
+                throw new IOException("В ответе ЦБ нет раздела Valute.");
+            }
+            return new Rates(valute, System.currentTimeMillis(), false);
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        } finally {
+            boolean parsed = valute != null && valute.isObject();
+            event.finish(CbrPhaseEvent.PARSE, null, parsed ? valute.size() : 0, response.body().length, !parsed);
+        }
+    }
+
+    /**
+     * Последние полученные курсы с признаком устаревания или null, если их нет.
+     */
+    private Rates fallback(IOException error) {
+        Rates known = lastKnownGood;
+        if (known == null) {
+            return null;
+        }
+        servingStale = true;
+        staleServed.increment();
+        System.err.println("CBR request failed (" + error.getMessage() + "), serving rates fetched at "
+                + known.getFetchedAtMillis());
+        return new Rates(known.getValute(), known.getFetchedAtMillis(), true);
+    }
+
+    private static IOException unwrap(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        if (cause instanceof TimeoutException) {
+            return new IOException("ЦБ не ответил за отведённое время.", cause);
+        }
+        return new IOException(cause.getMessage(), cause);
+    }
+
+    /**
+     * Ответ ЦБ: раздел {@code Valute} и время его получения.
+     */
+    public static final class Rates {
+        private final JsonNode valute;
+        private final long fetchedAtMillis;
+        private final boolean stale;
+
+        private Rates(JsonNode valute, long fetchedAtMillis, boolean stale) {
+            this.valute = valute;
+            this.fetchedAtMillis = fetchedAtMillis;
+            this.stale = stale;
+        }
+
+        public JsonNode getValute() {
+            return valute;
+        }
+
+        public long getFetchedAtMillis() {
+            return fetchedAtMillis;
+        }
+
+        /**
+         * Курсы взяты из последнего успешного ответа, потому что текущий запрос не удался.
+         */
+        public boolean isStale() {
+            return stale;
+        }
+    }
+}
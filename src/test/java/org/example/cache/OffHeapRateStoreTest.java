@@ -0,0 +1,142 @@
+package org.example.cache;
+
+import org.example.model.ExchangeRate;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OffHeapRateStoreTest {
+
+    @Test
+    void putGetRemove() {
+        OffHeapRateStore store = new OffHeapRateStore(16);
+        store.put("USD", rate(1, 1, new BigDecimal("92.5")));
+
+        ExchangeRate usd = store.get("usd");
+        assertNotNull(usd);
+        assertEquals(new BigDecimal("92.5"), usd.getRate());
+        assertNull(store.get("EUR"));
+        assertNull(store.get("U$D"));
+
+        assertTrue(store.remove("USD"));
+        assertFalse(store.remove("USD"));
+        assertNull(store.get("USD"));
+        assertEquals(1, store.records());
+    }
+
+    @Test
+    void replaceAllMarksMissingCodes() {
+        OffHeapRateStore store = new OffHeapRateStore(16);
+        store.put("USD", rate(1, 1, BigDecimal.ONE));
+        store.put("EUR", rate(2, 1, BigDecimal.TEN));
+
+        store.replaceAll(Map.of("EUR", rate(2, 1, new BigDecimal("100"))));
+
+        assertNull(store.get("USD"));
+        assertEquals(0, new BigDecimal("100").compareTo(store.get("EUR").getRate()));
+    }
+
+    /**
+     * Писатель меняет запись так, что все её поля равны одному числу; читатель без блокировки
+     * не должен увидеть запись, поля которой взяты из разных версий.
+     */
+    @Test
+    void readersNeverSeeTornRecords() throws Exception {
+        OffHeapRateStore store = new OffHeapRateStore(16);
+        store.put("USD", rate(1, 1, BigDecimal.ONE));
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<String> torn = new AtomicReference<>();
+        int readers = Math.max(2, Runtime.getRuntime().availableProcessors() - 1);
+        CountDownLatch started = new CountDownLatch(readers);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < readers; i++) {
+            Thread reader = new Thread(() -> {
+                started.countDown();
+                while (running.get() && torn.get() == null) {
+                    ExchangeRate read = store.get("USD");
+                    if (read == null || !consistent(read)) {
+                        torn.compareAndSet(null, read == null ? "null" : describe(read));
+                    }
+                }
+            });
+            threads.add(reader);
+            reader.start();
+        }
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(500);
+        for (int value = 2; System.nanoTime() < deadline && torn.get() == null; value++) {
+            store.put("USD", rate(value, value, BigDecimal.valueOf(value)));
+        }
+        running.set(false);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(torn.get(), "Прочитана несогласованная запись");
+    }
+
+    /**
+     * Рост области во время чтения: уже записанные курсы остаются видны.
+     */
+    @Test
+    void readersSeeExistingRatesWhileStoreGrows() throws Exception {
+        OffHeapRateStore store = new OffHeapRateStore(16);
+        store.put("USD", rate(7, 7, BigDecimal.valueOf(7)));
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<String> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            while (running.get()) {
+                ExchangeRate read = store.get("USD");
+                if (read == null || read.getId() != 7) {
+                    failure.compareAndSet(null, read == null ? "null" : describe(read));
+                }
+            }
+        });
+        reader.start();
+
+        int id = 100;
+        for (char a = 'A'; a <= 'Z'; a++) {
+            for (char b = 'A'; b <= 'Z'; b++) {
+                store.put("Q" + a + b, rate(id, id, BigDecimal.valueOf(id)));
+                id++;
+            }
+        }
+        running.set(false);
+        reader.join();
+
+        assertNull(failure.get(), "Курс пропал при росте хранилища");
+        assertEquals(26 * 26 + 1, store.records());
+        assertEquals(0, BigDecimal.valueOf(100).compareTo(store.get("QAA").getRate()));
+    }
+
+    private static boolean consistent(ExchangeRate rate) {
+        int value = rate.getId();
+        return rate.getIdCurrency() == value && rate.getNominal() == value
+                && rate.getRate().compareTo(BigDecimal.valueOf(value)) == 0;
+    }
+
+    private static String describe(ExchangeRate rate) {
+        return "id=" + rate.getId() + ", idCurrency=" + rate.getIdCurrency() + ", nominal=" + rate.getNominal()
+                + ", rate=" + rate.getRate();
+    }
+
+    private static ExchangeRate rate(int id, int value, BigDecimal rate) {
+        ExchangeRate exchangeRate = new ExchangeRate();
+        exchangeRate.setId(id);
+        exchangeRate.setIdCurrency(value);
+        exchangeRate.setNominal(value);
+        exchangeRate.setRate(rate);
+        return exchangeRate;
+    }
+}
@@ -0,0 +1,105 @@
+package org.example.cache;
+
+import org.example.metrics.Metrics;
+import org.example.model.ExchangeRate;
+import org.example.model.TenantRateAdjustment;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TenantRateBookTest {
+    private final RateView rateView = RateView.getInstance();
+
+    @BeforeEach
+    void loadRates() {
+        rateView.loadAll(Map.of(
+                "USD", rate(1, 1, "90"),
+                "EUR", rate(2, 1, "100"),
+                "JPY", rate(3, 100, "60")));
+    }
+
+    @Test
+    void crossRatesWithoutAdjustmentsFollowCentralBank() {
+        TenantRateBook book = new TenantRateBook("retail", rateView);
+
+        assertRate("0.9", book.crossRate("USD", "EUR"));
+        assertRate("150", book.crossRate("USD", "JPY"));
+        assertRate("0.006666666667", book.crossRate("JPY", "USD"));
+        assertRate("0.6", book.crossRate("JPY", "RUB"));
+        assertRate("0.011111111111", book.crossRate("RUB", "USD"));
+        assertRate("1", book.crossRate("EUR", "EUR"));
+        assertNull(book.crossRate("USD", "GBP"));
+        assertTrue(book.hasRate("RUB"));
+        assertFalse(book.hasRate("GBP"));
+    }
+
+    @Test
+    void spreadOfTargetCurrencyReducesCrossRate() {
+        TenantRateBook book = new TenantRateBook("retail", rateView);
+        book.setAdjustments(List.of(adjustment("EUR", 150, null), adjustment("*", 10, null)));
+
+        // 0.9 * (1 - 0.015)
+        assertRate("0.8865", book.crossRate("USD", "EUR"));
+        // Спред "*" действует на валюты без своего: 100 / 90 * (1 - 0.001)
+        assertRate("1.110000000000", book.crossRate("EUR", "USD"));
+    }
+
+    @Test
+    void tenantRateReplacesCentralBankRate() {
+        TenantRateBook book = new TenantRateBook("retail", rateView);
+        book.setAdjustments(List.of(adjustment("USD", null, "80"), adjustment("CNY", null, "12.5")));
+
+        assertRate("0.8", book.crossRate("USD", "EUR"));
+        // Курс тенанта добавляет валюту, которой нет у ЦБ
+        assertRate("6.4", book.crossRate("USD", "CNY"));
+    }
+
+    @Test
+    void rateChangeRecomputesOnlyAffectedPairs() {
+        TenantRateBook book = new TenantRateBook("retail", rateView);
+        assertRate("0.9", book.crossRate("USD", "EUR"));
+        assertRate("166.666666666667", book.crossRate("EUR", "JPY"));
+        long rebuilds = Metrics.counter("tenant.book.rebuilds").sum();
+        long updated = Metrics.counter("tenant.book.updated.currencies").sum();
+
+        rateView.put("USD", rate(1, 1, "95"));
+
+        assertRate("0.95", book.crossRate("USD", "EUR"));
+        assertRate("166.666666666667", book.crossRate("EUR", "JPY"));
+        assertEquals(rebuilds, Metrics.counter("tenant.book.rebuilds").sum());
+        assertEquals(updated + 1, Metrics.counter("tenant.book.updated.currencies").sum());
+
+        // Новая валюта меняет набор - вектор строится заново
+        rateView.put("GBP", rate(4, 1, "120"));
+        assertRate("1.2", book.crossRate("GBP", "EUR"));
+        assertEquals(rebuilds + 1, Metrics.counter("tenant.book.rebuilds").sum());
+    }
+
+    private static void assertRate(String expected, BigDecimal actual) {
+        assertNotNull(actual);
+        assertEquals(0, new BigDecimal(expected).compareTo(actual), () -> "ожидался " + expected + ", получен " + actual);
+    }
+
+    private static ExchangeRate rate(int currencyId, int nominal, String rate) {
+        ExchangeRate exchangeRate = new ExchangeRate();
+        exchangeRate.setId(currencyId);
+        exchangeRate.setIdCurrency(currencyId);
+        exchangeRate.setNominal(nominal);
+        exchangeRate.setRate(new BigDecimal(rate));
+        return exchangeRate;
+    }
+
+    private static TenantRateAdjustment adjustment(String code, Integer spreadBps, String rate) {
+        TenantRateAdjustment adjustment = new TenantRateAdjustment();
+        adjustment.setTenant("retail");
+        adjustment.setCurrencyCode(code);
+        adjustment.setSpreadBps(spreadBps);
+        adjustment.setRate(rate == null ? null : new BigDecimal(rate));
+        return adjustment;
+    }
+}
@@ -0,0 +1,46 @@
+package org.example.dao;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExchangeRateWriteBehindTest {
+
+    @Test
+    void latestRateWinsPerCode() {
+        Map<String, RateWriteAheadLog.Entry> latest = ExchangeRateWriteBehind.latestByCode(List.of(
+                new RateWriteAheadLog.Entry(1, 10, "USD", 1, new BigDecimal("90")),
+                new RateWriteAheadLog.Entry(2, 11, "EUR", 1, new BigDecimal("100")),
+                new RateWriteAheadLog.Entry(3, 10, "USD", 1, new BigDecimal("92"))));
+
+        assertEquals(List.of("USD", "EUR"), List.copyOf(latest.keySet()));
+        assertEquals(new BigDecimal("92"), latest.get("USD").getRate());
+        assertEquals(new BigDecimal("100"), latest.get("EUR").getRate());
+    }
+
+    @Test
+    void discardDropsEarlierRatesOfItsCode() {
+        Map<String, RateWriteAheadLog.Entry> latest = ExchangeRateWriteBehind.latestByCode(List.of(
+                new RateWriteAheadLog.Entry(1, 10, "USD", 1, new BigDecimal("90")),
+                new RateWriteAheadLog.Entry(2, 11, "EUR", 1, new BigDecimal("100")),
+                RateWriteAheadLog.Entry.discard(3, 10, "USD")));
+
+        assertEquals(List.of("EUR"), List.copyOf(latest.keySet()));
+    }
+
+    @Test
+    void rateAfterDiscardIsKept() {
+        // Валюту удалили и снова добавили с новым id
+        Map<String, RateWriteAheadLog.Entry> latest = ExchangeRateWriteBehind.latestByCode(List.of(
+                new RateWriteAheadLog.Entry(1, 10, "USD", 1, new BigDecimal("90")),
+                RateWriteAheadLog.Entry.discard(2, 10, "USD"),
+                new RateWriteAheadLog.Entry(3, 12, "USD", 1, new BigDecimal("93"))));
+
+        assertEquals(12, latest.get("USD").getCurrencyId());
+        assertEquals(new BigDecimal("93"), latest.get("USD").getRate());
+    }
+}
@@ -0,0 +1,139 @@
+package org.example.dao;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RateWriteAheadLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replayReturnsEntriesOfAllSegmentsInOrder() throws IOException {
+        try (RateWriteAheadLog wal = new RateWriteAheadLog(directory)) {
+            assertEquals(1, wal.open());
+            wal.append(new RateWriteAheadLog.Entry(1, 10, "USD", 1, new BigDecimal("92.5")));
+            assertEquals(1, wal.roll());
+            wal.append(RateWriteAheadLog.Entry.discard(2, 10, "USD"));
+            wal.append(new RateWriteAheadLog.Entry(3, 20, "JPY", 100, new BigDecimal("61.2345")));
+        }
+
+        List<RateWriteAheadLog.Entry> entries = new RateWriteAheadLog(directory).replay();
+
+        assertEquals(3, entries.size());
+        RateWriteAheadLog.Entry usd = entries.get(0);
+        assertEquals(1, usd.getSeq());
+        assertEquals(10, usd.getCurrencyId());
+        assertEquals("USD", usd.getCurrencyCode());
+        assertEquals(1, usd.getNominal());
+        assertEquals(new BigDecimal("92.5"), usd.getRate());
+        assertFalse(usd.isDiscard());
+
+        assertTrue(entries.get(1).isDiscard());
+        assertEquals("USD", entries.get(1).getCurrencyCode());
+
+        assertEquals(100, entries.get(2).getNominal());
+        assertEquals(new BigDecimal("61.2345"), entries.get(2).getRate());
+    }
+
+    @Test
+    void openStartsAfterExistingSegments() throws IOException {
+        try (RateWriteAheadLog wal = new RateWriteAheadLog(directory)) {
+            wal.open();
+            wal.append(new RateWriteAheadLog.Entry(1, 10, "USD", 1, BigDecimal.ONE));
+            wal.roll();
+        }
+        try (RateWriteAheadLog wal = new RateWriteAheadLog(directory)) {
+            assertEquals(1, wal.replay().size());
+            assertEquals(3, wal.open());
+            wal.deleteSegmentsUpTo(2);
+        }
+
+        assertTrue(new RateWriteAheadLog(directory).replay().isEmpty());
+        assertTrue(Files.exists(directory.resolve("rate-wal-3.log")));
+    }
+
+    @Test
+    void tornTailIsIgnored() throws IOException {
+        try (RateWriteAheadLog wal = new RateWriteAheadLog(directory)) {
+            wal.open();
+            wal.append(new RateWriteAheadLog.Entry(1, 10, "USD", 1, BigDecimal.ONE));
+            wal.append(new RateWriteAheadLog.Entry(2, 11, "EUR", 1, BigDecimal.TEN));
+        }
+        Path segment = directory.resolve("rate-wal-1.log");
+        byte[] bytes = Files.readAllBytes(segment);
+        // Обрыв посреди второй записи, как после аварии
+        Files.write(segment, Arrays.copyOf(bytes, bytes.length - 5));
+
+        List<RateWriteAheadLog.Entry> entries = new RateWriteAheadLog(directory).replay();
+
+        assertEquals(1, entries.size());
+        assertEquals("USD", entries.get(0).getCurrencyCode());
+    }
+
+    @Test
+    void replayStopsAtChecksumMismatch() throws IOException {
+        try (RateWriteAheadLog wal = new RateWriteAheadLog(directory)) {
+            wal.open();
+            wal.append(new RateWriteAheadLog.Entry(1, 10, "USD", 1, BigDecimal.ONE));
+            wal.append(new RateWriteAheadLog.Entry(2, 11, "EUR", 1, BigDecimal.TEN));
+        }
+        Path segment = directory.resolve("rate-wal-1.log");
+        byte[] bytes = Files.readAllBytes(segment);
+        bytes[bytes.length - 1] ^= 0x01;
+        Files.write(segment, bytes, StandardOpenOption.TRUNCATE_EXISTING);
+
+        List<RateWriteAheadLog.Entry> entries = new RateWriteAheadLog(directory).replay();
+
+        assertEquals(1, entries.size());
+        assertEquals("USD", entries.get(0).getCurrencyCode());
+    }
+
+    @Test
+    void concurrentAppendsAreAllReplayed() throws Exception {
+        int threads = 8;
+        int perThread = 50;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try (RateWriteAheadLog wal = new RateWriteAheadLog(directory)) {
+            wal.open();
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        long seq = (long) thread * perThread + i;
+                        wal.append(new RateWriteAheadLog.Entry(seq, thread, "USD", 1, BigDecimal.valueOf(seq)));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Set<Long> seqs = new HashSet<>();
+        for (RateWriteAheadLog.Entry entry : new RateWriteAheadLog(directory).replay()) {
+            seqs.add(entry.getSeq());
+        }
+        assertEquals(threads * perThread, seqs.size());
+    }
+}
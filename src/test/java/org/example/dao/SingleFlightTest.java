@@ -0,0 +1,142 @@
+package org.example.dao;
+
+import org.example.exception.DataAccessResourceFailureException;
+import org.example.metrics.Metrics;
+import org.example.model.Currency;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+    private static final int WAITERS = 7;
+
+    @Test
+    void concurrentCallersShareOneQuery() throws Exception {
+        SingleFlight<String, Currency> singleFlight = new SingleFlight<>("test.shared", Currency::new);
+        AtomicInteger queries = new AtomicInteger();
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(WAITERS + 1);
+        try {
+            Future<Currency> leader = executor.submit(() -> singleFlight.execute("USD", () -> {
+                queries.incrementAndGet();
+                leaderStarted.countDown();
+                awaitQuietly(release);
+                return currency(1, "USD");
+            }));
+            assertTrue(leaderStarted.await(10, TimeUnit.SECONDS));
+
+            List<Future<Currency>> waiters = new ArrayList<>();
+            for (int i = 0; i < WAITERS; i++) {
+                waiters.add(executor.submit(() -> singleFlight.execute("USD", () -> {
+                    queries.incrementAndGet();
+                    return currency(2, "USD");
+                })));
+            }
+            awaitCounter("singleflight.test.shared.shared", WAITERS);
+            release.countDown();
+
+            Currency original = leader.get(10, TimeUnit.SECONDS);
+            for (Future<Currency> waiter : waiters) {
+                Currency copy = waiter.get(10, TimeUnit.SECONDS);
+                assertEquals(1, copy.getId());
+                assertEquals("USD", copy.getCode());
+                // Присоединившиеся получают копию, чтобы не делить изменяемый объект
+                assertNotSame(original, copy);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, queries.get());
+        assertEquals(1, Metrics.counter("singleflight.test.shared.executed").sum());
+    }
+
+    @Test
+    void waitersReceiveTheQueryException() throws Exception {
+        SingleFlight<String, Currency> singleFlight = new SingleFlight<>("test.failure", Currency::new);
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Currency> leader = executor.submit(() -> singleFlight.execute("USD", () -> {
+                leaderStarted.countDown();
+                awaitQuietly(release);
+                throw new DataAccessResourceFailureException("БД недоступна", null);
+            }));
+            assertTrue(leaderStarted.await(10, TimeUnit.SECONDS));
+            Future<Currency> waiter = executor.submit(() -> singleFlight.execute("USD", () -> currency(2, "USD")));
+            awaitCounter("singleflight.test.failure.shared", 1);
+            release.countDown();
+
+            assertInstanceOf(DataAccessResourceFailureException.class,
+                    assertThrows(ExecutionException.class, () -> leader.get(10, TimeUnit.SECONDS)).getCause());
+            assertInstanceOf(DataAccessResourceFailureException.class,
+                    assertThrows(ExecutionException.class, () -> waiter.get(10, TimeUnit.SECONDS)).getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void invalidateStartsNewQuery() throws Exception {
+        SingleFlight<String, Currency> singleFlight = new SingleFlight<>("test.invalidate", Currency::new);
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Currency> leader = executor.submit(() -> singleFlight.execute("USD", () -> {
+                leaderStarted.countDown();
+                awaitQuietly(release);
+                return currency(1, "USD");
+            }));
+            assertTrue(leaderStarted.await(10, TimeUnit.SECONDS));
+
+            // Запись в таблицу: запрос, начатый до неё, не должен достаться следующему читателю
+            singleFlight.invalidate();
+            Currency fresh = singleFlight.execute("USD", () -> currency(2, "USD"));
+            assertEquals(2, fresh.getId());
+
+            release.countDown();
+            assertEquals(1, leader.get(10, TimeUnit.SECONDS).getId());
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(0, Metrics.counter("singleflight.test.invalidate.shared").sum());
+    }
+
+    private static void awaitCounter(String name, long expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (Metrics.counter(name).sum() < expected) {
+            assertTrue(System.nanoTime() < deadline, "Не дождались счётчика " + name);
+            Thread.sleep(1);
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Currency currency(int id, String code) {
+        Currency currency = new Currency();
+        currency.setId(id);
+        currency.setCode(code);
+        return currency;
+    }
+}
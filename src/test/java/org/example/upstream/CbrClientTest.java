@@ -0,0 +1,128 @@
+package org.example.upstream;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Клиент ЦБ против локальной заглушки: поведение задаётся полем {@link #mode}.
+ */
+class CbrClientTest {
+    private static final String BODY = "{\"Valute\":{\"USD\":{\"CharCode\":\"USD\",\"Nominal\":1,\"Value\":79.6032}}}";
+    private static final long REQUEST_TIMEOUT_MS = 300;
+
+    private enum Mode { OK, ERROR, SLOW }
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile Mode mode = Mode.OK;
+    private HttpServer server;
+    private CbrClient client;
+
+    @BeforeEach
+    void startStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/daily_json.js", exchange -> {
+            requests.incrementAndGet();
+            try {
+                if (mode == Mode.SLOW) {
+                    Thread.sleep(REQUEST_TIMEOUT_MS * 5);
+                }
+                byte[] body = BODY.getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(mode == Mode.ERROR ? 500 : 200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException e) {
+                // Клиент уже отказался от запроса по таймауту
+            } finally {
+                exchange.close();
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        URI uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/daily_json.js");
+        client = new CbrClient(uri, 1000, REQUEST_TIMEOUT_MS, new CircuitBreaker(2, 60_000),
+                Executors.newFixedThreadPool(2));
+    }
+
+    @AfterEach
+    void stopStub() {
+        client.close();
+        server.stop(0);
+    }
+
+    @Test
+    void fetchesRates() throws Exception {
+        CbrClient.Rates rates = client.fetch();
+
+        assertFalse(rates.isStale());
+        assertEquals(79.6032, rates.getValute().path("USD").path("Value").asDouble());
+        assertFalse(client.isServingStale());
+    }
+
+    @Test
+    void timeoutWithoutKnownRatesFails() {
+        mode = Mode.SLOW;
+        long startedAt = System.nanoTime();
+
+        IOException error = assertThrows(IOException.class, client::fetch);
+
+        long elapsedMs = (System.nanoTime() - startedAt) / 1_000_000;
+        assertTrue(elapsedMs < REQUEST_TIMEOUT_MS * 4, "Запрос ждал " + elapsedMs + " мс");
+        assertNotNull(error.getMessage());
+    }
+
+    @Test
+    void failureServesLastKnownRatesAsStale() throws Exception {
+        CbrClient.Rates fresh = client.fetch();
+        mode = Mode.SLOW;
+
+        CbrClient.Rates stale = client.fetch();
+
+        assertTrue(stale.isStale());
+        assertEquals(fresh.getFetchedAtMillis(), stale.getFetchedAtMillis());
+        assertTrue(client.isServingStale());
+
+        mode = Mode.OK;
+        assertFalse(client.fetch().isStale());
+        assertFalse(client.isServingStale());
+    }
+
+    @Test
+    void breakerOpensAfterFailuresAndRejectsWithoutRequest() throws Exception {
+        client.fetch();
+        mode = Mode.ERROR;
+        assertTrue(client.fetch().isStale());
+        assertTrue(client.fetch().isStale());
+        assertEquals(CircuitBreaker.State.OPEN, client.getCircuitState());
+        int sent = requests.get();
+
+        CbrClient.Rates rates = client.fetch();
+
+        assertTrue(rates.isStale());
+        assertEquals(sent, requests.get(), "Запрос ушёл в ЦБ при разомкнутой цепи");
+    }
+
+    @Test
+    void leaderStaleFlagIsReported() {
+        client.setLeaderStale(true);
+        assertTrue(client.isServingStale());
+        client.setLeaderStale(false);
+        assertFalse(client.isServingStale());
+    }
+}